@@ -0,0 +1,102 @@
+package benchmark.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import repartitor.operations.Pell;
+import repartitor.operations.Prime;
+import shared.CalculatorOccupiedException;
+
+/**
+ * Mesure le temps de performOperation de Prime et de Pell selon la grandeur des opérandes. Chaque appel prend l'opération
+ * suivante d'un tableau d'opérandes aléatoires entre la moitié de l'opérande maximale et l'opérande maximale, pour que le
+ * résultat ne puisse pas être connu d'avance. Les fichiers fournis ont des opérandes prime entre 5000 et 10000 et des
+ * opérandes pell entre 20 et 25 ; la plus grande opérande prime dépasse la taille maximale du crible et mesure donc les
+ * divisions successives.
+ * @author dcourcel
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class OperationBenchmark {
+	private static final int OPERATIONS = 1024;
+	
+	/**
+	 * Les opérations prime à calculer.
+	 */
+	@State(Scope.Thread)
+	public static class PrimeOperations {
+		@Param({ "10000", "1000000", "100000000" })
+		public int maxOperand;
+		
+		private Prime[] operations;
+		private int next = 0;
+		
+		@Setup
+		public void setUp() throws CalculatorOccupiedException {
+			Random random = new Random(maxOperand);
+			operations = new Prime[OPERATIONS];
+			for(int i = 0; i < OPERATIONS; ++i) {
+				operations[i] = new Prime(maxOperand / 2 + random.nextInt(maxOperand - maxOperand / 2));
+				// Construit le crible avant la mesure.
+				operations[i].performOperation();
+			}
+		}
+		
+		Prime next() {
+			next = (next + 1) & (OPERATIONS - 1);
+			return operations[next];
+		}
+	}
+	
+	/**
+	 * Les opérations pell à calculer.
+	 */
+	@State(Scope.Thread)
+	public static class PellOperations {
+		@Param({ "25", "1000", "1000000" })
+		public int maxOperand;
+		
+		private Pell[] operations;
+		private int next = 0;
+		
+		@Setup
+		public void setUp() {
+			Random random = new Random(maxOperand);
+			operations = new Pell[OPERATIONS];
+			for(int i = 0; i < OPERATIONS; ++i) {
+				operations[i] = new Pell(maxOperand / 2 + random.nextInt(maxOperand - maxOperand / 2));
+			}
+		}
+		
+		Pell next() {
+			next = (next + 1) & (OPERATIONS - 1);
+			return operations[next];
+		}
+	}
+	
+	@Benchmark
+	public int prime(PrimeOperations operations) throws CalculatorOccupiedException {
+		return operations.next().performOperation();
+	}
+	
+	@Benchmark
+	public int pell(PellOperations operations) throws CalculatorOccupiedException {
+		return operations.next().performOperation();
+	}
+}
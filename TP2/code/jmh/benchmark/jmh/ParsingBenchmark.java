@@ -0,0 +1,97 @@
+package benchmark.jmh;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import repartitor.OperationQueue;
+import shared.IOperation;
+
+/**
+ * Mesure la lecture d'un fichier d'opérations formé des lignes des fichiers operations-* du dossier courant, répétées. La
+ * lecture par Repartitor.transformInputToOperations, qui est privée, ne fait que créer une OperationQueue sur le buffer : elle est
+ * mesurée ici en créant la même file et en la vidant par lots, comme le répartiteur. La transformation seule des lignes en
+ * opérations, sans le fil producteur ni la file, est mesurée à part.
+ * @author dcourcel
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+	private static final int REPETITIONS = 20;
+	private static final int QUEUE_CAPACITY = 10000;
+	private static final int BATCH_SIZE = 6;
+	
+	private String operationsText;
+	private String[] lines;
+	
+	@Setup
+	public void setUp() throws IOException {
+		ArrayList<String> fileLines = new ArrayList<>();
+		File[] files = new File(".").listFiles();
+		if(files != null) {
+			for(File file : files) {
+				if(file.getName().startsWith("operations-")) {
+					try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+						String line = reader.readLine();
+						while(line != null) {
+							fileLines.add(line);
+							line = reader.readLine();
+						}
+					}
+				}
+			}
+		}
+		if(fileLines.isEmpty()) {
+			throw new IOException("Aucun fichier operations-* dans " + new File(".").getAbsolutePath());
+		}
+		StringBuilder text = new StringBuilder();
+		ArrayList<String> repeatedLines = new ArrayList<>();
+		for(int r = 0; r < REPETITIONS; ++r) {
+			for(String line : fileLines) {
+				text.append(line).append('\n');
+				repeatedLines.add(line);
+			}
+		}
+		operationsText = text.toString();
+		lines = repeatedLines.toArray(new String[repeatedLines.size()]);
+	}
+	
+	@Benchmark
+	public int readQueue() throws IOException {
+		OperationQueue operations = new OperationQueue(new BufferedReader(new StringReader(operationsText)), QUEUE_CAPACITY, null);
+		int count = 0;
+		while(operations.hasMoreOperations()) {
+			count += operations.retrieveOperations(BATCH_SIZE).length;
+		}
+		return count;
+	}
+	
+	@Benchmark
+	public void parseLines(Blackhole blackhole) {
+		for(String line : lines) {
+			IOperation operation = OperationQueue.parseOperation(line);
+			blackhole.consume(operation);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package benchmark.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.OperationFiles;
+import repartitor.operations.Operation;
+import shared.IOperation;
+
+/**
+ * Mesure la sérialisation Java d'un lot construit à partir des fichiers operations-* du dossier courant, envoyé comme tableau
+ * IOperation[] et comme OperationBatch compact. Un nouveau flux est créé pour chaque lot, comme pour chaque appel RMI, de sorte
+ * que les descripteurs de classe sont écrits et lus à chaque fois.
+ * @author dcourcel
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+	@Param({ "6", "50", "500" })
+	public int batchSize;
+	
+	private IOperation[] batch;
+	private byte[] serializedObjects;
+	private byte[] serializedPacked;
+	
+	@Setup
+	public void setUp() throws IOException {
+		batch = OperationFiles.batch(OperationFiles.load(new File(".")), batchSize);
+		serializedObjects = serialize(batch);
+		serializedPacked = serialize(Operation.pack(batch));
+	}
+	
+	@Benchmark
+	public byte[] serializeObjects() throws IOException {
+		return serialize(batch);
+	}
+	
+	@Benchmark
+	public Object deserializeObjects() throws IOException, ClassNotFoundException {
+		return deserialize(serializedObjects);
+	}
+	
+	@Benchmark
+	public byte[] serializePacked() throws IOException {
+		return serialize(Operation.pack(batch));
+	}
+	
+	@Benchmark
+	public Object deserializePacked() throws IOException, ClassNotFoundException {
+		return deserialize(serializedPacked);
+	}
+	
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+	
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		try(ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return input.readObject();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package calculator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.OperationFiles;
+import repartitor.operations.Operation;
+import shared.CalculatorOccupiedException;
+import shared.IOperation;
+import shared.OperationBatch;
+
+/**
+ * Mesure le temps de Calculator.calculate pour un lot construit à partir des fichiers operations-* du dossier courant, reçu
+ * comme tableau d'objets et comme lot compact. Le calculateur n'a pas de bassin de fils, ne refuse aucun lot et n'est jamais
+ * malicieux : c'est le temps de calcul du lot par le fil appelant, sans RMI. Cette classe est dans le paquetage calculator parce
+ * que Calculator n'en sort pas. Le message affiché à chaque lot reçu est écarté durant la mesure.
+ * @author dcourcel
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+	@Param({ "5", "50", "500" })
+	public int batchSize;
+	
+	@Param({ "1", "4" })
+	public int parallelism;
+	
+	private Calculator calculator;
+	private IOperation[] batch;
+	private OperationBatch packedBatch;
+	private PrintStream standardOutput;
+	
+	@Setup
+	public void setUp() throws IOException {
+		standardOutput = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		calculator = new Calculator(Integer.MAX_VALUE, 0, parallelism);
+		batch = OperationFiles.batch(OperationFiles.load(new File(".")), batchSize);
+		packedBatch = Operation.pack(batch);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		calculator.shutdown();
+		System.setOut(standardOutput);
+	}
+	
+	@Benchmark
+	public int calculateObjects() throws CalculatorOccupiedException {
+		return calculator.calculate(batch);
+	}
+	
+	@Benchmark
+	public int calculatePacked() throws CalculatorOccupiedException {
+		return calculator.calculate(packedBatch);
+	}
+}
@@ -0,0 +1,193 @@
+package benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import calculator.BatchExecutor;
+import calculator.WorkerPool;
+import shared.CalculatorOccupiedException;
+import shared.IOperation;
+
+/**
+ * Compare un calculateur qui calcule chaque lot reçu sur le fil de l'appel, sans limite, à un calculateur qui passe par un
+ * bassin de fils borné avec contrôle d'admission. Plusieurs clients envoient des lots en rafale ; un client dont le lot est
+ * refusé attend 5 millisecondes avant de renvoyer un lot. Pour chaque nombre de clients, le débit, le temps de calcul médian et
+ * au 99e centile des lots acceptés et la proportion de lots refusés sont affichés. Les lots sont construits à partir des
+ * fichiers operations-* du dossier courant. Comme ces opérations ne prennent que quelques dizaines de nanosecondes, chaque
+ * opération fait en plus une quantité fixe de calcul, étalonnée au démarrage pour durer le temps demandé sur un fil seul, pour
+ * représenter un calcul coûteux. Sans bassin, les lots calculés en même temps se partagent les cœurs et durent plus longtemps.
+ * Usage : java -cp bin benchmark.AdmissionBenchmark [tailleLot] [travailMicrosParOpération] [délaiMaxMs] [clients...]
+ * @author dcourcel
+ *
+ */
+public class AdmissionBenchmark {
+	private static final int DEFAULT_BATCH_SIZE = 50;
+	private static final long DEFAULT_WORK_MICROS = 20;
+	private static final long DEFAULT_MAX_BACKLOG_MILLIS = 20;
+	private static final int[] DEFAULT_CLIENTS = { 1, 4, 16, 64 };
+	private static final long MEASURE_NANOS = 2000000000L;
+	private static final long REFUSAL_BACKOFF_MILLIS = 5;
+	private static volatile long sink;
+
+	/**
+	 * Une façon d'exécuter un lot du côté du calculateur.
+	 */
+	private interface Server {
+		int calculate(IOperation[] batch) throws CalculatorOccupiedException;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BATCH_SIZE;
+		long workMicros = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_WORK_MICROS;
+		long maxBacklogMillis = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MAX_BACKLOG_MILLIS;
+		int[] clients = DEFAULT_CLIENTS;
+		if(args.length > 3) {
+			clients = new int[args.length - 3];
+			for(int i = 3; i < args.length; ++i) {
+				clients[i - 3] = Integer.parseInt(args[i]);
+			}
+		}
+		final long iterationsPerOperation = calibrate(workMicros);
+		final IOperation[] batch = OperationFiles.batch(OperationFiles.load(new File(".")), batchSize);
+		final BatchExecutor executor = new BatchExecutor(1);
+		int workers = WorkerPool.getDefaultWorkers(1);
+		final WorkerPool pool = new WorkerPool(workers, workers * WorkerPool.DEFAULT_QUEUE_PER_WORKER, maxBacklogMillis);
+
+		Server unbounded = new Server() {
+			@Override
+			public int calculate(IOperation[] operations) throws CalculatorOccupiedException {
+				return work(executor.sum(operations), operations.length * iterationsPerOperation);
+			}
+		};
+		Server bounded = new Server() {
+			@Override
+			public int calculate(final IOperation[] operations) throws CalculatorOccupiedException {
+				return pool.execute(operations.length, new Callable<Integer>() {
+					@Override
+					public Integer call() throws CalculatorOccupiedException {
+						return work(executor.sum(operations), operations.length * iterationsPerOperation);
+					}
+				});
+			}
+		};
+
+		// Réchauffement.
+		run(unbounded, batch, 4);
+		run(bounded, batch, 4);
+
+		System.out.println("Lots de " + batchSize + " opérations de " + workMicros + " µs, " + workers + " fils dans le bassin, " +
+				"délai maximal de " + maxBacklogMillis + " ms.");
+		System.out.printf("%8s %-12s %12s %14s %14s %10s%n", "clients", "calculateur", "op/s", "médiane (µs)", "99e c. (µs)",
+				"refus");
+		for(int count : clients) {
+			print(count, "sans bassin", run(unbounded, batch, count));
+			print(count, "bassin", run(bounded, batch, count));
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Fait une quantité fixe de calcul pour les opérations d'un lot.
+	 * @param result Le résultat du lot, retourné tel quel.
+	 * @param iterations Le nombre d'itérations de calcul.
+	 * @return Le résultat du lot.
+	 */
+	private static int work(int result, long iterations) {
+		long value = result;
+		for(long i = 0; i < iterations; ++i) {
+			value = value * 6364136223846793005L + 1442695040888963407L;
+		}
+		sink = value;
+		return result;
+	}
+
+	/**
+	 * Mesure le nombre d'itérations de work qui prennent le temps demandé sur un fil seul.
+	 * @param workMicros Le temps de calcul voulu par opération.
+	 * @return Le nombre d'itérations par opération.
+	 */
+	private static long calibrate(long workMicros) {
+		long iterations = 1000000;
+		work(0, iterations);
+		long start = System.nanoTime();
+		work(0, iterations);
+		double nanosPerIteration = (double)(System.nanoTime() - start) / iterations;
+		return Math.max(1, (long)(workMicros * 1000 / nanosPerIteration));
+	}
+
+	private static void print(int clients, String name, Result result) {
+		System.out.printf("%8d %-12s %12.0f %14.0f %14.0f %9.1f%%%n", clients, name, result.operationsPerSecond,
+				result.medianMicros, result.p99Micros, result.refusalPercent);
+	}
+
+	/**
+	 * Envoie des lots en rafale à partir de plusieurs clients pendant la durée de mesure.
+	 * @param server Le calculateur.
+	 * @param batch Le lot envoyé par chaque client.
+	 * @param clients Le nombre de clients.
+	 * @return Les mesures.
+	 */
+	private static Result run(final Server server, final IOperation[] batch, int clients) throws InterruptedException {
+		final AtomicLong accepted = new AtomicLong();
+		final AtomicLong refused = new AtomicLong();
+		final ArrayList<Long> latencies = new ArrayList<>();
+		final long end = System.nanoTime() + MEASURE_NANOS;
+		Thread[] threads = new Thread[clients];
+		long start = System.nanoTime();
+		for(int i = 0; i < clients; ++i) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					ArrayList<Long> ownLatencies = new ArrayList<>();
+					try {
+						while(System.nanoTime() < end) {
+							long callStart = System.nanoTime();
+							try {
+								server.calculate(batch);
+								ownLatencies.add(System.nanoTime() - callStart);
+								accepted.incrementAndGet();
+							}
+							catch(CalculatorOccupiedException e) {
+								refused.incrementAndGet();
+								Thread.sleep(REFUSAL_BACKOFF_MILLIS);
+							}
+						}
+					}
+					catch(InterruptedException e) {
+					}
+					synchronized(latencies) {
+						latencies.addAll(ownLatencies);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		long[] sorted = new long[latencies.size()];
+		for(int i = 0; i < sorted.length; ++i) {
+			sorted[i] = latencies.get(i);
+		}
+		Arrays.sort(sorted);
+		Result result = new Result();
+		result.operationsPerSecond = accepted.get() * batch.length * 1e9 / elapsed;
+		result.medianMicros = sorted.length == 0 ? 0 : sorted[sorted.length / 2] / 1e3;
+		result.p99Micros = sorted.length == 0 ? 0 : sorted[(int)(sorted.length * 0.99)] / 1e3;
+		long calls = accepted.get() + refused.get();
+		result.refusalPercent = calls == 0 ? 0 : 100.0 * refused.get() / calls;
+		return result;
+	}
+
+	private static class Result {
+		double operationsPerSecond;
+		double medianMicros;
+		double p99Micros;
+		double refusalPercent;
+	}
+}
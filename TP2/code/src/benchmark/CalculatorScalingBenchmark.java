@@ -0,0 +1,73 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import calculator.BatchExecutor;
+import shared.CalculatorOccupiedException;
+import shared.IOperation;
+
+/**
+ * Mesure le temps de calcul d'un lot selon sa taille et le nombre de fils utilisés par le calculateur. Les lots sont construits
+ * à partir des fichiers operations-* du dossier courant.
+ * Usage : java -cp bin benchmark.CalculatorScalingBenchmark [tailleLot...]
+ * @author dcourcel
+ *
+ */
+public class CalculatorScalingBenchmark {
+	private static final int[] DEFAULT_BATCH_SIZES = { 10, 100, 1000, 10000, 100000 };
+	private static final long MIN_MEASURE_NANOS = 300000000L;
+	
+	public static void main(String[] args) throws IOException, CalculatorOccupiedException {
+		int[] batchSizes = DEFAULT_BATCH_SIZES;
+		if(args.length > 0) {
+			batchSizes = new int[args.length];
+			for(int i = 0; i < args.length; ++i) {
+				batchSizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		
+		ArrayList<Integer> parallelisms = new ArrayList<>();
+		for(int parallelism = 1; parallelism < Runtime.getRuntime().availableProcessors(); parallelism *= 2) {
+			parallelisms.add(parallelism);
+		}
+		parallelisms.add(Runtime.getRuntime().availableProcessors());
+		
+		System.out.printf("%10s %6s %15s %12s%n", "taille", "fils", "µs par lot", "accélération");
+		for(int batchSize : batchSizes) {
+			IOperation[] batch = OperationFiles.batch(operations, batchSize);
+			double sequentialMicros = 0;
+			Integer expected = null;
+			for(int parallelism : parallelisms) {
+				BatchExecutor executor = new BatchExecutor(parallelism);
+				int result = executor.sum(batch);
+				if(expected != null && result != expected) {
+					System.out.println("Résultat différent avec " + parallelism + " fils.");
+					System.exit(1);
+				}
+				expected = result;
+				double micros = measure(executor, batch);
+				executor.shutdown();
+				if(parallelism == 1) {
+					sequentialMicros = micros;
+				}
+				System.out.printf("%10d %6d %15.1f %11.2fx%n", batchSize, parallelism, micros, sequentialMicros / micros);
+			}
+		}
+	}
+	
+	private static double measure(BatchExecutor executor, IOperation[] batch) throws CalculatorOccupiedException {
+		int iterations = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			executor.sum(batch);
+			++iterations;
+			elapsed = System.nanoTime() - start;
+		}
+		while(elapsed < MIN_MEASURE_NANOS);
+		return elapsed / 1e3 / iterations;
+	}
+}
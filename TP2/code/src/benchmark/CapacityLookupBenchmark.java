@@ -0,0 +1,70 @@
+package benchmark;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+import shared.CalculationOperations;
+import shared.IOperation;
+import shared.OperationBatch;
+
+/**
+ * Mesure la latence d'un appel RMI à getNumberOfOperationsSupported sur l'interface de bouclage. C'est la latence épargnée à
+ * chaque lot depuis que la capacité des calculateurs est transmise à l'enregistrement : un appel par lot en mode sécurisé et
+ * deux en mode non sécurisé.
+ * Usage : java -cp bin benchmark.CapacityLookupBenchmark [nbAppels]
+ * @author dcourcel
+ *
+ */
+public class CapacityLookupBenchmark {
+	private static final int DEFAULT_CALLS = 20000;
+	
+	/**
+	 * Un calculateur minimal exporté par RMI.
+	 */
+	private static class IdleCalculator implements CalculationOperations {
+		@Override
+		public int calculate(IOperation[] operations) {
+			return 0;
+		}
+		
+		@Override
+		public int[] calculateEach(IOperation[] operations) {
+			return new int[operations.length];
+		}
+		
+		@Override
+		public int calculate(OperationBatch operations) {
+			return 0;
+		}
+		
+		@Override
+		public int[] calculateEach(OperationBatch operations) {
+			return new int[operations.size()];
+		}
+		
+		@Override
+		public int getNumberOfOperationsSupported() {
+			return 5;
+		}
+	}
+	
+	public static void main(String[] args) throws RemoteException {
+		int calls = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CALLS;
+		IdleCalculator calculator = new IdleCalculator();
+		CalculationOperations stub = (CalculationOperations)UnicastRemoteObject.exportObject(calculator, 0);
+		
+		// Réchauffement.
+		for(int i = 0; i < calls / 10; ++i) {
+			stub.getNumberOfOperationsSupported();
+		}
+		long start = System.nanoTime();
+		for(int i = 0; i < calls; ++i) {
+			stub.getNumberOfOperationsSupported();
+		}
+		double microsPerCall = (System.nanoTime() - start) / 1e3 / calls;
+		UnicastRemoteObject.unexportObject(calculator, true);
+		
+		System.out.printf("getNumberOfOperationsSupported : %.1f µs par appel%n", microsPerCall);
+		System.out.printf("Latence épargnée par lot : %.1f µs (sécurisé), %.1f µs (non sécurisé)%n", microsPerCall, 2 * microsPerCall);
+	}
+}
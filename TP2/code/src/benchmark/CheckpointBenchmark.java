@@ -0,0 +1,137 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import repartitor.JobCheckpoint;
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.IOperation;
+
+/**
+ * Mesure le surcoût des points de reprise sur le temps de calcul avec des calculateurs locaux rapides, sans journal, avec
+ * l'intervalle par défaut et avec un enregistrement après chaque résultat. Un premier calcul sans journal réchauffe la machine
+ * virtuelle. Simule ensuite un arrêt brutal du répartiteur en copiant le journal au milieu d'un calcul, tel qu'il serait resté
+ * sur le disque, puis reprend le calcul à partir de cette copie et vérifie son résultat. Les opérations proviennent des
+ * fichiers operations-* du dossier courant, répétées pour allonger le calcul.
+ * Usage : java -cp bin benchmark.CheckpointBenchmark [répétitions] [intervalleMs]
+ * @author dcourcel
+ *
+ */
+public class CheckpointBenchmark {
+	private static final int DEFAULT_REPETITIONS = 100;
+	private static final int NUMBER_OF_CALCULATORS = 4;
+	private static final int CAPACITY = 5;
+
+	public static void main(String[] args) throws Exception {
+		int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REPETITIONS;
+		long intervalMillis = args.length > 1 ? Long.parseLong(args[1]) : JobCheckpoint.DEFAULT_INTERVAL_MILLIS;
+
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		StringBuilder jobBuilder = new StringBuilder();
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				jobBuilder.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+		String job = jobBuilder.toString();
+		long lines = repetitions * (long)operations.size();
+
+		RepartitorOptions options = new RepartitorOptions();
+		options.setSelectionPolicy("least");
+		SafeRepartitor repartitor = new SafeRepartitor(options);
+		for(int i = 0; i < NUMBER_OF_CALCULATORS; ++i) {
+			CalculationOperations calculator = new SimulatedCalculator(CAPACITY, 200, 20).export();
+			repartitor.bindSomething(CalculationOperations.CALCULATOR_PREFIX + "Simule" + i, calculator,
+					new CalculatorCapabilities(CAPACITY));
+		}
+		File logFile = File.createTempFile("reprise", ".log");
+		File crashCopy = File.createTempFile("reprise", ".copie");
+		logFile.deleteOnExit();
+		crashCopy.deleteOnExit();
+
+		String[] names = { "aucun", intervalMillis + " ms", "chaque résultat" };
+		JobCheckpoint[] checkpoints = { null, new JobCheckpoint(logFile, intervalMillis), new JobCheckpoint(logFile, 0) };
+		System.out.println(lines + " opérations, " + NUMBER_OF_CALCULATORS + " calculateurs locaux.");
+		System.out.printf("%-18s %12s %16s %16s %14s%n", "points de reprise", "temps (ms)", "enregistrements", "synchronisations",
+				"journal (ms)");
+		check(repartitor.calculateOperations(new BufferedReader(new StringReader(job))), expected);
+		double baseMillis = 0;
+		for(int run = 0; run < checkpoints.length; ++run) {
+			repartitor.setJobCheckpoint(checkpoints[run]);
+			long start = System.nanoTime();
+			int result = repartitor.calculateOperations(new BufferedReader(new StringReader(job)), "banc d'essai");
+			double millis = (System.nanoTime() - start) / 1e6;
+			check(result, expected);
+			if(run == 0) {
+				baseMillis = millis;
+				System.out.printf("%-18s %12.0f %16s %16s %14s%n", names[run], millis, "-", "-", "-");
+			}
+			else {
+				System.out.printf("%-18s %12.0f %16d %16d %14.1f%n", names[run], millis, checkpoints[run].getRecordsWritten(),
+						checkpoints[run].getSyncs(), checkpoints[run].getNanosSpent() / 1e6);
+			}
+		}
+
+		repartitor.setJobCheckpoint(checkpoints[1]);
+		Thread crash = startCrash(logFile, crashCopy, (long)(baseMillis / 2));
+		repartitor.calculateOperations(new BufferedReader(new StringReader(job)), "banc d'essai");
+		crash.join();
+		JobCheckpoint.State state = JobCheckpoint.read(crashCopy);
+		if(state == null) {
+			System.out.println("Aucun point de reprise dans la copie du journal.");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		int result = repartitor.resumeOperations(new BufferedReader(new StringReader(job)), state);
+		double millis = (System.nanoTime() - start) / 1e6;
+		check(result, expected);
+		System.out.println();
+		System.out.printf("Arrêt simulé après %.0f ms : %d lignes sur %d déjà lues, %d opérations à refaire.%n", baseMillis / 2,
+				state.getLinesConsumed(), lines, state.getPendingOperations().length);
+		System.out.printf("Reprise : %.0f ms au lieu de %.0f ms, résultat %d correct.%n", millis, baseMillis, result);
+		System.exit(0);
+	}
+
+	private static void check(int result, int expected) {
+		if(result != expected) {
+			System.out.println("Résultat invalide : " + result + " au lieu de " + expected);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Démarre le fil qui copie le journal après le délai donné, comme s'il restait sur le disque après un arrêt brutal.
+	 * @param logFile Le journal du calcul en cours.
+	 * @param crashCopy Le fichier qui reçoit la copie.
+	 * @param delayMillis Le délai avant la copie.
+	 * @return Le fil démarré.
+	 */
+	private static Thread startCrash(final File logFile, final File crashCopy, final long delayMillis) {
+		Thread crash = new Thread() {
+			@Override
+			public void run() {
+				try {
+					TimeUnit.MILLISECONDS.sleep(delayMillis);
+					Files.copy(logFile.toPath(), crashCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				catch(Exception e) {
+					System.out.println("Impossible de copier le journal. " + e.getMessage());
+				}
+			}
+		};
+		crash.start();
+		return crash;
+	}
+}
@@ -0,0 +1,369 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.rmi.NotBoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import calculator.CalculatorContainer;
+import repartitor.Repartitor;
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.UnsafeRepartitor;
+import repartitor.operations.Operation;
+import shared.IOperation;
+
+/**
+ * Simule une grappe sur l'interface de bouclage : un répartiteur et N vrais calculateurs, dans la même machine virtuelle ou dans
+ * des processus enfants démarrés comme par le script calculateur. Pour chaque nombre de calculateurs du balayage, un nouveau
+ * répartiteur est créé sur son propre port, les calculateurs s'y enregistrent, puis le calcul est exécuté plusieurs fois et le
+ * meilleur temps est conservé. Le banc d'essai affiche le temps, le débit en opérations par seconde, l'accélération et
+ * l'efficacité par rapport au premier nombre de calculateurs du balayage. Les opérations proviennent des fichiers operations-*
+ * du dossier courant, répétées pour allonger le calcul, et le résultat est vérifié.
+ * Les options -accept, -malicious et -latency acceptent une liste de valeurs séparées par des virgules, attribuées aux
+ * calculateurs à tour de rôle : -malicious 50,0,0,0 rend un calculateur sur quatre malicieux. Les options qui suivent -- sont
+ * passées au répartiteur.
+ * Pour servir de barrière contre les régressions, le programme se termine avec le code 1 si un résultat est invalide et avec le
+ * code 2 si l'efficacité ou le débit d'un des nombres de calculateurs est sous le seuil donné par -minEfficiency ou
+ * -minOpsPerSecond. Il se termine avec le code 3 si un argument est invalide et 4 si le banc d'essai lui-même échoue.
+ * Usage : java -cp bin benchmark.ClusterBenchmark [safe|unsafe] [-calculators N,N...] [-accept N,...] [-malicious pourcentage,...]
+ * [-latency ms,...] [-repetitions N] [-runs N] [-processes] [-minEfficiency fraction] [-minOpsPerSecond N]
+ * [-- options du répartiteur]
+ * @author dcourcel
+ *
+ */
+public class ClusterBenchmark {
+	private static final String DEFAULT_SAFE_CALCULATORS = "1,2,4,8";
+	private static final String DEFAULT_UNSAFE_CALCULATORS = "2,4,8";
+	private static final int DEFAULT_REPETITIONS = 10;
+	private static final int DEFAULT_RUNS = 3;
+	private static final int BASE_PORT = 1300;
+	private static final long REGISTRATION_TIMEOUT_MS = 30000;
+	private static final String LOOPBACK = "127.0.0.1";
+	private static final int INVALID_RESULT = 1;
+	private static final int BELOW_THRESHOLD = 2;
+	private static final int INVALID_PARAM = 3;
+	private static final int BENCHMARK_FAILED = 4;
+	private static final String USAGE = "Usage : java -cp bin benchmark.ClusterBenchmark [safe|unsafe] [-calculators N,N...] " +
+			"[-accept N,...] [-malicious pourcentage,...] [-latency ms,...] [-repetitions N] [-runs N] [-processes] " +
+			"[-minEfficiency fraction] [-minOpsPerSecond N] [-- options du répartiteur]";
+
+	private static final PrintStream standardOutput = System.out;
+	private static final PrintStream silentOutput = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+	});
+
+	private boolean secure = true;
+	private int[] calculatorCounts = null;
+	private int[] operationsToAccept = { 5 };
+	private float[] maliciousPercents = { 0 };
+	private int[] latenciesMillis = { 5 };
+	private int repetitions = DEFAULT_REPETITIONS;
+	private int runs = DEFAULT_RUNS;
+	private boolean childProcesses = false;
+	private double minEfficiency = 0;
+	private double minOperationsPerSecond = 0;
+	private String[] repartitorArgs = new String[0];
+
+	/**
+	 * Un calculateur de la grappe, dans la machine virtuelle du banc d'essai ou dans un processus enfant.
+	 */
+	private static class ClusterCalculator {
+		private final CalculatorContainer container;
+		private final Process process;
+
+		ClusterCalculator(CalculatorContainer container) {
+			this.container = container;
+			this.process = null;
+		}
+
+		ClusterCalculator(Process process) {
+			this.container = null;
+			this.process = process;
+		}
+
+		/**
+		 * Retire le calculateur du répartiteur et l'arrête. Le processus enfant se retire lui-même à son arrêt. En mode non
+		 * sécurisé, le répartiteur a peut-être déjà retiré un calculateur menteur.
+		 */
+		void stop() throws Exception {
+			if(container != null) {
+				try {
+					container.unregisterToRMIRegistry();
+				}
+				catch(NotBoundException e) {
+				}
+				container.doCleanup();
+			}
+			else {
+				process.destroy();
+				process.waitFor();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		ClusterBenchmark benchmark = new ClusterBenchmark();
+		try {
+			benchmark.parse(args);
+		}
+		catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println(USAGE);
+			System.exit(INVALID_PARAM);
+		}
+		System.setProperty("java.rmi.server.hostname", LOOPBACK);
+		int exitCode;
+		try {
+			exitCode = benchmark.run();
+		}
+		catch(Exception e) {
+			System.setOut(standardOutput);
+			System.out.println("Échec du banc d'essai. " + e);
+			exitCode = BENCHMARK_FAILED;
+		}
+		System.exit(exitCode);
+	}
+
+	/**
+	 * Lit les arguments du banc d'essai.
+	 * @param args Les arguments de la ligne de commande.
+	 * @throws IllegalArgumentException Si un argument est invalide.
+	 */
+	private void parse(String[] args) {
+		int i = 0;
+		if(i < args.length && (args[i].equals("safe") || args[i].equals("unsafe"))) {
+			secure = args[i++].equals("safe");
+		}
+		for(; i < args.length; ++i) {
+			if(args[i].equals("--")) {
+				repartitorArgs = Arrays.copyOfRange(args, i + 1, args.length);
+				break;
+			}
+			else if(args[i].equals("-calculators")) {
+				calculatorCounts = readIntList(args, ++i, 1);
+			}
+			else if(args[i].equals("-accept")) {
+				operationsToAccept = readIntList(args, ++i, 1);
+			}
+			else if(args[i].equals("-malicious")) {
+				String[] values = readValue(args, ++i).split(",");
+				maliciousPercents = new float[values.length];
+				for(int j = 0; j < values.length; ++j) {
+					maliciousPercents[j] = Float.parseFloat(values[j]);
+					if(maliciousPercents[j] < 0 || maliciousPercents[j] > 100) {
+						throw new IllegalArgumentException("Le pourcentage malicieux doit être entre 0 et 100 inclusivement.");
+					}
+				}
+			}
+			else if(args[i].equals("-latency")) {
+				latenciesMillis = readIntList(args, ++i, 0);
+			}
+			else if(args[i].equals("-repetitions")) {
+				repetitions = readIntList(args, ++i, 1)[0];
+			}
+			else if(args[i].equals("-runs")) {
+				runs = readIntList(args, ++i, 1)[0];
+			}
+			else if(args[i].equals("-processes")) {
+				childProcesses = true;
+			}
+			else if(args[i].equals("-minEfficiency")) {
+				minEfficiency = Double.parseDouble(readValue(args, ++i));
+			}
+			else if(args[i].equals("-minOpsPerSecond")) {
+				minOperationsPerSecond = Double.parseDouble(readValue(args, ++i));
+			}
+			else {
+				throw new IllegalArgumentException("Paramètre invalide : " + args[i]);
+			}
+		}
+		if(calculatorCounts == null) {
+			calculatorCounts = parseIntList(secure ? DEFAULT_SAFE_CALCULATORS : DEFAULT_UNSAFE_CALCULATORS, 1);
+		}
+		if(!secure && calculatorCounts[0] < 2) {
+			throw new IllegalArgumentException("Le mode non sécurisé demande au moins 2 calculateurs.");
+		}
+		if(secure) {
+			for(float maliciousPercent : maliciousPercents) {
+				if(maliciousPercent > 0) {
+					throw new IllegalArgumentException("Le mode sécurisé suppose des calculateurs honnêtes : -malicious doit être 0.");
+				}
+			}
+		}
+		// Valide les options du répartiteur avant de commencer.
+		RepartitorOptions.parse(repartitorArgs);
+	}
+
+	/**
+	 * Exécute le balayage et affiche les résultats.
+	 * @return Le code de sortie : 0 si tout est correct, INVALID_RESULT ou BELOW_THRESHOLD sinon.
+	 */
+	private int run() throws Exception {
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		StringBuilder jobBuilder = new StringBuilder();
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				jobBuilder.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+		String job = jobBuilder.toString();
+		int numberOfOperations = repetitions * operations.size();
+
+		System.out.println(numberOfOperations + " opérations en mode " + (secure ? "sécurisé" : "non sécurisé") + ", calculateurs " +
+				(childProcesses ? "dans des processus enfants" : "dans la machine virtuelle") + ", acceptation " +
+				Arrays.toString(operationsToAccept) + ", malicieux " + Arrays.toString(maliciousPercents) + " %, latence " +
+				Arrays.toString(latenciesMillis) + " ms, meilleur de " + runs + " calculs.");
+		System.out.printf("%12s %12s %14s %13s %11s%n", "calculateurs", "temps (ms)", "opérations/s", "accélération",
+				"efficacité");
+
+		int exitCode = 0;
+		double baseOperationsPerSecond = 0;
+		ArrayList<String> failures = new ArrayList<>();
+		for(int round = 0; round < calculatorCounts.length; ++round) {
+			int numberOfCalculators = calculatorCounts[round];
+			int port = BASE_PORT + round;
+			RepartitorOptions options = RepartitorOptions.parse(repartitorArgs);
+			options.setSecure(secure);
+			options.setRegistryPort(port);
+			Repartitor repartitor = secure ? new SafeRepartitor(options) : new UnsafeRepartitor(options);
+			ArrayList<ClusterCalculator> calculators = new ArrayList<>();
+			long bestNanos = Long.MAX_VALUE;
+			try {
+				for(int i = 0; i < numberOfCalculators; ++i) {
+					calculators.add(startCalculator(i, port));
+				}
+				awaitRegistrations(repartitor, numberOfCalculators);
+
+				// Le premier calcul réchauffe le répartiteur et les calculateurs et n'est pas mesuré.
+				for(int run = 0; run <= runs; ++run) {
+					System.setOut(silentOutput);
+					long start = System.nanoTime();
+					int result = repartitor.calculateOperations(new BufferedReader(new StringReader(job)));
+					long elapsed = System.nanoTime() - start;
+					System.setOut(standardOutput);
+					if(result != expected) {
+						System.out.println("Résultat invalide avec " + numberOfCalculators + " calculateurs : " + result +
+								" au lieu de " + expected);
+						exitCode = INVALID_RESULT;
+					}
+					if(run > 0) {
+						bestNanos = Math.min(bestNanos, elapsed);
+					}
+				}
+			}
+			finally {
+				System.setOut(standardOutput);
+				for(ClusterCalculator calculator : calculators) {
+					calculator.stop();
+				}
+			}
+
+			double millis = bestNanos / 1e6;
+			double operationsPerSecond = numberOfOperations * 1e9 / bestNanos;
+			if(round == 0) {
+				baseOperationsPerSecond = operationsPerSecond;
+			}
+			double speedup = operationsPerSecond / baseOperationsPerSecond;
+			double efficiency = speedup * calculatorCounts[0] / numberOfCalculators;
+			System.out.printf("%12d %12.0f %14.0f %12.2fx %11.2f%n", numberOfCalculators, millis, operationsPerSecond, speedup,
+					efficiency);
+			if(efficiency < minEfficiency) {
+				failures.add(String.format("efficacité %.2f avec %d calculateurs, sous le seuil de %.2f", efficiency,
+						numberOfCalculators, minEfficiency));
+			}
+			if(operationsPerSecond < minOperationsPerSecond) {
+				failures.add(String.format("%.0f opérations/s avec %d calculateurs, sous le seuil de %.0f", operationsPerSecond,
+						numberOfCalculators, minOperationsPerSecond));
+			}
+		}
+
+		for(String failure : failures) {
+			System.out.println("Sous le seuil : " + failure + ".");
+		}
+		if(exitCode == 0 && !failures.isEmpty()) {
+			exitCode = BELOW_THRESHOLD;
+		}
+		return exitCode;
+	}
+
+	/**
+	 * Démarre un calculateur et l'enregistre auprès du répartiteur.
+	 * @param index Le rang du calculateur, qui choisit ses valeurs dans les listes des options.
+	 * @param port Le port du RMIRegistry du répartiteur.
+	 * @return Le calculateur démarré.
+	 */
+	private ClusterCalculator startCalculator(int index, int port) throws Exception {
+		int accept = operationsToAccept[index % operationsToAccept.length];
+		float maliciousPercent = maliciousPercents[index % maliciousPercents.length];
+		int latencyMillis = latenciesMillis[index % latenciesMillis.length];
+		if(childProcesses) {
+			ProcessBuilder builder = new ProcessBuilder(
+					new File(new File(System.getProperty("java.home"), "bin"), "java").getPath(),
+					"-cp", System.getProperty("java.class.path"),
+					"-Djava.rmi.server.hostname=" + LOOPBACK,
+					"-Djava.security.policy=policy",
+					"-Djava.security.manager=allow",
+					"calculator.CalculatorContainer", Integer.toString(accept), Float.toString(maliciousPercent), LOOPBACK,
+					"-latency", Integer.toString(latencyMillis), "-port", Integer.toString(port));
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+			return new ClusterCalculator(builder.start());
+		}
+		CalculatorContainer container = new CalculatorContainer(accept, maliciousPercent, LOOPBACK, 1);
+		container.setRegistryPort(LOOPBACK, port);
+		container.setSimulatedLatency(latencyMillis);
+		container.registerToRMIRegistry();
+		return new ClusterCalculator(container);
+	}
+
+	/**
+	 * Attend que tous les calculateurs soient enregistrés auprès du répartiteur.
+	 * @param repartitor Le répartiteur.
+	 * @param numberOfCalculators Le nombre de calculateurs attendus.
+	 */
+	private static void awaitRegistrations(Repartitor repartitor, int numberOfCalculators) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REGISTRATION_TIMEOUT_MS);
+		while(repartitor.getMetrics().getCalculators() < numberOfCalculators) {
+			if(System.nanoTime() > deadline) {
+				System.out.println("Seulement " + repartitor.getMetrics().getCalculators() + " calculateurs sur " +
+						numberOfCalculators + " se sont enregistrés.");
+				System.exit(INVALID_RESULT);
+			}
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+	}
+
+	private static String readValue(String[] args, int index) {
+		if(index >= args.length) {
+			throw new IllegalArgumentException("Valeur manquante pour " + args[index - 1]);
+		}
+		return args[index];
+	}
+
+	private static int[] readIntList(String[] args, int index, int min) {
+		return parseIntList(readValue(args, index), min);
+	}
+
+	private static int[] parseIntList(String list, int min) {
+		String[] values = list.split(",");
+		int[] numbers = new int[values.length];
+		for(int i = 0; i < values.length; ++i) {
+			numbers[i] = Integer.parseInt(values[i]);
+			if(numbers[i] < min) {
+				throw new IllegalArgumentException("Valeur invalide : " + values[i]);
+			}
+		}
+		return numbers;
+	}
+}
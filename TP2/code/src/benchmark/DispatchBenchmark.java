@@ -0,0 +1,126 @@
+package benchmark;
+
+import java.util.LinkedList;
+
+import repartitor.CalculatorThread;
+import repartitor.DispatchEngine;
+import repartitor.operations.Prime;
+import shared.CalculationOperations;
+import shared.IOperation;
+import shared.OperationBatch;
+import threadNotifier.IThreadNotifier;
+
+/**
+ * Compare le nombre de lots traités par seconde selon le moteur de répartition utilisé. Les appels sont faits à un calculateur
+ * local qui simule la latence d'un appel distant, ce qui isole le coût de création et d'ordonnancement des fils.
+ * Usage : java -cp bin benchmark.DispatchBenchmark [nbLots] [latenceMs] [mode...]
+ * @author dcourcel
+ *
+ */
+public class DispatchBenchmark {
+	private static final int DEFAULT_BATCHES = 20000;
+	private static final int DEFAULT_LATENCY_MS = 2;
+	private static final int MAX_BATCHES_IN_FLIGHT = 64;
+	
+	/**
+	 * Un calculateur qui ne fait qu'attendre avant de retourner un résultat.
+	 */
+	private static class SleepingCalculator implements CalculationOperations {
+		private final int latencyMs;
+		
+		public SleepingCalculator(int latencyMs) {
+			this.latencyMs = latencyMs;
+		}
+		
+		@Override
+		public int calculate(IOperation[] operations) {
+			try {
+				Thread.sleep(latencyMs);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return operations.length;
+		}
+		
+		@Override
+		public int[] calculateEach(IOperation[] operations) {
+			int[] results = new int[operations.length];
+			java.util.Arrays.fill(results, 1);
+			calculate(operations);
+			return results;
+		}
+		
+		@Override
+		public int calculate(OperationBatch operations) {
+			return calculate(new IOperation[operations.size()]);
+		}
+		
+		@Override
+		public int[] calculateEach(OperationBatch operations) {
+			return calculateEach(new IOperation[operations.size()]);
+		}
+		
+		@Override
+		public int getNumberOfOperationsSupported() {
+			return Integer.MAX_VALUE;
+		}
+	}
+	
+	public static void main(String[] args) throws InterruptedException {
+		int batches = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BATCHES;
+		int latencyMs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LATENCY_MS;
+		String[] modes = args.length > 2 ? java.util.Arrays.copyOfRange(args, 2, args.length) :
+			new String[] { DispatchEngine.THREAD_MODE, DispatchEngine.POOL_MODE, DispatchEngine.VIRTUAL_MODE };
+		
+		CalculationOperations calculator = new SleepingCalculator(latencyMs);
+		IOperation[] batch = new IOperation[] { new Prime(1), new Prime(2), new Prime(3) };
+		
+		for(String mode : modes) {
+			DispatchEngine engine;
+			try {
+				engine = DispatchEngine.fromDescription(mode);
+			}
+			catch(IllegalArgumentException e) {
+				System.out.println(mode + " : " + e.getMessage());
+				continue;
+			}
+			// Réchauffement.
+			runBatches(engine, calculator, batch, batches / 10);
+			long start = System.nanoTime();
+			int maxInFlight = runBatches(engine, calculator, batch, batches);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			engine.shutdown();
+			System.out.printf("%-10s %10.0f lots/s  (appels simultanés max : %d)%n", engine, batches / seconds, maxInFlight);
+		}
+	}
+	
+	/**
+	 * Lance les lots en gardant au plus MAX_BATCHES_IN_FLIGHT lots en cours, comme le fait le répartiteur.
+	 * @return Le nombre maximal d'appels en cours observé par le moteur.
+	 */
+	private static int runBatches(DispatchEngine engine, CalculationOperations calculator, IOperation[] batch, int batches)
+			throws InterruptedException {
+		LinkedList<IThreadNotifier> finishedThreads = new LinkedList<>();
+		int launched = 0;
+		int completed = 0;
+		int maxInFlight = 0;
+		while(completed < batches) {
+			while(launched < batches && launched - completed < MAX_BATCHES_IN_FLIGHT) {
+				CalculatorThread thread = new CalculatorThread(batch, calculator, engine);
+				thread.setFinishedCollection(finishedThreads);
+				thread.start();
+				++launched;
+			}
+			maxInFlight = Math.max(maxInFlight, engine.getCallsInFlight());
+			synchronized(finishedThreads) {
+				while(finishedThreads.isEmpty()) {
+					finishedThreads.wait();
+				}
+				completed += finishedThreads.size();
+				finishedThreads.clear();
+			}
+		}
+		return maxInFlight;
+	}
+}
@@ -0,0 +1,196 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import repartitor.DeadlinePolicy;
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.CalculatorLoadReport;
+import shared.IOperation;
+
+/**
+ * Mesure le temps nécessaire au répartiteur pour retirer un calculateur qui gèle durant un calcul : il cesse d'envoyer des
+ * battements et ne répond plus à ses appels, sans fermer ses connexions. Le retrait est détecté soit par l'échéance des appels,
+ * soit par l'absence de battements durant la fenêtre de détection. Sans l'un ni l'autre, le calcul attend que le banc d'essai
+ * relâche les appels bloqués après un délai de garde. Les autres calculateurs envoient des battements à l'intervalle donné tout
+ * au long du calcul. Les opérations proviennent des fichiers operations-* du dossier courant, répétées pour allonger le calcul.
+ * Usage : java -cp bin benchmark.FailureDetectionBenchmark [fenêtreMs] [intervalleMs] [répétitions] [gelMs]
+ * @author dcourcel
+ *
+ */
+public class FailureDetectionBenchmark {
+	private static final long DEFAULT_WINDOW_MS = 250;
+	private static final long DEFAULT_INTERVAL_MS = 50;
+	private static final int DEFAULT_REPETITIONS = 10;
+	private static final long DEFAULT_FREEZE_MS = 100;
+	private static final long GUARD_MS = 3000;
+	private static final int NUMBER_OF_CALCULATORS = 4;
+	private static final int CAPACITY = 5;
+	private static final CalculatorLoadReport IDLE = new CalculatorLoadReport(0, 0, 0, 0, 0, 0);
+
+	public static void main(String[] args) throws Exception {
+		long windowMillis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_WINDOW_MS;
+		long intervalMillis = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_INTERVAL_MS;
+		int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_REPETITIONS;
+		long freezeMillis = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_FREEZE_MS;
+
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		StringBuilder job = new StringBuilder();
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				job.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+
+		RepartitorOptions options = new RepartitorOptions();
+		options.setSelectionPolicy("least");
+		options.setDeadlineMode(DeadlinePolicy.AUTO_MODE);
+		options.setTimeoutReaction(DeadlinePolicy.UNBIND_ON_TIMEOUT);
+		options.setFailureWindowMillis(windowMillis);
+		SafeRepartitor repartitor = new SafeRepartitor(options);
+		DeadlinePolicy deadlines = options.createDeadlinePolicy();
+
+		String[] names = { "aucune détection", "échéance (auto)", "battements + échéance" };
+		boolean[] useDeadline = { false, true, true };
+		boolean[] useHeartbeats = { false, false, true };
+		System.out.println("Gel d'un calculateur sur " + NUMBER_OF_CALCULATORS + " après " + freezeMillis + " ms, battements aux " +
+				intervalMillis + " ms, fenêtre de " + windowMillis + " ms.");
+		System.out.printf("%-24s %12s %14s%n", "détection", "temps (ms)", "retrait (ms)");
+		for(int run = 0; run < names.length; ++run) {
+			repartitor.setDeadlinePolicy(useDeadline[run] ? deadlines : null);
+			final SimulatedCalculator[] calculators = new SimulatedCalculator[NUMBER_OF_CALCULATORS];
+			final String[] bindNames = new String[NUMBER_OF_CALCULATORS];
+			for(int i = 0; i < NUMBER_OF_CALCULATORS; ++i) {
+				calculators[i] = new SimulatedCalculator(CAPACITY, 500, 100);
+				bindNames[i] = CalculationOperations.CALCULATOR_PREFIX + "Simule" + run + "_" + i;
+				repartitor.bindSomething(bindNames[i], calculators[i].export(), new CalculatorCapabilities(CAPACITY));
+			}
+			final boolean[] frozen = new boolean[NUMBER_OF_CALCULATORS];
+			Thread heartbeats = useHeartbeats[run] ? startHeartbeats(repartitor, bindNames, frozen, intervalMillis) : null;
+			final AtomicLong removalNanos = new AtomicLong(-1);
+			Thread freezer = startFreezer(calculators[0], bindNames[0], frozen, freezeMillis, removalNanos);
+
+			long start = System.nanoTime();
+			int result = repartitor.calculateOperations(new BufferedReader(new StringReader(job.toString())));
+			double millis = (System.nanoTime() - start) / 1e6;
+			freezer.interrupt();
+			freezer.join();
+			if(heartbeats != null) {
+				heartbeats.interrupt();
+			}
+			calculators[0].setHangs(0);
+			calculators[0].releaseHungCalls();
+			if(result != expected) {
+				System.out.println("Résultat invalide : " + result + " au lieu de " + expected);
+				System.exit(1);
+			}
+			System.out.printf("%-24s %12.0f %14s%n", names[run], millis, removalNanos.get() < 0 ? "-" :
+					String.format("%.0f", removalNanos.get() / 1e6));
+
+			for(String bindName : bindNames) {
+				try {
+					repartitor.unbindSomething(bindName);
+				}
+				catch(NotBoundException e) {
+				}
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Démarre le fil qui envoie les battements des calculateurs qui ne sont pas gelés.
+	 * @param repartitor Le répartiteur qui reçoit les battements.
+	 * @param bindNames Les noms des calculateurs.
+	 * @param frozen Les calculateurs gelés, qui n'envoient plus de battements.
+	 * @param intervalMillis L'intervalle entre deux battements.
+	 * @return Le fil démarré, à interrompre une fois le calcul terminé.
+	 */
+	private static Thread startHeartbeats(final SafeRepartitor repartitor, final String[] bindNames, final boolean[] frozen,
+			final long intervalMillis) {
+		Thread sender = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while(true) {
+						for(int i = 0; i < bindNames.length; ++i) {
+							synchronized(frozen) {
+								if(!frozen[i]) {
+									repartitor.heartbeat(bindNames[i], IDLE);
+								}
+							}
+						}
+						TimeUnit.MILLISECONDS.sleep(intervalMillis);
+					}
+				}
+				catch(InterruptedException e) {
+				}
+			}
+		};
+		sender.setDaemon(true);
+		sender.start();
+		return sender;
+	}
+
+	/**
+	 * Démarre le fil qui gèle le premier calculateur après le délai donné, mesure le temps avant son retrait du RMIRegistry et
+	 * relâche ses appels bloqués après le délai de garde.
+	 * @param calculator Le calculateur à geler.
+	 * @param bindName Son nom dans le RMIRegistry.
+	 * @param frozen Les calculateurs gelés.
+	 * @param freezeMillis Le délai avant le gel.
+	 * @param removalNanos Reçoit le temps entre le gel et le retrait.
+	 * @return Le fil démarré, à interrompre une fois le calcul terminé.
+	 */
+	private static Thread startFreezer(final SimulatedCalculator calculator, final String bindName, final boolean[] frozen,
+			final long freezeMillis, final AtomicLong removalNanos) {
+		Thread freezer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					TimeUnit.MILLISECONDS.sleep(freezeMillis);
+					synchronized(frozen) {
+						frozen[0] = true;
+					}
+					calculator.setHangs(1);
+					long frozenAt = System.nanoTime();
+					long nextRelease = frozenAt + TimeUnit.MILLISECONDS.toNanos(GUARD_MS);
+					Registry registry = LocateRegistry.getRegistry();
+					while(true) {
+						if(removalNanos.get() < 0 && !Arrays.asList(registry.list()).contains(bindName)) {
+							removalNanos.set(System.nanoTime() - frozenAt);
+						}
+						if(System.nanoTime() - nextRelease > 0) {
+							calculator.releaseHungCalls();
+							nextRelease += TimeUnit.MILLISECONDS.toNanos(GUARD_MS);
+						}
+						TimeUnit.MILLISECONDS.sleep(1);
+					}
+				}
+				catch(InterruptedException e) {
+				}
+				catch(RemoteException e) {
+					System.out.println("Impossible de lire le RMIRegistry. " + e.getMessage());
+				}
+			}
+		};
+		freezer.start();
+		return freezer;
+	}
+}
@@ -0,0 +1,130 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import repartitor.FederationLink;
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.IOperation;
+
+/**
+ * Compare un seul répartiteur qui répartit les lots sur tous les calculateurs avec un répartiteur parent qui envoie des tranches
+ * à des répartiteurs enfants, chacun ayant sa part des calculateurs. Tous les répartiteurs sont dans la même machine virtuelle,
+ * chacun avec son RMIRegistry sur un port différent, et les appels entre eux passent par RMI sur l'interface locale. Les
+ * calculateurs locaux simulent leur temps de calcul par une attente, de sorte que le temps mesuré est surtout celui des
+ * répartiteurs. Affiche le temps de calcul et le nombre d'appels traités par le répartiteur qui reçoit le calcul. Les opérations
+ * proviennent des fichiers operations-* du dossier courant, répétées pour allonger le calcul.
+ * Usage : java -cp bin benchmark.FederationBenchmark [nbEnfants] [calculateursParEnfant] [tailleTranche] [répétitions]
+ * @author dcourcel
+ *
+ */
+public class FederationBenchmark {
+	private static final int DEFAULT_CHILDREN = 4;
+	private static final int DEFAULT_CALCULATORS_PER_CHILD = 8;
+	private static final int DEFAULT_REPETITIONS = 20;
+	private static final int CAPACITY = 5;
+	private static final int FLAT_PORT = 1200;
+	private static final int ROOT_PORT = 1201;
+	private static final String LOOPBACK = "127.0.0.1";
+
+	public static void main(String[] args) throws Exception {
+		int numberOfChildren = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CHILDREN;
+		int calculatorsPerChild = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CALCULATORS_PER_CHILD;
+		int shardSize = args.length > 2 ? Integer.parseInt(args[2]) : FederationLink.DEFAULT_SHARD_SIZE;
+		int repetitions = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_REPETITIONS;
+		System.setProperty("java.rmi.server.hostname", LOOPBACK);
+
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		StringBuilder jobBuilder = new StringBuilder();
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				jobBuilder.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+		String job = jobBuilder.toString();
+
+		SafeRepartitor flat = new SafeRepartitor(createOptions(FLAT_PORT));
+		ArrayList<SimulatedCalculator> flatCalculators = new ArrayList<>();
+		for(int i = 0; i < numberOfChildren * calculatorsPerChild; ++i) {
+			flatCalculators.add(bindCalculator(flat, i));
+		}
+
+		SafeRepartitor root = new SafeRepartitor(createOptions(ROOT_PORT));
+		FederationLink[] links = new FederationLink[numberOfChildren];
+		for(int c = 0; c < numberOfChildren; ++c) {
+			SafeRepartitor child = new SafeRepartitor(createOptions(ROOT_PORT + 1 + c));
+			for(int i = 0; i < calculatorsPerChild; ++i) {
+				bindCalculator(child, i);
+			}
+			child.startJobServer();
+			links[c] = new FederationLink(child, LOOPBACK, ROOT_PORT, shardSize);
+			links[c].register();
+		}
+
+		System.out.println(repetitions * operations.size() + " opérations, " + numberOfChildren * calculatorsPerChild +
+				" calculateurs locaux, " + numberOfChildren + " répartiteurs enfants, tranches de " + shardSize + " opérations.");
+		check(flat.calculateOperations(reader(job)), expected);
+		check(root.calculateOperations(reader(job)), expected);
+
+		long flatCalls = 0;
+		for(SimulatedCalculator calculator : flatCalculators) {
+			flatCalls -= calculator.getCallsReceived();
+		}
+		long start = System.nanoTime();
+		check(flat.calculateOperations(reader(job)), expected);
+		double flatMillis = (System.nanoTime() - start) / 1e6;
+		for(SimulatedCalculator calculator : flatCalculators) {
+			flatCalls += calculator.getCallsReceived();
+		}
+
+		long rootCalls = 0;
+		for(FederationLink link : links) {
+			rootCalls -= link.getShardsReceived();
+		}
+		start = System.nanoTime();
+		check(root.calculateOperations(reader(job)), expected);
+		double federatedMillis = (System.nanoTime() - start) / 1e6;
+		for(FederationLink link : links) {
+			rootCalls += link.getShardsReceived();
+		}
+
+		System.out.printf("%-22s %12s %30s%n", "répartition", "temps (ms)", "appels du répartiteur principal");
+		System.out.printf("%-22s %12.0f %30d%n", "un seul répartiteur", flatMillis, flatCalls);
+		System.out.printf("%-22s %12.0f %30d%n", "parent et enfants", federatedMillis, rootCalls);
+		System.exit(0);
+	}
+
+	private static RepartitorOptions createOptions(int port) {
+		RepartitorOptions options = new RepartitorOptions();
+		options.setSelectionPolicy("least");
+		options.setRegistryPort(port);
+		return options;
+	}
+
+	private static SimulatedCalculator bindCalculator(SafeRepartitor repartitor, int index) throws Exception {
+		SimulatedCalculator calculator = new SimulatedCalculator(CAPACITY, 1000, 20);
+		repartitor.bindSomething(CalculationOperations.CALCULATOR_PREFIX + "Simule" + index, calculator.export(),
+				new CalculatorCapabilities(CAPACITY));
+		return calculator;
+	}
+
+	private static BufferedReader reader(String job) {
+		return new BufferedReader(new StringReader(job));
+	}
+
+	private static void check(int result, int expected) {
+		if(result != expected) {
+			System.out.println("Résultat invalide : " + result + " au lieu de " + expected);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.StragglerDetector;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.IOperation;
+
+/**
+ * Compare le temps de calcul d'un répartiteur sécurisé avec et sans relance des lots retardataires. Un des calculateurs locaux
+ * bloque de temps en temps pendant un long délai. Les opérations proviennent des fichiers operations-* du dossier courant,
+ * répétées pour allonger le calcul.
+ * Usage : java -cp bin benchmark.HedgingBenchmark [répétitions] [centile] [délaiBlocageMs]
+ * @author dcourcel
+ *
+ */
+public class HedgingBenchmark {
+	private static final int DEFAULT_REPETITIONS = 4;
+	private static final int DEFAULT_PERCENTILE = 95;
+	private static final long DEFAULT_STALL_MS = 200;
+	private static final double STALL_PROBABILITY = 0.05;
+	private static final int NUMBER_OF_CALCULATORS = 4;
+	private static final int CAPACITY = 5;
+	private static final int RUNS = 3;
+	
+	public static void main(String[] args) throws Exception {
+		int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REPETITIONS;
+		int percentile = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PERCENTILE;
+		long stallMillis = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_STALL_MS;
+		
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		StringBuilder job = new StringBuilder();
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				job.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+		
+		RepartitorOptions options = new RepartitorOptions();
+		options.setDispatchMode("pool");
+		options.setSelectionPolicy("least");
+		SafeRepartitor repartitor = new SafeRepartitor(options);
+		for(int i = 0; i < NUMBER_OF_CALCULATORS; ++i) {
+			SimulatedCalculator calculator = new SimulatedCalculator(CAPACITY, 500, 100);
+			if(i == 0) {
+				calculator.setStalls(STALL_PROBABILITY, stallMillis * 1000);
+			}
+			repartitor.bindSomething(CalculationOperations.CALCULATOR_PREFIX + "Simule" + i, calculator.export(),
+					new CalculatorCapabilities(CAPACITY));
+		}
+		
+		System.out.printf("%-12s %10s%n", "relance", "temps (ms)");
+		for(int run = 0; run < RUNS; ++run) {
+			for(boolean hedging : new boolean[] { false, true }) {
+				repartitor.setStragglerDetector(hedging ? new StragglerDetector(percentile) : null);
+				long start = System.nanoTime();
+				int result = repartitor.calculateOperations(new BufferedReader(new StringReader(job.toString())));
+				double millis = (System.nanoTime() - start) / 1e6;
+				if(result != expected) {
+					System.out.println("Résultat invalide : " + result + " au lieu de " + expected);
+					System.exit(1);
+				}
+				System.out.printf("%-12s %10.0f%n", hedging ? "p" + percentile : "aucune", millis);
+			}
+		}
+		System.exit(0);
+	}
+}
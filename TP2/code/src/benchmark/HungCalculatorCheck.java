@@ -0,0 +1,146 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import repartitor.DeadlinePolicy;
+import repartitor.Repartitor;
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.UnsafeRepartitor;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.IOperation;
+
+/**
+ * Vérifie le comportement des échéances avec des calculateurs locaux. Dans les deux premiers cas, en mode sécurisé puis non
+ * sécurisé, un calculateur bloque tous ses appels sans jamais répondre : ses lots doivent être abandonnés à l'échéance et
+ * recalculés par les autres, et le calcul doit retourner la bonne somme. Dans le dernier cas, tous les calculateurs prennent
+ * plus de temps pour chaque lot que l'échéance initiale : l'échéance estimée doit s'allonger après les premiers abandons pour
+ * que le calcul se termine plutôt que d'abandonner les mêmes lots sans fin. Chaque calcul doit se terminer avant un délai
+ * maximal. Le programme se termine avec le code 1 au premier cas en échec.
+ * Usage : java -cp bin benchmark.HungCalculatorCheck
+ * @author dcourcel
+ *
+ */
+public class HungCalculatorCheck {
+	private static final int CAPACITY = 5;
+	private static final int REPETITIONS = 2;
+	private static final long INITIAL_DEADLINE_MS = 300;
+	private static final long SUSPENSION_MS = 200;
+	private static final long SLOW_LATENCY_MICROS = 1000000;
+	private static final long JOB_TIMEOUT_MS = 60000;
+	private static final int BASE_PORT = 1400;
+
+	public static void main(String[] args) throws Exception {
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		String job = buildJob(operations, REPETITIONS);
+		int expected = expectedResult(operations, REPETITIONS);
+		ArrayList<IOperation> fewOperations = new ArrayList<>(operations.subList(0, 4 * (CAPACITY + 1)));
+		String shortJob = buildJob(fewOperations, 1);
+		int shortExpected = expectedResult(fewOperations, 1);
+
+		boolean passed = true;
+		passed &= check("sécurisé, un calculateur bloqué sur 4", new SafeRepartitor(createOptions(BASE_PORT)), 4, 1, 500, job,
+				expected);
+		passed &= check("non sécurisé, un calculateur bloqué sur 4", new UnsafeRepartitor(createOptions(BASE_PORT + 1)), 4, 1, 500,
+				job, expected);
+		passed &= check("sécurisé, lots plus longs que l'échéance initiale", new SafeRepartitor(createOptions(BASE_PORT + 2)), 2, 0,
+				SLOW_LATENCY_MICROS, shortJob, shortExpected);
+		System.out.println(passed ? "Toutes les vérifications ont réussi." : "Au moins une vérification a échoué.");
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static RepartitorOptions createOptions(int port) {
+		RepartitorOptions options = new RepartitorOptions();
+		options.setSelectionPolicy("least");
+		options.setRegistryPort(port);
+		return options;
+	}
+
+	/**
+	 * Exécute un calcul avec des calculateurs locaux dont certains bloquent tous leurs appels.
+	 * @param name Le nom du cas affiché.
+	 * @param repartitor Le répartiteur.
+	 * @param numberOfCalculators Le nombre de calculateurs.
+	 * @param numberHung Le nombre de calculateurs qui bloquent tous leurs appels.
+	 * @param latencyMicros La latence de chaque appel des calculateurs.
+	 * @param job Le fichier d'opérations à calculer.
+	 * @param expected Le résultat attendu.
+	 * @return Vrai si le calcul s'est terminé à temps avec le bon résultat et que chaque calculateur bloqué a reçu un lot.
+	 */
+	private static boolean check(String name, final Repartitor repartitor, int numberOfCalculators, int numberHung,
+			long latencyMicros, final String job, int expected) throws Exception {
+		DeadlinePolicy deadlines = DeadlinePolicy.estimated(DeadlinePolicy.DEFAULT_MULTIPLE, 50, INITIAL_DEADLINE_MS);
+		deadlines.setTimeoutReaction(DeadlinePolicy.SUSPEND_ON_TIMEOUT + ":" + SUSPENSION_MS);
+		repartitor.setDeadlinePolicy(deadlines);
+		SimulatedCalculator[] calculators = new SimulatedCalculator[numberOfCalculators];
+		for(int i = 0; i < numberOfCalculators; ++i) {
+			calculators[i] = new SimulatedCalculator(CAPACITY, latencyMicros, 0);
+			if(i < numberHung) {
+				calculators[i].setHangs(1);
+			}
+			repartitor.bindSomething(CalculationOperations.CALCULATOR_PREFIX + "Simule" + i, calculators[i].export(),
+					new CalculatorCapabilities(CAPACITY));
+		}
+
+		final int[] result = { -1 };
+		Thread jobThread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					result[0] = repartitor.calculateOperations(new BufferedReader(new StringReader(job)));
+				}
+				catch(Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		jobThread.setDaemon(true);
+		long start = System.nanoTime();
+		jobThread.start();
+		jobThread.join(JOB_TIMEOUT_MS);
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		String failure = null;
+		if(jobThread.isAlive()) {
+			failure = "le calcul ne s'est pas terminé après " + JOB_TIMEOUT_MS + " ms";
+		}
+		else if(result[0] != expected) {
+			failure = "résultat " + result[0] + " au lieu de " + expected;
+		}
+		for(int i = 0; i < numberHung && failure == null; ++i) {
+			if(calculators[i].getCallsReceived() == 0) {
+				failure = "le calculateur bloqué n'a reçu aucun lot";
+			}
+		}
+		System.out.println((failure == null ? "Réussi" : "Échec") + " (" + name + ", " + millis + " ms)" +
+				(failure == null ? "" : " : " + failure));
+		return failure == null;
+	}
+
+	private static String buildJob(ArrayList<IOperation> operations, int repetitions) {
+		StringBuilder job = new StringBuilder();
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				job.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+			}
+		}
+		return job.toString();
+	}
+
+	private static int expectedResult(ArrayList<IOperation> operations, int repetitions) throws Exception {
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+		return expected;
+	}
+}
@@ -0,0 +1,136 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import repartitor.Job;
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.IOperation;
+
+/**
+ * Compare le temps total et le temps de réponse de plusieurs calculs de tailles différentes exécutés l'un après l'autre, comme
+ * avec la console du répartiteur, et soumis en même temps au serveur de calculs, avec des poids égaux puis avec un poids plus
+ * grand pour le plus petit calcul. Mesure ensuite le temps de réponse d'un petit calcul soumis pendant un gros calcul, pour
+ * vérifier qu'il n'attend pas la fin du gros. Les calculateurs locaux n'exécutent qu'un lot à la fois et la moitié d'entre eux
+ * sont lents. Les opérations proviennent des fichiers operations-* du dossier courant, répétées pour former chaque calcul.
+ * Usage : java -cp bin benchmark.JobServerBenchmark [nbCalculs] [répétitionsDuPlusGros] [poidsDuPlusPetit]
+ * @author dcourcel
+ *
+ */
+public class JobServerBenchmark {
+	private static final int DEFAULT_JOBS = 4;
+	private static final int DEFAULT_LARGEST_REPETITIONS = 8;
+	private static final int DEFAULT_SMALLEST_WEIGHT = 4;
+	private static final int NUMBER_OF_CALCULATORS = 4;
+	private static final int CAPACITY = 5;
+	private static final long LATE_ARRIVAL_MS = 100;
+
+	public static void main(String[] args) throws Exception {
+		int numberOfJobs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_JOBS;
+		int largestRepetitions = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LARGEST_REPETITIONS;
+		int smallestWeight = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SMALLEST_WEIGHT;
+
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		String[] jobs = new String[numberOfJobs];
+		int[] expected = new int[numberOfJobs];
+		for(int j = 0; j < numberOfJobs; ++j) {
+			StringBuilder job = new StringBuilder();
+			for(int r = 0; r < Math.max(1, largestRepetitions >> j); ++r) {
+				for(IOperation operation : operations) {
+					Operation op = (Operation)operation;
+					job.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+					expected[j] = (expected[j] + operation.performOperation() % 4000) % 4000;
+				}
+			}
+			jobs[j] = job.toString();
+		}
+
+		RepartitorOptions options = new RepartitorOptions();
+		options.setSelectionPolicy("least");
+		SafeRepartitor repartitor = new SafeRepartitor(options);
+		for(int i = 0; i < NUMBER_OF_CALCULATORS; ++i) {
+			boolean slow = i % 2 == 1;
+			SimulatedCalculator calculator = new SimulatedCalculator(CAPACITY, slow ? 2000 : 500, slow ? 400 : 100);
+			calculator.setSerial();
+			repartitor.bindSomething(CalculationOperations.CALCULATOR_PREFIX + "Simule" + i, calculator.export(),
+					new CalculatorCapabilities(CAPACITY));
+		}
+		check(repartitor.calculateOperations(reader(jobs[numberOfJobs - 1])), expected[numberOfJobs - 1]);
+
+		System.out.println(numberOfJobs + " calculs de " + operations.size() * largestRepetitions + " à " +
+				operations.size() * Math.max(1, largestRepetitions >> (numberOfJobs - 1)) + " opérations, " + NUMBER_OF_CALCULATORS +
+				" calculateurs locaux dont " + NUMBER_OF_CALCULATORS / 2 + " lents.");
+		System.out.printf("%-32s %12s %16s %22s%n", "mode", "total (ms)", "réponse (ms)", "plus petit calcul (ms)");
+
+		long start = System.nanoTime();
+		long[] finishNanos = new long[numberOfJobs];
+		for(int j = 0; j < numberOfJobs; ++j) {
+			check(repartitor.calculateOperations(reader(jobs[j])), expected[j]);
+			finishNanos[j] = System.nanoTime() - start;
+		}
+		long smallAlone = System.nanoTime();
+		check(repartitor.calculateOperations(reader(jobs[numberOfJobs - 1])), expected[numberOfJobs - 1]);
+		smallAlone = System.nanoTime() - smallAlone;
+		printRow("l'un après l'autre", finishNanos);
+
+		repartitor.startJobServer();
+		for(int weighted = 0; weighted < 2; ++weighted) {
+			Job[] submitted = new Job[numberOfJobs];
+			start = System.nanoTime();
+			for(int j = 0; j < numberOfJobs; ++j) {
+				int weight = weighted == 1 && j == numberOfJobs - 1 ? smallestWeight : 1;
+				submitted[j] = repartitor.submitJob(reader(jobs[j]), "calcul" + j, weight);
+			}
+			for(int j = 0; j < numberOfJobs; ++j) {
+				check(submitted[j].awaitResult(), expected[j]);
+				finishNanos[j] = TimeUnit.MILLISECONDS.toNanos(submitted[j].getElapsedMillis());
+			}
+			printRow(weighted == 1 ? "en même temps, poids " + smallestWeight + " au petit" : "en même temps, poids égaux",
+					finishNanos);
+		}
+
+		Job large = repartitor.submitJob(reader(jobs[0]), "gros", 1);
+		TimeUnit.MILLISECONDS.sleep(LATE_ARRIVAL_MS);
+		Job small = repartitor.submitJob(reader(jobs[numberOfJobs - 1]), "petit", 1);
+		check(small.awaitResult(), expected[numberOfJobs - 1]);
+		check(large.awaitResult(), expected[0]);
+		System.out.println();
+		System.out.printf("Petit calcul soumis %d ms après le début d'un gros : %d ms (%.0f ms seul), gros calcul : %d ms.%n",
+				LATE_ARRIVAL_MS, small.getElapsedMillis(), smallAlone / 1e6, large.getElapsedMillis());
+		repartitor.stopJobServer();
+		System.exit(0);
+	}
+
+	private static BufferedReader reader(String job) {
+		return new BufferedReader(new StringReader(job));
+	}
+
+	private static void check(int result, int expected) {
+		if(result != expected) {
+			System.out.println("Résultat invalide : " + result + " au lieu de " + expected);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Affiche le temps total, le temps de réponse moyen et celui du plus petit calcul, le dernier du tableau.
+	 * @param finishNanos Le temps de réponse de chaque calcul depuis le début de la série.
+	 */
+	private static void printRow(String mode, long[] finishNanos) {
+		long total = 0;
+		long sum = 0;
+		for(long nanos : finishNanos) {
+			total = Math.max(total, nanos);
+			sum += nanos;
+		}
+		System.out.printf("%-32s %12.0f %16.0f %22.0f%n", mode, total / 1e6, sum / 1e6 / finishNanos.length,
+				finishNanos[finishNanos.length - 1] / 1e6);
+	}
+}
@@ -0,0 +1,174 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.rmi.NotBoundException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import repartitor.MembershipTable;
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.IOperation;
+
+/**
+ * Mesure le délai avant qu'un calculateur qui s'enregistre durant un calcul reçoive son premier lot, ainsi que le temps de
+ * calcul avec un seul calculateur et avec un second calculateur qui arrive en cours de route. Compare ensuite le coût de
+ * l'ancien parcours du RMIRegistry, une liste et une recherche par calculateur, avec celui de la lecture de la table des
+ * calculateurs enregistrés. Les opérations proviennent des fichiers operations-* du dossier courant, répétées pour allonger le
+ * calcul.
+ * Usage : java -cp bin benchmark.MembershipBenchmark [répétitions] [arrivéeMs] [nbCalculateursParcourus]
+ * @author dcourcel
+ *
+ */
+public class MembershipBenchmark {
+	private static final int DEFAULT_REPETITIONS = 10;
+	private static final long DEFAULT_ARRIVAL_MS = 200;
+	private static final int DEFAULT_SCANNED_CALCULATORS = 50;
+	private static final int SCANS = 200;
+	private static final int CAPACITY = 5;
+
+	public static void main(String[] args) throws Exception {
+		int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REPETITIONS;
+		long arrivalMillis = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_ARRIVAL_MS;
+		int scannedCalculators = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SCANNED_CALCULATORS;
+
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		StringBuilder job = new StringBuilder();
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				job.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+
+		RepartitorOptions options = new RepartitorOptions();
+		options.setSelectionPolicy("least");
+		SafeRepartitor repartitor = new SafeRepartitor(options);
+
+		System.out.println("Arrivée d'un second calculateur " + arrivalMillis + " ms après le début du calcul.");
+		System.out.printf("%-26s %12s %18s %16s%n", "calculateurs", "temps (ms)", "premier lot (ms)", "appels reçus");
+		for(int run = 0; run < 2; ++run) {
+			boolean withArrival = run == 1;
+			SimulatedCalculator first = new SimulatedCalculator(CAPACITY, 500, 100);
+			final SimulatedCalculator second = new SimulatedCalculator(CAPACITY, 500, 100);
+			final String firstName = CalculationOperations.CALCULATOR_PREFIX + "Simule" + run + "_0";
+			final String secondName = CalculationOperations.CALCULATOR_PREFIX + "Simule" + run + "_1";
+			repartitor.bindSomething(firstName, first.export(), new CalculatorCapabilities(CAPACITY));
+			final AtomicLong joinedAt = new AtomicLong(-1);
+			Thread arrival = withArrival ? startArrival(repartitor, second, secondName, arrivalMillis, joinedAt) : null;
+
+			long start = System.nanoTime();
+			int result = repartitor.calculateOperations(new BufferedReader(new StringReader(job.toString())));
+			double millis = (System.nanoTime() - start) / 1e6;
+			if(result != expected) {
+				System.out.println("Résultat invalide : " + result + " au lieu de " + expected);
+				System.exit(1);
+			}
+			String firstBatch = "-";
+			String calls = String.valueOf(first.getCallsReceived());
+			if(arrival != null) {
+				arrival.join();
+				if(second.getFirstCallNanos() >= 0) {
+					firstBatch = String.format("%.1f", (second.getFirstCallNanos() - joinedAt.get()) / 1e6);
+				}
+				calls += " + " + second.getCallsReceived();
+			}
+			System.out.printf("%-26s %12.0f %18s %16s%n", withArrival ? "1, puis 2 en cours de calcul" : "1", millis, firstBatch,
+					calls);
+
+			for(String bindName : new String[] { firstName, secondName }) {
+				try {
+					repartitor.unbindSomething(bindName);
+				}
+				catch(NotBoundException e) {
+				}
+			}
+		}
+
+		measureScans(repartitor, scannedCalculators);
+		System.exit(0);
+	}
+
+	/**
+	 * Démarre le fil qui enregistre le second calculateur après le délai donné.
+	 * @param repartitor Le répartiteur auprès duquel le calculateur s'enregistre.
+	 * @param calculator Le calculateur qui arrive.
+	 * @param bindName Son nom dans le RMIRegistry.
+	 * @param arrivalMillis Le délai avant l'enregistrement.
+	 * @param joinedAt Reçoit le moment de l'enregistrement selon System.nanoTime.
+	 * @return Le fil démarré.
+	 */
+	private static Thread startArrival(final SafeRepartitor repartitor, final SimulatedCalculator calculator, final String bindName,
+			final long arrivalMillis, final AtomicLong joinedAt) {
+		Thread arrival = new Thread() {
+			@Override
+			public void run() {
+				try {
+					TimeUnit.MILLISECONDS.sleep(arrivalMillis);
+					CalculationOperations stub = calculator.export();
+					joinedAt.set(System.nanoTime());
+					repartitor.bindSomething(bindName, stub, new CalculatorCapabilities(CAPACITY));
+				}
+				catch(Exception e) {
+					System.out.println("Impossible d'enregistrer le calculateur. " + e.getMessage());
+				}
+			}
+		};
+		arrival.start();
+		return arrival;
+	}
+
+	/**
+	 * Compare le temps de l'ancien parcours du RMIRegistry au début de chaque calcul avec celui de la lecture de la table des
+	 * calculateurs enregistrés.
+	 * @param repartitor Le répartiteur auprès duquel les calculateurs sont enregistrés.
+	 * @param count Le nombre de calculateurs enregistrés.
+	 */
+	private static void measureScans(SafeRepartitor repartitor, int count) throws Exception {
+		MembershipTable table = new MembershipTable(0);
+		String[] names = new String[count];
+		for(int i = 0; i < count; ++i) {
+			names[i] = CalculationOperations.CALCULATOR_PREFIX + "Parcours" + i;
+			CalculationOperations stub = new SimulatedCalculator(CAPACITY, 0, 0).export();
+			repartitor.bindSomething(names[i], stub, new CalculatorCapabilities(CAPACITY));
+			table.add(names[i], stub);
+		}
+
+		Registry registry = LocateRegistry.getRegistry();
+		long start = System.nanoTime();
+		int found = 0;
+		for(int scan = 0; scan < SCANS; ++scan) {
+			for(String name : registry.list()) {
+				if(name.startsWith(CalculationOperations.CALCULATOR_PREFIX) && registry.lookup(name) != null) {
+					++found;
+				}
+			}
+		}
+		double registryMicros = (System.nanoTime() - start) / 1e3 / SCANS;
+
+		start = System.nanoTime();
+		for(int scan = 0; scan < SCANS; ++scan) {
+			found += table.getMembers(CalculationOperations.CALCULATOR_PREFIX).size();
+		}
+		double tableMicros = (System.nanoTime() - start) / 1e3 / SCANS;
+
+		System.out.println();
+		System.out.println("Recherche de " + count + " calculateurs au début d'un calcul (" + found / 2 / SCANS + " trouvés) :");
+		System.out.printf("%-26s %12.1f µs%n", "parcours du RMIRegistry", registryMicros);
+		System.out.printf("%-26s %12.1f µs%n", "table des calculateurs", tableMicros);
+
+		for(String name : names) {
+			repartitor.unbindSomething(name);
+		}
+	}
+}
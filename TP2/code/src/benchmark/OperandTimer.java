@@ -0,0 +1,42 @@
+package benchmark;
+
+/**
+ * Mesure le temps moyen d'un calcul qui prend une opérande, en le répétant durant un temps minimal après un réchauffement.
+ * @author dcourcel
+ *
+ */
+class OperandTimer {
+	private static final long MIN_MEASURE_NANOS = 200000000L;
+	private static final int WARMUP_ITERATIONS = 2;
+	
+	/**
+	 * Un calcul à mesurer.
+	 */
+	interface Engine {
+		int compute(int operand);
+	}
+	
+	private static int sink = 0;
+	
+	/**
+	 * Mesure le temps moyen d'un calcul.
+	 * @param engine Le calcul à mesurer.
+	 * @param operand L'opérande passée au calcul.
+	 * @return Le temps moyen d'un calcul en nanosecondes.
+	 */
+	static double measure(Engine engine, int operand) {
+		for(int i = 0; i < WARMUP_ITERATIONS; ++i) {
+			sink += engine.compute(operand);
+		}
+		long iterations = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			sink += engine.compute(operand);
+			++iterations;
+			elapsed = System.nanoTime() - start;
+		}
+		while(elapsed < MIN_MEASURE_NANOS);
+		return (double)elapsed / iterations;
+	}
+}
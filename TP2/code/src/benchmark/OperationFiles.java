@@ -0,0 +1,69 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import repartitor.OperationQueue;
+import shared.IOperation;
+
+/**
+ * Charge les opérations des fichiers operations-* fournis pour construire des lots réalistes.
+ * @author dcourcel
+ *
+ */
+public class OperationFiles {
+	
+	/**
+	 * Lit toutes les opérations des fichiers operations-* d'un dossier.
+	 * @param directory Le dossier contenant les fichiers.
+	 * @return Les opérations lues, dans l'ordre des fichiers triés par nom.
+	 * @throws IOException Si aucun fichier n'est trouvé ou si la lecture échoue.
+	 */
+	public static ArrayList<IOperation> load(File directory) throws IOException {
+		File[] files = directory.listFiles();
+		ArrayList<String> names = new ArrayList<>();
+		if(files != null) {
+			for(File file : files) {
+				if(file.getName().startsWith("operations-")) {
+					names.add(file.getName());
+				}
+			}
+		}
+		if(names.isEmpty()) {
+			throw new IOException("Aucun fichier operations-* dans " + directory.getAbsolutePath());
+		}
+		java.util.Collections.sort(names);
+		
+		ArrayList<IOperation> operations = new ArrayList<>();
+		for(String name : names) {
+			try(BufferedReader reader = new BufferedReader(new FileReader(new File(directory, name)))) {
+				String line = reader.readLine();
+				while(line != null) {
+					IOperation operation = OperationQueue.parseOperation(line);
+					if(operation != null) {
+						operations.add(operation);
+					}
+					line = reader.readLine();
+				}
+			}
+		}
+		return operations;
+	}
+	
+	/**
+	 * Construit un lot en répétant les opérations au besoin.
+	 * @param operations Les opérations disponibles.
+	 * @param size La taille du lot.
+	 * @return Le lot.
+	 */
+	public static IOperation[] batch(ArrayList<IOperation> operations, int size) {
+		IOperation[] batch = new IOperation[size];
+		for(int i = 0; i < size; ++i) {
+			batch[i] = operations.get(i % operations.size());
+		}
+		return batch;
+	}
+}
@@ -0,0 +1,52 @@
+package benchmark;
+
+import repartitor.operations.Pell;
+
+/**
+ * Compare le calcul de Pell par exponentiation de matrice au calcul récursif d'origine. Avant de mesurer, le banc vérifie que
+ * les deux calculs donnent les mêmes valeurs pour les petites opérandes.
+ * Usage : java -cp bin benchmark.PellBenchmark [opérandeMaxVérifiée] [opérande...]
+ * @author dcourcel
+ *
+ */
+public class PellBenchmark {
+	private static final int DEFAULT_VERIFIED_OPERAND = 32;
+	private static final int[] DEFAULT_OPERANDS = { 10, 20, 25, 30, 35 };
+	
+	public static void main(String[] args) {
+		int verifiedOperand = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_VERIFIED_OPERAND;
+		int[] operands = DEFAULT_OPERANDS;
+		if(args.length > 1) {
+			operands = new int[args.length - 1];
+			for(int i = 1; i < args.length; ++i) {
+				operands[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		int mismatch = Pell.verifyAgainstNaive(verifiedOperand);
+		if(mismatch != -1) {
+			System.out.println("Valeur différente pour pell " + mismatch);
+			System.exit(1);
+		}
+		System.out.println("Valeurs identiques de 0 à " + verifiedOperand + ".");
+		
+		OperandTimer.Engine naive = new OperandTimer.Engine() {
+			@Override
+			public int compute(int number) {
+				return Pell.naivePell(number);
+			}
+		};
+		OperandTimer.Engine fast = new OperandTimer.Engine() {
+			@Override
+			public int compute(int number) {
+				return Pell.pell(number);
+			}
+		};
+		System.out.printf("%8s %15s %15s %10s%n", "opérande", "récursif (ns)", "matrice (ns)", "accélération");
+		for(int operand : operands) {
+			double naiveNanos = OperandTimer.measure(naive, operand);
+			double fastNanos = OperandTimer.measure(fast, operand);
+			System.out.printf("%8d %15.0f %15.1f %10.0fx%n", operand, naiveNanos, fastNanos, naiveNanos / fastNanos);
+		}
+	}
+}
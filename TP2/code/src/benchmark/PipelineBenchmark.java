@@ -0,0 +1,81 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.IOperation;
+
+/**
+ * Compare le temps de calcul d'un répartiteur sécurisé selon le nombre cible de lots en cours par calculateur. Les calculateurs
+ * locaux n'exécutent qu'un lot à la fois, ont une latence réseau simulée et refusent une partie des lots. Les opérations
+ * proviennent des fichiers operations-* du dossier courant, répétées pour allonger le calcul.
+ * Usage : java -cp bin benchmark.PipelineBenchmark [répétitions] [cible...]
+ * @author dcourcel
+ *
+ */
+public class PipelineBenchmark {
+	private static final int DEFAULT_REPETITIONS = 4;
+	private static final int[] DEFAULT_TARGETS = { 1, 2, 4, 16 };
+	private static final int NUMBER_OF_CALCULATORS = 4;
+	private static final int CAPACITY = 5;
+	private static final long LATENCY_MICROS = 2000;
+	private static final long MICROS_PER_OPERATION = 300;
+	private static final double REFUSAL_PROBABILITY = 0.2;
+	
+	public static void main(String[] args) throws Exception {
+		int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REPETITIONS;
+		int[] targets = DEFAULT_TARGETS;
+		if(args.length > 1) {
+			targets = new int[args.length - 1];
+			for(int i = 1; i < args.length; ++i) {
+				targets[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		StringBuilder job = new StringBuilder();
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				job.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+		
+		RepartitorOptions options = new RepartitorOptions();
+		options.setDispatchMode("pool");
+		SafeRepartitor repartitor = new SafeRepartitor(options);
+		for(int i = 0; i < NUMBER_OF_CALCULATORS; ++i) {
+			SimulatedCalculator calculator = new SimulatedCalculator(CAPACITY, LATENCY_MICROS, MICROS_PER_OPERATION);
+			calculator.setSerial();
+			calculator.setRefusals(REFUSAL_PROBABILITY);
+			repartitor.bindSomething(CalculationOperations.CALCULATOR_PREFIX + "Simule" + i, calculator.export(),
+					new CalculatorCapabilities(CAPACITY));
+		}
+		
+		// Réchauffement.
+		repartitor.calculateOperations(new BufferedReader(new StringReader(job.toString())));
+		
+		System.out.printf("%-8s %10s %12s%n", "cible", "temps (ms)", "op/s");
+		for(int target : targets) {
+			repartitor.setBatchesPerCalculator(target);
+			long start = System.nanoTime();
+			int result = repartitor.calculateOperations(new BufferedReader(new StringReader(job.toString())));
+			double millis = (System.nanoTime() - start) / 1e6;
+			if(result != expected) {
+				System.out.println("Résultat invalide avec la cible " + target + " : " + result + " au lieu de " + expected);
+				System.exit(1);
+			}
+			System.out.printf("%-8d %10.0f %12.0f%n", target, millis, repetitions * operations.size() / (millis / 1000));
+		}
+		System.exit(0);
+	}
+}
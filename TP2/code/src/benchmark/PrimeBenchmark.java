@@ -0,0 +1,59 @@
+package benchmark;
+
+import repartitor.operations.Prime;
+import repartitor.operations.PrimeFactorSieve;
+
+/**
+ * Compare les calculs du plus grand facteur premier : l'algorithme d'origine, les divisions successives jusqu'à la racine carrée
+ * et le crible des plus petits facteurs premiers. Avant de mesurer, le banc vérifie que les trois calculs donnent les mêmes
+ * valeurs pour les petites opérandes.
+ * Usage : java -cp bin benchmark.PrimeBenchmark [opérandeMaxVérifiée] [opérande...]
+ * @author dcourcel
+ *
+ */
+public class PrimeBenchmark {
+	private static final int DEFAULT_VERIFIED_OPERAND = 5000;
+	private static final int[] DEFAULT_OPERANDS = { 100, 1000, 9973, 9999, 100000 };
+	
+	public static void main(String[] args) {
+		int verifiedOperand = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_VERIFIED_OPERAND;
+		int[] operands = DEFAULT_OPERANDS;
+		if(args.length > 1) {
+			operands = new int[args.length - 1];
+			for(int i = 1; i < args.length; ++i) {
+				operands[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		int mismatch = Prime.verifyAgainstNaive(verifiedOperand);
+		if(mismatch != -1) {
+			System.out.println("Valeur différente pour prime " + mismatch);
+			System.exit(1);
+		}
+		System.out.println("Valeurs identiques de 0 à " + verifiedOperand + ".");
+		
+		OperandTimer.Engine naive = new OperandTimer.Engine() {
+			@Override
+			public int compute(int number) {
+				return Prime.naivePrime(number);
+			}
+		};
+		OperandTimer.Engine trialDivision = new OperandTimer.Engine() {
+			@Override
+			public int compute(int number) {
+				return PrimeFactorSieve.largestPrimeFactorByTrialDivision(number);
+			}
+		};
+		OperandTimer.Engine sieve = new OperandTimer.Engine() {
+			@Override
+			public int compute(int number) {
+				return PrimeFactorSieve.largestPrimeFactor(number);
+			}
+		};
+		System.out.printf("%8s %15s %15s %15s%n", "opérande", "origine (ns)", "divisions (ns)", "crible (ns)");
+		for(int operand : operands) {
+			System.out.printf("%8d %15.0f %15.1f %15.1f%n", operand, OperandTimer.measure(naive, operand),
+					OperandTimer.measure(trialDivision, operand), OperandTimer.measure(sieve, operand));
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.IOperation;
+
+/**
+ * Compare les politiques de sélection des calculateurs avec des calculateurs locaux hétérogènes : deux rapides, un moyen et un
+ * lent. Un répartiteur sécurisé est créé dans la machine virtuelle et exécute le même calcul avec chaque politique. Les
+ * opérations proviennent des fichiers operations-* du dossier courant, répétées pour allonger le calcul.
+ * Usage : java -cp bin benchmark.SelectionPolicyBenchmark [répétitions] [politique...]
+ * @author dcourcel
+ *
+ */
+public class SelectionPolicyBenchmark {
+	private static final int DEFAULT_REPETITIONS = 4;
+	private static final String[] DEFAULT_POLICIES = { "random", "least", "p2c", "weighted" };
+	private static final int CAPACITY = 5;
+	// Latence par appel et délai par opération de chaque calculateur, en microsecondes.
+	private static final long[][] CALCULATOR_SPEEDS = { { 500, 100 }, { 500, 100 }, { 2000, 500 }, { 10000, 3000 } };
+	
+	public static void main(String[] args) throws Exception {
+		int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REPETITIONS;
+		String[] policies = DEFAULT_POLICIES;
+		if(args.length > 1) {
+			policies = java.util.Arrays.copyOfRange(args, 1, args.length);
+		}
+		
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		StringBuilder job = new StringBuilder();
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				job.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+		
+		RepartitorOptions options = new RepartitorOptions();
+		options.setDispatchMode("pool");
+		SafeRepartitor repartitor = new SafeRepartitor(options);
+		for(int i = 0; i < CALCULATOR_SPEEDS.length; ++i) {
+			SimulatedCalculator calculator = new SimulatedCalculator(CAPACITY, CALCULATOR_SPEEDS[i][0], CALCULATOR_SPEEDS[i][1]);
+			CalculationOperations stub = calculator.export();
+			repartitor.bindSomething(CalculationOperations.CALCULATOR_PREFIX + "Simule" + i, stub, new CalculatorCapabilities(CAPACITY));
+		}
+		
+		System.out.printf("%-10s %10s %12s%n", "politique", "temps (ms)", "op/s");
+		for(String policy : policies) {
+			repartitor.setSelectionPolicy(RepartitorOptions.createSelectionPolicy(policy));
+			long start = System.nanoTime();
+			int result = repartitor.calculateOperations(new BufferedReader(new StringReader(job.toString())));
+			double millis = (System.nanoTime() - start) / 1e6;
+			if(result != expected) {
+				System.out.println("Résultat invalide avec " + policy + " : " + result + " au lieu de " + expected);
+				System.exit(1);
+			}
+			System.out.printf("%-10s %10.0f %12.0f%n", policy, millis, repetitions * operations.size() / (millis / 1000));
+		}
+		System.exit(0);
+	}
+}
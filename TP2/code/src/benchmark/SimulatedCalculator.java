@@ -0,0 +1,212 @@
+package benchmark;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import repartitor.operations.Operation;
+import repartitor.operations.Pell;
+import repartitor.operations.Prime;
+import shared.CalculationOperations;
+import shared.CalculatorOccupiedException;
+import shared.IOperation;
+import shared.OperationBatch;
+
+/**
+ * Un calculateur local honnête dont la vitesse est simulée : chaque appel attend une latence fixe plus un délai par opération
+ * avant de retourner le vrai résultat. Il permet de comparer des stratégies de répartition avec des calculateurs hétérogènes
+ * dans une seule machine virtuelle.
+ * @author dcourcel
+ *
+ */
+class SimulatedCalculator implements CalculationOperations {
+	private final int numberOfOperationsSupported;
+	private final long latencyMicros;
+	private final long microsPerOperation;
+	private final Random random = new Random();
+	private double stallProbability = 0;
+	private long stallMicros = 0;
+	private double refusalProbability = 0;
+	private double hangProbability = 0;
+	private final Object hangLock = new Object();
+	private long releases = 0;
+	private Object workLock = null;
+	private final AtomicInteger callsReceived = new AtomicInteger();
+	private volatile long firstCallNanos = -1;
+	
+	/**
+	 * Crée un calculateur simulé.
+	 * @param numberOfOperationsSupported La capacité annoncée du calculateur. Elle n'est pas utilisée pour refuser des lots.
+	 * @param latencyMicros La latence ajoutée à chaque appel.
+	 * @param microsPerOperation Le délai ajouté pour chaque opération du lot.
+	 */
+	SimulatedCalculator(int numberOfOperationsSupported, long latencyMicros, long microsPerOperation) {
+		this.numberOfOperationsSupported = numberOfOperationsSupported;
+		this.latencyMicros = latencyMicros;
+		this.microsPerOperation = microsPerOperation;
+	}
+	
+	/**
+	 * Fait en sorte que certains appels soient beaucoup plus longs que les autres, comme avec un calculateur surchargé ou bloqué.
+	 * @param stallProbability La probabilité qu'un appel soit retardé.
+	 * @param stallMicros Le délai ajouté à un appel retardé.
+	 */
+	void setStalls(double stallProbability, long stallMicros) {
+		this.stallProbability = stallProbability;
+		this.stallMicros = stallMicros;
+	}
+	
+	/**
+	 * Fait en sorte que le calculateur refuse certains lots, comme un calculateur occupé.
+	 * @param refusalProbability La probabilité qu'un appel soit refusé.
+	 */
+	void setRefusals(double refusalProbability) {
+		this.refusalProbability = refusalProbability;
+	}
+	
+	/**
+	 * Fait en sorte que certains appels ne répondent jamais, comme un calculateur bloqué dont la connexion reste ouverte. Un appel
+	 * bloqué n'est relâché que par releaseHungCalls.
+	 * @param hangProbability La probabilité qu'un appel bloque.
+	 */
+	void setHangs(double hangProbability) {
+		this.hangProbability = hangProbability;
+	}
+	
+	/**
+	 * Relâche les appels bloqués, qui retournent alors leur résultat. Les appels suivants peuvent bloquer de nouveau.
+	 */
+	void releaseHungCalls() {
+		synchronized(hangLock) {
+			++releases;
+			hangLock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Fait en sorte que le délai par opération ne soit écoulé que pour un appel à la fois, comme un calculateur qui n'a qu'un
+	 * seul cœur. La latence fixe de chaque appel reste simultanée.
+	 */
+	void setSerial() {
+		workLock = new Object();
+	}
+	
+	/**
+	 * Indique le nombre d'appels de calcul reçus.
+	 * @return Le nombre d'appels reçus, refusés ou non.
+	 */
+	int getCallsReceived() {
+		return callsReceived.get();
+	}
+	
+	/**
+	 * Indique quand le premier appel de calcul a été reçu.
+	 * @return Le moment du premier appel selon System.nanoTime ou -1 si aucun appel n'a été reçu.
+	 */
+	long getFirstCallNanos() {
+		return firstCallNanos;
+	}
+	
+	/**
+	 * Exporte le calculateur par RMI.
+	 * @return Le stub du calculateur.
+	 * @throws RemoteException Si l'exportation échoue.
+	 */
+	CalculationOperations export() throws RemoteException {
+		return (CalculationOperations)UnicastRemoteObject.exportObject(this, 0);
+	}
+	
+	@Override
+	public int calculate(IOperation[] operations) throws CalculatorOccupiedException {
+		int result = 0;
+		for(int value : calculateEach(operations)) {
+			result += value;
+		}
+		return result;
+	}
+	
+	@Override
+	public int calculate(OperationBatch operations) throws CalculatorOccupiedException {
+		return calculate(unpack(operations));
+	}
+	
+	@Override
+	public int[] calculateEach(OperationBatch operations) throws CalculatorOccupiedException {
+		return calculateEach(unpack(operations));
+	}
+	
+	@Override
+	public int[] calculateEach(IOperation[] operations) throws CalculatorOccupiedException {
+		if(callsReceived.getAndIncrement() == 0) {
+			firstCallNanos = System.nanoTime();
+		}
+		long delayMicros = latencyMicros;
+		boolean refused;
+		boolean hangs;
+		synchronized(random) {
+			refused = random.nextDouble() < refusalProbability;
+			hangs = random.nextDouble() < hangProbability;
+			if(random.nextDouble() < stallProbability) {
+				delayMicros += stallMicros;
+			}
+		}
+		if(refused) {
+			sleepMicros(latencyMicros);
+			throw new CalculatorOccupiedException();
+		}
+		if(hangs) {
+			hang();
+		}
+		if(workLock == null) {
+			sleepMicros(delayMicros + microsPerOperation * operations.length);
+		}
+		else {
+			sleepMicros(delayMicros);
+			synchronized(workLock) {
+				sleepMicros(microsPerOperation * operations.length);
+			}
+		}
+		int[] results = new int[operations.length];
+		for(int i = 0; i < operations.length; ++i) {
+			results[i] = operations[i].performOperation() % 4000;
+		}
+		return results;
+	}
+	
+	@Override
+	public int getNumberOfOperationsSupported() {
+		return numberOfOperationsSupported;
+	}
+	
+	private void hang() {
+		synchronized(hangLock) {
+			long release = releases;
+			try {
+				while(releases == release) {
+					hangLock.wait();
+				}
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private static IOperation[] unpack(OperationBatch batch) {
+		IOperation[] operations = new IOperation[batch.size()];
+		for(int i = 0; i < operations.length; ++i) {
+			operations[i] = batch.getOpcode(i) == Operation.PRIME_OPCODE ? new Prime(batch.getOperand(i)) : new Pell(batch.getOperand(i));
+		}
+		return operations;
+	}
+	
+	private static void sleepMicros(long micros) {
+		try {
+			Thread.sleep(micros / 1000, (int)(micros % 1000) * 1000);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.rmi.NotBoundException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import repartitor.DeadlinePolicy;
+import repartitor.Repartitor;
+import repartitor.RepartitorOptions;
+import repartitor.SafeRepartitor;
+import repartitor.UnsafeRepartitor;
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.IOperation;
+
+/**
+ * Mesure le temps de calcul lorsqu'un des calculateurs locaux bloque certains appels sans jamais répondre, selon la politique
+ * d'échéance du répartiteur. Sans échéance, le calcul attend que les appels bloqués soient relâchés, ce que le banc d'essai fait
+ * après un délai de garde ; avec une échéance, les appels bloqués sont abandonnés, leurs opérations sont recalculées ailleurs
+ * et le calculateur est retiré ou suspendu. Chaque calcul utilise de nouveaux calculateurs, puisque le retrait les enlève du
+ * registry. Les opérations proviennent des fichiers operations-* du dossier courant, répétées pour allonger le calcul.
+ * Usage : java -cp bin benchmark.TimeoutBenchmark [safe|unsafe] [répétitions] [probabilitéBlocage] [gardeMs]
+ * @author dcourcel
+ *
+ */
+public class TimeoutBenchmark {
+	private static final int DEFAULT_REPETITIONS = 4;
+	private static final double DEFAULT_HANG_PROBABILITY = 0.1;
+	private static final long DEFAULT_GUARD_MS = 5000;
+	private static final int NUMBER_OF_CALCULATORS = 4;
+	private static final int CAPACITY = 5;
+	private static final long SUSPENSION_MS = 500;
+
+	public static void main(String[] args) throws Exception {
+		boolean secure = args.length == 0 || !args[0].equals("unsafe");
+		int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_REPETITIONS;
+		double hangProbability = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_HANG_PROBABILITY;
+		long guardMillis = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_GUARD_MS;
+
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		StringBuilder job = new StringBuilder();
+		int expected = 0;
+		for(int r = 0; r < repetitions; ++r) {
+			for(IOperation operation : operations) {
+				Operation op = (Operation)operation;
+				job.append(op.getOpcode() == Operation.PRIME_OPCODE ? "prime " : "pell ").append(op.getOperand()).append('\n');
+				expected = (expected + operation.performOperation() % 4000) % 4000;
+			}
+		}
+
+		RepartitorOptions options = new RepartitorOptions();
+		options.setDispatchMode("thread");
+		options.setSelectionPolicy("least");
+		Repartitor repartitor = secure ? new SafeRepartitor(options) : new UnsafeRepartitor(options);
+
+		DeadlinePolicy unbind = DeadlinePolicy.estimated(DeadlinePolicy.DEFAULT_MULTIPLE, 50, 2000);
+		unbind.setTimeoutReaction(DeadlinePolicy.UNBIND_ON_TIMEOUT);
+		DeadlinePolicy suspend = DeadlinePolicy.estimated(DeadlinePolicy.DEFAULT_MULTIPLE, 50, 2000);
+		suspend.setTimeoutReaction(DeadlinePolicy.SUSPEND_ON_TIMEOUT + ":" + SUSPENSION_MS);
+		DeadlinePolicy fixed = DeadlinePolicy.fixed(200);
+		fixed.setTimeoutReaction(DeadlinePolicy.SUSPEND_ON_TIMEOUT + ":" + SUSPENSION_MS);
+		DeadlinePolicy defaults = DeadlinePolicy.fromDescription(DeadlinePolicy.AUTO_MODE);
+		String[] names = { "aucune", "auto, retrait", "auto, suspension", "200 ms, suspension", "auto (10 s au départ)" };
+		DeadlinePolicy[] policies = { null, unbind, suspend, fixed, defaults };
+
+		System.out.println((secure ? "Mode sécurisé" : "Mode non sécurisé") + ", un calculateur sur " + NUMBER_OF_CALCULATORS +
+				" bloque " + (int)(hangProbability * 100) + "% de ses appels.");
+		System.out.printf("%-22s %10s%n", "échéance", "temps (ms)");
+		for(int run = 0; run < policies.length; ++run) {
+			repartitor.setDeadlinePolicy(policies[run]);
+			final SimulatedCalculator[] calculators = new SimulatedCalculator[NUMBER_OF_CALCULATORS];
+			String[] bindNames = new String[NUMBER_OF_CALCULATORS];
+			for(int i = 0; i < NUMBER_OF_CALCULATORS; ++i) {
+				calculators[i] = new SimulatedCalculator(CAPACITY, 500, 100);
+				if(i == 0) {
+					calculators[i].setHangs(hangProbability);
+				}
+				bindNames[i] = CalculationOperations.CALCULATOR_PREFIX + "Simule" + run + "_" + i;
+				repartitor.bindSomething(bindNames[i], calculators[i].export(), new CalculatorCapabilities(CAPACITY));
+			}
+			Thread guard = startGuard(calculators[0], guardMillis);
+
+			long start = System.nanoTime();
+			int result = repartitor.calculateOperations(new BufferedReader(new StringReader(job.toString())));
+			double millis = (System.nanoTime() - start) / 1e6;
+			guard.interrupt();
+			calculators[0].setHangs(0);
+			calculators[0].releaseHungCalls();
+			if(result != expected) {
+				System.out.println("Résultat invalide : " + result + " au lieu de " + expected);
+				System.exit(1);
+			}
+			System.out.printf("%-22s %10.0f%n", names[run], millis);
+
+			for(String bindName : bindNames) {
+				try {
+					repartitor.unbindSomething(bindName);
+				}
+				catch(NotBoundException e) {
+				}
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Démarre le fil qui relâche les appels bloqués d'un calculateur après le délai de garde, pour qu'un calcul sans échéance
+	 * finisse par se terminer.
+	 * @param calculator Le calculateur qui bloque.
+	 * @param guardMillis Le délai de garde.
+	 * @return Le fil démarré, à interrompre une fois le calcul terminé.
+	 */
+	private static Thread startGuard(final SimulatedCalculator calculator, final long guardMillis) {
+		Thread guard = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while(true) {
+						TimeUnit.MILLISECONDS.sleep(guardMillis);
+						calculator.releaseHungCalls();
+					}
+				}
+				catch(InterruptedException e) {
+				}
+			}
+		};
+		guard.setDaemon(true);
+		guard.start();
+		return guard;
+	}
+}
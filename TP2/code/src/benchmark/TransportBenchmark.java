@@ -0,0 +1,163 @@
+package benchmark;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import calculator.NioCalculatorServer;
+import repartitor.NioCalculatorClient;
+import repartitor.NioTransport;
+import repartitor.operations.Operation;
+import repartitor.operations.Pell;
+import shared.CalculationOperations;
+import shared.IOperation;
+import shared.OperationBatch;
+
+/**
+ * Compare le transport RMI et le transport NIO vers un même calculateur simulé sur l'interface de bouclage. La première mesure
+ * est la durée d'un appel lorsqu'un seul appel est en cours à la fois. Les suivantes sont le nombre d'appels terminés par
+ * seconde avec plusieurs appels en cours : avec RMI, chaque appel en cours occupe un fil du répartiteur ; avec NIO, un seul fil
+ * garde tous les appels en cours sur la même connexion. Les opérations du lot sont triviales pour que la mesure porte sur le
+ * transport ; le calculateur ajoute une latence fixe à chaque appel pour représenter le temps de calcul.
+ * Usage : java -cp bin benchmark.TransportBenchmark [latenceMicros] [tailleLot]
+ * @author dcourcel
+ *
+ */
+public class TransportBenchmark {
+	private static final long DEFAULT_LATENCY_MICROS = 1000;
+	private static final int DEFAULT_BATCH_SIZE = 6;
+	private static final int[] CONCURRENCY_LEVELS = { 1, 4, 16, 64 };
+	private static final long MEASURE_NANOS = 500000000L;
+
+	public static void main(String[] args) throws Exception {
+		long latencyMicros = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_LATENCY_MICROS;
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+		IOperation[] operations = new IOperation[batchSize];
+		for(int i = 0; i < batchSize; ++i) {
+			operations[i] = new Pell(i % 10);
+		}
+		OperationBatch batch = Operation.pack(operations);
+
+		SimulatedCalculator calculator = new SimulatedCalculator(batchSize, latencyMicros, 0);
+		CalculationOperations rmiStub = calculator.export();
+		ExecutorService serverWorkers = Executors.newCachedThreadPool();
+		NioCalculatorServer server = new NioCalculatorServer(calculator, 0, serverWorkers);
+		NioTransport transport = new NioTransport();
+		NioCalculatorClient nioClient = transport.connect("127.0.0.1", server.getPort());
+
+		if(rmiStub.calculate(batch) != nioClient.calculate(batch)) {
+			System.out.println("Les deux transports ne donnent pas le même résultat.");
+			System.exit(1);
+		}
+
+		System.out.println("Latence simulée : " + latencyMicros + " µs, lot de " + batchSize + " opérations.");
+		System.out.printf("%-22s %14s %14s%n", "", "RMI", "NIO");
+		// Réchauffement des deux transports avant les mesures.
+		for(int concurrency : CONCURRENCY_LEVELS) {
+			measureSequential(rmiStub, batch);
+			measureSequential(nioClient, batch);
+			measureRmiThroughput(rmiStub, batch, concurrency);
+			measureNioThroughput(nioClient, batch, concurrency);
+		}
+		System.out.printf("%-22s %14.1f %14.1f%n", "appel seul (µs)", measureSequential(rmiStub, batch),
+				measureSequential(nioClient, batch));
+		for(int concurrency : CONCURRENCY_LEVELS) {
+			System.out.printf("%-22s %14.0f %14.0f%n", concurrency + " en cours (appels/s)", measureRmiThroughput(rmiStub, batch,
+					concurrency), measureNioThroughput(nioClient, batch, concurrency));
+		}
+
+		transport.close();
+		server.close();
+		serverWorkers.shutdown();
+		UnicastRemoteObject.unexportObject(calculator, true);
+	}
+
+	/**
+	 * Mesure la durée moyenne d'un appel lorsque les appels sont faits un à la fois.
+	 * @param calculator Le calculateur à appeler.
+	 * @param batch Le lot envoyé à chaque appel.
+	 * @return La durée moyenne d'un appel en microsecondes.
+	 */
+	private static double measureSequential(CalculationOperations calculator, OperationBatch batch) throws RemoteException {
+		long calls = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			calculator.calculate(batch);
+			++calls;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < MEASURE_NANOS);
+		return elapsed / 1e3 / calls;
+	}
+
+	/**
+	 * Mesure le débit d'appels par RMI avec un fil par appel en cours.
+	 * @param calculator Le stub du calculateur.
+	 * @param batch Le lot envoyé à chaque appel.
+	 * @param concurrency Le nombre d'appels en cours à la fois.
+	 * @return Le nombre d'appels terminés par seconde.
+	 */
+	private static double measureRmiThroughput(final CalculationOperations calculator, final OperationBatch batch, int concurrency)
+			throws InterruptedException {
+		final AtomicLong calls = new AtomicLong();
+		final long end = System.nanoTime() + MEASURE_NANOS;
+		Thread[] callers = new Thread[concurrency];
+		long start = System.nanoTime();
+		for(int i = 0; i < concurrency; ++i) {
+			callers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						while(System.nanoTime() < end) {
+							calculator.calculate(batch);
+							calls.incrementAndGet();
+						}
+					}
+					catch(RemoteException e) {
+						System.out.println("Appel RMI échoué. " + e.getMessage());
+					}
+				}
+			};
+			callers[i].start();
+		}
+		for(Thread caller : callers) {
+			caller.join();
+		}
+		return calls.get() * 1e9 / (System.nanoTime() - start);
+	}
+
+	/**
+	 * Mesure le débit d'appels par NIO avec un seul fil qui garde le nombre voulu d'appels en cours.
+	 * @param client Le client NIO du calculateur.
+	 * @param batch Le lot envoyé à chaque appel.
+	 * @param concurrency Le nombre d'appels en cours à la fois.
+	 * @return Le nombre d'appels terminés par seconde.
+	 */
+	private static double measureNioThroughput(NioCalculatorClient client, OperationBatch batch, int concurrency)
+			throws InterruptedException {
+		final Semaphore slots = new Semaphore(concurrency);
+		final AtomicLong calls = new AtomicLong();
+		long start = System.nanoTime();
+		long end = start + MEASURE_NANOS;
+		while(System.nanoTime() < end) {
+			slots.acquire();
+			CompletableFuture<int[]> reply = client.calculateAsync(batch, false);
+			reply.whenComplete(new BiConsumer<int[], Throwable>() {
+				@Override
+				public void accept(int[] results, Throwable exception) {
+					if(exception == null) {
+						calls.incrementAndGet();
+					}
+					slots.release();
+				}
+			});
+		}
+		slots.acquire(concurrency);
+		return calls.get() * 1e9 / (System.nanoTime() - start);
+	}
+}
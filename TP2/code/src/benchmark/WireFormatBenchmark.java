@@ -0,0 +1,116 @@
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import repartitor.operations.Operation;
+import shared.IOperation;
+import shared.OperationBatch;
+
+/**
+ * Compare la taille sérialisée et le temps de sérialisation et de désérialisation d'un lot envoyé comme tableau d'objets
+ * Operation et comme OperationBatch compact. Un nouveau flux est créé pour chaque lot, comme pour chaque appel RMI, de sorte que
+ * les descripteurs de classe sont comptés à chaque fois. Les lots sont construits à partir des fichiers operations-* du dossier
+ * courant.
+ * Usage : java -cp bin benchmark.WireFormatBenchmark [tailleLot...]
+ * @author dcourcel
+ *
+ */
+public class WireFormatBenchmark {
+	private static final int[] DEFAULT_BATCH_SIZES = { 6, 50, 500 };
+	private static final long MEASURE_NANOS = 500000000L;
+	
+	/**
+	 * Une façon de préparer un lot avant de l'écrire dans le flux.
+	 */
+	private interface Encoder {
+		Object encode(IOperation[] operations);
+	}
+	
+	public static void main(String[] args) throws Exception {
+		int[] batchSizes = DEFAULT_BATCH_SIZES;
+		if(args.length > 0) {
+			batchSizes = new int[args.length];
+			for(int i = 0; i < args.length; ++i) {
+				batchSizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+		ArrayList<IOperation> operations = OperationFiles.load(new File("."));
+		Encoder objects = new Encoder() {
+			@Override
+			public Object encode(IOperation[] batch) {
+				return batch;
+			}
+		};
+		Encoder packed = new Encoder() {
+			@Override
+			public Object encode(IOperation[] batch) {
+				return Operation.pack(batch);
+			}
+		};
+		
+		System.out.printf("%6s %14s %14s %16s %16s%n", "lot", "objets (o)", "compact (o)", "objets (µs/lot)", "compact (µs/lot)");
+		for(int size : batchSizes) {
+			IOperation[] batch = OperationFiles.batch(operations, size);
+			verify(batch);
+			System.out.printf("%6d %14d %14d %16.1f %16.1f%n", size, serialize(objects.encode(batch)).length,
+					serialize(packed.encode(batch)).length, measure(objects, batch), measure(packed, batch));
+		}
+	}
+	
+	/**
+	 * Vérifie que le lot compact désérialisé contient les mêmes opérations que le lot d'origine.
+	 * @param batch Le lot d'origine.
+	 */
+	private static void verify(IOperation[] batch) throws IOException, ClassNotFoundException {
+		OperationBatch copy = (OperationBatch)deserialize(serialize(Operation.pack(batch)));
+		for(int i = 0; i < batch.length; ++i) {
+			Operation operation = (Operation)batch[i];
+			if(copy.getOpcode(i) != operation.getOpcode() || copy.getOperand(i) != operation.getOperand()) {
+				System.out.println("Le lot compact diffère à la position " + i + ".");
+				System.exit(1);
+			}
+		}
+	}
+	
+	/**
+	 * Mesure le temps moyen pour préparer, sérialiser puis désérialiser un lot.
+	 * @param encoder La façon de préparer le lot.
+	 * @param batch Le lot.
+	 * @return Le temps moyen d'un aller-retour en microsecondes.
+	 */
+	private static double measure(Encoder encoder, IOperation[] batch) throws IOException, ClassNotFoundException {
+		// Réchauffement.
+		for(int i = 0; i < 1000; ++i) {
+			deserialize(serialize(encoder.encode(batch)));
+		}
+		long iterations = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			deserialize(serialize(encoder.encode(batch)));
+			++iterations;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < MEASURE_NANOS);
+		return elapsed / 1e3 / iterations;
+	}
+	
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+	
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package calculator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import repartitor.operations.Operation;
+import shared.CalculatorOccupiedException;
+import shared.IOperation;
+import shared.OperationBatch;
+
+/**
+ * Exécute les opérations d'un lot, soit séquentiellement sur le fil appelant, soit en parallèle en divisant le lot avec un
+ * ForkJoinPool. Dans les deux cas, chaque opération contribue performOperation() % 4000 au résultat. Un lot compact est calculé
+ * directement à partir des codes et des opérandes, sans recréer les objets des opérations. Comme l'addition d'int est
+ * associative même en cas de débordement, la somme parallèle est identique à la somme séquentielle.
+ * @author dcourcel
+ *
+ */
+public class BatchExecutor {
+	private static final int MIN_OPERATIONS_PER_TASK = 32;
+	private static final int TASKS_PER_WORKER = 4;
+	
+	private final int parallelism;
+	private final ForkJoinPool pool;
+	
+	/**
+	 * Crée un exécuteur de lots.
+	 * @param parallelism Le nombre de fils utilisés pour un lot. 1 exécute les lots sur le fil appelant.
+	 */
+	public BatchExecutor(int parallelism) {
+		if(parallelism <= 0) {
+			throw new IllegalArgumentException("Le niveau de parallélisme doit être un entier positif.");
+		}
+		this.parallelism = parallelism;
+		pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+	
+	public int getParallelism() {
+		return parallelism;
+	}
+	
+	/**
+	 * Calcule la somme des résultats modulo 4000 des opérations.
+	 * @param operations Les opérations à effectuer.
+	 * @return La somme des résultats.
+	 * @throws CalculatorOccupiedException Si une opération n'a pas pu être effectuée.
+	 */
+	public int sum(IOperation[] operations) throws CalculatorOccupiedException {
+		int result = 0;
+		for(int value : calculateEach(operations)) {
+			result += value;
+		}
+		return result;
+	}
+	
+	/**
+	 * Calcule le résultat modulo 4000 de chaque opération.
+	 * @param operations Les opérations à effectuer.
+	 * @return Le résultat de chaque opération, dans l'ordre des opérations.
+	 * @throws CalculatorOccupiedException Si une opération n'a pas pu être effectuée.
+	 */
+	public int[] calculateEach(final IOperation[] operations) throws CalculatorOccupiedException {
+		return calculateEach(new Kernel() {
+			@Override
+			public int size() {
+				return operations.length;
+			}
+			
+			@Override
+			public int perform(int index) throws CalculatorOccupiedException {
+				return operations[index].performOperation();
+			}
+		});
+	}
+	
+	/**
+	 * Calcule la somme des résultats modulo 4000 des opérations d'un lot compact.
+	 * @param operations Les opérations à effectuer.
+	 * @return La somme des résultats.
+	 * @throws CalculatorOccupiedException Si une opération n'a pas pu être effectuée.
+	 */
+	public int sum(OperationBatch operations) throws CalculatorOccupiedException {
+		int result = 0;
+		for(int value : calculateEach(operations)) {
+			result += value;
+		}
+		return result;
+	}
+	
+	/**
+	 * Calcule le résultat modulo 4000 de chaque opération d'un lot compact.
+	 * @param operations Les opérations à effectuer.
+	 * @return Le résultat de chaque opération, dans l'ordre des opérations.
+	 * @throws CalculatorOccupiedException Si une opération n'a pas pu être effectuée.
+	 */
+	public int[] calculateEach(final OperationBatch operations) throws CalculatorOccupiedException {
+		return calculateEach(new Kernel() {
+			@Override
+			public int size() {
+				return operations.size();
+			}
+			
+			@Override
+			public int perform(int index) throws CalculatorOccupiedException {
+				return Operation.perform(operations.getOpcode(index), operations.getOperand(index));
+			}
+		});
+	}
+	
+	private int[] calculateEach(Kernel kernel) throws CalculatorOccupiedException {
+		int size = kernel.size();
+		int[] results = new int[size];
+		if(pool == null || size <= MIN_OPERATIONS_PER_TASK) {
+			for(int i = 0; i < size; ++i) {
+				results[i] = kernel.perform(i) % 4000;
+			}
+			return results;
+		}
+		
+		int threshold = Math.max(MIN_OPERATIONS_PER_TASK, size / (parallelism * TASKS_PER_WORKER));
+		try {
+			pool.invoke(new OperationRange(kernel, results, 0, size, threshold));
+		}
+		catch(OccupiedWrapper e) {
+			throw e.cause;
+		}
+		return results;
+	}
+	
+	/**
+	 * Arrête les fils de l'exécuteur.
+	 */
+	public void shutdown() {
+		if(pool != null) {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Donne accès aux opérations d'un lot par leur position, peu importe la forme du lot.
+	 */
+	private interface Kernel {
+		int size();
+		int perform(int index) throws CalculatorOccupiedException;
+	}
+	
+	/**
+	 * Transporte une CalculatorOccupiedException hors d'une tâche du ForkJoinPool, qui ne peut pas lancer d'exception vérifiée.
+	 */
+	private static class OccupiedWrapper extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private final CalculatorOccupiedException cause;
+		
+		OccupiedWrapper(CalculatorOccupiedException cause) {
+			this.cause = cause;
+		}
+	}
+	
+	/**
+	 * Une tâche qui calcule une plage d'opérations et qui se divise en deux tant que la plage dépasse le seuil.
+	 */
+	private static class OperationRange extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Kernel kernel;
+		private final int[] results;
+		private final int start;
+		private final int end;
+		private final int threshold;
+		
+		OperationRange(Kernel kernel, int[] results, int start, int end, int threshold) {
+			this.kernel = kernel;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+			this.threshold = threshold;
+		}
+		
+		@Override
+		protected void compute() {
+			if(end - start <= threshold) {
+				try {
+					for(int i = start; i < end; ++i) {
+						results[i] = kernel.perform(i) % 4000;
+					}
+				}
+				catch(CalculatorOccupiedException e) {
+					throw new OccupiedWrapper(e);
+				}
+			}
+			else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new OperationRange(kernel, results, start, middle, threshold),
+						new OperationRange(kernel, results, middle, end, threshold));
+			}
+		}
+	}
+}
@@ -1,47 +1,223 @@
 package calculator;
 
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import shared.CalculationOperations;
+import shared.CalculatorLoadReport;
 import shared.CalculatorOccupiedException;
 import shared.IOperation;
+import shared.OperationBatch;
 
+/**
+ * Le calculateur exporté par le conteneur. Chaque lot reçu est calculé sur un fil du bassin du calculateur, qui refuse les lots
+ * lorsque le travail déjà accepté est trop important. Le modèle de refus aléatoire d'origine, selon le dépassement du nombre
+ * d'opérations toujours acceptées, peut être activé pour simuler des calculateurs occupés.
+ * @author dcourcel
+ *
+ */
 class Calculator implements CalculationOperations {
 
 	private final int nbOperationsToAccept;
 	private final float maliciousPercent;
+	private final BatchExecutor batchExecutor;
+	private final WorkerPool workerPool;
+	private volatile boolean simulatedRefusals = false;
+	private volatile long simulatedLatencyMillis = 0;
 	
 	public Calculator(int nbOperationsToAccept, float maliciousPercent) {
+		this(nbOperationsToAccept, maliciousPercent, 1);
+	}
+	
+	/**
+	 * Crée un calculateur qui calcule les lots sur le fil appelant, sans contrôle d'admission.
+	 * @param nbOperationsToAccept Le nombre d'opérations que le calculateur acceptera toujours.
+	 * @param maliciousPercent Le pourcentage de temps (entre 0 et 100 inclusivement) que le calculateur retourne un mauvais résultat.
+	 * @param parallelism Le nombre de fils utilisés pour calculer les opérations d'un lot.
+	 */
+	public Calculator(int nbOperationsToAccept, float maliciousPercent, int parallelism) {
+		this(nbOperationsToAccept, maliciousPercent, parallelism, null);
+	}
+	
+	/**
+	 * Crée un calculateur.
+	 * @param nbOperationsToAccept Le nombre d'opérations que le calculateur acceptera toujours.
+	 * @param maliciousPercent Le pourcentage de temps (entre 0 et 100 inclusivement) que le calculateur retourne un mauvais résultat.
+	 * @param parallelism Le nombre de fils utilisés pour calculer les opérations d'un lot.
+	 * @param workerPool Le bassin qui exécute les lots et refuse ceux qui dépassent sa capacité ou null pour calculer sur le fil
+	 * appelant.
+	 */
+	public Calculator(int nbOperationsToAccept, float maliciousPercent, int parallelism, WorkerPool workerPool) {
 		this.nbOperationsToAccept = nbOperationsToAccept;
 		this.maliciousPercent = maliciousPercent;
+		this.workerPool = workerPool;
+		batchExecutor = new BatchExecutor(parallelism);
+	}
+	
+	/**
+	 * Active le modèle de refus aléatoire, qui refuse les lots selon à quel point ils dépassent le nombre d'opérations toujours
+	 * acceptées, peu importe la charge réelle du calculateur.
+	 * @param simulatedRefusals Vrai pour activer les refus aléatoires.
+	 */
+	public void setSimulatedRefusals(boolean simulatedRefusals) {
+		this.simulatedRefusals = simulatedRefusals;
+	}
+	
+	/**
+	 * Ajoute une attente au calcul de chaque lot, pour simuler un calculateur plus lent ou plus éloigné. L'attente occupe le fil
+	 * qui calcule le lot, comme le ferait un vrai calcul.
+	 * @param simulatedLatencyMillis L'attente en millisecondes, 0 pour n'en ajouter aucune.
+	 */
+	public void setSimulatedLatency(long simulatedLatencyMillis) {
+		this.simulatedLatencyMillis = simulatedLatencyMillis;
 	}
 
 	@Override
-	public int calculate(IOperation[] operations) throws CalculatorOccupiedException {
+	public int calculate(final IOperation[] operations) throws CalculatorOccupiedException {
 		System.out.println("Demande de calculs reçue.");
-		Random random = new Random();
-		if(operations.length > nbOperationsToAccept) {
-			float occupiedPercent = (float)(operations.length - nbOperationsToAccept) / (5 * nbOperationsToAccept) * 100;
-			if (occupiedPercent > random.nextFloat() * 100) {
-				System.out.println("Demande de calculs refusée.");
-				throw new CalculatorOccupiedException();
+		final Random random = new Random();
+		refuseIfOccupied(operations.length, random);
+		
+		return execute(operations.length, new Callable<Integer>() {
+			@Override
+			public Integer call() throws CalculatorOccupiedException {
+				return corruptSum(batchExecutor.sum(operations), random);
 			}
-		}
+		});
+	}
+	
+	@Override
+	public int[] calculateEach(final IOperation[] operations) throws CalculatorOccupiedException {
+		System.out.println("Demande de calculs reçue.");
+		final Random random = new Random();
+		refuseIfOccupied(operations.length, random);
 		
-		int result = 0;
-		for(int i = 0; i < operations.length; ++i) {
-			result += operations[i].performOperation() % 4000;
-		}
+		return execute(operations.length, new Callable<int[]>() {
+			@Override
+			public int[] call() throws CalculatorOccupiedException {
+				return corruptEach(batchExecutor.calculateEach(operations), random);
+			}
+		});
+	}
+	
+	@Override
+	public int calculate(final OperationBatch operations) throws CalculatorOccupiedException {
+		System.out.println("Demande de calculs reçue.");
+		final Random random = new Random();
+		refuseIfOccupied(operations.size(), random);
 		
-		if (maliciousPercent > random.nextFloat() * 100) {
-			result += random.nextInt(1000) - 500;
-		}
+		return execute(operations.size(), new Callable<Integer>() {
+			@Override
+			public Integer call() throws CalculatorOccupiedException {
+				return corruptSum(batchExecutor.sum(operations), random);
+			}
+		});
+	}
+	
+	@Override
+	public int[] calculateEach(final OperationBatch operations) throws CalculatorOccupiedException {
+		System.out.println("Demande de calculs reçue.");
+		final Random random = new Random();
+		refuseIfOccupied(operations.size(), random);
 		
-		return result;
+		return execute(operations.size(), new Callable<int[]>() {
+			@Override
+			public int[] call() throws CalculatorOccupiedException {
+				return corruptEach(batchExecutor.calculateEach(operations), random);
+			}
+		});
 	}
-
+	
 	@Override
 	public int getNumberOfOperationsSupported() {
 		return nbOperationsToAccept;
 	}
+	
+	/**
+	 * Récupère la charge actuelle du calculateur.
+	 * @return Le rapport de charge du bassin ou null si les lots sont calculés sur le fil appelant.
+	 */
+	public CalculatorLoadReport getLoad() {
+		return workerPool != null ? workerPool.getLoad() : null;
+	}
+	
+	/**
+	 * Arrête les fils du calculateur.
+	 */
+	public void shutdown() {
+		if(workerPool != null) {
+			workerPool.shutdown();
+		}
+		batchExecutor.shutdown();
+	}
+	
+	/**
+	 * Exécute le calcul d'un lot sur le bassin ou, s'il n'y en a pas, sur le fil appelant.
+	 * @param nbOperations Le nombre d'opérations du lot.
+	 * @param task Le calcul du lot.
+	 * @return Le résultat du calcul.
+	 * @throws CalculatorOccupiedException Si le bassin refuse le lot.
+	 */
+	private <T> T execute(int nbOperations, final Callable<T> calculation) throws CalculatorOccupiedException {
+		final long latencyMillis = simulatedLatencyMillis;
+		Callable<T> task = calculation;
+		if(latencyMillis > 0) {
+			task = new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					Thread.sleep(latencyMillis);
+					return calculation.call();
+				}
+			};
+		}
+		if(workerPool == null) {
+			try {
+				return task.call();
+			}
+			catch(CalculatorOccupiedException e) {
+				throw e;
+			}
+			catch(Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		try {
+			return workerPool.execute(nbOperations, task);
+		}
+		catch(CalculatorOccupiedException e) {
+			System.out.println("Demande de calculs refusée.");
+			throw e;
+		}
+	}
+	
+	private int corruptSum(int result, Random random) {
+		if (maliciousPercent > random.nextFloat() * 100) {
+			result += random.nextInt(1000) - 500;
+		}
+		return result;
+	}
+	
+	private int[] corruptEach(int[] results, Random random) {
+		if (results.length > 0 && maliciousPercent > random.nextFloat() * 100) {
+			results[random.nextInt(results.length)] += random.nextInt(1000) - 500;
+		}
+		return results;
+	}
+	
+	/**
+	 * En mode de refus simulés, refuse aléatoirement la demande selon à quel point le nombre d'opérations dépasse le nombre
+	 * d'opérations toujours acceptées.
+	 * @param nbOperations Le nombre d'opérations demandées.
+	 * @param random Le générateur aléatoire de la demande.
+	 * @throws CalculatorOccupiedException Si la demande est refusée.
+	 */
+	private void refuseIfOccupied(int nbOperations, Random random) throws CalculatorOccupiedException {
+		if(simulatedRefusals && nbOperations > nbOperationsToAccept) {
+			float occupiedPercent = (float)(nbOperations - nbOperationsToAccept) / (5 * nbOperationsToAccept) * 100;
+			if (occupiedPercent > random.nextFloat() * 100) {
+				System.out.println("Demande de calculs refusée.");
+				throw new CalculatorOccupiedException();
+			}
+		}
+	}
 }
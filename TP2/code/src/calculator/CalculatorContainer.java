@@ -1,5 +1,7 @@
 package calculator;
 
+import java.io.IOException;
+import java.net.InetAddress;
 import java.rmi.AccessException;
 import java.rmi.AlreadyBoundException;
 import java.rmi.NoSuchObjectException;
@@ -10,28 +12,50 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UID;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import shared.RepartitorRegistering;
 import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.CalculatorLoadReport;
 
 /**
  * Un conteneur pour le calculateur qui récupère un RMIRegistry et qui s'enregistre auprès de ce registry.
  * Une fois enregistré, il écoute par RMI les demandes de calculs pour les opérations Pell et Prime.
  * Il possède 3 paramètres configuratbles : Le nombre d'opérations qu'il accepte toujours avant d'avoir un
  * taux de refus, le pourcentage de temps auquel le calculateur fourni un mauvais résultat et l'hôte où il
- * faut s'enregistrer.
+ * faut s'enregistrer. Un quatrième paramètre facultatif indique le nombre de fils utilisés pour calculer un lot. L'option -nio
+ * suivie d'un port permet aussi de recevoir les calculs par le transport NIO.
+ * Les lots reçus sont calculés par un bassin de fils de taille fixe avec une file bornée qui refuse les lots lorsque le travail
+ * accepté est trop important. Les options -workers, -queue et -maxBacklog configurent le bassin, et -simulateRefusals active en
+ * plus les refus aléatoires d'origine selon le nombre d'opérations toujours acceptées.
+ * Une fois enregistré, le calculateur envoie au répartiteur un battement avec sa charge à l'intervalle donné par -heartbeat. Si
+ * le répartiteur ne le connaît plus, il s'enregistre de nouveau. Avec -heartbeat 0, il vérifie plutôt sa présence dans le
+ * RMIRegistry toutes les 5 secondes. L'option -port donne le port du RMIRegistry du répartiteur, pour s'enregistrer auprès d'un
+ * répartiteur enfant qui n'utilise pas le port par défaut.
  * @author dcourcel
  *
  */
 public class CalculatorContainer {
 	private static final String INVALID_NB_OPERATIONS = "Le nombre d'opérations n'est pas un entier positif.";
 	private static final String INVALID_MALICIOUS_PERCENT = "Le pourcentage malicieux doit être entre 0 et 100 inclusivement.";
+	private static final String INVALID_PARALLELISM = "Le niveau de parallélisme n'est pas un entier positif.";
+	private static final String INVALID_NIO_PORT = "Le port NIO doit être entre 0 et 65535 inclusivement.";
+	private static final String INVALID_WORKERS = "Le nombre de fils du bassin n'est pas un entier positif.";
+	private static final String INVALID_QUEUE = "La taille de la file n'est pas un entier positif ou nul.";
+	private static final String INVALID_MAX_BACKLOG = "Le délai maximal de travail accepté n'est pas un entier positif.";
+	private static final String INVALID_HEARTBEAT = "L'intervalle des battements n'est pas un entier positif ou nul.";
+	private static final String INVALID_LATENCY = "La latence simulée n'est pas un entier positif ou nul.";
+	private static final String INVALID_REGISTRY_PORT = "Le port du RMIRegistry doit être entre 1 et 65535 inclusivement.";
 	private static final int INVALID_PARAM = 1;
 	private static final int INVALID_OBJECT = 2;
 	private static final int INVALID_ACCESS = 3;
 	private static final int INVALID_REGISTER_NAME = 4;
 	private static final int REMOTE_ERROR = 5;
 	private static final int NUMBER_OF_TRIES = 3;
+	private static final int DEFAULT_HEARTBEAT_MS = 250;
+	private static final int REGISTRY_CHECK_MS = 5000;
 	
 	private static CalculatorContainer calculatorContainer;
 	private static boolean cleanRMIRegistry = false;
@@ -39,7 +63,11 @@ public class CalculatorContainer {
 	
 	private final Calculator calculator;
 	private final Remote objectExported;
+	private NioCalculatorServer nioServer = null;
+	private ExecutorService nioWorkers = null;
+	private String nioHost = null;
 	private Registry registry;
+	private RepartitorRegistering repartitor = null;
 	private String bindName;
 	private boolean registered;
 	
@@ -52,24 +80,114 @@ public class CalculatorContainer {
 	 * @throws RemoteException
 	 */
 	public CalculatorContainer(int nbOperationsToAccept, float maliciousPercent, String hostname) throws RemoteException {
-		calculator = new Calculator(nbOperationsToAccept, maliciousPercent);
+		this(nbOperationsToAccept, maliciousPercent, hostname, 1);
+	}
+	
+	/**
+	 * Crée un nouveau conteneur pour le calculateur dont les lots sont calculés en parallèle.
+	 * @param nbOperationsToAccept Le nombre d'opérations que le calculateur acceptera toujours.
+	 * @param maliciousPercent Le pourcentage de temps (entre 0 et 100 inclusivement) que le calculateur retourne un mauvais résultat.
+	 * @param hostname Le nom d'hôte auquel il faut récupérer le registry.
+	 * @param parallelism Le nombre de fils utilisés pour calculer les opérations d'un lot.
+	 * @throws RemoteException
+	 */
+	public CalculatorContainer(int nbOperationsToAccept, float maliciousPercent, String hostname, int parallelism) throws RemoteException {
+		this(nbOperationsToAccept, maliciousPercent, hostname, parallelism, WorkerPool.createDefault(parallelism));
+	}
+	
+	/**
+	 * Crée un nouveau conteneur pour le calculateur dont les lots sont calculés par le bassin donné.
+	 * @param nbOperationsToAccept Le nombre d'opérations que le calculateur acceptera toujours.
+	 * @param maliciousPercent Le pourcentage de temps (entre 0 et 100 inclusivement) que le calculateur retourne un mauvais résultat.
+	 * @param hostname Le nom d'hôte auquel il faut récupérer le registry.
+	 * @param parallelism Le nombre de fils utilisés pour calculer les opérations d'un lot.
+	 * @param workerPool Le bassin qui exécute les lots et refuse ceux qui dépassent sa capacité.
+	 * @throws RemoteException
+	 */
+	public CalculatorContainer(int nbOperationsToAccept, float maliciousPercent, String hostname, int parallelism,
+			WorkerPool workerPool) throws RemoteException {
+		calculator = new Calculator(nbOperationsToAccept, maliciousPercent, parallelism, workerPool);
 		objectExported = UnicastRemoteObject.exportObject(calculator, 0);
 		registry = LocateRegistry.getRegistry(hostname, Registry.REGISTRY_PORT);
 		registered = false;
 	}
 
 	/**
-	 * Enlève l'exportation du calculateur. Une fois cette méthode appelée, le register et unregister au registry ne
-	 * fonctionneront plus.
+	 * Récupère le RMIRegistry du répartiteur sur un autre port que le port par défaut, par exemple celui d'un répartiteur enfant.
+	 * Doit être appelée avant l'enregistrement.
+	 * @param hostname Le nom d'hôte auquel il faut récupérer le registry.
+	 * @param port Le port du RMIRegistry.
+	 * @throws RemoteException
+	 */
+	public void setRegistryPort(String hostname, int port) throws RemoteException {
+		registry = LocateRegistry.getRegistry(hostname, port);
+	}
+
+	/**
+	 * Active le modèle de refus aléatoire d'origine en plus du contrôle d'admission du bassin, pour simuler des calculateurs
+	 * occupés peu importe leur charge réelle.
+	 * @param simulatedRefusals Vrai pour activer les refus aléatoires.
+	 */
+	public void setSimulatedRefusals(boolean simulatedRefusals) {
+		calculator.setSimulatedRefusals(simulatedRefusals);
+	}
+	
+	/**
+	 * Ajoute une attente au calcul de chaque lot, pour simuler un calculateur plus lent ou plus éloigné.
+	 * @param simulatedLatencyMillis L'attente en millisecondes, 0 pour n'en ajouter aucune.
+	 */
+	public void setSimulatedLatency(long simulatedLatencyMillis) {
+		calculator.setSimulatedLatency(simulatedLatencyMillis);
+	}
+	
+	/**
+	 * Récupère la charge actuelle du calculateur : les lots en cours et en attente, le travail estimé qu'ils représentent, le
+	 * débit récent et le nombre de refus.
+	 * @return Le rapport de charge.
+	 */
+	public CalculatorLoadReport getLoad() {
+		return calculator.getLoad();
+	}
+	
+	/**
+	 * Démarre le serveur du transport NIO pour le calculateur. Doit être appelée avant l'enregistrement pour que le répartiteur
+	 * reçoive le point d'accès NIO avec les caractéristiques du calculateur. L'hôte annoncé est celui de la propriété
+	 * java.rmi.server.hostname s'il est défini, sinon l'adresse de la machine locale.
+	 * @param port Le port sur lequel écouter ou 0 pour un port libre.
+	 * @throws IOException S'il est impossible d'écouter sur le port.
+	 */
+	public void enableNioTransport(int port) throws IOException {
+		if(nioServer == null) {
+			nioHost = System.getProperty("java.rmi.server.hostname");
+			if(nioHost == null) {
+				nioHost = InetAddress.getLocalHost().getHostAddress();
+			}
+			nioWorkers = Executors.newCachedThreadPool();
+			nioServer = new NioCalculatorServer(calculator, port, nioWorkers);
+		}
+	}
+	
+	/**
+	 * Enlève l'exportation du calculateur, arrête ses fils et arrête le serveur NIO s'il a été démarré. Une fois cette méthode appelée, le register
+	 * et unregister au registry ne fonctionneront plus.
 	 * @throws NoSuchObjectException Si l'objet n'était pas exporté.
 	 */
 	public void doCleanup() throws NoSuchObjectException {
+		if(nioServer != null) {
+			try {
+				nioServer.close();
+			}
+			catch(IOException e) {
+			}
+			nioWorkers.shutdown();
+		}
 		UnicastRemoteObject.unexportObject(calculator, true);
+		calculator.shutdown();
 	}
 	
 	/**
 	 * Enregistre l'objet au RMIRegistry. Le calculateur pourra être appelé à partir de l'extérieur à partir de ce moment.
-	 * Pour s'enregistrer, le calculateur envoie son objet exporté au répartiteur qui l'ajoutera au RMIRegistry.
+	 * Pour s'enregistrer, le calculateur envoie son objet exporté et ses caractéristiques au répartiteur qui l'ajoutera au RMIRegistry.
 	 * @throws AccessException Si le registry est local et s'il bloque l'accès pour effectuer l'opération.
 	 * @throws AlreadyBoundException Si le nom pour l'enregistrement est déjà utilisé.
 	 * @throws RemoteException Si la communication avec le registre échoue.
@@ -77,8 +195,11 @@ public class CalculatorContainer {
 	public void registerToRMIRegistry() throws AccessException, NotBoundException, AlreadyBoundException, RemoteException {
 		if(!registered) {
 			bindName = CalculationOperations.CALCULATOR_PREFIX + new UID().toString();
-			RepartitorRegistering repartitor = (RepartitorRegistering)registry.lookup(RepartitorRegistering.REPARTITOR_NAME);
-			repartitor.bindSomething(bindName, objectExported);
+			repartitor = (RepartitorRegistering)registry.lookup(RepartitorRegistering.REPARTITOR_NAME);
+			CalculatorCapabilities capabilities = nioServer != null ?
+					new CalculatorCapabilities(calculator.getNumberOfOperationsSupported(), nioHost, nioServer.getPort()) :
+					new CalculatorCapabilities(calculator.getNumberOfOperationsSupported());
+			repartitor.bindSomething(bindName, objectExported, capabilities);
 			registered = true;
 		}
 	}
@@ -97,6 +218,19 @@ public class CalculatorContainer {
 		}
 	}
 	
+	/**
+	 * Envoie au répartiteur un battement avec la charge actuelle du calculateur. Si le répartiteur ne connaît plus le calculateur,
+	 * par exemple parce qu'il l'a retiré après un silence trop long, le calculateur est marqué comme non enregistré.
+	 * @return Vrai si le répartiteur connaît le calculateur, faux s'il doit s'enregistrer de nouveau.
+	 * @throws RemoteException Si la communication avec le répartiteur échoue.
+	 */
+	public boolean sendHeartbeat() throws RemoteException {
+		if(registered && !repartitor.heartbeat(bindName, calculator.getLoad())) {
+			registered = false;
+		}
+		return registered;
+	}
+	
 	/**
 	 * Vérifie auprès du RMIRegistry si l'objet précédement exporté est encore présent. Il s'agit de faire un lookup et de vérifier
 	 * si l'ojet retourné est le même que l'objet conservé dans la classe. Dans le cas où le RMIRegistry aurait été arrêté et reparti, pour
@@ -126,7 +260,11 @@ public class CalculatorContainer {
 	 * Le point d'entrée du programme pour démarrer le calculateur.
 	 * @param args 3 arguments sont attendus. Le premier doit être le nombre d'opérations qu'il accepte toujours,
 	 * le deuxième est le pourcentage de temps (entre 0 et 100 inclusivement) que le calculateur retourne un
-	 * mauvais résultat et le troisième est l'hôte où il faut s'enregistrer.
+	 * mauvais résultat et le troisième est l'hôte où il faut s'enregistrer. Un quatrième argument facultatif
+	 * indique le nombre de fils utilisés pour calculer un lot (1 par défaut). Les options suivent : -nio port pour accepter aussi
+	 * les calculs par le transport NIO, -workers N, -queue N et -maxBacklog ms pour configurer le bassin de fils,
+	 * -simulateRefusals pour ajouter les refus aléatoires, -latency ms pour ajouter une attente au calcul de chaque lot,
+	 * -heartbeat ms pour l'intervalle des battements (0 pour les désactiver) et -port N pour le port du RMIRegistry du répartiteur.
 	 */
 	public static void main(String[] args) throws InterruptedException {
 		if (System.getSecurityManager() == null) {
@@ -137,8 +275,56 @@ public class CalculatorContainer {
 		int nbOfOperationsToAccept = 0;
 		float maliciousPercent = 0;
 		String hostName = null;
+		int parallelism = 1;
+		int nioPort = -1;
+		int workers = 0;
+		int queueCapacity = -1;
+		long maxBacklogMillis = WorkerPool.DEFAULT_MAX_BACKLOG_MILLIS;
+		boolean simulatedRefusals = false;
+		int simulatedLatencyMillis = 0;
+		int heartbeatMillis = DEFAULT_HEARTBEAT_MS;
+		int registryPort = Registry.REGISTRY_PORT;
+		
+		int nbPositionalArgs = 0;
+		while(nbPositionalArgs < args.length && !args[nbPositionalArgs].startsWith("-")) {
+			++nbPositionalArgs;
+		}
+		for(int i = nbPositionalArgs; i < args.length; ++i) {
+			if(args[i].equals("-nio")) {
+				nioPort = readIntOption(args, ++i, 0, 65535, INVALID_NIO_PORT);
+			}
+			else if(args[i].equals("-workers")) {
+				workers = readIntOption(args, ++i, 1, Integer.MAX_VALUE, INVALID_WORKERS);
+			}
+			else if(args[i].equals("-queue")) {
+				queueCapacity = readIntOption(args, ++i, 0, Integer.MAX_VALUE, INVALID_QUEUE);
+			}
+			else if(args[i].equals("-maxBacklog")) {
+				maxBacklogMillis = readIntOption(args, ++i, 1, Integer.MAX_VALUE, INVALID_MAX_BACKLOG);
+			}
+			else if(args[i].equals("-heartbeat")) {
+				heartbeatMillis = readIntOption(args, ++i, 0, Integer.MAX_VALUE, INVALID_HEARTBEAT);
+			}
+			else if(args[i].equals("-port")) {
+				registryPort = readIntOption(args, ++i, 1, 65535, INVALID_REGISTRY_PORT);
+			}
+			else if(args[i].equals("-simulateRefusals")) {
+				simulatedRefusals = true;
+			}
+			else if(args[i].equals("-latency")) {
+				simulatedLatencyMillis = readIntOption(args, ++i, 0, Integer.MAX_VALUE, INVALID_LATENCY);
+			}
+			else {
+				System.out.println("Paramètre invalide : " + args[i]);
+				showUsage();
+				System.exit(INVALID_PARAM);
+			}
+		}
+		String[] positionalArgs = new String[nbPositionalArgs];
+		System.arraycopy(args, 0, positionalArgs, 0, nbPositionalArgs);
+		args = positionalArgs;
 		
-		if(args.length != 3) {
+		if(args.length != 3 && args.length != 4) {
 			System.out.println("Nombre invalide de paramètres entrés.");
 			showUsage();
 			System.exit(INVALID_PARAM);
@@ -169,6 +355,20 @@ public class CalculatorContainer {
 				System.exit(INVALID_PARAM);
 			}
 			hostName = args[2];
+			
+			if(args.length == 4) {
+				try {
+					parallelism = Integer.parseInt(args[3]);
+					if(parallelism <= 0) {
+						System.out.println(INVALID_PARALLELISM);
+						System.exit(INVALID_PARAM);
+					}
+				}
+				catch(NumberFormatException e) {
+					System.out.println(INVALID_PARALLELISM);
+					System.exit(INVALID_PARAM);
+				}
+			}
 		}
 		
 		try {
@@ -177,14 +377,33 @@ public class CalculatorContainer {
 					cleanup();
 				}
 			});
-			calculatorContainer = new CalculatorContainer(nbOfOperationsToAccept, maliciousPercent, hostName);
+			if(workers == 0) {
+				workers = WorkerPool.getDefaultWorkers(parallelism);
+			}
+			if(queueCapacity < 0) {
+				queueCapacity = workers * WorkerPool.DEFAULT_QUEUE_PER_WORKER;
+			}
+			calculatorContainer = new CalculatorContainer(nbOfOperationsToAccept, maliciousPercent, hostName, parallelism,
+					new WorkerPool(workers, queueCapacity, maxBacklogMillis));
+			calculatorContainer.setSimulatedRefusals(simulatedRefusals);
+			calculatorContainer.setSimulatedLatency(simulatedLatencyMillis);
+			if(registryPort != Registry.REGISTRY_PORT) {
+				calculatorContainer.setRegistryPort(hostName, registryPort);
+			}
 			cleanObjectRegister = true;
+			if(nioPort >= 0) {
+				calculatorContainer.enableNioTransport(nioPort);
+			}
 		}
 		catch (RemoteException e) {
 			System.out.println("Impossible de créer le CalculatorContainer. " + e.getMessage());
 			e.printStackTrace();
 			System.exit(REMOTE_ERROR);
 		}
+		catch (IOException e) {
+			System.out.println("Impossible de démarrer le serveur NIO. " + e.getMessage());
+			System.exit(REMOTE_ERROR);
+		}
 		
 		try {
 			tryToRegister(NUMBER_OF_TRIES);
@@ -192,8 +411,17 @@ public class CalculatorContainer {
 			System.out.println("Calculateur prêt!");
 			
 			while(true) {
-				Thread.sleep(5000);
-				verifyCalculatorStillRegistered();
+				if(heartbeatMillis > 0) {
+					Thread.sleep(heartbeatMillis);
+					if(!calculatorContainer.sendHeartbeat()) {
+						System.out.println("Le répartiteur ne connaît plus le calculateur. Nouvel enregistrement.");
+						tryToRegister(NUMBER_OF_TRIES);
+					}
+				}
+				else {
+					Thread.sleep(REGISTRY_CHECK_MS);
+					verifyCalculatorStillRegistered();
+				}
 			}
 		}
 		catch(AccessException e) {
@@ -236,7 +464,32 @@ public class CalculatorContainer {
 	 * Affiche comment utiliser le calculateur avec les arguments qu'il faut lui passer.
 	 */
 	private static void showUsage() {
-		System.out.println("Usage : calculatorContainer nbOperationsToAccept maliciousPercent hostname");
+		System.out.println("Usage : calculatorContainer nbOperationsToAccept maliciousPercent hostname [parallelism] [-nio port] [-workers N] [-queue N] [-maxBacklog ms] [-simulateRefusals] [-latency ms] [-heartbeat ms] [-port N]");
+	}
+	
+	/**
+	 * Lit la valeur entière d'une option ou quitte le programme si elle est absente ou hors limites.
+	 * @param args Les arguments du programme.
+	 * @param index La position de la valeur.
+	 * @param min La plus petite valeur acceptée.
+	 * @param max La plus grande valeur acceptée.
+	 * @param errorMessage Le message affiché si la valeur est invalide.
+	 * @return La valeur lue.
+	 */
+	private static int readIntOption(String[] args, int index, int min, int max, String errorMessage) {
+		try {
+			if(index < args.length) {
+				int value = Integer.parseInt(args[index]);
+				if(value >= min && value <= max) {
+					return value;
+				}
+			}
+		}
+		catch(NumberFormatException e) {
+		}
+		System.out.println(errorMessage);
+		System.exit(INVALID_PARAM);
+		return min;
 	}
 	
 	/**
@@ -0,0 +1,290 @@
+package calculator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import shared.CalculationOperations;
+import shared.CalculatorOccupiedException;
+import shared.NioProtocol;
+import shared.OperationBatch;
+
+/**
+ * Un serveur qui reçoit les requêtes de calcul du transport NIO et les transmet à un calculateur. Un seul fil gère toutes les
+ * connexions avec un sélecteur : il lit les trames reçues, confie chaque calcul aux fils de travail et écrit les réponses dès
+ * qu'elles sont prêtes. Plusieurs requêtes peuvent être en cours sur une même connexion ; leurs réponses sont envoyées dans
+ * l'ordre où les calculs se terminent.
+ * @author dcourcel
+ *
+ */
+public class NioCalculatorServer implements Closeable {
+	private final CalculationOperations calculator;
+	private final Executor workers;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final ConcurrentLinkedQueue<Connection> connectionsToFlush = new ConcurrentLinkedQueue<>();
+	private final Thread selectorThread;
+	private volatile boolean running = true;
+
+	/**
+	 * Crée le serveur et commence à accepter les connexions.
+	 * @param calculator Le calculateur qui effectue les calculs reçus.
+	 * @param port Le port sur lequel écouter ou 0 pour un port libre choisi par le système.
+	 * @param workers Les fils qui effectuent les calculs.
+	 * @throws IOException S'il est impossible d'écouter sur le port.
+	 */
+	public NioCalculatorServer(CalculationOperations calculator, int port, Executor workers) throws IOException {
+		this.calculator = calculator;
+		this.workers = workers;
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		selectorThread = new Thread("Serveur NIO du calculateur") {
+			@Override
+			public void run() {
+				serve();
+			}
+		};
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/**
+	 * Récupère le port sur lequel le serveur écoute.
+	 * @return Le port du serveur.
+	 */
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Arrête le serveur et ferme toutes les connexions. Les calculs en cours se terminent, mais leurs réponses ne sont pas envoyées.
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		selector.wakeup();
+		try {
+			selectorThread.join();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * La boucle du fil du sélecteur.
+	 */
+	private void serve() {
+		try {
+			while(running) {
+				selector.select();
+				Connection connection = connectionsToFlush.poll();
+				while(connection != null) {
+					connection.flush();
+					connection = connectionsToFlush.poll();
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if(!key.isValid()) {
+						continue;
+					}
+					if(key.isAcceptable()) {
+						accept();
+					}
+					else {
+						connection = (Connection)key.attachment();
+						if(key.isReadable()) {
+							connection.read();
+						}
+						if(key.isValid() && key.isWritable()) {
+							connection.flush();
+						}
+					}
+				}
+			}
+		}
+		catch(IOException e) {
+			System.out.println("Le serveur NIO du calculateur s'est arrêté. " + e.getMessage());
+		}
+		catch(ClosedSelectorException e) {
+		}
+		finally {
+			for(SelectionKey key : selector.keys()) {
+				try {
+					key.channel().close();
+				}
+				catch(IOException e) {
+				}
+			}
+			try {
+				selector.close();
+			}
+			catch(IOException e) {
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if(channel != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new Connection(channel, key));
+		}
+	}
+
+	/**
+	 * Effectue une requête reçue et construit sa réponse.
+	 * @param frame La trame de la requête, positionnée sur l'identifiant.
+	 * @return La trame de la réponse.
+	 */
+	private ByteBuffer handle(ByteBuffer frame) {
+		int requestId = frame.getInt();
+		byte type = frame.get();
+		try {
+			if(type == NioProtocol.CAPACITY) {
+				return NioProtocol.resultFrame(requestId, calculator.getNumberOfOperationsSupported());
+			}
+			OperationBatch batch = OperationBatch.read(frame);
+			if(type == NioProtocol.CALCULATE) {
+				return NioProtocol.resultFrame(requestId, calculator.calculate(batch));
+			}
+			else if(type == NioProtocol.CALCULATE_EACH) {
+				return NioProtocol.resultsFrame(requestId, calculator.calculateEach(batch));
+			}
+			return NioProtocol.errorFrame(requestId, "Requête inconnue : " + type);
+		}
+		catch(CalculatorOccupiedException e) {
+			return NioProtocol.statusFrame(requestId, NioProtocol.OCCUPIED);
+		}
+		catch(RemoteException e) {
+			return NioProtocol.errorFrame(requestId, e.getMessage());
+		}
+		catch(IOException e) {
+			return NioProtocol.errorFrame(requestId, e.getMessage());
+		}
+		catch(RuntimeException e) {
+			return NioProtocol.errorFrame(requestId, e.toString());
+		}
+	}
+
+	/**
+	 * Une connexion d'un répartiteur avec les trames reçues en partie et les réponses qui restent à écrire.
+	 */
+	private class Connection {
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		private final NioProtocol.FrameReader reader = new NioProtocol.FrameReader();
+		private final ArrayDeque<ByteBuffer> responses = new ArrayDeque<>();
+
+		Connection(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+		}
+
+		/**
+		 * Lit les octets disponibles et confie chaque requête complète aux fils de travail. Ferme la connexion si elle a été fermée
+		 * par le répartiteur ou si une trame est invalide.
+		 */
+		void read() {
+			try {
+				if(reader.readFrom(channel) == -1) {
+					close();
+					return;
+				}
+				ByteBuffer frame = reader.nextFrame();
+				while(frame != null) {
+					final ByteBuffer request = frame;
+					workers.execute(new Runnable() {
+						@Override
+						public void run() {
+							send(handle(request));
+						}
+					});
+					frame = reader.nextFrame();
+				}
+			}
+			catch(IOException e) {
+				close();
+			}
+		}
+
+		/**
+		 * Envoie une réponse. Si aucune autre réponse n'attend d'être écrite, elle est écrite directement par le fil appelant ;
+		 * sinon, elle est ajoutée à la file et le fil du sélecteur est réveillé pour l'écrire. Peut être appelée par n'importe quel
+		 * fil.
+		 * @param response La trame de la réponse.
+		 */
+		void send(ByteBuffer response) {
+			synchronized(responses) {
+				if(responses.isEmpty() && key.isValid()) {
+					try {
+						channel.write(response);
+					}
+					catch(IOException e) {
+						close();
+						return;
+					}
+					if(!response.hasRemaining()) {
+						return;
+					}
+				}
+				responses.add(response);
+			}
+			connectionsToFlush.add(this);
+			selector.wakeup();
+		}
+
+		/**
+		 * Écrit autant de réponses que possible sans bloquer. S'il en reste, le sélecteur avertira lorsque la connexion pourra
+		 * recevoir la suite.
+		 */
+		void flush() {
+			if(!key.isValid()) {
+				return;
+			}
+			try {
+				synchronized(responses) {
+					while(!responses.isEmpty()) {
+						ByteBuffer response = responses.peek();
+						channel.write(response);
+						if(response.hasRemaining()) {
+							break;
+						}
+						responses.poll();
+					}
+					key.interestOps(responses.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+			}
+			catch(IOException e) {
+				close();
+			}
+		}
+
+		void close() {
+			key.cancel();
+			try {
+				channel.close();
+			}
+			catch(IOException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package calculator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import shared.CalculatorLoadReport;
+import shared.CalculatorOccupiedException;
+
+/**
+ * Le bassin de fils qui exécute les lots acceptés par un calculateur. Le nombre de fils est fixe et les lots en attente d'un
+ * fil libre sont conservés dans une file bornée. Avant d'accepter un lot, le bassin estime le temps nécessaire pour terminer
+ * tout le travail déjà accepté plus ce lot, à partir du temps moyen mesuré par opération. Le lot est refusé avec une
+ * CalculatorOccupiedException si la file est pleine ou si ce temps dépasse le délai maximal. Un lot est toujours accepté
+ * lorsque le bassin n'a aucun travail en cours.
+ * @author dcourcel
+ *
+ */
+public class WorkerPool {
+	/** Le nombre de lots en attente permis pour chaque fil. */
+	public static final int DEFAULT_QUEUE_PER_WORKER = 4;
+	/** Le temps maximal de travail accepté, en millisecondes. */
+	public static final long DEFAULT_MAX_BACKLOG_MILLIS = 1000;
+	private static final double SMOOTHING = 0.2;
+	private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+	private final ThreadPoolExecutor executor;
+	private final int workers;
+	private final int queueCapacity;
+	private final long maxBacklogNanos;
+	private int acceptedBatches = 0;
+	private int runningBatches = 0;
+	private long backlogOperations = 0;
+	private double nanosPerOperation = 0;
+	private long refusals = 0;
+	private long windowStartNanos = System.nanoTime();
+	private long windowOperations = 0;
+	private double operationsPerSecond = 0;
+
+	/**
+	 * Crée un bassin avec un fil par cœur disponible pour le parallélisme donné et la file et le délai par défaut.
+	 * @param parallelism Le nombre de fils utilisés pour calculer les opérations d'un seul lot.
+	 * @return Le bassin.
+	 */
+	public static WorkerPool createDefault(int parallelism) {
+		int workers = getDefaultWorkers(parallelism);
+		return new WorkerPool(workers, workers * DEFAULT_QUEUE_PER_WORKER, DEFAULT_MAX_BACKLOG_MILLIS);
+	}
+	
+	/**
+	 * Calcule le nombre de lots qui peuvent être calculés en même temps sans dépasser le nombre de cœurs disponibles.
+	 * @param parallelism Le nombre de fils utilisés pour calculer les opérations d'un seul lot.
+	 * @return Le nombre de fils du bassin par défaut.
+	 */
+	public static int getDefaultWorkers(int parallelism) {
+		return Math.max(1, Runtime.getRuntime().availableProcessors() / parallelism);
+	}
+
+	/**
+	 * Crée un bassin.
+	 * @param workers Le nombre de lots calculés en même temps.
+	 * @param queueCapacity Le nombre de lots acceptés qui peuvent attendre un fil libre.
+	 * @param maxBacklogMillis Le temps estimé maximal pour terminer le travail accepté, au-delà duquel les lots sont refusés.
+	 */
+	public WorkerPool(int workers, int queueCapacity, long maxBacklogMillis) {
+		if(workers <= 0 || queueCapacity < 0 || maxBacklogMillis <= 0) {
+			throw new IllegalArgumentException("Paramètres du bassin de fils invalides.");
+		}
+		this.workers = workers;
+		this.queueCapacity = queueCapacity;
+		maxBacklogNanos = TimeUnit.MILLISECONDS.toNanos(maxBacklogMillis);
+		executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), new ThreadFactory() {
+			private int created = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "Calcul " + (++created));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Exécute un lot sur un fil du bassin et attend son résultat.
+	 * @param nbOperations Le nombre d'opérations du lot, utilisé pour estimer son temps de calcul.
+	 * @param task Le calcul du lot.
+	 * @return Le résultat du calcul.
+	 * @throws CalculatorOccupiedException Si le lot est refusé, si l'attente est interrompue ou si le calcul lui-même lance cette
+	 * exception. Un calcul dont l'attente est interrompue se termine quand même sur son fil.
+	 */
+	public <T> T execute(final int nbOperations, final Callable<T> task) throws CalculatorOccupiedException {
+		admit(nbOperations);
+		Future<T> future;
+		try {
+			future = executor.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					batchStarted();
+					long start = System.nanoTime();
+					boolean completed = false;
+					try {
+						T result = task.call();
+						completed = true;
+						return result;
+					}
+					finally {
+						batchFinished(nbOperations, completed ? System.nanoTime() - start : -1);
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e) {
+			batchAbandoned(nbOperations);
+			throw new CalculatorOccupiedException();
+		}
+
+		try {
+			return future.get();
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof CalculatorOccupiedException) {
+				throw (CalculatorOccupiedException)e.getCause();
+			}
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			if(e.getCause() instanceof Error) {
+				throw (Error)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CalculatorOccupiedException();
+		}
+	}
+
+	/**
+	 * Récupère la charge actuelle du bassin.
+	 * @return Le rapport de charge.
+	 */
+	public synchronized CalculatorLoadReport getLoad() {
+		rollRateWindow(System.nanoTime());
+		return new CalculatorLoadReport(runningBatches, acceptedBatches - runningBatches, backlogOperations,
+				TimeUnit.NANOSECONDS.toMillis(estimateNanos(backlogOperations)), operationsPerSecond, refusals);
+	}
+
+	/**
+	 * Arrête les fils du bassin. Les lots en attente ne sont pas calculés.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Accepte un lot ou le refuse selon la file et le travail déjà accepté.
+	 * @param nbOperations Le nombre d'opérations du lot.
+	 * @throws CalculatorOccupiedException Si le lot est refusé.
+	 */
+	private synchronized void admit(int nbOperations) throws CalculatorOccupiedException {
+		if(acceptedBatches > 0 && (acceptedBatches >= workers + queueCapacity ||
+				estimateNanos(backlogOperations + nbOperations) > maxBacklogNanos)) {
+			++refusals;
+			throw new CalculatorOccupiedException();
+		}
+		++acceptedBatches;
+		backlogOperations += nbOperations;
+	}
+
+	private synchronized void batchStarted() {
+		++runningBatches;
+	}
+
+	/**
+	 * Retire un lot terminé du travail accepté et met à jour le temps moyen par opération.
+	 * @param nbOperations Le nombre d'opérations du lot.
+	 * @param elapsedNanos La durée du calcul ou -1 si le calcul a échoué.
+	 */
+	private synchronized void batchFinished(int nbOperations, long elapsedNanos) {
+		--runningBatches;
+		batchAbandoned(nbOperations);
+		if(elapsedNanos >= 0 && nbOperations > 0) {
+			double sample = (double)elapsedNanos / nbOperations;
+			nanosPerOperation = nanosPerOperation == 0 ? sample : nanosPerOperation + SMOOTHING * (sample - nanosPerOperation);
+			rollRateWindow(System.nanoTime());
+			windowOperations += nbOperations;
+		}
+	}
+
+	private synchronized void batchAbandoned(int nbOperations) {
+		--acceptedBatches;
+		backlogOperations -= nbOperations;
+	}
+
+	/**
+	 * Estime le temps pour terminer des opérations avec tous les fils du bassin.
+	 * @param nbOperations Le nombre d'opérations.
+	 * @return Le temps estimé en nanosecondes.
+	 */
+	private long estimateNanos(long nbOperations) {
+		return (long)(nbOperations * nanosPerOperation / workers);
+	}
+
+	private void rollRateWindow(long now) {
+		long elapsed = now - windowStartNanos;
+		if(elapsed >= RATE_WINDOW_NANOS) {
+			operationsPerSecond = windowOperations * 1e9 / elapsed;
+			windowStartNanos = now;
+			windowOperations = 0;
+		}
+	}
+}
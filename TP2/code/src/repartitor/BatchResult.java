@@ -0,0 +1,30 @@
+package repartitor;
+
+/**
+ * Le résultat accepté d'un lot et le calcul auquel il appartient. Le calcul est celui de l'appel qui a envoyé le lot, de sorte
+ * que le résultat d'un vote ou d'une isolation est attribué au même calcul que le lot d'origine.
+ * @author dcourcel
+ *
+ */
+public class BatchResult {
+	private final Job job;
+	private final int value;
+
+	/**
+	 * Crée le résultat d'un lot.
+	 * @param job Le calcul du lot ou null s'il n'est pas connu.
+	 * @param value La somme modulo 4000 des résultats acceptés du lot.
+	 */
+	public BatchResult(Job job, int value) {
+		this.job = job;
+		this.value = value;
+	}
+
+	public Job getJob() {
+		return job;
+	}
+
+	public int getValue() {
+		return value;
+	}
+}
@@ -0,0 +1,105 @@
+package repartitor;
+
+/**
+ * Un contrôleur de rétroaction (AIMD) qui apprend la taille de lot à envoyer à un calculateur. Un refus réduit la taille de
+ * façon multiplicative. Un lot accepté l'augmente de façon additive, sauf si le temps aller-retour par opération s'est dégradé
+ * par rapport à la moyenne observée : le calculateur est alors saturé et une taille plus grande n'augmenterait pas le débit.
+ * @author dcourcel
+ *
+ */
+public class BatchSizeController {
+	private static final double DECREASE_FACTOR = 0.5;
+	private static final double ADDITIVE_INCREASE = 1;
+	private static final double SMOOTHING = 0.2;
+	private static final double LATENCY_TOLERANCE = 0.5;
+	private static final int MAX_BATCH_SIZE = 10000;
+	
+	private double batchSize;
+	private double acceptedRate = 0;
+	private double nanosPerOperation = 0;
+	private long batchesAccepted = 0;
+	private long batchesRefused = 0;
+	private long operationsAccepted = 0;
+	
+	/**
+	 * Crée un contrôleur.
+	 * @param initialBatchSize La taille de lot avec laquelle commencer.
+	 */
+	public BatchSizeController(int initialBatchSize) {
+		batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, initialBatchSize));
+	}
+	
+	/**
+	 * Récupère la taille de lot apprise.
+	 * @return Le nombre d'opérations à envoyer dans le prochain lot.
+	 */
+	public synchronized int getBatchSize() {
+		return (int)batchSize;
+	}
+	
+	/**
+	 * Indique qu'un lot a été accepté et calculé par le calculateur.
+	 * @param operationsInBatch Le nombre d'opérations du lot.
+	 * @param roundTripNanos Le temps aller-retour de l'appel en nanosecondes.
+	 */
+	public synchronized void batchAccepted(int operationsInBatch, long roundTripNanos) {
+		++batchesAccepted;
+		operationsAccepted += operationsInBatch;
+		double latencySample = (double)Math.max(1, roundTripNanos) / Math.max(1, operationsInBatch);
+		boolean saturated = nanosPerOperation > 0 && latencySample > nanosPerOperation * (1 + LATENCY_TOLERANCE);
+		if(!saturated && operationsInBatch >= (int)batchSize) {
+			batchSize = Math.min(MAX_BATCH_SIZE, batchSize + ADDITIVE_INCREASE);
+		}
+		nanosPerOperation = nanosPerOperation == 0 ? latencySample : SMOOTHING * latencySample + (1 - SMOOTHING) * nanosPerOperation;
+		updateRate(operationsInBatch / (Math.max(1, roundTripNanos) / 1e9));
+	}
+	
+	/**
+	 * Indique que le calculateur a refusé un lot.
+	 * @param operationsInBatch Le nombre d'opérations du lot refusé.
+	 */
+	public synchronized void batchRefused(int operationsInBatch) {
+		++batchesRefused;
+		batchSize = Math.max(1, Math.min(batchSize, operationsInBatch) * DECREASE_FACTOR);
+		updateRate(0);
+	}
+	
+	/**
+	 * Récupère le taux de refus observé.
+	 * @return La proportion des lots refusés, entre 0 et 1.
+	 */
+	public synchronized double getRefusalRate() {
+		long total = batchesAccepted + batchesRefused;
+		return total == 0 ? 0 : (double)batchesRefused / total;
+	}
+	
+	/**
+	 * Récupère le débit lissé d'opérations acceptées.
+	 * @return Le nombre d'opérations acceptées par seconde d'appel.
+	 */
+	public synchronized double getAcceptedRate() {
+		return acceptedRate;
+	}
+	
+	public synchronized long getBatchesRefused() {
+		return batchesRefused;
+	}
+	
+	public synchronized long getOperationsAccepted() {
+		return operationsAccepted;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("taille de lot %d, refus %.1f%%, %.0f op/s", (int)batchSize, getRefusalRate() * 100, acceptedRate);
+	}
+	
+	private void updateRate(double sample) {
+		if(batchesAccepted + batchesRefused == 1) {
+			acceptedRate = sample;
+		}
+		else {
+			acceptedRate = SMOOTHING * sample + (1 - SMOOTHING) * acceptedRate;
+		}
+	}
+}
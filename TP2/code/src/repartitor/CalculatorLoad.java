@@ -0,0 +1,95 @@
+package repartitor;
+
+import shared.CalculatorLoadReport;
+
+/**
+ * La charge observée d'un calculateur : le nombre de lots envoyés dont le résultat n'est pas encore reçu, ainsi que la latence
+ * et le débit lissés des appels terminés. S'il envoie des battements, la dernière charge annoncée par le calculateur lui-même
+ * s'y ajoute, ce qui inclut le travail reçu d'autres clients.
+ * @author dcourcel
+ *
+ */
+public class CalculatorLoad {
+	private static final double SMOOTHING = 0.3;
+	
+	private int outstandingBatches = 0;
+	private double latencyNanos = 0;
+	private double operationsPerSecond = 0;
+	private long batchesCompleted = 0;
+	private CalculatorLoadReport reportedLoad = null;
+	
+	/**
+	 * Indique qu'un lot vient d'être envoyé au calculateur.
+	 */
+	public synchronized void batchStarted() {
+		++outstandingBatches;
+	}
+	
+	/**
+	 * Indique qu'un appel au calculateur est terminé.
+	 * @param operations Le nombre d'opérations du lot.
+	 * @param roundTripNanos Le temps aller-retour de l'appel en nanosecondes.
+	 * @param succeeded Vrai si le calculateur a retourné un résultat, faux s'il a refusé ou échoué.
+	 */
+	public synchronized void batchFinished(int operations, long roundTripNanos, boolean succeeded) {
+		outstandingBatches = Math.max(0, outstandingBatches - 1);
+		double throughputSample = succeeded ? operations / (Math.max(1, roundTripNanos) / 1e9) : 0;
+		if(batchesCompleted == 0) {
+			latencyNanos = roundTripNanos;
+			operationsPerSecond = throughputSample;
+		}
+		else {
+			latencyNanos = SMOOTHING * roundTripNanos + (1 - SMOOTHING) * latencyNanos;
+			operationsPerSecond = SMOOTHING * throughputSample + (1 - SMOOTHING) * operationsPerSecond;
+		}
+		++batchesCompleted;
+	}
+	
+	public synchronized int getOutstandingBatches() {
+		return outstandingBatches;
+	}
+	
+	/**
+	 * Récupère la latence lissée des appels.
+	 * @return La latence en nanosecondes ou 0 si aucun appel n'est terminé.
+	 */
+	public synchronized double getLatencyNanos() {
+		return latencyNanos;
+	}
+	
+	/**
+	 * Récupère le débit lissé d'opérations calculées.
+	 * @return Le nombre d'opérations par seconde d'appel ou 0 si aucun appel n'est terminé.
+	 */
+	public synchronized double getOperationsPerSecond() {
+		return operationsPerSecond;
+	}
+	
+	public synchronized long getBatchesCompleted() {
+		return batchesCompleted;
+	}
+	
+	/**
+	 * Conserve la dernière charge annoncée par le calculateur dans un battement.
+	 * @param reportedLoad La charge annoncée.
+	 */
+	public synchronized void setReportedLoad(CalculatorLoadReport reportedLoad) {
+		this.reportedLoad = reportedLoad;
+	}
+	
+	/**
+	 * Récupère le nombre de lots que le calculateur a annoncé avoir en cours ou en attente.
+	 * @return Le nombre de lots annoncé ou 0 si le calculateur n'envoie pas de battements.
+	 */
+	public synchronized int getReportedBatches() {
+		return reportedLoad == null ? 0 : reportedLoad.getRunningBatches() + reportedLoad.getQueuedBatches();
+	}
+	
+	/**
+	 * Récupère le temps que le calculateur a annoncé pour terminer le travail qu'il a déjà accepté.
+	 * @return Le temps annoncé en nanosecondes ou 0 si le calculateur n'envoie pas de battements.
+	 */
+	public synchronized double getReportedBacklogNanos() {
+		return reportedLoad == null ? 0 : reportedLoad.getEstimatedBacklogMillis() * 1e6;
+	}
+}
@@ -0,0 +1,123 @@
+package repartitor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Les compteurs d'un calculateur depuis son enregistrement auprès du répartiteur. Contrairement à la charge observée, qui est
+ * lissée et sert à la sélection des calculateurs, les compteurs ne font que s'accumuler. Ils sont mis à jour sans verrou par le
+ * fil du répartiteur et lus par JMX ou par l'affichage périodique des métriques.
+ * @author dcourcel
+ *
+ */
+public class CalculatorMetrics implements CalculatorMetricsMBean {
+	private final String name;
+	private final LongAdder batchesSent = new LongAdder();
+	private final AtomicInteger batchesInFlight = new AtomicInteger();
+	private final LongAdder operationsCompleted = new LongAdder();
+	private final LongAdder refusals = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder mismatches = new LongAdder();
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	/**
+	 * Crée les compteurs d'un calculateur.
+	 * @param name Le nom du calculateur dans le RMIRegistry.
+	 */
+	public CalculatorMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Compte un lot envoyé au calculateur.
+	 */
+	void batchSent() {
+		batchesSent.increment();
+		batchesInFlight.incrementAndGet();
+	}
+
+	/**
+	 * Compte la fin d'un appel au calculateur.
+	 * @param operations Le nombre d'opérations du lot.
+	 * @param roundTripNanos Le temps aller-retour de l'appel.
+	 * @param refused Vrai si le calculateur a refusé le lot parce qu'il était occupé.
+	 * @param failed Vrai si l'appel a échoué pour une autre raison.
+	 */
+	void batchFinished(int operations, long roundTripNanos, boolean refused, boolean failed) {
+		batchesInFlight.decrementAndGet();
+		latencies.record(roundTripNanos);
+		if(refused) {
+			refusals.increment();
+		}
+		else if(failed) {
+			failures.increment();
+		}
+		else {
+			operationsCompleted.add(operations);
+		}
+	}
+
+	/**
+	 * Compte un désaccord entre le résultat du calculateur et celui d'un autre calculateur pour le même lot.
+	 */
+	void mismatchDetected() {
+		mismatches.increment();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getBatchesSent() {
+		return batchesSent.sum();
+	}
+
+	@Override
+	public int getBatchesInFlight() {
+		return batchesInFlight.get();
+	}
+
+	@Override
+	public long getOperationsCompleted() {
+		return operationsCompleted.sum();
+	}
+
+	@Override
+	public long getRefusals() {
+		return refusals.sum();
+	}
+
+	@Override
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	@Override
+	public long getMismatches() {
+		return mismatches.sum();
+	}
+
+	@Override
+	public double getLatencyMedianMillis() {
+		return latencies.getPercentileMillis(50);
+	}
+
+	@Override
+	public double getLatency99Millis() {
+		return latencies.getPercentileMillis(99);
+	}
+
+	@Override
+	public long[] getLatencyHistogram() {
+		return latencies.getCounts();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s : %d lots envoyés, %d en cours, %d opérations, %d refus, %d échecs, %d désaccords, latence " +
+				"médiane %.3f ms, 99e centile %.3f ms", name, getBatchesSent(), getBatchesInFlight(), getOperationsCompleted(),
+				getRefusals(), getFailures(), getMismatches(), getLatencyMedianMillis(), getLatency99Millis());
+	}
+}
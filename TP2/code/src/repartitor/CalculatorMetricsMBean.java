@@ -0,0 +1,56 @@
+package repartitor;
+
+/**
+ * Les compteurs d'un calculateur publiés par JMX.
+ * @author dcourcel
+ *
+ */
+public interface CalculatorMetricsMBean {
+	String getName();
+
+	/**
+	 * @return Le nombre de lots envoyés au calculateur.
+	 */
+	long getBatchesSent();
+
+	/**
+	 * @return Le nombre de lots envoyés dont la réponse n'est pas encore reçue.
+	 */
+	int getBatchesInFlight();
+
+	/**
+	 * @return Le nombre d'opérations des lots pour lesquels le calculateur a retourné un résultat.
+	 */
+	long getOperationsCompleted();
+
+	/**
+	 * @return Le nombre de lots refusés par le calculateur parce qu'il était occupé.
+	 */
+	long getRefusals();
+
+	/**
+	 * @return Le nombre d'appels qui ont échoué pour une autre raison qu'un refus : erreur réseau, échéance dépassée ou silence.
+	 */
+	long getFailures();
+
+	/**
+	 * @return Le nombre de lots vérifiés en mode non sécurisé dont le résultat différait de celui d'un autre calculateur.
+	 */
+	long getMismatches();
+
+	/**
+	 * @return La médiane des temps aller-retour des appels, en millisecondes.
+	 */
+	double getLatencyMedianMillis();
+
+	/**
+	 * @return Le 99e centile des temps aller-retour des appels, en millisecondes.
+	 */
+	double getLatency99Millis();
+
+	/**
+	 * @return Le nombre d'appels de chaque intervalle de temps aller-retour. L'intervalle i compte les temps entre 2^i et
+	 * 2^(i+1) microsecondes.
+	 */
+	long[] getLatencyHistogram();
+}
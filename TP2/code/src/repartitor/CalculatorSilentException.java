@@ -0,0 +1,17 @@
+package repartitor;
+
+import java.rmi.RemoteException;
+
+/**
+ * L'exception reçue par un appel abandonné parce que son calculateur n'a envoyé aucun battement durant la fenêtre de
+ * détection des pannes. La réponse qui arrive ensuite est ignorée.
+ * @author dcourcel
+ *
+ */
+public class CalculatorSilentException extends RemoteException {
+	private static final long serialVersionUID = 1L;
+	
+	public CalculatorSilentException(long windowMillis) {
+		super("Aucun battement reçu du calculateur depuis " + windowMillis + " ms.");
+	}
+}
@@ -2,39 +2,236 @@ package repartitor;
 
 import java.rmi.RemoteException;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
+import repartitor.operations.Operation;
 import shared.CalculationOperations;
 import shared.IOperation;
+import shared.OperationBatch;
 import threadNotifier.IThreadNotifier;
 
-public class CalculatorThread extends Thread implements IThreadNotifier {
+/**
+ * Un appel de calcul envoyé à un calculateur. L'appel est exécuté par le moteur de répartition lorsque start est appelée et
+ * s'ajoute à la collection des appels terminés une fois le résultat reçu. Avec un calculateur joint par le transport NIO, l'appel
+ * n'occupe pas de fil pendant l'attente : la réponse termine l'appel dès qu'elle arrive. Si une échéance est donnée, l'appel
+ * qui n'a pas reçu de réponse à temps se termine avec une CallTimeoutException et la réponse qui arrive ensuite est ignorée.
+ * @author dcourcel
+ *
+ */
+public class CalculatorThread implements Runnable, IThreadNotifier {
 	
 	private final IOperation[] operations; 
 	private int resultats;
+	private int[] eachResult = null;
+	private boolean requestEachResult = false;
+	private boolean packedWireFormat = false;
 	private final CalculationOperations calculatorCaller;
+	private final RegisteredCalculator registeredCalculator;
+	private final DispatchEngine dispatchEngine;
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+	private volatile boolean started = false;
+	private long startNanos = 0;
+	private long deadlineNanos = 0;
+	private ScheduledExecutorService watchdog = null;
+	private ScheduledFuture<?> expiry = null;
+	private long roundTripNanos = 0;
 	private Throwable exceptionReceived = null;
 	private Collection<IThreadNotifier> finishedThreads;
+	private Job job = null;
 	
-	public CalculatorThread(IOperation[] ops, CalculationOperations calculatorCaller) {
-		if(ops == null || calculatorCaller == null) {
+	public CalculatorThread(IOperation[] ops, CalculationOperations calculatorCaller, DispatchEngine dispatchEngine) {
+		this(ops, calculatorCaller, null, dispatchEngine);
+	}
+	
+	public CalculatorThread(IOperation[] ops, RegisteredCalculator calculator, DispatchEngine dispatchEngine) {
+		this(ops, calculator.getCalculator(), calculator, dispatchEngine);
+	}
+	
+	private CalculatorThread(IOperation[] ops, CalculationOperations calculatorCaller, RegisteredCalculator registeredCalculator,
+			DispatchEngine dispatchEngine) {
+		if(ops == null || calculatorCaller == null || dispatchEngine == null) {
 			throw new NullPointerException("A parameter for the CalculatorThread is null.");
 		}
 		operations = ops;
 		this.calculatorCaller = calculatorCaller;
+		this.registeredCalculator = registeredCalculator;
+		this.dispatchEngine = dispatchEngine;
+	}
+	
+	/**
+	 * Demande au calculateur le résultat de chaque opération plutôt que seulement leur somme.
+	 * @param requestEachResult Vrai pour demander le résultat de chaque opération.
+	 */
+	public void setRequestEachResult(boolean requestEachResult) {
+		this.requestEachResult = requestEachResult;
+	}
+	
+	/**
+	 * Envoie les opérations au calculateur sous forme de lot compact plutôt que comme un tableau d'objets sérialisés.
+	 * @param packedWireFormat Vrai pour envoyer un lot compact.
+	 */
+	public void setPackedWireFormat(boolean packedWireFormat) {
+		this.packedWireFormat = packedWireFormat;
+	}
+	
+	/**
+	 * Donne une échéance à l'appel. Si aucune réponse n'est reçue avant l'échéance, l'appel se termine avec une
+	 * CallTimeoutException.
+	 * @param deadlineNanos Le temps accordé à l'appel à partir de son démarrage, en nanosecondes.
+	 * @param watchdog L'exécuteur qui abandonne l'appel à l'échéance.
+	 */
+	public void setDeadline(long deadlineNanos, ScheduledExecutorService watchdog) {
+		this.deadlineNanos = deadlineNanos;
+		this.watchdog = watchdog;
+	}
+	
+	/**
+	 * Associe l'appel au calcul dont il envoie les opérations.
+	 * @param job Le calcul ou null.
+	 */
+	public void setJob(Job job) {
+		this.job = job;
+	}
+	
+	public Job getJob() {
+		return job;
 	}
 	
 	public void setFinishedCollection(Collection<IThreadNotifier> finishedThreads) {
 		this.finishedThreads = finishedThreads;
 	}
 	
+	@Override
+	public void start() {
+		started = true;
+		startNanos = System.nanoTime();
+		if(watchdog != null) {
+			expiry = watchdog.schedule(new Runnable() {
+				@Override
+				public void run() {
+					expire();
+				}
+			}, deadlineNanos, TimeUnit.NANOSECONDS);
+		}
+		dispatchEngine.execute(this);
+	}
+	
+	@Override
+	public void join() throws InterruptedException {
+		finished.await();
+	}
+	
+	@Override
+	public Thread.State getState() {
+		if(finished.getCount() == 0) {
+			return Thread.State.TERMINATED;
+		}
+		return started ? Thread.State.RUNNABLE : Thread.State.NEW;
+	}
+	
 	@Override
 	public void run(){
+		final long startTime = System.nanoTime();
+		if(calculatorCaller instanceof NioCalculatorClient) {
+			CompletableFuture<int[]> reply = ((NioCalculatorClient)calculatorCaller).calculateAsync(Operation.pack(operations),
+					requestEachResult);
+			reply.whenComplete(new BiConsumer<int[], Throwable>() {
+				@Override
+				public void accept(int[] results, Throwable exception) {
+					complete(results, exception != null && exception.getCause() != null ? exception.getCause() : exception, startTime);
+				}
+			});
+			return;
+		}
+		int[] results = null;
+		Throwable exception = null;
 		try {
-			resultats = calculatorCaller.calculate(operations);
+			OperationBatch batch = packedWireFormat ? Operation.pack(operations) : null;
+			if(requestEachResult) {
+				results = packedWireFormat ? calculatorCaller.calculateEach(batch) : calculatorCaller.calculateEach(operations);
+			}
+			else {
+				results = new int[] { packedWireFormat ? calculatorCaller.calculate(batch) : calculatorCaller.calculate(operations) };
+			}
 		}
 		catch (RemoteException e) {
-			exceptionReceived = e.getCause();
+			exception = e.getCause() != null ? e.getCause() : e;
+		}
+		complete(results, exception, startTime);
+	}
+	
+	/**
+	 * Abandonne l'appel s'il n'est pas encore terminé parce qu'il a dépassé son échéance. Appelée à l'échéance de l'appel.
+	 */
+	public void expire() {
+		abandon(new CallTimeoutException(TimeUnit.NANOSECONDS.toMillis(deadlineNanos)));
+	}
+	
+	/**
+	 * Abandonne l'appel s'il n'est pas encore terminé. L'appel se termine avec l'exception donnée ; la réponse du calculateur, si
+	 * elle arrive plus tard, est ignorée.
+	 * @param cause La raison de l'abandon.
+	 */
+	public void abandon(RemoteException cause) {
+		if(!completed.compareAndSet(false, true)) {
+			return;
+		}
+		if(expiry != null) {
+			expiry.cancel(false);
+		}
+		exceptionReceived = cause;
+		finish(startNanos);
+	}
+	
+	/**
+	 * Conserve la réponse du calculateur, à moins que l'appel ait déjà été abandonné.
+	 * @param results Le résultat de chaque opération ou, si le résultat de chaque opération n'a pas été demandé, un tableau qui
+	 * ne contient que la somme. Ignoré si exception n'est pas null.
+	 * @param exception L'exception reçue ou null si l'appel a réussi.
+	 * @param startTime Le moment où l'appel a été envoyé.
+	 */
+	private void complete(int[] results, Throwable exception, long startTime) {
+		if(!completed.compareAndSet(false, true)) {
+			return;
+		}
+		if(expiry != null) {
+			expiry.cancel(false);
+		}
+		if(exception != null) {
+			exceptionReceived = exception;
+		}
+		else if(requestEachResult) {
+			setEachResult(results);
 		}
+		else {
+			resultats = results[0];
+		}
+		finish(startTime);
+	}
+	
+	private void setEachResult(int[] results) {
+		eachResult = results;
+		int sum = 0;
+		for(int result : eachResult) {
+			sum += result;
+		}
+		resultats = sum;
+	}
+	
+	/**
+	 * Termine l'appel une fois la réponse reçue ou l'échéance passée et l'ajoute aux appels terminés.
+	 * @param startTime Le moment où l'appel a été envoyé.
+	 */
+	private void finish(long startTime) {
+		roundTripNanos = System.nanoTime() - startTime;
+		finished.countDown();
 		
 		synchronized (finishedThreads) {
 			finishedThreads.add(this);
@@ -46,6 +243,14 @@ public class CalculatorThread extends Thread implements IThreadNotifier {
 		return resultats;
 	}
 	
+	/**
+	 * Récupère le résultat de chaque opération, si setRequestEachResult a été appelée.
+	 * @return Le résultat modulo 4000 de chaque opération ou null s'il n'a pas été demandé ou reçu.
+	 */
+	public int[] getEachResult(){
+		return eachResult;
+	}
+	
 	public IOperation[] getOperations(){
 		return operations;
 	}
@@ -54,7 +259,23 @@ public class CalculatorThread extends Thread implements IThreadNotifier {
 		return exceptionReceived;
 	}
 	
+	/**
+	 * Récupère la durée de l'appel au calculateur.
+	 * @return Le temps aller-retour en nanosecondes ou 0 si l'appel n'est pas terminé.
+	 */
+	public long getRoundTripNanos(){
+		return roundTripNanos;
+	}
+	
 	public CalculationOperations getCalculatorCaller(){
 		return calculatorCaller;
 	}
+	
+	/**
+	 * Récupère le calculateur de la liste du répartiteur auquel l'appel est fait.
+	 * @return Le calculateur ou null si l'appel a été créé directement avec un CalculationOperations.
+	 */
+	public RegisteredCalculator getRegisteredCalculator(){
+		return registeredCalculator;
+	}
 }
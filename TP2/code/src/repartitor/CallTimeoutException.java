@@ -0,0 +1,17 @@
+package repartitor;
+
+import java.rmi.RemoteException;
+
+/**
+ * L'exception reçue par un appel abandonné parce que le calculateur n'a pas répondu avant l'échéance de l'appel. La réponse
+ * qui arrive après l'échéance est ignorée.
+ * @author dcourcel
+ *
+ */
+public class CallTimeoutException extends RemoteException {
+	private static final long serialVersionUID = 1L;
+	
+	public CallTimeoutException(long deadlineMillis) {
+		super("Aucune réponse du calculateur après " + deadlineMillis + " ms.");
+	}
+}
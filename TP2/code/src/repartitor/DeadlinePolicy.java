@@ -0,0 +1,155 @@
+package repartitor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Détermine l'échéance de chaque appel à un calculateur et ce qui arrive au calculateur lorsqu'un appel la dépasse. L'échéance
+ * est soit fixe, soit estimée à partir du coût du lot et de la charge observée du calculateur : le temps prévu pour le lot,
+ * multiplié par une marge, sans descendre sous un minimum. Tant qu'aucun appel au calculateur n'est terminé, une échéance
+ * initiale généreuse est utilisée. L'échéance estimée n'est pas bornée : un calculateur dont les lots sont légitimement longs
+ * doit pouvoir les terminer, sans quoi le même lot serait abandonné et recalculé sans fin. Un appel qui dépasse son échéance
+ * est abandonné, ses opérations sont remises dans la file et le calculateur est retiré ou suspendu pour une durée fixe.
+ * @author dcourcel
+ *
+ */
+public class DeadlinePolicy {
+	public static final String OFF_MODE = "off";
+	public static final String AUTO_MODE = "auto";
+	public static final String UNBIND_ON_TIMEOUT = "unbind";
+	public static final String SUSPEND_ON_TIMEOUT = "suspend";
+	public static final double DEFAULT_MULTIPLE = 8;
+	public static final long DEFAULT_MIN_MILLIS = 1000;
+	public static final long DEFAULT_INITIAL_MILLIS = 10000;
+	public static final long DEFAULT_SUSPENSION_MILLIS = 10000;
+
+	private final long fixedNanos;
+	private final double multiple;
+	private final long minNanos;
+	private final long initialNanos;
+	private long suspensionMillis = DEFAULT_SUSPENSION_MILLIS;
+
+	private DeadlinePolicy(long fixedNanos, double multiple, long minNanos, long initialNanos) {
+		this.fixedNanos = fixedNanos;
+		this.multiple = multiple;
+		this.minNanos = minNanos;
+		this.initialNanos = initialNanos;
+	}
+
+	/**
+	 * Crée une politique dont l'échéance est la même pour tous les appels.
+	 * @param deadlineMillis L'échéance en millisecondes.
+	 * @return La politique créée.
+	 */
+	public static DeadlinePolicy fixed(long deadlineMillis) {
+		if(deadlineMillis <= 0) {
+			throw new IllegalArgumentException("L'échéance doit être un entier positif.");
+		}
+		return new DeadlinePolicy(TimeUnit.MILLISECONDS.toNanos(deadlineMillis), 0, 0, 0);
+	}
+
+	/**
+	 * Crée une politique dont l'échéance est estimée à partir de la charge observée de chaque calculateur.
+	 * @param multiple La marge appliquée au temps prévu pour un lot, plus grande que 1.
+	 * @param minMillis L'échéance minimale en millisecondes.
+	 * @param initialMillis L'échéance utilisée tant qu'aucun appel au calculateur n'est terminé.
+	 * @return La politique créée.
+	 */
+	public static DeadlinePolicy estimated(double multiple, long minMillis, long initialMillis) {
+		if(multiple <= 1 || minMillis <= 0 || initialMillis <= 0) {
+			throw new IllegalArgumentException("Paramètres d'échéance invalides.");
+		}
+		return new DeadlinePolicy(-1, multiple, TimeUnit.MILLISECONDS.toNanos(minMillis), TimeUnit.MILLISECONDS.toNanos(initialMillis));
+	}
+
+	/**
+	 * Crée une politique à partir de sa description textuelle : off, une échéance fixe en millisecondes, auto ou auto:marge.
+	 * @param description La description de la politique.
+	 * @return La politique créée ou null si les appels n'ont pas d'échéance.
+	 * @throws IllegalArgumentException Si la description est invalide.
+	 */
+	public static DeadlinePolicy fromDescription(String description) {
+		try {
+			if(description.equals(OFF_MODE)) {
+				return null;
+			}
+			else if(description.equals(AUTO_MODE)) {
+				return estimated(DEFAULT_MULTIPLE, DEFAULT_MIN_MILLIS, DEFAULT_INITIAL_MILLIS);
+			}
+			else if(description.startsWith(AUTO_MODE + ":")) {
+				return estimated(Double.parseDouble(description.substring(AUTO_MODE.length() + 1)), DEFAULT_MIN_MILLIS,
+						DEFAULT_INITIAL_MILLIS);
+			}
+			return fixed(Long.parseLong(description));
+		}
+		catch(NumberFormatException e) {
+		}
+		catch(IllegalArgumentException e) {
+		}
+		throw new IllegalArgumentException("Échéance invalide : " + description);
+	}
+
+	/**
+	 * Choisit ce qui arrive à un calculateur dont un appel dépasse son échéance à partir de sa description textuelle : unbind
+	 * (retiré comme un calculateur en panne), suspend ou suspend:ms (suspendu pour la durée par défaut ou donnée).
+	 * @param description La description de la réaction.
+	 * @throws IllegalArgumentException Si la description est invalide.
+	 */
+	public void setTimeoutReaction(String description) {
+		if(description.equals(UNBIND_ON_TIMEOUT)) {
+			suspensionMillis = 0;
+			return;
+		}
+		else if(description.equals(SUSPEND_ON_TIMEOUT)) {
+			suspensionMillis = DEFAULT_SUSPENSION_MILLIS;
+			return;
+		}
+		else if(description.startsWith(SUSPEND_ON_TIMEOUT + ":")) {
+			try {
+				long millis = Long.parseLong(description.substring(SUSPEND_ON_TIMEOUT.length() + 1));
+				if(millis > 0) {
+					suspensionMillis = millis;
+					return;
+				}
+			}
+			catch(NumberFormatException e) {
+			}
+		}
+		throw new IllegalArgumentException("Réaction à une échéance dépassée invalide : " + description);
+	}
+
+	/**
+	 * Indique pour combien de temps un calculateur dont un appel a dépassé son échéance est suspendu.
+	 * @return La durée de la suspension en millisecondes ou 0 si le calculateur est plutôt retiré.
+	 */
+	public long getSuspensionMillis() {
+		return suspensionMillis;
+	}
+
+	/**
+	 * Calcule l'échéance d'un appel. Le temps prévu pour le lot est la plus longue de la latence lissée du calculateur et du
+	 * temps nécessaire pour calculer les opérations du lot à son débit lissé.
+	 * @param calculator Le calculateur auquel le lot est envoyé.
+	 * @param nbOperations Le nombre d'opérations du lot.
+	 * @return Le temps accordé à l'appel en nanosecondes.
+	 */
+	public long getDeadlineNanos(RegisteredCalculator calculator, int nbOperations) {
+		if(fixedNanos > 0) {
+			return fixedNanos;
+		}
+		CalculatorLoad load = calculator.getLoad();
+		if(load.getBatchesCompleted() == 0) {
+			return initialNanos;
+		}
+		double expectedNanos = load.getLatencyNanos();
+		if(load.getOperationsPerSecond() > 0) {
+			expectedNanos = Math.max(expectedNanos, nbOperations / load.getOperationsPerSecond() * 1e9);
+		}
+		return Math.max(minNanos, (long)(multiple * expectedNanos));
+	}
+
+	@Override
+	public String toString() {
+		String deadline = fixedNanos > 0 ? TimeUnit.NANOSECONDS.toMillis(fixedNanos) + " ms" : AUTO_MODE + ":" + multiple;
+		return deadline + ", " + (suspensionMillis > 0 ? SUSPEND_ON_TIMEOUT + ":" + suspensionMillis : UNBIND_ON_TIMEOUT);
+	}
+}
@@ -0,0 +1,153 @@
+package repartitor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Le moteur qui exécute les appels distants aux calculateurs. Trois modes sont offerts : un fil créé pour chaque lot (le
+ * fonctionnement d'origine), un bassin borné de fils de plateforme et des fils virtuels (Java 21 et plus). Le moteur compte
+ * le nombre d'appels présentement en cours.
+ * @author dcourcel
+ *
+ */
+public class DispatchEngine {
+	public static final String THREAD_MODE = "thread";
+	public static final String POOL_MODE = "pool";
+	public static final String VIRTUAL_MODE = "virtual";
+	public static final int DEFAULT_POOL_SIZE = 64;
+	
+	private final String description;
+	private final Executor executor;
+	private final ExecutorService executorToShutdown;
+	private final AtomicInteger callsInFlight = new AtomicInteger();
+	private final AtomicLong callsSubmitted = new AtomicLong();
+	
+	private DispatchEngine(String description, Executor executor, ExecutorService executorToShutdown) {
+		this.description = description;
+		this.executor = executor;
+		this.executorToShutdown = executorToShutdown;
+	}
+	
+	/**
+	 * Crée un moteur qui démarre un nouveau fil de plateforme pour chaque appel.
+	 * @return Le moteur créé.
+	 */
+	public static DispatchEngine threadPerCall() {
+		return new DispatchEngine(THREAD_MODE, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				new Thread(command).start();
+			}
+		}, null);
+	}
+	
+	/**
+	 * Crée un moteur qui exécute les appels sur un bassin borné de fils de plateforme.
+	 * @param poolSize Le nombre de fils du bassin.
+	 * @return Le moteur créé.
+	 */
+	public static DispatchEngine pool(int poolSize) {
+		if(poolSize <= 0) {
+			throw new IllegalArgumentException("La taille du bassin doit être un entier positif.");
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+		return new DispatchEngine(POOL_MODE + ":" + poolSize, pool, pool);
+	}
+	
+	/**
+	 * Crée un moteur qui exécute chaque appel dans un fil virtuel.
+	 * @return Le moteur créé.
+	 * @throws IllegalArgumentException Si la machine virtuelle ne supporte pas les fils virtuels.
+	 */
+	public static DispatchEngine virtualThreads() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService virtualExecutor = (ExecutorService)factory.invoke(null);
+			return new DispatchEngine(VIRTUAL_MODE, virtualExecutor, virtualExecutor);
+		}
+		catch(ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Les fils virtuels ne sont pas supportés par cette machine virtuelle (Java 21 requis).");
+		}
+	}
+	
+	/**
+	 * Crée un moteur à partir de sa description textuelle : thread, pool, pool:N ou virtual.
+	 * @param description La description du moteur.
+	 * @return Le moteur créé.
+	 * @throws IllegalArgumentException Si la description est invalide.
+	 */
+	public static DispatchEngine fromDescription(String description) {
+		if(description.equals(THREAD_MODE)) {
+			return threadPerCall();
+		}
+		else if(description.equals(VIRTUAL_MODE)) {
+			return virtualThreads();
+		}
+		else if(description.equals(POOL_MODE)) {
+			return pool(DEFAULT_POOL_SIZE);
+		}
+		else if(description.startsWith(POOL_MODE + ":")) {
+			try {
+				return pool(Integer.parseInt(description.substring(POOL_MODE.length() + 1)));
+			}
+			catch(NumberFormatException e) {
+				throw new IllegalArgumentException("La taille du bassin doit être un entier positif.");
+			}
+		}
+		throw new IllegalArgumentException("Mode de répartition invalide : " + description);
+	}
+	
+	/**
+	 * Exécute un appel de façon asynchrone.
+	 * @param call L'appel à exécuter.
+	 */
+	public void execute(final Runnable call) {
+		callsInFlight.incrementAndGet();
+		callsSubmitted.incrementAndGet();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					call.run();
+				}
+				finally {
+					callsInFlight.decrementAndGet();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Indique le nombre d'appels qui ont été soumis et qui ne sont pas encore terminés.
+	 * @return Le nombre d'appels en cours.
+	 */
+	public int getCallsInFlight() {
+		return callsInFlight.get();
+	}
+	
+	/**
+	 * Indique le nombre total d'appels soumis depuis la création du moteur.
+	 * @return Le nombre d'appels soumis.
+	 */
+	public long getCallsSubmitted() {
+		return callsSubmitted.get();
+	}
+	
+	/**
+	 * Arrête les fils du moteur une fois les appels en cours terminés.
+	 */
+	public void shutdown() {
+		if(executorToShutdown != null) {
+			executorToShutdown.shutdown();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return description;
+	}
+}
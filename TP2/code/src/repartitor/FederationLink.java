@@ -0,0 +1,265 @@
+package repartitor;
+
+import java.io.IOException;
+import java.rmi.AccessException;
+import java.rmi.AlreadyBoundException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UID;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.CalculatorLoadReport;
+import shared.CalculatorOccupiedException;
+import shared.IOperation;
+import shared.OperationBatch;
+import shared.RepartitorRegistering;
+
+/**
+ * Le lien d'un répartiteur enfant avec son répartiteur parent. Le lien s'enregistre auprès du parent comme un calculateur, par
+ * le protocole RepartitorRegistering habituel, et annonce une capacité d'une tranche d'opérations. Chaque lot reçu du parent est
+ * donc une tranche de son calcul : elle est soumise au serveur de calculs du répartiteur enfant, qui la répartit sur ses propres
+ * calculateurs, et la somme modulo 4000 de la tranche est retournée au parent. Le parent additionne les sommes des tranches
+ * comme celles de n'importe quel calculateur et ne traite qu'un appel par tranche plutôt qu'un appel par lot.
+ * Le lien refuse une tranche lorsque le répartiteur enfant n'a pas assez de calculateurs ou qu'il a déjà le nombre maximal de
+ * tranches en cours, et envoie des battements au parent avec sa charge, comme un calculateur. Le résultat de chaque opération
+ * n'est pas offert : le lien s'annonce comme un calculateur qui ne retourne que des sommes, pour que le parent ne lui appelle
+ * jamais calculateEach, même avec la cache ou en mode non sécurisé.
+ * @author dcourcel
+ *
+ */
+public class FederationLink implements CalculationOperations {
+	public static final int DEFAULT_SHARD_SIZE = 500;
+	public static final long HEARTBEAT_MS = 250;
+	private static final int MAX_SHARDS_IN_FLIGHT = 2 * Repartitor.DEFAULT_BATCHES_PER_CALCULATOR;
+
+	private final Repartitor repartitor;
+	private final int shardSize;
+	private final Registry parentRegistry;
+	private final Remote objectExported;
+	private RepartitorRegistering parent = null;
+	private String bindName = null;
+	private final AtomicInteger shardsInFlight = new AtomicInteger();
+	private final AtomicLong operationsInFlight = new AtomicLong();
+	private final AtomicLong operationsCompleted = new AtomicLong();
+	private final AtomicLong shardsReceived = new AtomicLong();
+	private final AtomicLong refusals = new AtomicLong();
+	private long lastReportNanos = System.nanoTime();
+	private long lastReportOperations = 0;
+	private double operationsPerSecond = 0;
+
+	/**
+	 * Crée le lien et l'exporte pour qu'il puisse être appelé par le parent.
+	 * @param repartitor Le répartiteur enfant, dont le serveur de calculs doit être démarré.
+	 * @param parentHost L'hôte du répartiteur parent.
+	 * @param parentPort Le port du RMIRegistry du répartiteur parent.
+	 * @param shardSize Le nombre d'opérations des tranches demandées au parent.
+	 * @throws RemoteException S'il est impossible d'exporter le lien.
+	 */
+	public FederationLink(Repartitor repartitor, String parentHost, int parentPort, int shardSize) throws RemoteException {
+		this.repartitor = repartitor;
+		this.shardSize = shardSize;
+		objectExported = UnicastRemoteObject.exportObject(this, 0);
+		parentRegistry = LocateRegistry.getRegistry(parentHost, parentPort);
+	}
+
+	/**
+	 * Enregistre le répartiteur enfant auprès du parent comme un calculateur dont la capacité est d'une tranche et qui ne retourne
+	 * que des sommes. Le parent envoie des lots de sa capacité plus une opération lorsque la taille des lots est statique.
+	 * @throws NotBoundException Si le parent n'est pas dans son RMIRegistry.
+	 * @throws AlreadyBoundException Si le nom choisi pour l'enregistrement est déjà utilisé.
+	 * @throws RemoteException Si la communication avec le parent échoue.
+	 */
+	public void register() throws NotBoundException, AlreadyBoundException, RemoteException {
+		bindName = CalculationOperations.CALCULATOR_PREFIX + "Repartiteur" + new UID().toString();
+		parent = (RepartitorRegistering)parentRegistry.lookup(RepartitorRegistering.REPARTITOR_NAME);
+		parent.bindSomething(bindName, objectExported, new CalculatorCapabilities(shardSize - 1, true));
+	}
+
+	/**
+	 * Enlève le répartiteur enfant des calculateurs du parent et arrête l'exportation du lien. Les tranches en cours ne sont pas
+	 * attendues.
+	 */
+	public void close() {
+		try {
+			if(parent != null) {
+				parent.unbindSomething(bindName);
+			}
+		}
+		catch(NotBoundException e) {
+		}
+		catch(RemoteException e) {
+			System.out.println("Impossible de se retirer du répartiteur parent. " + e.getMessage());
+		}
+		try {
+			UnicastRemoteObject.unexportObject(this, true);
+		}
+		catch(NoSuchObjectException e) {
+		}
+	}
+
+	/**
+	 * Envoie au parent un battement avec la charge actuelle du répartiteur enfant : les tranches en cours, leurs opérations et
+	 * le débit mesuré depuis le dernier battement.
+	 * @return Vrai si le parent connaît encore le répartiteur enfant, faux s'il doit s'enregistrer de nouveau.
+	 * @throws RemoteException Si la communication avec le parent échoue.
+	 */
+	public boolean sendHeartbeat() throws RemoteException {
+		long now = System.nanoTime();
+		long completed = operationsCompleted.get();
+		double sample = (completed - lastReportOperations) * 1e9 / Math.max(1, now - lastReportNanos);
+		operationsPerSecond = completed == lastReportOperations && shardsInFlight.get() == 0 ? operationsPerSecond : sample;
+		lastReportNanos = now;
+		lastReportOperations = completed;
+		long backlog = operationsInFlight.get();
+		long backlogMillis = operationsPerSecond > 0 ? (long)(backlog * 1000 / operationsPerSecond) : 0;
+		return parent.heartbeat(bindName, new CalculatorLoadReport(shardsInFlight.get(), 0, backlog, backlogMillis,
+				operationsPerSecond, refusals.get()));
+	}
+
+	/**
+	 * Calcule une tranche du calcul du parent sur les calculateurs du répartiteur enfant. L'appel se termine lorsque toutes
+	 * les opérations de la tranche sont calculées.
+	 * @param operations Les opérations de la tranche.
+	 * @return La somme modulo 4000 des résultats de la tranche.
+	 * @throws CalculatorOccupiedException Si le répartiteur enfant n'a pas assez de calculateurs ou trop de tranches en cours.
+	 * @throws RemoteException Si le serveur de calculs est arrêté ou si l'attente est interrompue.
+	 */
+	@Override
+	public int calculate(IOperation[] operations) throws CalculatorOccupiedException, RemoteException {
+		if(shardsInFlight.incrementAndGet() > MAX_SHARDS_IN_FLIGHT || !hasEnoughCalculators()) {
+			shardsInFlight.decrementAndGet();
+			refusals.incrementAndGet();
+			throw new CalculatorOccupiedException();
+		}
+		operationsInFlight.addAndGet(operations.length);
+		try {
+			Job shard = repartitor.submitJob(operations, "tranche " + shardsReceived.incrementAndGet(), 1);
+			int result = shard.awaitResult();
+			operationsCompleted.addAndGet(operations.length);
+			return result;
+		}
+		catch(IllegalStateException e) {
+			throw new RemoteException(e.getMessage());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Calcul de la tranche interrompu.");
+		}
+		catch(IOException e) {
+			throw new RemoteException("Calcul de la tranche interrompu.", e);
+		}
+		finally {
+			operationsInFlight.addAndGet(-operations.length);
+			shardsInFlight.decrementAndGet();
+		}
+	}
+
+	@Override
+	public int calculate(OperationBatch operations) throws CalculatorOccupiedException, RemoteException {
+		return calculate(Operation.unpack(operations));
+	}
+
+	@Override
+	public int[] calculateEach(IOperation[] operations) throws CalculatorOccupiedException, RemoteException {
+		throw new RemoteException("Un répartiteur enfant ne retourne que la somme de chaque tranche.");
+	}
+
+	@Override
+	public int[] calculateEach(OperationBatch operations) throws CalculatorOccupiedException, RemoteException {
+		return calculateEach(Operation.unpack(operations));
+	}
+
+	@Override
+	public int getNumberOfOperationsSupported() {
+		return shardSize - 1;
+	}
+
+	/**
+	 * Indique le nombre de tranches acceptées depuis la création du lien.
+	 * @return Le nombre de tranches reçues du parent, sans celles refusées.
+	 */
+	public long getShardsReceived() {
+		return shardsReceived.get();
+	}
+
+	private boolean hasEnoughCalculators() throws RemoteException {
+		try {
+			return repartitor.awaitCalculators(0);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Calcul de la tranche interrompu.");
+		}
+	}
+
+	/**
+	 * Enregistre le répartiteur enfant auprès du parent puis envoie des battements jusqu'à l'interruption du fil. Si le parent ne
+	 * connaît plus le répartiteur enfant, il s'enregistre de nouveau.
+	 * @throws NotBoundException Si le parent n'est pas dans son RMIRegistry.
+	 * @throws AlreadyBoundException Si le nom choisi pour l'enregistrement est déjà utilisé.
+	 * @throws RemoteException Si la communication avec le parent échoue.
+	 */
+	public void run() throws NotBoundException, AlreadyBoundException, RemoteException {
+		register();
+		System.out.println("Répartiteur enfant enregistré auprès du parent. Tranches de " + shardSize + " opérations.");
+		try {
+			while(true) {
+				TimeUnit.MILLISECONDS.sleep(HEARTBEAT_MS);
+				if(!sendHeartbeat()) {
+					System.out.println("Le répartiteur parent ne connaît plus le répartiteur enfant. Nouvel enregistrement.");
+					register();
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Enregistre un répartiteur comme répartiteur enfant auprès de son parent et calcule les tranches que le parent lui envoie,
+	 * jusqu'à l'arrêt du programme. Le répartiteur enfant se retire du parent à l'arrêt. Le programme se termine si le parent ne
+	 * peut être joint.
+	 * @param repartitor Le répartiteur, dont le serveur de calculs est démarré.
+	 * @param options Les options du répartiteur.
+	 */
+	public static void runUntilShutdown(Repartitor repartitor, RepartitorOptions options) {
+		try {
+			final FederationLink link = new FederationLink(repartitor, options.getParentHost(), options.getParentPort(),
+					options.getShardSize());
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					link.close();
+				}
+			});
+			link.run();
+		}
+		catch(NotBoundException e) {
+			System.out.println("Le répartiteur parent n'existe pas dans son RMIRegistry.");
+			System.exit(Repartitor.REMOTE_EXCEPTION_CODE);
+		}
+		catch(AlreadyBoundException e) {
+			System.out.println("Le nom choisi pour l'enregistrement auprès du parent est déjà utilisé.");
+			System.exit(Repartitor.REMOTE_EXCEPTION_CODE);
+		}
+		catch(AccessException e) {
+			System.out.println("L'accès au RMIRegistry du parent a été refusé. " + e.getMessage());
+			System.exit(Repartitor.ACCESS_EXCEPTION_CODE);
+		}
+		catch(RemoteException e) {
+			System.out.println("Erreur de communication avec le répartiteur parent. " + e.getMessage());
+			System.exit(Repartitor.REMOTE_EXCEPTION_CODE);
+		}
+	}
+}
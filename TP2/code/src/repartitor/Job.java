@@ -0,0 +1,232 @@
+package repartitor;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un calcul soumis au répartiteur : la file de ses opérations, son poids pour le partage des calculateurs et la somme modulo
+ * 4000 de ses résultats. Les lots d'un calcul ne contiennent que ses propres opérations. Le temps virtuel du calcul avance du
+ * nombre d'opérations envoyées divisé par son poids ; le répartiteur envoie toujours le prochain lot du calcul dont le temps
+ * virtuel est le plus petit, de sorte que chaque calcul reçoit une part des calculateurs proportionnelle à son poids.
+ * Seul le fil du répartiteur modifie un calcul ; les autres fils peuvent attendre son résultat et lire ses compteurs, qui sont
+ * aussi publiés par JMX.
+ * @author dcourcel
+ *
+ */
+public class Job implements JobMBean {
+	private static final long VIRTUAL_TIME_SCALE = 1000000;
+
+	private final String name;
+	private final int weight;
+	private final OperationQueue operations;
+	private final long submittedNanos = System.nanoTime();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private int result;
+	private long virtualTime = 0;
+	private volatile int operationsOutstanding = 0;
+	private volatile int batchesInFlight = 0;
+	private volatile long operationsDispatched = 0;
+	private volatile long batchesDispatched = 0;
+	private volatile long firstBatchNanos = -1;
+	private volatile long finishedNanos = 0;
+	private volatile IOException error = null;
+
+	/**
+	 * Crée un calcul.
+	 * @param name Le nom du calcul ou null.
+	 * @param weight Le poids du calcul, au moins 1.
+	 * @param operations La file des opérations du calcul.
+	 * @param partialResult La somme des opérations déjà calculées, 0 pour un nouveau calcul.
+	 */
+	Job(String name, int weight, OperationQueue operations, int partialResult) {
+		if(weight < 1) {
+			throw new IllegalArgumentException("Poids invalide : " + weight);
+		}
+		this.name = name == null ? "" : name;
+		this.weight = weight;
+		this.operations = operations;
+		this.result = partialResult;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Attend la fin du calcul.
+	 * @return Le résultat du calcul.
+	 * @throws IOException Si la lecture des opérations du calcul a échoué.
+	 * @throws InterruptedException Si l'attente est interrompue.
+	 */
+	public int awaitResult() throws IOException, InterruptedException {
+		finished.await();
+		if(error != null) {
+			throw error;
+		}
+		return result;
+	}
+
+	/**
+	 * Attend la fin du calcul pendant au plus le délai donné.
+	 * @param timeoutMillis Le délai d'attente en millisecondes.
+	 * @return Vrai si le calcul est terminé.
+	 * @throws InterruptedException Si l'attente est interrompue.
+	 */
+	public boolean awaitFinish(long timeoutMillis) throws InterruptedException {
+		return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public boolean isFinished() {
+		return finished.getCount() == 0;
+	}
+
+	/**
+	 * Récupère l'erreur qui a interrompu le calcul.
+	 * @return L'erreur de lecture des opérations ou null si le calcul n'a pas échoué.
+	 */
+	public IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Indique le temps écoulé entre la soumission du calcul et sa fin, ou jusqu'à maintenant s'il n'est pas terminé.
+	 * @return Le temps en millisecondes.
+	 */
+	@Override
+	public long getElapsedMillis() {
+		long end = isFinished() ? finishedNanos : System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(end - submittedNanos);
+	}
+
+	/**
+	 * Indique le temps d'attente entre la soumission du calcul et l'envoi de son premier lot.
+	 * @return Le temps en millisecondes ou -1 si aucun lot n'a été envoyé.
+	 */
+	@Override
+	public long getQueuedMillis() {
+		return firstBatchNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(firstBatchNanos - submittedNanos);
+	}
+
+	@Override
+	public long getOperationsDispatched() {
+		return operationsDispatched;
+	}
+
+	@Override
+	public long getBatchesDispatched() {
+		return batchesDispatched;
+	}
+
+	OperationQueue getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Récupère la somme des résultats reçus jusqu'ici, sans ceux résolus par la cache. Une fois le calcul terminé, il s'agit de
+	 * son résultat, qui comprend ceux résolus par la cache.
+	 * @return La somme modulo 4000.
+	 */
+	int getResult() {
+		return result;
+	}
+
+	long getVirtualTime() {
+		return virtualTime;
+	}
+
+	/**
+	 * Avance le temps virtuel d'un calcul qui arrive jusqu'au temps virtuel des autres, pour qu'il ne reçoive pas à lui seul
+	 * les calculateurs jusqu'à les avoir rattrapés.
+	 * @param clock Le temps virtuel du dernier calcul servi.
+	 */
+	void catchUp(long clock) {
+		virtualTime = Math.max(virtualTime, clock);
+	}
+
+	/**
+	 * Compte un lot envoyé aux calculateurs et avance le temps virtuel du calcul.
+	 * @param size Le nombre d'opérations du lot.
+	 */
+	void batchDispatched(int size) {
+		if(firstBatchNanos < 0) {
+			firstBatchNanos = System.nanoTime();
+		}
+		++batchesDispatched;
+		operationsDispatched += size;
+		virtualTime += size * VIRTUAL_TIME_SCALE / weight;
+	}
+
+	void operationStarted() {
+		++operationsOutstanding;
+	}
+
+	void operationCompleted() {
+		--operationsOutstanding;
+	}
+
+	/**
+	 * Indique le nombre d'opérations retirées de la file dont le résultat n'a pas encore été reçu, y compris celles remises dans
+	 * la file.
+	 * @return Le nombre d'opérations en cours.
+	 */
+	@Override
+	public int getOperationsOutstanding() {
+		return operationsOutstanding;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return operations.getQueuedOperations();
+	}
+
+	@Override
+	public int getBatchesInFlight() {
+		return batchesInFlight;
+	}
+
+	void callStarted() {
+		++batchesInFlight;
+	}
+
+	void callFinished() {
+		--batchesInFlight;
+	}
+
+	void addResult(int value) {
+		result = (int)Math.floorMod((long)result + value, 4000L);
+	}
+
+	/**
+	 * Termine le calcul avec la somme des résultats reçus et de ceux résolus par la cache.
+	 */
+	void finish() {
+		result = (result + operations.getResolvedResult()) % 4000;
+		operations.close();
+		finishedNanos = System.nanoTime();
+		finished.countDown();
+	}
+
+	/**
+	 * Termine le calcul sur une erreur de lecture de ses opérations.
+	 * @param cause L'erreur.
+	 */
+	void fail(IOException cause) {
+		error = cause;
+		operations.close();
+		finishedNanos = System.nanoTime();
+		finished.countDown();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,398 @@
+package repartitor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+import repartitor.operations.Operation;
+import repartitor.operations.Pell;
+import repartitor.operations.Prime;
+import shared.IOperation;
+
+/**
+ * Le journal des points de reprise d'un calcul. Le fichier commence par le nom du calcul, suivi d'enregistrements ajoutés à la
+ * fin du fichier : le nombre de lignes du fichier d'opérations déjà lues, la somme partielle modulo 4000 des opérations de ces
+ * lignes qui sont terminées et les opérations de ces lignes qui sont encore en cours ou remises dans la file. Chaque
+ * enregistrement est précédé de sa longueur et suivi de sa somme de contrôle, pour qu'un enregistrement à moitié écrit lors d'un
+ * arrêt brutal soit ignoré à la lecture. Chaque enregistrement est transmis au système dès qu'il est écrit, ce qui suffit si
+ * seul le répartiteur s'arrête ; la synchronisation avec le disque n'est faite qu'une fois par groupe d'enregistrements. Lorsque
+ * le journal devient trop long, il est remplacé par un journal qui ne contient que le dernier enregistrement.
+ * @author dcourcel
+ *
+ */
+public class JobCheckpoint {
+	public static final long DEFAULT_INTERVAL_MILLIS = 250;
+	public static final long RESUME_WAIT_MS = 60000;
+	private static final int MAGIC = 0x52455052;
+	private static final int RECORDS_PER_SYNC = 4;
+	private static final int RECORDS_PER_LOG = 4096;
+	private static final String INVALID_FILE = "Fichier de points de reprise invalide.";
+
+	private final File file;
+	private final long intervalNanos;
+	private String jobName;
+	private FileOutputStream fileOutput = null;
+	private DataOutputStream output = null;
+	private byte[] lastRecord = null;
+	private int recordsInLog = 0;
+	private int recordsSinceSync = 0;
+	private long lastRecordNanos = 0;
+	private long recordsWritten = 0;
+	private long syncs = 0;
+	private long nanosSpent = 0;
+
+	/**
+	 * L'état d'un calcul lu dans un journal de points de reprise.
+	 */
+	public static class State {
+		private final String jobName;
+		private final long linesConsumed;
+		private final int partialResult;
+		private final IOperation[] pendingOperations;
+
+		private State(String jobName, long linesConsumed, int partialResult, IOperation[] pendingOperations) {
+			this.jobName = jobName;
+			this.linesConsumed = linesConsumed;
+			this.partialResult = partialResult;
+			this.pendingOperations = pendingOperations;
+		}
+
+		/**
+		 * Récupère le nom du calcul, soit le chemin de son fichier d'opérations.
+		 * @return Le nom du calcul ou une chaîne vide s'il n'a pas été donné.
+		 */
+		public String getJobName() {
+			return jobName;
+		}
+
+		/**
+		 * Indique le nombre de lignes du fichier d'opérations à sauter lors de la reprise.
+		 * @return Le nombre de lignes déjà lues.
+		 */
+		public long getLinesConsumed() {
+			return linesConsumed;
+		}
+
+		/**
+		 * Récupère la somme modulo 4000 des opérations terminées parmi les lignes déjà lues.
+		 * @return La somme partielle.
+		 */
+		public int getPartialResult() {
+			return partialResult;
+		}
+
+		/**
+		 * Récupère les opérations des lignes déjà lues qui n'étaient pas terminées.
+		 * @return Les opérations à calculer de nouveau.
+		 */
+		public IOperation[] getPendingOperations() {
+			return pendingOperations;
+		}
+	}
+
+	/**
+	 * Crée le journal. Le fichier n'est ouvert qu'au début d'un calcul.
+	 * @param file Le fichier du journal.
+	 * @param intervalMillis Le temps minimal entre deux enregistrements, 0 pour enregistrer après chaque résultat.
+	 */
+	public JobCheckpoint(File file, long intervalMillis) {
+		this.file = file;
+		this.intervalNanos = intervalMillis * 1000000L;
+	}
+
+	/**
+	 * Commence un nouveau journal pour un calcul avec son état initial. Le journal précédent n'est remplacé qu'une fois le
+	 * nouveau journal synchronisé avec le disque, pour qu'un calcul repris ne perde jamais son point de reprise.
+	 * @param jobName Le nom du calcul ou null.
+	 * @param linesConsumed Le nombre de lignes du fichier d'opérations déjà lues.
+	 * @param partialResult La somme modulo 4000 des opérations terminées parmi ces lignes.
+	 * @param pendingOperations Les opérations de ces lignes qui ne sont pas terminées.
+	 * @throws IOException Si le fichier ne peut pas être écrit.
+	 */
+	public void start(String jobName, long linesConsumed, int partialResult, Collection<IOperation> pendingOperations)
+			throws IOException {
+		close();
+		this.jobName = jobName == null ? "" : jobName;
+		lastRecord = encode(linesConsumed, partialResult, pendingOperations);
+		rewrite();
+		lastRecordNanos = System.nanoTime();
+	}
+
+	/**
+	 * Indique si le temps minimal depuis le dernier enregistrement est écoulé.
+	 * @return Vrai si un enregistrement devrait être ajouté.
+	 */
+	public boolean isDue() {
+		return output != null && System.nanoTime() - lastRecordNanos >= intervalNanos;
+	}
+
+	/**
+	 * Ajoute un enregistrement à la fin du journal et le transmet au système. Le fichier est synchronisé avec le disque une fois
+	 * par groupe d'enregistrements. Ne fait rien si aucun calcul n'est commencé.
+	 * @param linesConsumed Le nombre de lignes du fichier d'opérations déjà lues.
+	 * @param partialResult La somme modulo 4000 des opérations terminées parmi ces lignes.
+	 * @param pendingOperations Les opérations de ces lignes qui ne sont pas terminées.
+	 * @throws IOException Si l'écriture échoue.
+	 */
+	public void append(long linesConsumed, int partialResult, Collection<IOperation> pendingOperations) throws IOException {
+		if(output == null) {
+			return;
+		}
+		long start = System.nanoTime();
+		lastRecord = encode(linesConsumed, partialResult, pendingOperations);
+		if(recordsInLog >= RECORDS_PER_LOG) {
+			rewrite();
+		}
+		else {
+			writeRecord(lastRecord);
+			output.flush();
+			if(recordsSinceSync >= RECORDS_PER_SYNC) {
+				sync();
+			}
+		}
+		++recordsWritten;
+		lastRecordNanos = System.nanoTime();
+		nanosSpent += lastRecordNanos - start;
+	}
+
+	/**
+	 * Ferme le journal d'un calcul terminé et efface le fichier, puisqu'il n'y a plus rien à reprendre.
+	 */
+	public void finish() {
+		close();
+		if(!file.delete() && file.exists()) {
+			System.out.println("Impossible d'effacer le fichier de points de reprise " + file + ".");
+		}
+	}
+
+	/**
+	 * Synchronise et ferme le journal d'un calcul interrompu. Le fichier est conservé pour une reprise.
+	 */
+	public void close() {
+		if(output == null) {
+			return;
+		}
+		try {
+			sync();
+			output.close();
+		}
+		catch(IOException e) {
+			System.out.println("Impossible de fermer le fichier de points de reprise. " + e.getMessage());
+		}
+		output = null;
+		fileOutput = null;
+	}
+
+	/**
+	 * Reprend avec un répartiteur le calcul interrompu enregistré dans un journal de points de reprise, une fois que assez de
+	 * calculateurs se sont enregistrés. Le résultat du calcul est affiché.
+	 * @param repartitor Le répartiteur.
+	 * @param file Le fichier des points de reprise.
+	 */
+	public static void resume(Repartitor repartitor, File file) {
+		State state;
+		try {
+			state = read(file);
+		}
+		catch(IOException e) {
+			System.out.println("Impossible de lire le fichier de points de reprise. " + e.getMessage());
+			return;
+		}
+		if(state == null) {
+			System.out.println("Aucun calcul à reprendre.");
+			return;
+		}
+		System.out.println("Reprise de " + state.getJobName() + " après " + state.getLinesConsumed() + " lignes, " +
+				state.getPendingOperations().length + " opérations à refaire. En attente des calculateurs.");
+		try {
+			if(!repartitor.awaitCalculators(RESUME_WAIT_MS)) {
+				System.out.println("Pas assez de calculateurs pour reprendre le calcul.");
+				return;
+			}
+			BufferedReader operationsToRead = new BufferedReader(new InputStreamReader(new FileInputStream(state.getJobName())));
+			System.out.println(repartitor.resumeOperations(operationsToRead, state));
+		}
+		catch(FileNotFoundException e) {
+			System.out.println("Le fichier du calcul à reprendre n'a pas été trouvé.");
+		}
+		catch(IllegalStateException e) {
+			System.out.println(e.getMessage());
+		}
+		catch(IOException e) {
+			System.out.println("Une erreur est survenue lors de la lecture du fichier d'opérations. " + e.getMessage());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Lit le dernier enregistrement complet d'un journal.
+	 * @param file Le fichier du journal.
+	 * @return L'état du calcul au dernier enregistrement ou null si le fichier n'existe pas ou ne contient aucun enregistrement.
+	 * @throws IOException Si la lecture échoue ou si le fichier n'est pas un journal de points de reprise.
+	 */
+	public static State read(File file) throws IOException {
+		if(!file.exists()) {
+			return null;
+		}
+		try(DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			String jobName;
+			try {
+				if(input.readInt() != MAGIC) {
+					throw new IOException(INVALID_FILE);
+				}
+				jobName = input.readUTF();
+			}
+			catch(EOFException e) {
+				return null;
+			}
+			byte[] last = null;
+			CRC32 checksum = new CRC32();
+			try {
+				while(true) {
+					int length = input.readInt();
+					if(length < 16) {
+						break;
+					}
+					byte[] record = new byte[length];
+					input.readFully(record);
+					checksum.reset();
+					checksum.update(record);
+					if(input.readLong() != checksum.getValue()) {
+						break;
+					}
+					last = record;
+				}
+			}
+			catch(EOFException e) {
+			}
+			return last == null ? null : decode(jobName, last);
+		}
+	}
+
+	public long getRecordsWritten() {
+		return recordsWritten;
+	}
+
+	public long getSyncs() {
+		return syncs;
+	}
+
+	/**
+	 * Indique le temps total passé à écrire et synchroniser les enregistrements.
+	 * @return Le temps en nanosecondes.
+	 */
+	public long getNanosSpent() {
+		return nanosSpent;
+	}
+
+	/**
+	 * Remet les statistiques à zéro au début d'un calcul.
+	 */
+	public void resetStatistics() {
+		recordsWritten = 0;
+		syncs = 0;
+		nanosSpent = 0;
+	}
+
+	private static byte[] encode(long linesConsumed, int partialResult, Collection<IOperation> pendingOperations)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 5 * pendingOperations.size());
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeLong(linesConsumed);
+		record.writeInt(partialResult);
+		record.writeInt(pendingOperations.size());
+		for(IOperation operation : pendingOperations) {
+			record.writeByte(((Operation)operation).getOpcode());
+			record.writeInt(((Operation)operation).getOperand());
+		}
+		return bytes.toByteArray();
+	}
+
+	private static State decode(String jobName, byte[] record) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+		long linesConsumed = input.readLong();
+		int partialResult = input.readInt();
+		IOperation[] pending = new IOperation[input.readInt()];
+		for(int i = 0; i < pending.length; ++i) {
+			int opcode = input.readByte();
+			int operand = input.readInt();
+			if(opcode == Operation.PRIME_OPCODE) {
+				pending[i] = new Prime(operand);
+			}
+			else if(opcode == Operation.PELL_OPCODE) {
+				pending[i] = new Pell(operand);
+			}
+			else {
+				throw new IOException(INVALID_FILE);
+			}
+		}
+		return new State(jobName, linesConsumed, partialResult, pending);
+	}
+
+	/**
+	 * Ouvre un journal vide et y écrit l'en-tête.
+	 * @param target Le fichier à créer.
+	 */
+	private void openLog(File target) throws IOException {
+		fileOutput = new FileOutputStream(target);
+		output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+		output.writeInt(MAGIC);
+		output.writeUTF(jobName);
+		output.flush();
+		recordsInLog = 0;
+		recordsSinceSync = 0;
+	}
+
+	/**
+	 * Remplace le journal par un journal qui ne contient que le dernier enregistrement. Le nouveau journal est écrit et
+	 * synchronisé à côté de l'ancien avant de le remplacer, pour qu'un point de reprise reste toujours lisible.
+	 */
+	private void rewrite() throws IOException {
+		if(output != null) {
+			output.close();
+		}
+		File compacted = new File(file.getPath() + ".tmp");
+		openLog(compacted);
+		writeRecord(lastRecord);
+		output.flush();
+		sync();
+		Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void writeRecord(byte[] record) throws IOException {
+		CRC32 checksum = new CRC32();
+		checksum.update(record);
+		output.writeInt(record.length);
+		output.write(record);
+		output.writeLong(checksum.getValue());
+		++recordsInLog;
+		++recordsSinceSync;
+	}
+
+	private void sync() throws IOException {
+		if(recordsSinceSync == 0 && recordsInLog > 0) {
+			return;
+		}
+		output.flush();
+		fileOutput.getChannel().force(false);
+		recordsSinceSync = 0;
+		++syncs;
+	}
+}
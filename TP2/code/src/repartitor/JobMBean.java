@@ -0,0 +1,37 @@
+package repartitor;
+
+/**
+ * Les compteurs d'un calcul publiés par JMX tant que le calcul est en cours.
+ * @author dcourcel
+ *
+ */
+public interface JobMBean {
+	String getName();
+
+	int getWeight();
+
+	/**
+	 * @return Le nombre d'opérations lues ou remises dans la file du calcul qui attendent d'être envoyées.
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return Le nombre d'appels en cours pour les lots du calcul, y compris les vérifications et les relances.
+	 */
+	int getBatchesInFlight();
+
+	/**
+	 * @return Le nombre d'opérations retirées de la file dont le résultat n'a pas encore été reçu.
+	 */
+	int getOperationsOutstanding();
+
+	long getOperationsDispatched();
+
+	long getBatchesDispatched();
+
+	long getElapsedMillis();
+
+	long getQueuedMillis();
+
+	boolean isFinished();
+}
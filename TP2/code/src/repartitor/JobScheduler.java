@@ -0,0 +1,352 @@
+package repartitor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import shared.IOperation;
+
+/**
+ * L'ordonnanceur des calculs du répartiteur : les calculs soumis au serveur de calculs, les calculs actifs et les opérations
+ * retirées de leur file dont le résultat n'a pas encore été reçu. Le prochain lot est toujours tiré du calcul actif dont le temps
+ * virtuel est le plus petit ; un calcul qui arrive rattrape le temps virtuel du dernier calcul servi. L'ordonnanceur tient aussi
+ * le journal de points de reprise d'un calcul lancé hors du serveur de calculs. Seul le fil du répartiteur utilise
+ * l'ordonnanceur, à l'exception de submit que les autres fils appellent pour soumettre un calcul.
+ * @author dcourcel
+ *
+ */
+public class JobScheduler {
+	private final RepartitorMetrics metrics;
+	private final ArrayList<Job> activeJobs = new ArrayList<>();
+	private final LinkedBlockingQueue<Job> submittedJobs = new LinkedBlockingQueue<>();
+	private final IdentityHashMap<IOperation, Job> unfinishedOperations = new IdentityHashMap<>();
+	private Job nextJob = null;
+	private long virtualClock = 0;
+	private JobCheckpoint checkpoint = null;
+
+	/**
+	 * Crée un ordonnanceur sans calcul.
+	 * @param metrics Les métriques du répartiteur, qui comptent les calculs actifs.
+	 */
+	public JobScheduler(RepartitorMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Change le journal de points de reprise. Le changement s'applique au prochain calcul.
+	 * @param checkpoint Le nouveau journal ou null pour ne pas enregistrer l'état des calculs.
+	 */
+	public void setCheckpoint(JobCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Commence le journal de points de reprise d'un calcul actif avec son état actuel. Les statistiques du journal sont remises
+	 * à zéro.
+	 * @param job Le calcul.
+	 * @throws IOException Si le journal ne peut pas être écrit.
+	 */
+	public void startCheckpoint(Job job) throws IOException {
+		if(checkpoint == null) {
+			return;
+		}
+		checkpoint.resetStatistics();
+		checkpoint.start(job.getName(), job.getOperations().getLinesConsumed(), job.getResult(), getPendingOperations(job));
+	}
+
+	/**
+	 * Ajoute au journal l'état du plus ancien calcul actif si l'intervalle entre deux points de reprise est écoulé.
+	 */
+	public void checkpointIfDue() {
+		if(checkpoint != null && checkpoint.isDue() && !activeJobs.isEmpty()) {
+			saveCheckpoint(activeJobs.get(0));
+		}
+	}
+
+	/**
+	 * Termine le journal de points de reprise d'un calcul. Le journal est effacé si le calcul est terminé ; sinon l'état du
+	 * calcul y est enregistré une dernière fois et le journal est conservé pour une reprise.
+	 * @param job Le calcul.
+	 * @param finished Vrai si le calcul est terminé.
+	 */
+	public void endCheckpoint(Job job, boolean finished) {
+		if(checkpoint == null) {
+			return;
+		}
+		if(finished) {
+			checkpoint.finish();
+		}
+		else {
+			saveCheckpoint(job);
+			checkpoint.close();
+		}
+	}
+
+	/**
+	 * Affiche les statistiques du journal de points de reprise depuis le début du dernier calcul, s'il y a un journal.
+	 */
+	public void printCheckpointStatistics() {
+		if(checkpoint != null) {
+			System.out.println(String.format("Points de reprise : %d enregistrements, %d synchronisations, %.1f ms.",
+					checkpoint.getRecordsWritten(), checkpoint.getSyncs(), checkpoint.getNanosSpent() / 1e6));
+		}
+	}
+
+	/**
+	 * Soumet un calcul, qui sera ajouté aux calculs actifs par admitSubmittedJobs ou takeSubmittedJob.
+	 * @param job Le calcul.
+	 */
+	public void submit(Job job) {
+		submittedJobs.add(job);
+	}
+
+	/**
+	 * Termine sur une erreur les calculs soumis qui n'ont pas encore été ajoutés aux calculs actifs.
+	 * @param cause L'erreur.
+	 */
+	public void failSubmittedJobs(IOException cause) {
+		Job job;
+		while((job = submittedJobs.poll()) != null) {
+			job.fail(cause);
+		}
+	}
+
+	/**
+	 * Attend qu'un calcul soit soumis.
+	 * @return Le calcul soumis, qui n'est pas encore actif.
+	 * @throws InterruptedException Si l'attente est interrompue.
+	 */
+	public Job takeSubmittedJob() throws InterruptedException {
+		return submittedJobs.take();
+	}
+
+	/**
+	 * Ajoute un calcul aux calculs actifs. Son temps virtuel rattrape celui du dernier calcul servi.
+	 * @param job Le calcul.
+	 */
+	public void admit(Job job) {
+		job.catchUp(virtualClock);
+		activeJobs.add(job);
+		metrics.jobStarted(job);
+	}
+
+	/**
+	 * Ajoute aux calculs actifs les calculs soumis depuis le dernier appel.
+	 */
+	public void admitSubmittedJobs() {
+		Job job;
+		while((job = submittedJobs.poll()) != null) {
+			admit(job);
+		}
+	}
+
+	/**
+	 * Indique si un calcul fait partie des calculs actifs.
+	 * @param job Le calcul.
+	 * @return Vrai si le calcul est actif.
+	 */
+	public boolean isActive(Job job) {
+		return activeJobs.contains(job);
+	}
+
+	/**
+	 * Récupère les calculs actifs, dans l'ordre de leur arrivée.
+	 * @return Une copie de la liste des calculs actifs.
+	 */
+	public List<Job> getActiveJobs() {
+		return new ArrayList<>(activeJobs);
+	}
+
+	/**
+	 * Récupère le plus ancien des calculs actifs.
+	 * @return Le calcul ou null s'il n'y a aucun calcul actif.
+	 */
+	public Job getFirstActiveJob() {
+		return activeJobs.isEmpty() ? null : activeJobs.get(0);
+	}
+
+	/**
+	 * Choisit le calcul du prochain lot parmi les calculs actifs qui ont encore des opérations à envoyer : celui dont le temps
+	 * virtuel est le plus petit. Un calcul dont la lecture des opérations échoue est terminé sur cette erreur.
+	 * @param server Vrai pour afficher l'échec d'un calcul.
+	 * @return Vrai si un calcul a des opérations à envoyer.
+	 */
+	public boolean selectNextJob(boolean server) {
+		nextJob = null;
+		Iterator<Job> iterator = activeJobs.iterator();
+		while(iterator.hasNext()) {
+			Job job = iterator.next();
+			if(nextJob != null && job.getVirtualTime() >= nextJob.getVirtualTime()) {
+				continue;
+			}
+			try {
+				if(job.getOperations().hasMoreOperations()) {
+					nextJob = job;
+				}
+			}
+			catch(IOException e) {
+				job.fail(e);
+				iterator.remove();
+				forgetOperations(job);
+				metrics.jobFinished(job);
+				if(server) {
+					System.out.println("Échec du calcul " + job.getName() + ". " + e.getMessage());
+				}
+			}
+		}
+		return nextJob != null;
+	}
+
+	/**
+	 * Retire des opérations de la file du calcul choisi par le dernier appel à selectNextJob. Les opérations sont en cours
+	 * jusqu'à ce que operationsCompleted soit appelée ou que leur calcul ne soit plus actif.
+	 * @param numberOfOperationsToGet Le nombre d'opérations à retirer.
+	 * @return Les opérations retirées, au plus numberOfOperationsToGet.
+	 */
+	public IOperation[] retrieveOperations(int numberOfOperationsToGet) {
+		Job job = nextJob;
+		IOperation[] extractedOps = job.getOperations().retrieveOperations(numberOfOperationsToGet);
+		for(IOperation operation : extractedOps) {
+			if(unfinishedOperations.put(operation, job) == null) {
+				job.operationStarted();
+			}
+		}
+		virtualClock = job.getVirtualTime();
+		job.batchDispatched(extractedOps.length);
+		return extractedOps;
+	}
+
+	/**
+	 * Récupère le calcul d'une opération en cours.
+	 * @param operation L'opération.
+	 * @return Le calcul ou null si l'opération n'est pas en cours.
+	 */
+	public Job getJob(IOperation operation) {
+		return unfinishedOperations.get(operation);
+	}
+
+	/**
+	 * Remet des opérations dans la file d'un calcul. Les opérations qui n'étaient pas en cours, comme celles d'un point de reprise
+	 * ou d'un résultat retiré, sont de nouveau comptées parmi les opérations en cours du calcul.
+	 * @param job Le calcul.
+	 * @param objectsToPut Les opérations à remettre.
+	 */
+	public void returnOperations(Job job, IOperation[] objectsToPut) {
+		for(IOperation operation : objectsToPut) {
+			if(unfinishedOperations.put(operation, job) == null) {
+				job.operationStarted();
+			}
+		}
+		job.getOperations().putBackOperations(objectsToPut);
+	}
+
+	/**
+	 * Indique que des opérations en cours sont terminées. Les opérations d'un calcul qui n'est plus actif sont ignorées.
+	 * @param completed Les opérations terminées.
+	 */
+	public void operationsCompleted(IOperation[] completed) {
+		for(IOperation operation : completed) {
+			Job job = unfinishedOperations.remove(operation);
+			if(job != null) {
+				job.operationCompleted();
+			}
+		}
+	}
+
+	/**
+	 * Récupère les opérations d'un calcul qui ont été retirées de sa file ou remises dans sa file sans être terminées.
+	 * @param job Le calcul.
+	 * @return Les opérations en cours du calcul.
+	 */
+	public ArrayList<IOperation> getPendingOperations(Job job) {
+		ArrayList<IOperation> pending = new ArrayList<>(job.getOperationsOutstanding());
+		for(Map.Entry<IOperation, Job> entry : unfinishedOperations.entrySet()) {
+			if(entry.getValue() == job) {
+				pending.add(entry.getKey());
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Termine les calculs dont toutes les opérations ont été lues et dont tous les résultats ont été reçus.
+	 * @param idle Vrai si aucun lot n'est en cours et qu'aucun calcul n'a d'opérations à envoyer : tous les calculs actifs sont
+	 * alors terminés.
+	 * @param server Vrai pour afficher le résultat de chaque calcul terminé.
+	 */
+	public void finishDrainedJobs(boolean idle, boolean server) {
+		Iterator<Job> iterator = activeJobs.iterator();
+		while(iterator.hasNext()) {
+			Job job = iterator.next();
+			try {
+				if(!idle && (job.getOperationsOutstanding() > 0 || job.getOperations().hasMoreOperations())) {
+					continue;
+				}
+				job.finish();
+			}
+			catch(IOException e) {
+				job.fail(e);
+			}
+			iterator.remove();
+			forgetOperations(job);
+			metrics.jobFinished(job);
+			if(server && job.getError() == null) {
+				System.out.println(String.format("Calcul %s (poids %d) : %d, %d opérations en %d lots, attente %d ms, temps %d ms.",
+						job.getName(), job.getWeight(), job.getResult(), job.getOperationsDispatched(), job.getBatchesDispatched(),
+						job.getQueuedMillis(), job.getElapsedMillis()));
+			}
+			else if(server) {
+				System.out.println("Échec du calcul " + job.getName() + ". " + job.getError().getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Retire un calcul des calculs actifs.
+	 * @param job Le calcul.
+	 */
+	public void remove(Job job) {
+		if(activeJobs.remove(job)) {
+			metrics.jobFinished(job);
+		}
+		forgetOperations(job);
+	}
+
+	/**
+	 * Ajoute au journal l'état du calcul : les lignes consommées, la somme des opérations terminées et les opérations qui ne le
+	 * sont pas.
+	 * @param job Le calcul.
+	 */
+	private void saveCheckpoint(Job job) {
+		OperationQueue operations = job.getOperations();
+		try {
+			checkpoint.append(operations.getLinesConsumed(),
+					(job.getResult() + operations.getResolvedResultConsumed()) % 4000, getPendingOperations(job));
+		}
+		catch(IOException e) {
+			System.out.println("Impossible d'enregistrer le point de reprise. " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Oublie les opérations en cours d'un calcul qui n'est plus actif. Les résultats qui arrivent ensuite pour ces opérations
+	 * sont ignorés.
+	 * @param job Le calcul.
+	 */
+	private void forgetOperations(Job job) {
+		if(job.getOperationsOutstanding() == 0) {
+			return;
+		}
+		Iterator<Job> owners = unfinishedOperations.values().iterator();
+		while(owners.hasNext()) {
+			if(owners.next() == job) {
+				owners.remove();
+				job.operationCompleted();
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package repartitor;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Le serveur de calculs d'un répartiteur : un fil qui répartit les lots de tous les calculs soumis sur les calculateurs
+ * enregistrés, jusqu'à l'arrêt du serveur. Les calculs soumis sont remis à l'ordonnanceur du répartiteur, qui choisit le calcul
+ * de chaque lot. Lorsque le serveur n'a plus aucun calcul actif, les statistiques du répartiteur sont affichées et le fil attend
+ * le prochain calcul.
+ * @author dcourcel
+ *
+ */
+class JobServer {
+	private final Repartitor repartitor;
+	private final JobScheduler scheduler;
+	private Thread thread = null;
+	private volatile boolean running = false;
+
+	/**
+	 * Crée un serveur de calculs arrêté.
+	 * @param repartitor Le répartiteur qui répartit les lots.
+	 * @param scheduler L'ordonnanceur des calculs du répartiteur.
+	 */
+	JobServer(Repartitor repartitor, JobScheduler scheduler) {
+		this.repartitor = repartitor;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Démarre le fil du serveur, s'il ne l'est pas déjà.
+	 */
+	synchronized void start() {
+		if(thread != null) {
+			return;
+		}
+		running = true;
+		thread = new Thread("Serveur de calculs") {
+			@Override
+			public void run() {
+				serve();
+			}
+		};
+		thread.start();
+	}
+
+	/**
+	 * Arrête le fil du serveur et attend sa fin. Les calculs soumis qui n'ont pas encore été reçus échouent.
+	 * @throws InterruptedException Si l'attente de l'arrêt est interrompue.
+	 */
+	void stop() throws InterruptedException {
+		Thread server;
+		synchronized(this) {
+			server = thread;
+			running = false;
+		}
+		if(server == null) {
+			return;
+		}
+		server.interrupt();
+		server.join();
+		synchronized(this) {
+			thread = null;
+			scheduler.failSubmittedJobs(new InterruptedIOException("Serveur de calculs arrêté."));
+		}
+	}
+
+	/**
+	 * Indique si le serveur est démarré, même s'il est en train de s'arrêter.
+	 * @return Vrai si le fil du serveur existe.
+	 */
+	synchronized boolean isStarted() {
+		return thread != null;
+	}
+
+	/**
+	 * Indique si le serveur doit continuer à répartir les lots.
+	 * @return Faux dès que l'arrêt du serveur est demandé.
+	 */
+	boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Soumet un calcul au serveur.
+	 * @param jobName Le nom du calcul.
+	 * @param weight Le poids du calcul.
+	 * @param operations Les opérations du calcul, fermées si le serveur n'est pas démarré.
+	 * @return Le calcul, dont on peut attendre le résultat.
+	 * @throws IllegalStateException Si le serveur n'est pas démarré.
+	 */
+	synchronized Job submit(String jobName, int weight, OperationQueue operations) throws IllegalStateException {
+		if(thread == null || !running) {
+			operations.close();
+			throw new IllegalStateException("Le serveur de calculs n'est pas démarré.");
+		}
+		Job job = new Job(jobName, weight, operations, 0);
+		scheduler.submit(job);
+		return job;
+	}
+
+	/**
+	 * Attend qu'un calcul soit soumis lorsque le serveur n'a plus aucun calcul actif. Les statistiques de la période d'activité
+	 * qui se termine sont d'abord affichées.
+	 * @return Vrai si un calcul a été reçu, faux si le serveur est arrêté.
+	 */
+	boolean awaitJob() {
+		repartitor.endBusyPeriod();
+		try {
+			Job job = scheduler.takeSubmittedJob();
+			repartitor.startBusyPeriod();
+			scheduler.admit(job);
+			return true;
+		}
+		catch(InterruptedException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Exécute le serveur sur son fil. À l'arrêt, les calculs actifs échouent et les lots en cours sont attendus, mais leurs
+	 * résultats sont ignorés.
+	 */
+	private void serve() {
+		repartitor.startBusyPeriod();
+		repartitor.prepareCalculators();
+		try {
+			repartitor.dispatchJobs(true);
+		}
+		finally {
+			Thread.interrupted();
+			for(Job job : scheduler.getActiveJobs()) {
+				job.fail(new InterruptedIOException("Serveur de calculs arrêté."));
+				scheduler.remove(job);
+			}
+			repartitor.discardWaitingResults();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package repartitor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Le dossier de dépôt des calculs du mode serveur. Chaque fichier d'opérations déposé dans le dossier est soumis au serveur de
+ * calculs du répartiteur dès qu'il est aperçu, sans attendre la fin des calculs précédents. Un fichier dont le nom se termine par
+ * @N reçoit le poids N. Le résultat de chaque calcul est écrit dans un fichier du même nom suivi de .resultat ; un fichier
+ * d'opérations qui a déjà son résultat n'est pas soumis de nouveau, même après un redémarrage du répartiteur. Les fichiers dont
+ * le nom commence par un point sont ignorés, ce qui permet d'écrire un fichier d'opérations sous un nom caché et de le renommer
+ * une fois complet.
+ * @author dcourcel
+ *
+ */
+public class JobSpool {
+	public static final String RESULT_SUFFIX = ".resultat";
+	private static final long SCAN_INTERVAL_MS = 100;
+
+	private final Repartitor repartitor;
+	private final File directory;
+	private final HashSet<String> submitted = new HashSet<>();
+	private final ArrayList<Job> running = new ArrayList<>();
+	private final ArrayList<File> runningFiles = new ArrayList<>();
+
+	/**
+	 * Crée le dossier de dépôt.
+	 * @param repartitor Le répartiteur, dont le serveur de calculs doit être démarré.
+	 * @param directory Le dossier surveillé.
+	 */
+	public JobSpool(Repartitor repartitor, File directory) {
+		this.repartitor = repartitor;
+		this.directory = directory;
+	}
+
+	/**
+	 * Surveille le dossier jusqu'à l'interruption du fil : soumet les nouveaux fichiers d'opérations et écrit le résultat des
+	 * calculs terminés.
+	 * @throws IOException Si le dossier ne peut pas être lu.
+	 */
+	public void run() throws IOException {
+		if(!directory.isDirectory()) {
+			throw new FileNotFoundException("Dossier de dépôt introuvable : " + directory);
+		}
+		System.out.println("Serveur de calculs prêt. Dossier de dépôt : " + directory.getAbsolutePath());
+		try {
+			while(true) {
+				submitNewFiles();
+				writeFinishedResults();
+				TimeUnit.MILLISECONDS.sleep(SCAN_INTERVAL_MS);
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Lit le poids d'un calcul à partir du nom de son fichier.
+	 * @param name Le nom du fichier d'opérations.
+	 * @return Le nombre qui suit le dernier @ du nom ou 1 s'il n'y en a pas.
+	 */
+	public static int parseWeight(String name) {
+		int index = name.lastIndexOf('@');
+		if(index < 0) {
+			return 1;
+		}
+		try {
+			return Math.max(1, Integer.parseInt(name.substring(index + 1)));
+		}
+		catch(NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	/**
+	 * Soumet les fichiers d'opérations du dossier qui n'ont pas encore été soumis et qui n'ont pas de résultat.
+	 * @throws IOException Si le dossier ne peut pas être lu.
+	 */
+	private void submitNewFiles() throws IOException {
+		String[] names = directory.list();
+		if(names == null) {
+			throw new IOException("Impossible de lire le dossier de dépôt " + directory + ".");
+		}
+		for(String name : names) {
+			if(name.startsWith(".") || name.endsWith(RESULT_SUFFIX) || submitted.contains(name)) {
+				continue;
+			}
+			File file = new File(directory, name);
+			if(!file.isFile() || new File(directory, name + RESULT_SUFFIX).exists()) {
+				continue;
+			}
+			submitted.add(name);
+			try {
+				BufferedReader operations = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+				running.add(repartitor.submitJob(operations, name, parseWeight(name)));
+				runningFiles.add(file);
+			}
+			catch(FileNotFoundException e) {
+				writeResult(file, "Erreur : " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Écrit le résultat des calculs terminés depuis le dernier appel.
+	 */
+	private void writeFinishedResults() {
+		Iterator<Job> jobs = running.iterator();
+		Iterator<File> files = runningFiles.iterator();
+		while(jobs.hasNext()) {
+			Job job = jobs.next();
+			File file = files.next();
+			if(!job.isFinished()) {
+				continue;
+			}
+			jobs.remove();
+			files.remove();
+			if(job.getError() != null) {
+				writeResult(file, "Erreur : " + job.getError().getMessage());
+			}
+			else {
+				writeResult(file, String.valueOf(job.getResult()));
+			}
+		}
+	}
+
+	/**
+	 * Écrit le fichier de résultat d'un calcul. Le fichier est écrit sous un nom caché puis renommé, pour qu'il ne soit jamais lu
+	 * à moitié écrit.
+	 * @param file Le fichier d'opérations du calcul.
+	 * @param content Le résultat ou le message d'erreur.
+	 */
+	private void writeResult(File file, String content) {
+		File result = new File(directory, file.getName() + RESULT_SUFFIX);
+		File temporary = new File(directory, "." + result.getName());
+		try {
+			Files.write(temporary.toPath(), (content + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary.toPath(), result.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e) {
+			System.out.println("Impossible d'écrire le résultat du calcul " + file.getName() + ". " + e.getMessage());
+		}
+	}
+}
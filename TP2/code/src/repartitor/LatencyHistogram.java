@@ -0,0 +1,72 @@
+package repartitor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Un histogramme des temps aller-retour des appels dont les intervalles doublent : l'intervalle i compte les temps entre 2^i
+ * et 2^(i+1) microsecondes. L'enregistrement d'un temps n'est qu'une incrémentation atomique, sans verrou ni allocation, et
+ * peut être fait par plusieurs fils à la fois. Les centiles sont estimés par la borne supérieure de leur intervalle.
+ * @author dcourcel
+ *
+ */
+public class LatencyHistogram {
+	public static final int NUMBER_OF_BUCKETS = 32;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUMBER_OF_BUCKETS);
+
+	/**
+	 * Ajoute un temps à l'histogramme.
+	 * @param nanos Le temps en nanosecondes.
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+		counts.incrementAndGet(Math.min(NUMBER_OF_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros)));
+	}
+
+	/**
+	 * Récupère le nombre de temps de chaque intervalle.
+	 * @return Un tableau de NUMBER_OF_BUCKETS compteurs.
+	 */
+	public long[] getCounts() {
+		long[] copy = new long[NUMBER_OF_BUCKETS];
+		for(int i = 0; i < NUMBER_OF_BUCKETS; ++i) {
+			copy[i] = counts.get(i);
+		}
+		return copy;
+	}
+
+	/**
+	 * Estime un centile des temps enregistrés.
+	 * @param percentile Le centile, entre 0 et 100.
+	 * @return La borne supérieure de l'intervalle qui contient le centile, en millisecondes, ou 0 si aucun temps n'a été enregistré.
+	 */
+	public double getPercentileMillis(double percentile) {
+		long[] snapshot = getCounts();
+		long total = 0;
+		for(long count : snapshot) {
+			total += count;
+		}
+		if(total == 0) {
+			return 0;
+		}
+		long rank = (long)Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for(int i = 0; i < NUMBER_OF_BUCKETS; ++i) {
+			seen += snapshot[i];
+			if(seen >= Math.max(1, rank)) {
+				return getUpperBoundMicros(i) / 1000.0;
+			}
+		}
+		return getUpperBoundMicros(NUMBER_OF_BUCKETS - 1) / 1000.0;
+	}
+
+	/**
+	 * Indique la borne supérieure d'un intervalle.
+	 * @param bucket L'indice de l'intervalle.
+	 * @return La borne en microsecondes.
+	 */
+	public static long getUpperBoundMicros(int bucket) {
+		return 1L << (bucket + 1);
+	}
+}
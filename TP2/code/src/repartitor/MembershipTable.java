@@ -0,0 +1,171 @@
+package repartitor;
+
+import java.rmi.Remote;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import shared.CalculatorLoadReport;
+
+/**
+ * La table des calculateurs enregistrés auprès du répartiteur, mise à jour à chaque enregistrement et retrait ainsi que par les
+ * battements qu'ils envoient. Pour chaque calculateur, la table conserve l'objet enregistré, le moment du dernier battement et
+ * la dernière charge annoncée. Chaque enregistrement ou retrait change la version de la table, ce qui permet au répartiteur de
+ * savoir sans parcourir le RMIRegistry si sa liste de calculateurs est à jour. Un calculateur qui a déjà envoyé un battement et
+ * qui se tait plus longtemps que la fenêtre de détection est silencieux ; un calculateur qui n'envoie pas de battements n'est
+ * jamais considéré comme silencieux.
+ * @author dcourcel
+ *
+ */
+public class MembershipTable {
+	private final long failureWindowNanos;
+	private final HashMap<String, Member> members = new HashMap<>();
+	private long version = 0;
+	
+	/**
+	 * L'état connu d'un calculateur.
+	 */
+	private static class Member {
+		private final Remote stub;
+		private long lastHeartbeatNanos = -1;
+		private CalculatorLoadReport load = null;
+		
+		private Member(Remote stub) {
+			this.stub = stub;
+		}
+	}
+	
+	/**
+	 * Crée une table vide.
+	 * @param failureWindowMillis Le temps sans battement après lequel un calculateur est silencieux ou 0 pour ne jamais
+	 * considérer un calculateur comme silencieux.
+	 */
+	public MembershipTable(long failureWindowMillis) {
+		failureWindowNanos = failureWindowMillis * 1000000L;
+	}
+	
+	/**
+	 * Indique la fenêtre de détection des calculateurs silencieux.
+	 * @return La fenêtre en nanosecondes ou 0 si la détection est désactivée.
+	 */
+	public long getFailureWindowNanos() {
+		return failureWindowNanos;
+	}
+	
+	/**
+	 * Ajoute un objet enregistré à la table et réveille les fils qui attendent un changement.
+	 * @param name Le nom de l'objet dans le RMIRegistry.
+	 * @param stub L'objet enregistré.
+	 */
+	public synchronized void add(String name, Remote stub) {
+		members.put(name, new Member(stub));
+		++version;
+		notifyAll();
+	}
+	
+	/**
+	 * Retire un objet de la table et réveille les fils qui attendent un changement.
+	 * @param name Le nom de l'objet dans le RMIRegistry.
+	 */
+	public synchronized void remove(String name) {
+		if(members.remove(name) != null) {
+			++version;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Indique la version de la table, qui change à chaque enregistrement ou retrait.
+	 * @return La version actuelle.
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Récupère les objets enregistrés dont le nom commence par le préfixe donné.
+	 * @param prefix Le préfixe des noms recherchés.
+	 * @return Les objets trouvés selon leur nom.
+	 */
+	public synchronized Map<String, Remote> getMembers(String prefix) {
+		HashMap<String, Remote> found = new HashMap<>();
+		for(Map.Entry<String, Member> entry : members.entrySet()) {
+			if(entry.getKey().startsWith(prefix)) {
+				found.put(entry.getKey(), entry.getValue().stub);
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Attend que la table change de version, au plus pendant le délai donné.
+	 * @param knownVersion La version connue de l'appelant.
+	 * @param timeoutNanos Le délai maximal d'attente en nanosecondes.
+	 * @throws InterruptedException Si l'attente est interrompue.
+	 */
+	public synchronized void awaitChange(long knownVersion, long timeoutNanos) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		long remaining = timeoutNanos;
+		while(version == knownVersion && remaining > 0) {
+			wait(remaining / 1000000L, (int)(remaining % 1000000L));
+			remaining = deadline - System.nanoTime();
+		}
+	}
+	
+	/**
+	 * Enregistre un battement reçu.
+	 * @param name Le nom du calculateur.
+	 * @param load La charge annoncée par le calculateur.
+	 * @return Vrai si le calculateur est dans la table, faux s'il est inconnu.
+	 */
+	public synchronized boolean heartbeat(String name, CalculatorLoadReport load) {
+		Member member = members.get(name);
+		if(member == null) {
+			return false;
+		}
+		member.lastHeartbeatNanos = System.nanoTime();
+		member.load = load;
+		return true;
+	}
+	
+	/**
+	 * Récupère la dernière charge annoncée par un calculateur.
+	 * @param name Le nom du calculateur.
+	 * @return La charge annoncée ou null si le calculateur n'a envoyé aucun battement.
+	 */
+	public synchronized CalculatorLoadReport getLoad(String name) {
+		Member member = members.get(name);
+		return member != null ? member.load : null;
+	}
+	
+	/**
+	 * Indique si un calculateur s'est tu plus longtemps que la fenêtre de détection.
+	 * @param name Le nom du calculateur.
+	 * @param now Le moment présent, selon System.nanoTime.
+	 * @return Vrai si le calculateur est silencieux.
+	 */
+	public synchronized boolean isSilent(String name, long now) {
+		Member member = members.get(name);
+		return member != null && isSilent(member, now);
+	}
+	
+	/**
+	 * Récupère les calculateurs qui se sont tus plus longtemps que la fenêtre de détection.
+	 * @param now Le moment présent, selon System.nanoTime.
+	 * @return Les noms des calculateurs silencieux.
+	 */
+	public synchronized List<String> getSilentMembers(long now) {
+		ArrayList<String> silent = new ArrayList<>();
+		for(Map.Entry<String, Member> entry : members.entrySet()) {
+			if(isSilent(entry.getValue(), now)) {
+				silent.add(entry.getKey());
+			}
+		}
+		return silent;
+	}
+	
+	private boolean isSilent(Member member, long now) {
+		return failureWindowNanos > 0 && member.lastHeartbeatNanos >= 0 && now - member.lastHeartbeatNanos > failureWindowNanos;
+	}
+}
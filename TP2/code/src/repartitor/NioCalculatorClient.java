@@ -0,0 +1,247 @@
+package repartitor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import repartitor.operations.Operation;
+import shared.CalculationOperations;
+import shared.CalculatorOccupiedException;
+import shared.IOperation;
+import shared.NioProtocol;
+import shared.OperationBatch;
+
+/**
+ * Un calculateur joint par le transport NIO plutôt que par RMI. Toutes les requêtes passent par une seule connexion persistante ;
+ * chacune porte un identifiant qui permet d'en avoir plusieurs en cours à la fois et d'associer chaque réponse à la bonne requête.
+ * Les méthodes de CalculationOperations attendent la réponse, alors que calculateAsync retourne aussitôt. Les erreurs sont
+ * rapportées avec les mêmes exceptions que par RMI : CalculatorOccupiedException pour un refus et RemoteException pour une erreur
+ * du calculateur ou une connexion perdue.
+ * @author dcourcel
+ *
+ */
+public class NioCalculatorClient implements CalculationOperations {
+	private final NioTransport transport;
+	private final SocketChannel channel;
+	private final String address;
+	private final NioProtocol.FrameReader reader = new NioProtocol.FrameReader();
+	private final ArrayDeque<ByteBuffer> requests = new ArrayDeque<>();
+	private final ConcurrentHashMap<Integer, CompletableFuture<int[]>> pendingRequests = new ConcurrentHashMap<>();
+	private final AtomicInteger nextRequestId = new AtomicInteger();
+	private volatile SelectionKey key = null;
+	private volatile boolean closed = false;
+
+	NioCalculatorClient(NioTransport transport, SocketChannel channel, String address) {
+		this.transport = transport;
+		this.channel = channel;
+		this.address = address;
+	}
+
+	/**
+	 * Envoie un lot au calculateur sans attendre la réponse.
+	 * @param batch Les opérations à calculer.
+	 * @param eachResult Vrai pour recevoir le résultat de chaque opération plutôt que leur somme.
+	 * @return Le résultat à venir : le résultat de chaque opération ou, si eachResult est faux, un tableau qui ne contient que la
+	 * somme. En cas d'échec, le résultat se termine avec une CalculatorOccupiedException ou une RemoteException.
+	 */
+	public CompletableFuture<int[]> calculateAsync(OperationBatch batch, boolean eachResult) {
+		return send(eachResult ? NioProtocol.CALCULATE_EACH : NioProtocol.CALCULATE, batch);
+	}
+
+	@Override
+	public int calculate(IOperation[] operations) throws CalculatorOccupiedException, RemoteException {
+		return calculate(Operation.pack(operations));
+	}
+
+	@Override
+	public int[] calculateEach(IOperation[] operations) throws CalculatorOccupiedException, RemoteException {
+		return calculateEach(Operation.pack(operations));
+	}
+
+	@Override
+	public int calculate(OperationBatch operations) throws CalculatorOccupiedException, RemoteException {
+		return await(calculateAsync(operations, false))[0];
+	}
+
+	@Override
+	public int[] calculateEach(OperationBatch operations) throws CalculatorOccupiedException, RemoteException {
+		return await(calculateAsync(operations, true));
+	}
+
+	@Override
+	public int getNumberOfOperationsSupported() throws RemoteException {
+		return await(send(NioProtocol.CAPACITY, null))[0];
+	}
+
+	/**
+	 * Ferme la connexion. Les appels en cours échouent avec une ConnectException.
+	 */
+	public void close() {
+		closed = true;
+		if(key != null) {
+			key.cancel();
+		}
+		try {
+			channel.close();
+		}
+		catch(IOException e) {
+		}
+		failPendingRequests();
+	}
+
+	@Override
+	public String toString() {
+		return "NioCalculatorClient[" + address + "]";
+	}
+
+	/**
+	 * Inscrit la connexion auprès du sélecteur du transport. Appelée par le fil du transport.
+	 * @param selector Le sélecteur du transport.
+	 */
+	void register(Selector selector) {
+		try {
+			key = channel.register(selector, SelectionKey.OP_READ, this);
+			flush();
+		}
+		catch(ClosedChannelException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Lit les réponses disponibles et termine les requêtes correspondantes. Appelée par le fil du transport.
+	 */
+	void read() {
+		try {
+			if(reader.readFrom(channel) == -1) {
+				close();
+				return;
+			}
+			ByteBuffer frame = reader.nextFrame();
+			while(frame != null) {
+				complete(frame);
+				frame = reader.nextFrame();
+			}
+		}
+		catch(IOException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Écrit autant de requêtes que possible sans bloquer. Appelée par le fil du transport.
+	 */
+	void flush() {
+		if(key == null || !key.isValid()) {
+			return;
+		}
+		try {
+			synchronized(requests) {
+				while(!requests.isEmpty()) {
+					ByteBuffer request = requests.peek();
+					channel.write(request);
+					if(request.hasRemaining()) {
+						break;
+					}
+					requests.poll();
+				}
+				key.interestOps(requests.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+		catch(IOException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Envoie une requête. Si aucune autre requête n'attend d'être écrite, la trame est écrite directement par le fil appelant, ce
+	 * qui évite de réveiller le fil du transport ; sinon, elle est ajoutée à la file et écrite par le fil du transport.
+	 * @param type Le type de la requête.
+	 * @param batch Les opérations à calculer ou null pour une requête sans contenu.
+	 * @return Le résultat à venir.
+	 */
+	private CompletableFuture<int[]> send(byte type, OperationBatch batch) {
+		CompletableFuture<int[]> result = new CompletableFuture<>();
+		int requestId = nextRequestId.incrementAndGet();
+		ByteBuffer frame = batch != null ? NioProtocol.requestFrame(requestId, type, batch) : NioProtocol.statusFrame(requestId, type);
+		pendingRequests.put(requestId, result);
+		boolean written = false;
+		synchronized(requests) {
+			if(requests.isEmpty() && key != null) {
+				try {
+					channel.write(frame);
+					written = !frame.hasRemaining();
+				}
+				catch(IOException e) {
+					closed = true;
+				}
+			}
+			if(!written) {
+				requests.add(frame);
+			}
+		}
+		if(closed) {
+			close();
+		}
+		else if(!written) {
+			transport.requestFlush(this);
+		}
+		return result;
+	}
+
+	private void complete(ByteBuffer frame) throws IOException {
+		int requestId = frame.getInt();
+		byte status = frame.get();
+		CompletableFuture<int[]> result = pendingRequests.remove(requestId);
+		if(result == null) {
+			return;
+		}
+		if(status == NioProtocol.RESULT) {
+			result.complete(new int[] { frame.getInt() });
+		}
+		else if(status == NioProtocol.RESULTS) {
+			result.complete(NioProtocol.readResults(frame));
+		}
+		else if(status == NioProtocol.OCCUPIED) {
+			result.completeExceptionally(new CalculatorOccupiedException());
+		}
+		else {
+			result.completeExceptionally(new RemoteException(NioProtocol.readMessage(frame)));
+		}
+	}
+
+	private void failPendingRequests() {
+		for(Integer requestId : pendingRequests.keySet()) {
+			CompletableFuture<int[]> result = pendingRequests.remove(requestId);
+			if(result != null) {
+				result.completeExceptionally(new ConnectException("Connexion perdue avec le calculateur " + address + "."));
+			}
+		}
+	}
+
+	private static int[] await(CompletableFuture<int[]> result) throws RemoteException {
+		try {
+			return result.get();
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof RemoteException) {
+				throw (RemoteException)e.getCause();
+			}
+			throw new RemoteException("Erreur lors de l'appel au calculateur.", e.getCause());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Attente du calculateur interrompue.", e);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package repartitor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Le côté répartiteur du transport NIO. Un seul fil gère, avec un sélecteur, la connexion persistante ouverte vers chaque
+ * calculateur : il écrit les requêtes en attente et lit les réponses, qui sont remises aux clients de ces connexions.
+ * @author dcourcel
+ *
+ */
+public class NioTransport implements Closeable {
+	private final Selector selector;
+	private final ConcurrentLinkedQueue<NioCalculatorClient> clientsToRegister = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<NioCalculatorClient> clientsToFlush = new ConcurrentLinkedQueue<>();
+	private final Thread selectorThread;
+	private volatile boolean running = true;
+
+	/**
+	 * Crée le transport et démarre son fil.
+	 * @throws IOException S'il est impossible d'ouvrir le sélecteur.
+	 */
+	public NioTransport() throws IOException {
+		selector = Selector.open();
+		selectorThread = new Thread("Transport NIO du répartiteur") {
+			@Override
+			public void run() {
+				serve();
+			}
+		};
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/**
+	 * Ouvre une connexion vers un calculateur. La connexion est établie avant le retour de la méthode.
+	 * @param host L'hôte du calculateur.
+	 * @param port Le port sur lequel le calculateur écoute les connexions NIO.
+	 * @return Le client qui envoie les calculs sur cette connexion.
+	 * @throws IOException Si la connexion a échoué.
+	 */
+	public NioCalculatorClient connect(String host, int port) throws IOException {
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+		channel.socket().setTcpNoDelay(true);
+		channel.configureBlocking(false);
+		NioCalculatorClient client = new NioCalculatorClient(this, channel, host + ":" + port);
+		clientsToRegister.add(client);
+		selector.wakeup();
+		return client;
+	}
+
+	/**
+	 * Arrête le fil du transport et ferme toutes les connexions. Les appels en cours échouent.
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		selector.wakeup();
+		try {
+			selectorThread.join();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Demande au fil du transport d'écrire les requêtes en attente d'un client.
+	 * @param client Le client qui a des requêtes à écrire.
+	 */
+	void requestFlush(NioCalculatorClient client) {
+		clientsToFlush.add(client);
+		selector.wakeup();
+	}
+
+	/**
+	 * La boucle du fil du sélecteur.
+	 */
+	private void serve() {
+		try {
+			while(running) {
+				selector.select();
+				NioCalculatorClient client = clientsToRegister.poll();
+				while(client != null) {
+					client.register(selector);
+					client = clientsToRegister.poll();
+				}
+				client = clientsToFlush.poll();
+				while(client != null) {
+					client.flush();
+					client = clientsToFlush.poll();
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					client = (NioCalculatorClient)key.attachment();
+					if(key.isValid() && key.isReadable()) {
+						client.read();
+					}
+					if(key.isValid() && key.isWritable()) {
+						client.flush();
+					}
+				}
+			}
+		}
+		catch(IOException e) {
+			System.out.println("Le transport NIO s'est arrêté. " + e.getMessage());
+		}
+		catch(ClosedSelectorException e) {
+		}
+		finally {
+			for(SelectionKey key : selector.keys()) {
+				((NioCalculatorClient)key.attachment()).close();
+			}
+			NioCalculatorClient client = clientsToRegister.poll();
+			while(client != null) {
+				client.close();
+				client = clientsToRegister.poll();
+			}
+			try {
+				selector.close();
+			}
+			catch(IOException e) {
+			}
+		}
+	}
+}
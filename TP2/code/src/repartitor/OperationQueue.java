@@ -0,0 +1,326 @@
+package repartitor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import repartitor.operations.Pell;
+import repartitor.operations.Prime;
+import shared.IOperation;
+
+/**
+ * Une file d'opérations alimentée en continu par un fil producteur qui lit le fichier d'opérations. La file est bornée : le
+ * producteur bloque lorsqu'elle est pleine, ce qui garde la mémoire utilisée constante peu importe la taille du fichier.
+ * Les opérations remises dans la file après un échec de calcul sont conservées à part et sont toujours retirées en premier.
+ * Si une cache de résultats est fournie, le producteur résout localement les opérations dont le résultat est connu et ne les
+ * ajoute pas à la file. Cette classe est conçue pour n'avoir qu'un seul consommateur.
+ * La file connaît aussi le nombre de lignes du buffer dont toutes les opérations ont été retirées ou résolues par la cache, ce
+ * qui permet d'enregistrer un point de reprise et de reprendre la lecture plus loin dans le buffer.
+ * @author dcourcel
+ *
+ */
+public class OperationQueue {
+	private static final String INVALID_LINE = "Ligne invalide.";
+
+	private final ArrayBlockingQueue<ReadOperation> parsedOperations;
+	private final ArrayDeque<IOperation> returnedOperations = new ArrayDeque<>();
+	private final Thread producer;
+	private final ResultCache resultCache;
+	private volatile int resolvedResult = 0;
+	private volatile int resolvedOperations = 0;
+	private ReadOperation nextOperation = null;
+	private boolean inputFinished = false;
+	private volatile IOException readError = null;
+	private long linesConsumed;
+	private int resolvedResultConsumed = 0;
+
+	/**
+	 * Une opération lue, avec sa position dans le buffer. L'opération nulle marque la fin du buffer.
+	 */
+	private static class ReadOperation {
+		private final IOperation operation;
+		private final long line;
+		private final int resolvedBefore;
+
+		/**
+		 * @param operation L'opération lue ou null à la fin du buffer.
+		 * @param line Le numéro de la ligne de l'opération, à partir de 1, ou le nombre de lignes à la fin du buffer.
+		 * @param resolvedBefore La somme des résultats résolus par la cache dans les lignes précédentes.
+		 */
+		private ReadOperation(IOperation operation, long line, int resolvedBefore) {
+			this.operation = operation;
+			this.line = line;
+			this.resolvedBefore = resolvedBefore;
+		}
+	}
+
+	/**
+	 * Crée la file et démarre le fil qui lit les opérations du buffer.
+	 * @param operationsToDo Le buffer à partir duquel il faut lire les opérations à faire.
+	 * @param capacity Le nombre maximal d'opérations lues, mais pas encore retirées, conservées en mémoire.
+	 * @param resultCache La cache utilisée pour résoudre localement les opérations ou null pour tout envoyer aux calculateurs.
+	 */
+	public OperationQueue(final BufferedReader operationsToDo, int capacity, ResultCache resultCache) {
+		this(operationsToDo, capacity, resultCache, 0);
+	}
+
+	/**
+	 * Crée la file et démarre le fil qui lit les opérations du buffer après avoir sauté ses premières lignes.
+	 * @param operationsToDo Le buffer à partir duquel il faut lire les opérations à faire.
+	 * @param capacity Le nombre maximal d'opérations lues, mais pas encore retirées, conservées en mémoire.
+	 * @param resultCache La cache utilisée pour résoudre localement les opérations ou null pour tout envoyer aux calculateurs.
+	 * @param linesToSkip Le nombre de lignes du début du buffer à ignorer.
+	 */
+	public OperationQueue(final BufferedReader operationsToDo, int capacity, ResultCache resultCache, final long linesToSkip) {
+		parsedOperations = new ArrayBlockingQueue<>(capacity);
+		this.resultCache = resultCache;
+		linesConsumed = linesToSkip;
+		producer = new Thread("Lecteur d'opérations") {
+			@Override
+			public void run() {
+				readOperations(operationsToDo, linesToSkip);
+			}
+		};
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	/**
+	 * Crée une file qui contient déjà toutes les opérations données, sans fil producteur. Chaque opération compte comme une
+	 * ligne du buffer.
+	 * @param operations Les opérations à faire.
+	 * @param resultCache La cache utilisée pour résoudre localement les opérations ou null pour tout envoyer aux calculateurs.
+	 */
+	public OperationQueue(IOperation[] operations, ResultCache resultCache) {
+		parsedOperations = new ArrayBlockingQueue<>(operations.length + 1);
+		this.resultCache = resultCache;
+		linesConsumed = 0;
+		producer = null;
+		for(int i = 0; i < operations.length; ++i) {
+			Integer cachedResult = resultCache != null ? resultCache.lookup(operations[i]) : null;
+			if(cachedResult != null) {
+				resolvedResult = (resolvedResult + cachedResult) % 4000;
+				++resolvedOperations;
+			}
+			else {
+				parsedOperations.add(new ReadOperation(operations[i], i + 1, resolvedResult));
+			}
+		}
+		parsedOperations.add(new ReadOperation(null, operations.length, resolvedResult));
+	}
+
+	/**
+	 * Indique s'il reste des opérations à retirer. Cette méthode bloque jusqu'à ce que le producteur ait lu une nouvelle opération
+	 * ou ait atteint la fin du buffer.
+	 * @return Vrai s'il reste au moins une opération à retirer, faux sinon.
+	 * @throws IOException Si une erreur est survenue lors de la lecture du buffer ou si l'attente a été interrompue.
+	 */
+	public boolean hasMoreOperations() throws IOException {
+		synchronized(returnedOperations) {
+			if(!returnedOperations.isEmpty()) {
+				return true;
+			}
+		}
+		if(nextOperation == null && !inputFinished) {
+			try {
+				fetchNextOperation();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Lecture des opérations interrompue.");
+			}
+		}
+		if(inputFinished && readError != null) {
+			throw readError;
+		}
+		return nextOperation != null;
+	}
+
+	/**
+	 * Retire des opérations de la file. Les opérations remises dans la file sont retirées en premier. Cette méthode attend que le
+	 * producteur ait lu assez d'opérations pour remplir le lot, à moins que la fin du buffer soit atteinte.
+	 * @param numberOfOperationsToGet Le nombre d'opérations à retirer.
+	 * @return Les opérations retirées. Le tableau peut être plus petit que demandé s'il ne restait plus assez d'opérations.
+	 */
+	public IOperation[] retrieveOperations(int numberOfOperationsToGet) {
+		ArrayList<IOperation> extractedOps = new ArrayList<>(numberOfOperationsToGet);
+		synchronized(returnedOperations) {
+			while(extractedOps.size() < numberOfOperationsToGet && !returnedOperations.isEmpty()) {
+				extractedOps.add(returnedOperations.pop());
+			}
+		}
+		try {
+			while(extractedOps.size() < numberOfOperationsToGet && (nextOperation != null || !inputFinished)) {
+				if(nextOperation == null) {
+					fetchNextOperation();
+				}
+				if(nextOperation != null) {
+					extractedOps.add(nextOperation.operation);
+					linesConsumed = nextOperation.line;
+					resolvedResultConsumed = nextOperation.resolvedBefore;
+					nextOperation = null;
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return extractedOps.toArray(new IOperation[extractedOps.size()]);
+	}
+
+	/**
+	 * Remet des opérations dans la file pour qu'elles soient exécutées à nouveau.
+	 * @param operations Les opérations à remettre.
+	 */
+	public void putBackOperations(IOperation[] operations) {
+		synchronized(returnedOperations) {
+			for(IOperation operation : operations) {
+				returnedOperations.push(operation);
+			}
+		}
+	}
+
+	/**
+	 * Indique le nombre d'opérations lues ou remises dans la file qui n'ont pas encore été retirées. Le compte peut être
+	 * légèrement en retard lorsqu'il est lu par un autre fil que le consommateur.
+	 * @return Le nombre d'opérations en attente dans la file.
+	 */
+	public int getQueuedOperations() {
+		int queued = parsedOperations.size();
+		synchronized(returnedOperations) {
+			queued += returnedOperations.size();
+		}
+		return queued;
+	}
+
+	/**
+	 * Récupère la somme modulo 4000 des résultats des opérations résolues par la cache. La valeur n'est complète qu'une fois que
+	 * hasMoreOperations a retourné faux.
+	 * @return La somme des résultats résolus localement.
+	 */
+	public int getResolvedResult() {
+		return resolvedResult;
+	}
+	
+	/**
+	 * Récupère le nombre d'opérations résolues par la cache.
+	 * @return Le nombre d'opérations qui n'ont pas été envoyées aux calculateurs.
+	 */
+	public int getResolvedOperations() {
+		return resolvedOperations;
+	}
+	
+	/**
+	 * Indique le nombre de lignes du début du buffer dont toutes les opérations ont été retirées de la file ou résolues par la
+	 * cache, en comptant les lignes sautées.
+	 * @return Le nombre de lignes consommées.
+	 */
+	public long getLinesConsumed() {
+		return linesConsumed;
+	}
+
+	/**
+	 * Récupère la somme modulo 4000 des résultats résolus par la cache parmi les lignes consommées.
+	 * @return La somme des résultats résolus localement dans les lignes consommées.
+	 */
+	public int getResolvedResultConsumed() {
+		return resolvedResultConsumed;
+	}
+
+	/**
+	 * Arrête le fil producteur. Les opérations qui n'ont pas encore été lues sont abandonnées.
+	 */
+	public void close() {
+		if(producer != null) {
+			producer.interrupt();
+		}
+	}
+
+	/**
+	 * Transforme une ligne du fichier d'opérations en opération.
+	 * @param line La ligne à transformer.
+	 * @return L'opération correspondant à la ligne ou null si la ligne est invalide.
+	 */
+	public static IOperation parseOperation(String line) {
+		String[] args = line.split(" ");
+
+		if(args.length == 2){
+			try{
+				int operande = Integer.parseInt(args[1]);
+				if(operande >= 0){
+					if(args[0].equals("prime")){
+						return new Prime(operande);
+					}else if(args[0].equals("pell")){
+						return new Pell(operande);
+					}
+				}
+			}catch( NumberFormatException e){
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Attend la prochaine opération lue par le producteur et la conserve dans nextOperation. Si la fin du buffer est atteinte,
+	 * inputFinished est mis à vrai.
+	 * @throws InterruptedException Si l'attente est interrompue.
+	 */
+	private void fetchNextOperation() throws InterruptedException {
+		ReadOperation operation = parsedOperations.take();
+		if(operation.operation == null) {
+			inputFinished = true;
+			linesConsumed = operation.line;
+			resolvedResultConsumed = operation.resolvedBefore;
+		}
+		else {
+			nextOperation = operation;
+		}
+	}
+
+	/**
+	 * Lit le buffer ligne par ligne et ajoute les opérations valides à la file. Bloque lorsque la file est pleine.
+	 * @param operationsToDo Le buffer à partir duquel il faut lire les opérations à faire.
+	 * @param linesToSkip Le nombre de lignes du début du buffer à ignorer.
+	 */
+	private void readOperations(BufferedReader operationsToDo, long linesToSkip) {
+		long lineNumber = 0;
+		try {
+			String line = operationsToDo.readLine();
+			while(line != null && lineNumber < linesToSkip) {
+				++lineNumber;
+				line = operationsToDo.readLine();
+			}
+			while(line != null){
+				++lineNumber;
+				IOperation operation = parseOperation(line);
+				Integer cachedResult = operation != null && resultCache != null ? resultCache.lookup(operation) : null;
+				if(cachedResult != null) {
+					resolvedResult = (resolvedResult + cachedResult) % 4000;
+					++resolvedOperations;
+				}
+				else if(operation != null) {
+					parsedOperations.put(new ReadOperation(operation, lineNumber, resolvedResult));
+				}
+				else {
+					System.out.println(INVALID_LINE);
+				}
+				line = operationsToDo.readLine();
+			}
+		}
+		catch(IOException e) {
+			readError = e;
+		}
+		catch(InterruptedException e) {
+			return;
+		}
+
+		try {
+			parsedOperations.put(new ReadOperation(null, lineNumber, resolvedResult));
+		}
+		catch(InterruptedException e) {
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package repartitor;
+
+import shared.CalculationOperations;
+
+/**
+ * Un calculateur connu du répartiteur avec son nom dans le RMIRegistry, sa capacité mise en cache, sa charge observée et ses
+ * compteurs. Deux éléments sont égaux s'ils désignent le même calculateur.
+ * @author dcourcel
+ *
+ */
+public class RegisteredCalculator {
+	
+	private final CalculationOperations calculator;
+	private final String name;
+	private final int numberOfOperationsSupported;
+	private final boolean sumOnly;
+	private final CalculatorLoad load = new CalculatorLoad();
+	private CalculatorMetrics metrics = null;
+	
+	public RegisteredCalculator(CalculationOperations calculator, String name, int numberOfOperationsSupported) {
+		this(calculator, name, numberOfOperationsSupported, false);
+	}
+	
+	public RegisteredCalculator(CalculationOperations calculator, String name, int numberOfOperationsSupported, boolean sumOnly) {
+		this.calculator = calculator;
+		this.name = name;
+		this.numberOfOperationsSupported = numberOfOperationsSupported;
+		this.sumOnly = sumOnly;
+	}
+	
+	public CalculationOperations getCalculator() {
+		return calculator;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Indique le nombre d'opérations que le calculateur supporte, tel qu'il l'a annoncé lors de son enregistrement.
+	 * @return Le nombre d'opérations que le calculateur supporte.
+	 */
+	public int getNumberOfOperationsSupported() {
+		return numberOfOperationsSupported;
+	}
+	
+	/**
+	 * Indique si le calculateur ne retourne que la somme de chaque lot, tel qu'il l'a annoncé lors de son enregistrement.
+	 * @return Vrai si le résultat de chaque opération ne doit pas lui être demandé.
+	 */
+	public boolean isSumOnly() {
+		return sumOnly;
+	}
+	
+	public CalculatorLoad getLoad() {
+		return load;
+	}
+	
+	/**
+	 * Récupère les compteurs du calculateur publiés par les métriques du répartiteur.
+	 * @return Les compteurs ou null s'ils n'ont pas été associés au calculateur.
+	 */
+	public CalculatorMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public void setMetrics(CalculatorMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public boolean equals(Object object) {
+		return object instanceof RegisteredCalculator && calculator.equals(((RegisteredCalculator)object).calculator);
+	}
+	
+	@Override
+	public int hashCode() {
+		return calculator.hashCode();
+	}
+}
@@ -1,6 +1,7 @@
 package repartitor;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -14,13 +15,23 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
-import java.util.Random;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import repartitor.operations.Operation;
-import repartitor.operations.Pell;
-import repartitor.operations.Prime;
+import repartitor.selection.CalculatorSelectionPolicy;
 import shared.CalculationOperations;
+import shared.CalculatorCapabilities;
+import shared.CalculatorLoadReport;
 import shared.CalculatorOccupiedException;
 import shared.IOperation;
 import shared.RepartitorRegistering;
@@ -31,125 +42,618 @@ import shared.RepartitorRegistering;
  * différentes opérations. Le répartiteur tient compte de différents facteurs pour l'assignation des opérations aux calculateurs.
  * Chaque calculateur a un nombre maximal d'opérations après lequel le calculateur se mettra à refuser de faire le calcul.
  * Les calculateurs peuvent se terminer abruptement sans avoir retourné un résultat.
- * En mode non sécurisé, les calculateurs peuvent retourner des résultats erronés.
+ * En mode non sécurisé, les calculateurs peuvent retourner des résultats erronés. Un calculateur peut aussi bloquer sans jamais
+ * répondre : avec une politique d'échéance, l'appel est alors abandonné, ses opérations sont remises dans la file et le
+ * calculateur est retiré ou suspendu. Les calculateurs peuvent aussi envoyer des battements au répartiteur : un calculateur qui se
+ * tait plus longtemps que la fenêtre de détection est retiré et ses appels en cours sont abandonnés, sans attendre leur échéance.
+ * Un calculateur qui s'enregistre durant un calcul reçoit des lots dès le prochain envoi. L'état d'un calcul peut être enregistré
+ * périodiquement dans un journal de points de reprise, pour qu'un calcul interrompu reprenne sans refaire les opérations terminées.
+ * En mode serveur, le répartiteur accepte plusieurs calculs à la fois et partage les calculateurs entre eux selon leur poids.
+ * Un répartiteur peut aussi s'enregistrer comme un calculateur auprès d'un répartiteur parent et calculer sur ses propres
+ * calculateurs les tranches que le parent lui envoie.
  * @author dcourcel
  *
  */
 public abstract class Repartitor implements RepartitorRegistering {
 	private static final int REGISTRY_CREATE_FAILED = 1;
-	private static final int ACCESS_EXCEPTION_CODE = 2;
-	private static final int REMOTE_EXCEPTION_CODE = 3;
+	static final int ACCESS_EXCEPTION_CODE = 2;
+	static final int REMOTE_EXCEPTION_CODE = 3;
 	private static final int READ_FILE_EXCEPTION = 4;
 	private static final int INVALID_PARAM = 5;
-	private static final String INVALID_LINE = "Ligne invalide.";
+	private static final int OPERATION_QUEUE_CAPACITY = 10000;
+	private static final int MAX_BATCHES_IN_FLIGHT = 64;
+	public static final int DEFAULT_BATCHES_PER_CALCULATOR = 4;
+	private static final long SERVER_MEMBERSHIP_WAIT_MS = 1000;
 	
 	private final Registry registryCreated;
-	private final Random randomCalculator = new Random();
-	private ArrayList<Entry<CalculationOperations, String>> calculatorList;
-	private Stack<IOperation> operations;
+	private final int registryPort;
+	private final DispatchEngine dispatchEngine;
+	private final boolean adaptiveBatchSize;
+	private final boolean packedWireFormat;
+	private final HashMap<CalculationOperations, BatchSizeController> batchControllers = new HashMap<>();
+	private final ResultCache resultCache;
+	private final File cacheFile;
+	private CalculatorSelectionPolicy selectionPolicy;
+	private int batchesPerCalculator;
+	private final HashMap<String, CalculatorCapabilities> calculatorCapabilities = new HashMap<>();
+	private final NioTransport nioTransport;
+	private final HashMap<String, NioCalculatorClient> nioClients = new HashMap<>();
+	private DeadlinePolicy deadlinePolicy;
+	private ScheduledExecutorService watchdog = null;
+	private final HashMap<CalculationOperations, Long> suspendedUntil = new HashMap<>();
+	private final ArrayList<RegisteredCalculator> suspendedCalculators = new ArrayList<>();
+	private int callsExpired = 0;
+	private int calculatorsSuspended = 0;
+	private final MembershipTable membership;
+	private long membershipVersion;
+	private final Set<CalculatorThread> callsInFlight = ConcurrentHashMap.newKeySet();
+	private ArrayList<RegisteredCalculator> calculatorList;
+	private final JobScheduler scheduler;
+	private final JobServer jobServer;
+	private long operationsRetrieved;
+	private long callsSubmittedBefore;
+	private final RepartitorMetrics metrics;
 	
 	/**
 	 * Crée un répartiteur et un RMIRegistry.
-	 * @param secureMode Indique si le répartiteur peut faire confiance aux calculateurs (vrai) ou non (faux).
+	 * @param options Les options du répartiteur.
+	 * @throws IllegalArgumentException Si le mode de répartition demandé n'est pas supporté.
 	 * @throws RemoteException S'il est impossible de créer le RMIRegistry.
 	 */
-	public Repartitor() throws AlreadyBoundException, RemoteException {
-		registryCreated = LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+	public Repartitor(RepartitorOptions options) throws AlreadyBoundException, RemoteException {
+		dispatchEngine = options.createDispatchEngine();
+		adaptiveBatchSize = options.isAdaptiveBatchSize();
+		packedWireFormat = options.isPackedWireFormat();
+		selectionPolicy = options.createSelectionPolicy();
+		batchesPerCalculator = options.getBatchesPerCalculator();
+		resultCache = options.createResultCache();
+		cacheFile = options.getCacheFile();
+		if(resultCache != null && cacheFile != null) {
+			try {
+				resultCache.load(cacheFile);
+			}
+			catch(IOException e) {
+				System.out.println("Impossible de lire la cache de résultats. " + e.getMessage());
+			}
+		}
+		NioTransport transport = null;
+		if(options.isNioTransport()) {
+			try {
+				transport = new NioTransport();
+			}
+			catch(IOException e) {
+				System.out.println("Impossible de démarrer le transport NIO, RMI sera utilisé. " + e.getMessage());
+			}
+		}
+		nioTransport = transport;
+		registryPort = options.getRegistryPort();
+		metrics = new RepartitorMetrics(registryPort);
+		scheduler = new JobScheduler(metrics);
+		jobServer = new JobServer(this, scheduler);
+		setDeadlinePolicy(options.createDeadlinePolicy());
+		setJobCheckpoint(options.createJobCheckpoint());
+		membership = new MembershipTable(options.getFailureWindowMillis());
+		if(membership.getFailureWindowNanos() > 0) {
+			startWatchdog();
+			long checkInterval = Math.max(1000000L, membership.getFailureWindowNanos() / 4);
+			watchdog.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					abandonCallsToSilentCalculators();
+				}
+			}, checkInterval, checkInterval, TimeUnit.NANOSECONDS);
+		}
+		if(options.getMetricsIntervalMillis() > 0) {
+			startWatchdog();
+			watchdog.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					System.out.print(metrics.dump());
+				}
+			}, options.getMetricsIntervalMillis(), options.getMetricsIntervalMillis(), TimeUnit.MILLISECONDS);
+		}
+		registryCreated = LocateRegistry.createRegistry(registryPort);
 		Remote exportedObject = UnicastRemoteObject.exportObject(this, 0);
 		registryCreated.bind(RepartitorRegistering.REPARTITOR_NAME, exportedObject);
 	}
 	
 	/**
 	 * Effectue le calcul des opérations lues dans operationsToDo. Après chaque opération, un modulo 4000 est appliqué pour éviter
-	 * un débordement d'entier.
+	 * un débordement d'entier. Les lots sont répartis comme décrit dans dispatchJobs. Si un journal de points de reprise est
+	 * utilisé, l'état du calcul y est enregistré périodiquement ; le journal est effacé à la fin du calcul et conservé si le
+	 * calcul est interrompu.
 	 * @param operationsToDo Un buffer contenant les différentes opérations à effectuer.
 	 * @return Le résultat du calcul.
-	 * @throws IllegalStateException S'il n'y a pas assez de calculateurs enregistrés dans le RMIRegistry.
+	 * @throws IllegalStateException S'il n'y a pas assez de calculateurs enregistrés auprès du répartiteur.
 	 * @throws IOExeption Si la lecture du buffer n'a pas réussie.
-	 * @throws AccessException Si l'accès au RMIRegistry a été refusé.
-	 * @throws RemoteException Si une erreur de communication survient avec le RMIRegistry.
 	 */
 	public int calculateOperations(BufferedReader operationsToDo) throws IllegalStateException, IOException {
+		return calculateOperations(operationsToDo, null, null);
+	}
+	
+	/**
+	 * Effectue le calcul des opérations lues dans operationsToDo comme calculateOperations. Le nom du calcul est conservé dans
+	 * le journal de points de reprise pour retrouver le fichier d'opérations lors d'une reprise.
+	 * @param operationsToDo Un buffer contenant les différentes opérations à effectuer.
+	 * @param jobName Le chemin du fichier d'opérations.
+	 * @return Le résultat du calcul.
+	 * @throws IllegalStateException S'il n'y a pas assez de calculateurs enregistrés auprès du répartiteur.
+	 * @throws IOExeption Si la lecture du buffer n'a pas réussie.
+	 */
+	public int calculateOperations(BufferedReader operationsToDo, String jobName) throws IllegalStateException, IOException {
+		return calculateOperations(operationsToDo, jobName, null);
+	}
+	
+	/**
+	 * Reprend un calcul interrompu à partir de son dernier point de reprise : les lignes déjà lues du fichier d'opérations sont
+	 * sautées, la somme partielle est conservée et seules les opérations qui n'étaient pas terminées sont calculées de nouveau.
+	 * @param operationsToDo Un buffer contenant les opérations du calcul interrompu, depuis le début.
+	 * @param state L'état du calcul au dernier point de reprise.
+	 * @return Le résultat du calcul.
+	 * @throws IllegalStateException S'il n'y a pas assez de calculateurs enregistrés auprès du répartiteur.
+	 * @throws IOExeption Si la lecture du buffer n'a pas réussie.
+	 */
+	public int resumeOperations(BufferedReader operationsToDo, JobCheckpoint.State state) throws IllegalStateException, IOException {
+		return calculateOperations(operationsToDo, state.getJobName(), state);
+	}
+	
+	private int calculateOperations(BufferedReader operationsToDo, String jobName, JobCheckpoint.State resumed)
+			throws IllegalStateException, IOException {
+		if(jobServer.isStarted()) {
+			throw new IllegalStateException("Le répartiteur est en mode serveur de calculs.");
+		}
 		
 		long debutTemps = System.currentTimeMillis();
 		
-		int resultat = 0;
-		operations = transformInputToOperations(operationsToDo);
-		calculatorList = findAvailableCalculators();
+		startBusyPeriod();
+		Job job = new Job(jobName, 1, transformInputToOperations(operationsToDo, resumed != null ? resumed.getLinesConsumed() : 0),
+				resumed != null ? resumed.getPartialResult() : 0);
+		boolean finished = false;
+		try {
+			scheduler.admit(job);
+			if(resumed != null) {
+				scheduler.returnOperations(job, resumed.getPendingOperations());
+			}
+			scheduler.startCheckpoint(job);
+			prepareCalculators();
+			dispatchJobs(false);
+			finished = true;
+		}
+		finally {
+			scheduler.endCheckpoint(job, finished);
+			if(!finished) {
+				job.getOperations().close();
+				scheduler.remove(job);
+			}
+		}
+		if(job.getError() != null) {
+			throw job.getError();
+		}
+		
+		printStatistics();
+		System.out.println("Temps: " + (System.currentTimeMillis() - debutTemps));
 		
-		while(!operations.isEmpty()){
-			do {
+		return job.getResult();
+	}
+	
+	/**
+	 * Démarre le serveur de calculs : un fil du répartiteur répartit les lots de tous les calculs soumis avec submitJob sur les
+	 * calculateurs enregistrés, jusqu'à l'appel de stopJobServer. Le prochain lot est toujours tiré du calcul qui a reçu la plus
+	 * petite part des calculateurs par rapport à son poids, ce qui remplit les calculateurs laissés libres par la fin d'un calcul
+	 * avec les lots des autres et empêche un gros calcul de retarder indéfiniment un petit. S'il n'y a pas assez de
+	 * calculateurs, le serveur attend qu'il s'en enregistre plutôt que d'abandonner les calculs.
+	 */
+	public void startJobServer() {
+		jobServer.start();
+	}
+	
+	/**
+	 * Arrête le serveur de calculs. Les calculs qui ne sont pas terminés échouent et les lots en cours sont attendus, mais leurs
+	 * résultats sont ignorés.
+	 * @throws InterruptedException Si l'attente de l'arrêt est interrompue.
+	 */
+	public void stopJobServer() throws InterruptedException {
+		jobServer.stop();
+	}
+	
+	/**
+	 * Soumet un calcul au serveur de calculs. Le calcul commence dès que le serveur le reçoit, en même temps que les autres.
+	 * @param operationsToDo Un buffer contenant les différentes opérations à effectuer.
+	 * @param jobName Le nom du calcul.
+	 * @param weight Le poids du calcul : un calcul de poids 2 reçoit deux fois plus de lots qu'un calcul de poids 1 tant que les
+	 * deux ont des opérations à envoyer.
+	 * @return Le calcul, dont on peut attendre le résultat.
+	 * @throws IllegalStateException Si le serveur de calculs n'est pas démarré.
+	 */
+	public Job submitJob(BufferedReader operationsToDo, String jobName, int weight) throws IllegalStateException {
+		return jobServer.submit(jobName, weight, transformInputToOperations(operationsToDo, 0));
+	}
+	
+	/**
+	 * Soumet au serveur de calculs un calcul dont les opérations sont déjà en mémoire.
+	 * @param operations Les opérations à effectuer.
+	 * @param jobName Le nom du calcul.
+	 * @param weight Le poids du calcul.
+	 * @return Le calcul, dont on peut attendre le résultat.
+	 * @throws IllegalStateException Si le serveur de calculs n'est pas démarré.
+	 */
+	public Job submitJob(IOperation[] operations, String jobName, int weight) throws IllegalStateException {
+		return jobServer.submit(jobName, weight, new OperationQueue(operations, resultCache));
+	}
+	
+	/**
+	 * Répartit les lots des calculs actifs. Chaque résultat reçu, réussi ou non, libère une place et déclenche aussitôt l'envoi
+	 * d'un nouveau lot, de sorte que chaque calculateur garde le nombre cible de lots en cours tant qu'il reste des opérations.
+	 * Lorsqu'il ne reste pas assez de calculateurs parce que certains sont suspendus, l'envoi reprend à la fin de leur
+	 * suspension. Avant chaque série d'envois, les calculateurs enregistrés depuis la série précédente sont ajoutés à la liste,
+	 * les calculateurs silencieux sont retirés et la charge annoncée par les autres est transmise à la politique de sélection.
+	 * Un calcul se termine dès que toutes ses opérations ont été lues et que tous ses résultats ont été reçus.
+	 * @param server Vrai pour attendre de nouveaux calculs et des calculateurs jusqu'à l'arrêt du serveur, faux pour revenir dès
+	 * que les calculs actifs sont terminés.
+	 * @throws IllegalStateException Hors du mode serveur, s'il n'y a pas assez de calculateurs enregistrés auprès du répartiteur.
+	 */
+	void dispatchJobs(boolean server) throws IllegalStateException {
+		int batchesInFlight = 0;
+		while(!server || jobServer.isRunning()) {
+			scheduler.admitSubmittedJobs();
+			if(!scheduler.selectNextJob(server) && !haveWaitingResults()) {
+				scheduler.finishDrainedJobs(true, server);
+				if(!server || !jobServer.awaitJob()) {
+					return;
+				}
+				continue;
+			}
+			
+			refreshMembership();
+			while(canDispatch(batchesInFlight) && scheduler.selectNextJob(server)) {
+				updateCalculatorList();
+				reinstateSuspendedCalculators();
 				if(!haveEnoughtCalculators(calculatorList.size())) {
-					throw new IllegalStateException("Plus assez de calculateurs.");
+					if(suspendedCalculators.isEmpty() && !server) {
+						throw new IllegalStateException("Plus assez de calculateurs.");
+					}
+					if(batchesInFlight > 0) {
+						break;
+					}
+					if(suspendedCalculators.isEmpty()) {
+						awaitMembershipChange();
+						break;
+					}
+					waitForSuspensionEnd();
+					continue;
 				}
 				try {
 					launchACalculation();
+					++batchesInFlight;
 				}
 				catch(ResultError e) {
-					System.out.println("Retrait d'un calculateur. " + e.getMessage());
-					unbindACalculator(e.getInvalidCalculator());
+					handleFailedCalculator(e.getInvalidCalculator(), e);
 				}
 			}
-			while(!operations.isEmpty());
 			
-			boolean threadGotError = false;
-			while(!threadGotError && haveWaitingResults()) {
+			if(haveWaitingResults()) {
 				try {
-					int threadResult = getResult();
-					resultat = (resultat + threadResult) % 4000 ;
+					BatchResult result = getResult();
+					--batchesInFlight;
+					if(result.getJob() != null && scheduler.isActive(result.getJob())) {
+						result.getJob().addResult(result.getValue());
+					}
 				}
 				catch(ResultError e) {
-					threadGotError = true;
+					--batchesInFlight;
 					if(e.getCause() != null && !(e.getCause() instanceof CalculatorOccupiedException)) {
-						System.out.println("Retrait d'un calculateur. " + e.getMessage());
-						unbindACalculator(e.getInvalidCalculator());
+						handleFailedCalculator(e.getInvalidCalculator(), e.getCause());
 					}
 				}
 				catch(InterruptedException e) {
-					System.out.println("Interruption catched.");
+					if(!server) {
+						System.out.println("Interruption catched.");
+					}
 				}
 			}
+			scheduler.finishDrainedJobs(false, server);
+			if(!server) {
+				scheduler.checkpointIfDue();
+			}
 		}
-		
-		System.out.println("Temps: " + (System.currentTimeMillis() - debutTemps));
-		
-		return resultat;
 	}
 	
 	/**
-	 * Récupère un calculateur de façon aléatoire dans la liste.
-	 * @return Un calculateur de la liste.
+	 * Récupère le moteur qui exécute les appels aux calculateurs.
+	 * @return Le moteur de répartition.
 	 */
-	protected CalculationOperations getACalculator() {
-		return calculatorList.get(randomCalculator.nextInt(calculatorList.size())).getKey();
+	protected DispatchEngine getDispatchEngine() {
+		return dispatchEngine;
 	}
 	
 	/**
-	 * Dépile une partie des opérations de la pile d'opérations et retourne un tableau contenant ces opérations.
-	 * @param numberOfOperationsToGet Le nombre d'opérations à dépiler.
-	 * @return Un tableau d'opérations provenant de la pile de la taille du paramètre numberOfOperationsToGet ou de taille inférieure
-	 * s'il restait moins d'opérations dans la pile à extraire.
+	 * Crée l'appel qui enverra des opérations à un calculateur avec le moteur de répartition du répartiteur. Si la cache de
+	 * résultats est utilisée, l'appel demande le résultat de chaque opération, à moins que le calculateur ne retourne que la
+	 * somme de chaque lot : ses résultats ne sont alors pas ajoutés à la cache. Les opérations sont envoyées sous forme de lot
+	 * compact, à moins que le format objet ait été choisi. Si une politique d'échéance est utilisée, l'appel reçoit l'échéance
+	 * calculée pour ce calculateur.
+	 * Le lot est compté dans la charge du calculateur jusqu'à ce que reportBatchOutcome soit appelée.
+	 * @param ops Les opérations à envoyer.
+	 * @param calculator Le calculateur qui doit effectuer les opérations.
+	 * @return L'appel, qui n'est pas encore démarré.
 	 */
-	protected IOperation[] retrieveSomeOperationsFromStack(int numberOfOperationsToGet) {
-		IOperation[] extractedOPs = new Operation[Math.min(numberOfOperationsToGet, operations.size())];
-		
-		for(int i = 0; i < extractedOPs.length; i++){
-			extractedOPs[i] = operations.pop();
+	protected CalculatorThread createCalculatorThread(IOperation[] ops, RegisteredCalculator calculator) {
+		CalculatorThread thread = new CalculatorThread(ops, calculator, dispatchEngine);
+		thread.setRequestEachResult(resultCache != null && !calculator.isSumOnly());
+		thread.setPackedWireFormat(packedWireFormat);
+		if(deadlinePolicy != null) {
+			thread.setDeadline(deadlinePolicy.getDeadlineNanos(calculator, ops.length), watchdog);
 		}
-		
-		return extractedOPs;
+		thread.setJob(ops.length > 0 ? scheduler.getJob(ops[0]) : null);
+		callsInFlight.add(thread);
+		calculator.getLoad().batchStarted();
+		metrics.callStarted(thread);
+		return thread;
+	}
+	
+	/**
+	 * Conserve dans la cache les résultats d'un appel dont le résultat a été validé. Les opérations de l'appel sont terminées.
+	 * @param thread L'appel dont le résultat a été accepté.
+	 */
+	protected void recordResults(CalculatorThread thread) {
+		if(resultCache != null && thread.getEachResult() != null) {
+			resultCache.store(thread.getOperations(), thread.getEachResult());
+		}
+		operationsCompleted(thread.getOperations());
+	}
+	
+	/**
+	 * Indique que les résultats d'opérations ont été ajoutés au résultat retourné par getResult. Ces opérations ne sont plus
+	 * enregistrées dans les points de reprise, à moins d'être remises dans la file.
+	 * @param completed Les opérations terminées, qui appartiennent toutes au même calcul.
+	 */
+	protected void operationsCompleted(IOperation[] completed) {
+		scheduler.operationsCompleted(completed);
+	}
+	
+	/**
+	 * Retire du résultat de son calcul le résultat d'un appel déjà accepté et remet ses opérations dans la file de ce calcul pour
+	 * qu'elles soient calculées de nouveau.
+	 * @param thread L'appel dont le résultat a été accepté à tort.
+	 * @return Vrai si le résultat a été retiré, faux si le calcul de l'appel est déjà terminé.
+	 */
+	protected boolean retractResult(CalculatorThread thread) {
+		Job job = thread.getJob();
+		if(job == null || !scheduler.isActive(job)) {
+			return false;
+		}
+		job.addResult(-thread.getResults());
+		scheduler.returnOperations(job, thread.getOperations());
+		return true;
+	}
+	
+	/**
+	 * Compte un désaccord dans les métriques de chacun des calculateurs qui ont calculé le même lot.
+	 * @param threads Les appels dont les résultats diffèrent.
+	 */
+	protected void reportMismatch(CalculatorThread[] threads) {
+		metrics.mismatchDetected(threads);
+	}
+	
+	/**
+	 * Récupère les métriques du répartiteur, aussi publiées par JMX.
+	 * @return Les métriques.
+	 */
+	public RepartitorMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Détermine le nombre d'opérations à envoyer à un calculateur. Par défaut, il s'agit de sa capacité plus une opération. En mode
+	 * adaptatif, la taille est apprise à partir des refus et des temps aller-retour observés.
+	 * @param calculator Le calculateur auquel le lot sera envoyé.
+	 * @return La taille du lot à envoyer.
+	 */
+	protected int getBatchSize(RegisteredCalculator calculator) {
+		if(!adaptiveBatchSize) {
+			return calculator.getNumberOfOperationsSupported() + 1;
+		}
+		synchronized(batchControllers) {
+			BatchSizeController controller = batchControllers.get(calculator.getCalculator());
+			if(controller == null) {
+				controller = new BatchSizeController(calculator.getNumberOfOperationsSupported() + 1);
+				batchControllers.put(calculator.getCalculator(), controller);
+			}
+			return controller.getBatchSize();
+		}
+	}
+	
+	/**
+	 * Met à jour la charge du calculateur et le contrôleur de taille de lot avec le résultat d'un appel terminé. Doit être appelée
+	 * pour chaque appel terminé, avant la validation de son résultat.
+	 * @param thread L'appel terminé.
+	 */
+	protected void reportBatchOutcome(CalculatorThread thread) {
+		callsInFlight.remove(thread);
+		metrics.callFinished(thread);
+		if(thread.getRegisteredCalculator() != null) {
+			thread.getRegisteredCalculator().getLoad().batchFinished(thread.getOperations().length, thread.getRoundTripNanos(),
+					thread.getExceptionThrown() == null);
+		}
+		if(!adaptiveBatchSize) {
+			return;
+		}
+		BatchSizeController controller;
+		synchronized(batchControllers) {
+			controller = batchControllers.get(thread.getCalculatorCaller());
+		}
+		if(controller != null) {
+			if(thread.getExceptionThrown() instanceof CalculatorOccupiedException) {
+				controller.batchRefused(thread.getOperations().length);
+			}
+			else if(thread.getExceptionThrown() == null) {
+				controller.batchAccepted(thread.getOperations().length, thread.getRoundTripNanos());
+			}
+		}
+	}
+	
+	/**
+	 * Récupère un calculateur de la liste selon la politique de sélection du répartiteur. Le choix se fait parmi les calculateurs
+	 * qui ont moins de lots en cours que le nombre cible, s'il y en a.
+	 * @return Un calculateur de la liste avec sa capacité.
+	 */
+	protected RegisteredCalculator getACalculator() {
+		return getACalculator(null);
+	}
+	
+	/**
+	 * Récupère un calculateur de la liste différent de celui passé selon la politique de sélection du répartiteur. Le choix se
+	 * fait parmi les calculateurs qui ont moins de lots en cours que le nombre cible, s'il y en a. La liste doit contenir au moins
+	 * deux calculateurs.
+	 * @param other Le calculateur qui ne doit pas être choisi ou null.
+	 * @return Un calculateur de la liste autre que other.
+	 */
+	protected RegisteredCalculator getACalculator(RegisteredCalculator other) {
+		ArrayList<RegisteredCalculator> belowTarget = new ArrayList<>();
+		for(RegisteredCalculator calculator : calculatorList) {
+			if(calculator != other && calculator.getLoad().getOutstandingBatches() < batchesPerCalculator) {
+				belowTarget.add(calculator);
+			}
+		}
+		if(belowTarget.isEmpty()) {
+			return selectionPolicy.select(calculatorList, other);
+		}
+		return selectionPolicy.select(belowTarget, null);
 	}
 	
 	/**
-	 * Met des opérations de type Operation sur la pile pour qu'elles soient exécutées.
-	 * @param objectsToPut Les objets à mettre sur la pile.
+	 * Change le nombre cible de lots en cours pour chaque calculateur. Le changement s'applique aux prochains lots envoyés.
+	 * @param batchesPerCalculator Le nombre de lots que chaque calculateur devrait avoir en cours.
+	 */
+	public void setBatchesPerCalculator(int batchesPerCalculator) {
+		this.batchesPerCalculator = batchesPerCalculator;
+	}
+	
+	/**
+	 * Récupère un calculateur de la liste qui n'est pas parmi ceux passés selon la politique de sélection du répartiteur.
+	 * @param excluded Les calculateurs qui ne doivent pas être choisis.
+	 * @return Un calculateur de la liste qui n'est pas dans excluded ou null s'il n'y en a aucun.
+	 */
+	protected RegisteredCalculator getACalculatorExcluding(List<RegisteredCalculator> excluded) {
+		ArrayList<RegisteredCalculator> candidates = new ArrayList<>(calculatorList);
+		candidates.removeAll(excluded);
+		return candidates.isEmpty() ? null : selectionPolicy.select(candidates, null);
+	}
+	
+	/**
+	 * Récupère un calculateur de la liste qui n'est pas parmi ceux passés et qui retourne le résultat de chaque opération, selon la
+	 * politique de sélection du répartiteur.
+	 * @param excluded Les calculateurs qui ne doivent pas être choisis.
+	 * @return Un calculateur de la liste qui n'est pas dans excluded et qui n'est pas limité aux sommes ou null s'il n'y en a
+	 * aucun.
+	 */
+	protected RegisteredCalculator getACalculatorReturningEach(List<RegisteredCalculator> excluded) {
+		ArrayList<RegisteredCalculator> candidates = new ArrayList<>();
+		for(RegisteredCalculator calculator : calculatorList) {
+			if(!calculator.isSumOnly() && !excluded.contains(calculator)) {
+				candidates.add(calculator);
+			}
+		}
+		return candidates.isEmpty() ? null : selectionPolicy.select(candidates, null);
+	}
+	
+	/**
+	 * Récupère un calculateur de la liste qui n'a aucun lot en cours.
+	 * @param excluded Le calculateur qui ne doit pas être choisi ou null.
+	 * @return Un calculateur inactif autre que excluded ou null s'il n'y en a aucun.
+	 */
+	protected RegisteredCalculator getAnIdleCalculator(RegisteredCalculator excluded) {
+		for(RegisteredCalculator calculator : calculatorList) {
+			if(calculator != excluded && calculator.getLoad().getOutstandingBatches() == 0) {
+				return calculator;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Change la politique de sélection des calculateurs. Le changement s'applique aux prochains lots envoyés.
+	 * @param selectionPolicy La nouvelle politique de sélection.
+	 */
+	public void setSelectionPolicy(CalculatorSelectionPolicy selectionPolicy) {
+		this.selectionPolicy = selectionPolicy;
+	}
+	
+	/**
+	 * Change la politique d'échéance des appels. Le changement s'applique aux prochains lots envoyés.
+	 * @param deadlinePolicy La nouvelle politique ou null pour que les appels n'aient pas d'échéance.
+	 */
+	public void setDeadlinePolicy(DeadlinePolicy deadlinePolicy) {
+		if(deadlinePolicy != null) {
+			startWatchdog();
+		}
+		this.deadlinePolicy = deadlinePolicy;
+	}
+	
+	/**
+	 * Change le journal de points de reprise. Le changement s'applique au prochain calcul.
+	 * @param checkpoint Le nouveau journal ou null pour ne pas enregistrer l'état des calculs.
+	 */
+	public void setJobCheckpoint(JobCheckpoint checkpoint) {
+		scheduler.setCheckpoint(checkpoint);
+	}
+	
+	/**
+	 * Retire une partie des opérations de la file d'opérations et retourne un tableau contenant ces opérations. Les opérations
+	 * remises sur la pile sont retirées en premier. Les opérations proviennent toutes du calcul dont le temps virtuel est le plus
+	 * petit.
+	 * @param numberOfOperationsToGet Le nombre d'opérations à retirer.
+	 * @return Un tableau d'opérations provenant de la file de la taille du paramètre numberOfOperationsToGet ou de taille inférieure
+	 * s'il restait moins d'opérations à extraire.
+	 */
+	protected IOperation[] retrieveSomeOperationsFromStack(int numberOfOperationsToGet) {
+		IOperation[] extractedOps = scheduler.retrieveOperations(numberOfOperationsToGet);
+		operationsRetrieved += extractedOps.length;
+		return extractedOps;
+	}
+	
+	/**
+	 * Remet des opérations dans la file de leur calcul pour qu'elles soient exécutées à nouveau. Les opérations d'un calcul
+	 * terminé sur une erreur sont abandonnées.
+	 * @param objectsToPut Les objets à remettre dans la file, qui appartiennent tous au même calcul.
 	 */
 	protected void putSomeOperationsOnStack(IOperation[] objectsToPut) {
-		for(IOperation operation : objectsToPut) {
-			operations.push(operation);
+		if(objectsToPut.length == 0) {
+			return;
+		}
+		Job job = scheduler.getJob(objectsToPut[0]);
+		if(job != null) {
+			scheduler.returnOperations(job, objectsToPut);
+		}
+	}
+	
+	/**
+	 * Attend que assez de calculateurs soient enregistrés pour commencer un calcul.
+	 * @param timeoutMillis Le délai d'attente maximal en millisecondes.
+	 * @return Vrai s'il y a assez de calculateurs, faux si le délai est écoulé.
+	 * @throws InterruptedException Si l'attente est interrompue.
+	 */
+	public boolean awaitCalculators(long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while(true) {
+			long version = membership.getVersion();
+			if(haveEnoughtCalculators(membership.getMembers(CalculationOperations.CALCULATOR_PREFIX).size())) {
+				return true;
+			}
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0) {
+				return false;
+			}
+			membership.awaitChange(version, remaining);
 		}
 	}
 	
+	/**
+	 * Affiche les statistiques propres au répartiteur pour le calcul qui vient de se terminer. Par défaut, rien n'est affiché.
+	 */
+	protected void printJobStatistics() {
+	}
+	
 	/**
 	 * Vérifie s'il y a encore assez de calculateurs pour effectuer des calculs.
 	 * @param numberOfCalculators Le nombre de calculateurs qu'il y a.
@@ -174,92 +678,456 @@ public abstract class Repartitor implements RepartitorRegistering {
 	/**
 	 * Récupère le résultat d'un calcul qui a été lancé. Cette méthode peut être bloquante. Si le résultat ne peut être récupéré, alors il
 	 * est de la responsabilité de cette méthode de remettre les opérations non exécutées sur le stack avec putSomeOperationsOnStack.
-	 * @return Le résultat d'un calcul.
+	 * Le résultat retourné est attribué au calcul de l'appel du lot, tel que conservé par getJob de CalculatorThread ; il est
+	 * ignoré si ce calcul n'est plus actif.
+	 * @return Le résultat d'un calcul et le calcul auquel il appartient.
 	 * @throws InvalidCalculator Si un calculateur est rendu invalide et ne doit plus être utilisé.
 	 * @throws ResultError S'il n'a pas été possible de calculer un résultat cette fois-ci, mais qu'il sera possible d'en obtenir un si on recommence.
 	 * @throws Exception lancée si l'attente est interrompue par une interruption.
 	 */
-	protected abstract int getResult() throws ResultError, InterruptedException;
+	protected abstract BatchResult getResult() throws ResultError, InterruptedException;
 	
 	/**
-	 * Lit le RMIRegistry pour trouver les calculateurs qui seront utilisés durant le calcul des opérations.
-	 * @return Une liste des calculateurs qui sont actuellement disponibles.
-	 * @throws AccessException Si l'accès au RMIRegistry a été refusé.
-	 * @throws RemoteException Si une erreur de communication survient.
+	 * Prépare la liste des calculateurs avant la répartition : la liste est construite à partir de la table des calculateurs
+	 * enregistrés et les calculateurs encore suspendus en sont retirés.
 	 */
-	private ArrayList<Entry<CalculationOperations, String>> findAvailableCalculators() throws AccessException, RemoteException {
-		ArrayList<Entry<CalculationOperations, String>> calculatorList = new ArrayList<>();
-		String[] calculatorString = registryCreated.list();
-		for(int i = 0; i < calculatorString.length; i++) {
+	void prepareCalculators() {
+		findAvailableCalculators();
+		setAsideSuspendedCalculators();
+	}
+	
+	/**
+	 * Attend les lots en cours et ignore leurs résultats.
+	 */
+	void discardWaitingResults() {
+		while(haveWaitingResults()) {
 			try {
-				if(calculatorString[i].startsWith(CalculationOperations.CALCULATOR_PREFIX)) {
-					Remote calculator =  registryCreated.lookup(calculatorString[i]);
-					if(calculator instanceof CalculationOperations) {
-						calculatorList.add(new Entry<CalculationOperations, String>((CalculationOperations)calculator, calculatorString[i]));
-					}
-					else {
-						System.out.println("Calculateur invalide.");
-					}
-				}
+				getResult();
 			}
-			catch(NotBoundException e){
-				System.out.println("Le calculateur est inexistant. " + e.getMessage());
+			catch(ResultError e) {
+			}
+			catch(InterruptedException e) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Construit la liste des calculateurs qui seront utilisés durant le calcul des opérations à partir de la table des
+	 * calculateurs enregistrés auprès du répartiteur, sans parcourir le RMIRegistry.
+	 */
+	private void findAvailableCalculators() {
+		calculatorList = new ArrayList<>();
+		suspendedCalculators.clear();
+		membershipVersion = membership.getVersion() - 1;
+		updateCalculatorList();
+	}
+	
+	/**
+	 * Met la liste des calculateurs à jour si la table des calculateurs enregistrés a changé depuis la dernière mise à jour : les
+	 * calculateurs enregistrés depuis sont ajoutés à la liste et ceux qui ont été retirés en sont enlevés. La capacité de chaque
+	 * calculateur provient de ses caractéristiques transmises lors de l'enregistrement. Pour un calculateur enregistré sans ses
+	 * caractéristiques, la capacité est demandée une seule fois puis conservée.
+	 */
+	private void updateCalculatorList() {
+		long version = membership.getVersion();
+		if(version == membershipVersion) {
+			return;
+		}
+		membershipVersion = version;
+		Map<String, Remote> members = membership.getMembers(CalculationOperations.CALCULATOR_PREFIX);
+		HashSet<String> known = new HashSet<>();
+		removeDepartedCalculators(calculatorList, members.keySet(), known);
+		removeDepartedCalculators(suspendedCalculators, members.keySet(), known);
+		for(Map.Entry<String, Remote> member : members.entrySet()) {
+			if(known.contains(member.getKey())) {
+				continue;
+			}
+			if(!(member.getValue() instanceof CalculationOperations)) {
+				System.out.println("Calculateur invalide.");
+				continue;
+			}
+			try {
+				CalculationOperations calculator = (CalculationOperations)member.getValue();
+				CalculatorCapabilities capabilities = getCapabilities(member.getKey(), calculator);
+				RegisteredCalculator registered = new RegisteredCalculator(getCaller(member.getKey(), calculator, capabilities),
+						member.getKey(), capabilities.getNumberOfOperationsSupported(), capabilities.isSumOnly());
+				registered.setMetrics(metrics.getCalculator(member.getKey()));
+				calculatorList.add(registered);
+			}
+			catch(RemoteException e) {
+				System.out.println("Le calculateur ne répond pas. " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Enlève d'une liste les calculateurs qui ne sont plus enregistrés.
+	 * @param calculators La liste des calculateurs.
+	 * @param registered Les noms des calculateurs enregistrés.
+	 * @param known Reçoit les noms des calculateurs qui restent dans la liste.
+	 */
+	private static void removeDepartedCalculators(List<RegisteredCalculator> calculators, Set<String> registered,
+			Set<String> known) {
+		Iterator<RegisteredCalculator> iterator = calculators.iterator();
+		while(iterator.hasNext()) {
+			RegisteredCalculator calculator = iterator.next();
+			if(registered.contains(calculator.getName())) {
+				known.add(calculator.getName());
+			}
+			else {
+				iterator.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Récupère les caractéristiques conservées d'un calculateur ou les demande au calculateur si elles sont inconnues.
+	 * @param name Le nom du calculateur dans le RMIRegistry.
+	 * @param calculator Le calculateur.
+	 * @return Les caractéristiques du calculateur.
+	 * @throws RemoteException Si le calculateur n'a pas pu être joint.
+	 */
+	private CalculatorCapabilities getCapabilities(String name, CalculationOperations calculator) throws RemoteException {
+		CalculatorCapabilities capabilities;
+		synchronized(calculatorCapabilities) {
+			capabilities = calculatorCapabilities.get(name);
+		}
+		if(capabilities == null) {
+			capabilities = new CalculatorCapabilities(calculator.getNumberOfOperationsSupported());
+			synchronized(calculatorCapabilities) {
+				calculatorCapabilities.put(name, capabilities);
 			}
 		}
-		return calculatorList;
+		return capabilities;
 	}
 	
 	/**
-	 * Lit le buffer passé et extrait les opérations à faire.
+	 * Choisit par quel transport joindre un calculateur. Avec le transport NIO, la connexion ouverte vers un calculateur qui
+	 * l'accepte est conservée d'un calcul à l'autre. Si la connexion échoue, le calculateur est joint par RMI.
+	 * @param name Le nom du calculateur dans le RMIRegistry.
+	 * @param calculator Le calculateur joint par RMI.
+	 * @param capabilities Les caractéristiques du calculateur.
+	 * @return L'objet par lequel appeler le calculateur.
+	 */
+	private CalculationOperations getCaller(String name, CalculationOperations calculator, CalculatorCapabilities capabilities) {
+		if(nioTransport == null || !capabilities.hasNioEndpoint()) {
+			return calculator;
+		}
+		synchronized(nioClients) {
+			NioCalculatorClient client = nioClients.get(name);
+			if(client == null) {
+				try {
+					client = nioTransport.connect(capabilities.getNioHost(), capabilities.getNioPort());
+					nioClients.put(name, client);
+				}
+				catch(IOException e) {
+					System.out.println("Connexion NIO impossible, le calculateur sera joint par RMI. " + e.getMessage());
+					return calculator;
+				}
+			}
+			return client;
+		}
+	}
+	
+	/**
+	 * Indique si un nouveau lot peut être envoyé : tant qu'aucun lot n'est en cours, ou tant que le nombre total d'appels en cours
+	 * est sous le nombre cible de lots par calculateur multiplié par le nombre de calculateurs.
+	 * @param batchesInFlight Le nombre de lots envoyés dont le résultat n'a pas encore été récupéré.
+	 * @return Vrai si un lot peut être envoyé.
+	 */
+	private boolean canDispatch(int batchesInFlight) {
+		if(batchesInFlight == 0) {
+			return true;
+		}
+		if(batchesInFlight >= MAX_BATCHES_IN_FLIGHT) {
+			return false;
+		}
+		int outstandingCalls = 0;
+		for(RegisteredCalculator calculator : calculatorList) {
+			outstandingCalls += calculator.getLoad().getOutstandingBatches();
+		}
+		return outstandingCalls < batchesPerCalculator * calculatorList.size();
+	}
+	
+	/**
+	 * Démarre la lecture en continu du buffer passé. Les opérations sont extraites par un fil producteur au fur et à mesure que la
+	 * file se vide, ce qui permet de commencer la répartition dès que le premier lot est prêt. Les opérations dont le résultat est
+	 * dans la cache ne sont pas ajoutées à la file.
 	 * @param operationsToDo Le buffer à partir duquel il faut lire les opérations à faire.
-	 * @return Une pile contenant les différentes opérations à faire extraires du buffer.
-	 * @throws IOException Si un erreur survient lors de la lecture du buffer.
+	 * @param linesToSkip Le nombre de lignes déjà lues lors d'un calcul interrompu.
+	 * @return Une file bornée contenant les différentes opérations à faire extraites du buffer.
 	 */
-	private Stack<IOperation> transformInputToOperations(BufferedReader operationsToDo) throws IOException{
-		Stack<IOperation> ops = new Stack<>();
-		
-		String line = operationsToDo.readLine();
-		
-		while(line != null){
-			
-			String[] args = line.split(" ");
-			
-			if(args.length == 2){
-				try{
-					int operande = Integer.parseInt(args[1]);
-					if(operande >= 0){
-						if(args[0].equals("prime")){
-							ops.push(new Prime(operande));
-						}else if(args[0].equals("pell")){
-							ops.push(new Pell(operande));
-						}else{
-							System.out.println(INVALID_LINE);
-						}
-					}else{
-						System.out.println(INVALID_LINE);
-					}
-				}catch( NumberFormatException e){
-					System.out.println(INVALID_LINE);
+	private OperationQueue transformInputToOperations(BufferedReader operationsToDo, long linesToSkip) {
+		return new OperationQueue(operationsToDo, OPERATION_QUEUE_CAPACITY, resultCache, linesToSkip);
+	}
+	
+	/**
+	 * Commence une période d'activité du répartiteur : les statistiques affichées à la fin de la période sont remises à zéro.
+	 */
+	void startBusyPeriod() {
+		callsSubmittedBefore = dispatchEngine.getCallsSubmitted();
+		operationsRetrieved = 0;
+		if(resultCache != null) {
+			resultCache.resetStatistics();
+		}
+	}
+	
+	/**
+	 * Termine une période d'activité du serveur de calculs : les statistiques sont affichées si des opérations ont été envoyées.
+	 */
+	void endBusyPeriod() {
+		if(operationsRetrieved > 0) {
+			printStatistics();
+		}
+	}
+	
+	/**
+	 * Attend qu'un calculateur s'enregistre ou soit retiré, pendant au plus une seconde pour que le serveur de calculs reçoive
+	 * les nouveaux calculs et son arrêt.
+	 */
+	private void awaitMembershipChange() {
+		try {
+			membership.awaitChange(membershipVersion, TimeUnit.MILLISECONDS.toNanos(SERVER_MEMBERSHIP_WAIT_MS));
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Affiche les statistiques du répartiteur pour la période d'activité qui vient de se terminer.
+	 */
+	private void printStatistics() {
+		if(resultCache != null) {
+			printCacheStatistics(dispatchEngine.getCallsSubmitted() - callsSubmittedBefore);
+		}
+		if(adaptiveBatchSize) {
+			printBatchSizes();
+		}
+		if(!jobServer.isStarted()) {
+			scheduler.printCheckpointStatistics();
+		}
+		if(callsExpired > 0) {
+			System.out.println(String.format("Échéances (%s) : %d appels abandonnés, %d suspensions.", deadlinePolicy, callsExpired,
+					calculatorsSuspended));
+			callsExpired = 0;
+			calculatorsSuspended = 0;
+		}
+		printJobStatistics();
+	}
+	
+	/**
+	 * Affiche le taux de succès de la cache pour le calcul qui vient de se terminer et sauvegarde la cache si un fichier a été donné.
+	 * @param callsSubmitted Le nombre d'appels faits aux calculateurs durant le calcul.
+	 */
+	private void printCacheStatistics(long callsSubmitted) {
+		long hits = resultCache.getHits();
+		long lookups = hits + resultCache.getMisses();
+		double callsPerOperation = operationsRetrieved == 0 ? 0 : (double)callsSubmitted / operationsRetrieved;
+		System.out.println(String.format("Cache : %d succès sur %d opérations (%.1f%%), environ %.0f appels évités.",
+				hits, lookups, lookups == 0 ? 0 : 100.0 * hits / lookups, hits * callsPerOperation));
+		if(cacheFile != null) {
+			try {
+				resultCache.save(cacheFile);
+			}
+			catch(IOException e) {
+				System.out.println("Impossible de sauvegarder la cache de résultats. " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Affiche la taille de lot apprise pour chaque calculateur.
+	 */
+	private void printBatchSizes() {
+		synchronized(batchControllers) {
+			for(RegisteredCalculator calculator : calculatorList) {
+				BatchSizeController controller = batchControllers.get(calculator.getCalculator());
+				if(controller != null) {
+					System.out.println(calculator.getName() + " : " + controller);
 				}
-			}else{
-				System.out.println(INVALID_LINE);
 			}
-			
-			line = operationsToDo.readLine();
 		}
-		return ops;
 	}
 	
 	/**
-	 * Enlève un calculateur de la liste et du registry si possible.
+	 * Traite un calculateur dont un appel a échoué pour une autre raison qu'un refus. Un calculateur dont l'appel a dépassé son
+	 * échéance est suspendu si la politique d'échéance le demande ; sinon, le calculateur est retiré. Le retrait n'est affiché
+	 * qu'une fois, même si plusieurs appels au même calculateur échouent.
+	 * @param calculator Le calculateur fautif.
+	 * @param cause L'erreur reçue par l'appel.
+	 */
+	protected void handleFailedCalculator(CalculationOperations calculator, Throwable cause) {
+		if(cause instanceof CallTimeoutException) {
+			++callsExpired;
+			if(deadlinePolicy.getSuspensionMillis() > 0) {
+				suspendACalculator(calculator, deadlinePolicy.getSuspensionMillis());
+				return;
+			}
+		}
+		RegisteredCalculator element = new RegisteredCalculator(calculator, null, 0);
+		if(calculatorList.contains(element) || suspendedCalculators.contains(element)) {
+			System.out.println("Retrait d'un calculateur. " + cause.getMessage());
+		}
+		unbindACalculator(calculator);
+	}
+	
+	/**
+	 * Retire temporairement un calculateur de la liste. Il n'est plus choisi pour de nouveaux lots avant la fin de la suspension,
+	 * même durant les calculs suivants, mais il reste dans le registry.
+	 * @param calculator Le calculateur à suspendre.
+	 * @param millis La durée de la suspension en millisecondes.
+	 */
+	private void suspendACalculator(CalculationOperations calculator, long millis) {
+		suspendedUntil.put(calculator, System.nanoTime() + millis * 1000000L);
+		int index = calculatorList.indexOf(new RegisteredCalculator(calculator, null, 0));
+		if(index != -1) {
+			System.out.println("Suspension d'un calculateur pour " + millis + " ms. Il n'a pas répondu avant l'échéance.");
+			suspendedCalculators.add(calculatorList.remove(index));
+			++calculatorsSuspended;
+		}
+	}
+	
+	/**
+	 * Met de côté les calculateurs encore suspendus au début d'un calcul.
+	 */
+	private void setAsideSuspendedCalculators() {
+		Iterator<RegisteredCalculator> iterator = calculatorList.iterator();
+		while(iterator.hasNext()) {
+			RegisteredCalculator calculator = iterator.next();
+			if(suspendedUntil.containsKey(calculator.getCalculator())) {
+				suspendedCalculators.add(calculator);
+				iterator.remove();
+			}
+		}
+		reinstateSuspendedCalculators();
+	}
+	
+	/**
+	 * Remet dans la liste les calculateurs dont la suspension est terminée.
+	 */
+	private void reinstateSuspendedCalculators() {
+		long now = System.nanoTime();
+		Iterator<RegisteredCalculator> iterator = suspendedCalculators.iterator();
+		while(iterator.hasNext()) {
+			RegisteredCalculator calculator = iterator.next();
+			Long until = suspendedUntil.get(calculator.getCalculator());
+			if(until == null || until - now <= 0) {
+				suspendedUntil.remove(calculator.getCalculator());
+				calculatorList.add(calculator);
+				iterator.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Attend la fin de la suspension la plus proche lorsqu'aucun lot n'est en cours. L'attente se termine plus tôt si un
+	 * calculateur s'enregistre ou est retiré.
+	 */
+	private void waitForSuspensionEnd() {
+		long earliest = Long.MAX_VALUE;
+		long now = System.nanoTime();
+		for(RegisteredCalculator calculator : suspendedCalculators) {
+			Long until = suspendedUntil.get(calculator.getCalculator());
+			earliest = Math.min(earliest, until == null ? 0 : Math.max(0, until - now));
+		}
+		try {
+			membership.awaitChange(membershipVersion, earliest);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Ajoute à la liste les calculateurs enregistrés depuis la dernière mise à jour, retire ceux qui se sont tus plus longtemps
+	 * que la fenêtre de détection, en abandonnant leurs appels en cours, et transmet aux autres la charge annoncée dans leur
+	 * dernier battement.
+	 */
+	private void refreshMembership() {
+		updateCalculatorList();
+		long now = System.nanoTime();
+		for(int i = calculatorList.size() - 1; i >= 0; --i) {
+			RegisteredCalculator calculator = calculatorList.get(i);
+			if(membership.isSilent(calculator.getName(), now)) {
+				CalculatorSilentException cause = new CalculatorSilentException(
+						TimeUnit.NANOSECONDS.toMillis(membership.getFailureWindowNanos()));
+				abandonCallsTo(Arrays.asList(calculator.getName()), cause);
+				handleFailedCalculator(calculator.getCalculator(), cause);
+			}
+			else {
+				calculator.getLoad().setReportedLoad(membership.getLoad(calculator.getName()));
+			}
+		}
+	}
+	
+	/**
+	 * Abandonne les appels en cours vers les calculateurs silencieux. Exécutée périodiquement par le fil de surveillance ; les
+	 * appels abandonnés sont ensuite traités comme des appels échoués par le fil du répartiteur.
+	 */
+	private void abandonCallsToSilentCalculators() {
+		List<String> silent = membership.getSilentMembers(System.nanoTime());
+		if(!silent.isEmpty()) {
+			abandonCallsTo(silent, new CalculatorSilentException(TimeUnit.NANOSECONDS.toMillis(membership.getFailureWindowNanos())));
+		}
+	}
+	
+	/**
+	 * Abandonne les appels en cours vers des calculateurs.
+	 * @param names Les noms des calculateurs.
+	 * @param cause La raison de l'abandon.
+	 */
+	private void abandonCallsTo(List<String> names, RemoteException cause) {
+		for(CalculatorThread call : callsInFlight) {
+			RegisteredCalculator calculator = call.getRegisteredCalculator();
+			if(calculator != null && names.contains(calculator.getName())) {
+				call.abandon(cause);
+			}
+		}
+	}
+	
+	/**
+	 * Crée, s'il n'existe pas déjà, l'exécuteur qui abandonne les appels à leur échéance et ceux des calculateurs silencieux. Son
+	 * fil ne retient pas la machine virtuelle.
+	 */
+	private void startWatchdog() {
+		if(watchdog != null) {
+			return;
+		}
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "Surveillance des échéances");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		watchdog = executor;
+	}
+	
+	/**
+	 * Enlève un calculateur de la liste, ou des calculateurs suspendus, et du registry si possible.
 	 * @param calculator Le calculateur à enlever de la liste.
 	 */
-	private void unbindACalculator(CalculationOperations calculator) {
-		int index = calculatorList.indexOf(new Entry<CalculationOperations, String>(calculator, null));
+	protected void unbindACalculator(CalculationOperations calculator) {
+		synchronized(batchControllers) {
+			batchControllers.remove(calculator);
+		}
+		suspendedUntil.remove(calculator);
+		RegisteredCalculator element = null;
+		int index = calculatorList.indexOf(new RegisteredCalculator(calculator, null, 0));
 		if(index != -1) {
-			Entry<CalculationOperations, String> element = calculatorList.remove(index);
+			element = calculatorList.remove(index);
+		}
+		index = suspendedCalculators.indexOf(new RegisteredCalculator(calculator, null, 0));
+		if(index != -1) {
+			element = suspendedCalculators.remove(index);
+		}
+		if(element != null) {
 			try {
-				unbindSomething(element.getValue());
+				unbindSomething(element.getName());
 			}
 			catch(NotBoundException err) {
 				
@@ -272,19 +1140,43 @@ public abstract class Repartitor implements RepartitorRegistering {
 	
 	@Override
 	public void bindSomething(String bindName, Remote objectToBind) throws AlreadyBoundException, RemoteException {
+		bindSomething(bindName, objectToBind, null);
+	}
+	
+	@Override
+	public void bindSomething(String bindName, Remote objectToBind, CalculatorCapabilities capabilities)
+			throws AlreadyBoundException, RemoteException {
 		try {
-			LocateRegistry.getRegistry().bind(bindName, objectToBind);
+			LocateRegistry.getRegistry(registryPort).bind(bindName, objectToBind);
 		}
 		catch(RemoteException e) {
 			System.out.println("Impossible d'ajouter l'objet au RMIRegistry. " + e.getMessage());
 			throw e;
 		}
+		if(capabilities != null) {
+			synchronized(calculatorCapabilities) {
+				calculatorCapabilities.put(bindName, capabilities);
+			}
+		}
+		metrics.getCalculator(bindName);
+		membership.add(bindName, objectToBind);
 	}
 	
 	@Override
 	public void unbindSomething(String nameToRemove) throws NotBoundException, RemoteException {
+		membership.remove(nameToRemove);
+		metrics.calculatorRemoved(nameToRemove);
+		synchronized(calculatorCapabilities) {
+			calculatorCapabilities.remove(nameToRemove);
+		}
+		synchronized(nioClients) {
+			NioCalculatorClient client = nioClients.remove(nameToRemove);
+			if(client != null) {
+				client.close();
+			}
+		}
 		try {
-			LocateRegistry.getRegistry().unbind(nameToRemove);
+			LocateRegistry.getRegistry(registryPort).unbind(nameToRemove);
 		}
 		catch(RemoteException e) {
 			System.out.println("Impossible d'enlever l'objet du RMIRegistry. " + e.getMessage());
@@ -292,50 +1184,69 @@ public abstract class Repartitor implements RepartitorRegistering {
 		}
 	}
 	
+	@Override
+	public boolean heartbeat(String bindName, CalculatorLoadReport load) {
+		return membership.heartbeat(bindName, load);
+	}
+	
 	/**
 	 * Début d'exécution du répartiteur.
-	 * @param args Contient l'argument 0 si le répartiteur fonctionne en mode sécurisé ou aucun argument si le répartiteur fonctionne en mode
-	 * non sécurisé.
+	 * @param args Contient l'argument 0 si le répartiteur fonctionne en mode sécurisé. L'option -dispatch choisit le moteur qui
+	 * exécute les appels aux calculateurs : thread (un fil par lot), pool ou pool:N (bassin borné) ou virtual (fils virtuels).
 	 */
 	public static void main(String[] args) {
 		if(System.getSecurityManager() == null){
 			System.setSecurityManager(new SecurityManager());
 		}
-		boolean isSecure = false;
-		if(args.length == 1) {
-			if(args[0].equals("0")) {
-				isSecure = true;
-			}
-			else {
-				System.out.println("Paramètre invalide. Usage : repartitor | repartitor 0");
-				System.exit(INVALID_PARAM);
-			}
-		}
-		else if(args.length == 0) {
-			isSecure = false;
+		RepartitorOptions options = null;
+		try {
+			options = RepartitorOptions.parse(args);
 		}
-		else {
-			System.out.println("Paramètre invalide. Usage : repartitor | repartitor 0");
+		catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage() + " " + RepartitorOptions.USAGE);
 			System.exit(INVALID_PARAM);
 		}
 		
 		Repartitor repartitor = null;
 		try {
-			if(isSecure) {
-				repartitor = new SafeRepartitor();
+			if(options.isSecure()) {
+				repartitor = new SafeRepartitor(options);
 			}
 			else {
-				repartitor = new UnsafeRepartitor();
+				repartitor = new UnsafeRepartitor(options);
 			}
 			System.out.println("Répartiteur créé. Prêt pour commencer la répartition de calculs.");
 		}
 		catch(AlreadyBoundException e) {
 			System.out.println("Impossible d'ajouter le répartiteur dans le RMIRegistry. Le nom existe déjà.");
 		}
+		catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.exit(INVALID_PARAM);
+		}
 		catch(RemoteException e) {
 			System.out.println("Impossible de créer le Répartiteur. " + e.getMessage());
 			System.exit(REGISTRY_CREATE_FAILED);
 		}
+		if(options.isResume()) {
+			JobCheckpoint.resume(repartitor, options.getCheckpointFile());
+		}
+		if(options.getParentHost() != null) {
+			repartitor.startJobServer();
+			FederationLink.runUntilShutdown(repartitor, options);
+			return;
+		}
+		if(options.getSpoolDirectory() != null) {
+			repartitor.startJobServer();
+			try {
+				new JobSpool(repartitor, options.getSpoolDirectory()).run();
+			}
+			catch(IOException e) {
+				System.out.println(e.getMessage());
+				System.exit(READ_FILE_EXCEPTION);
+			}
+			return;
+		}
 		
 		while(true) {
 			BufferedReader consoleReader = new BufferedReader(new InputStreamReader(System.in));
@@ -343,7 +1254,7 @@ public abstract class Repartitor implements RepartitorRegistering {
 				System.out.print("Entrez le nom du fichier contenant les opérations à exécuter : ");
 				String line = consoleReader.readLine();
 				BufferedReader operationsToRead = new BufferedReader(new InputStreamReader(new FileInputStream(line)));
-				System.out.println(repartitor.calculateOperations(operationsToRead));
+				System.out.println(repartitor.calculateOperations(operationsToRead, new File(line).getAbsolutePath()));
 			}
 			catch(FileNotFoundException e) {
 				System.out.println("Le fichier entré n'a pas été trouvé.");
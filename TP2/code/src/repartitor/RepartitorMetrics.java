@@ -0,0 +1,223 @@
+package repartitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import shared.CalculatorOccupiedException;
+
+/**
+ * Les métriques du répartiteur : les compteurs de chaque calculateur enregistré, de chaque calcul en cours et du répartiteur
+ * lui-même. Chacun est publié comme MBean dans le serveur JMX de la machine virtuelle, sous le domaine repartitor avec le port
+ * du RMIRegistry du répartiteur, et le tout peut être affiché en texte. Sur le chemin de répartition, la mise à jour des
+ * compteurs ne coûte que quelques incrémentations atomiques par appel ; les MBeans ne sont créés qu'à l'enregistrement d'un
+ * calculateur et au début d'un calcul.
+ * @author dcourcel
+ *
+ */
+public class RepartitorMetrics implements RepartitorMetricsMBean {
+	public static final String DOMAIN = "repartitor";
+
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	private final String namePrefix;
+	private final ConcurrentHashMap<String, CalculatorMetrics> calculators = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Job, ObjectName> jobs = new ConcurrentHashMap<>();
+	private final AtomicInteger batchesInFlight = new AtomicInteger();
+	private final AtomicLong jobsStarted = new AtomicLong();
+	private final AtomicLong jobsFinished = new AtomicLong();
+	private boolean publishErrorShown = false;
+
+	/**
+	 * Crée les métriques d'un répartiteur et publie ses compteurs d'ensemble.
+	 * @param registryPort Le port du RMIRegistry du répartiteur, qui distingue les répartiteurs d'une même machine virtuelle.
+	 */
+	public RepartitorMetrics(int registryPort) {
+		namePrefix = DOMAIN + ":port=" + registryPort + ",";
+		register(this, "type=Repartiteur");
+	}
+
+	/**
+	 * Récupère les compteurs d'un calculateur et les publie s'ils n'existent pas encore.
+	 * @param name Le nom du calculateur dans le RMIRegistry.
+	 * @return Les compteurs du calculateur.
+	 */
+	CalculatorMetrics getCalculator(String name) {
+		CalculatorMetrics metrics = calculators.get(name);
+		if(metrics == null) {
+			CalculatorMetrics created = new CalculatorMetrics(name);
+			metrics = calculators.putIfAbsent(name, created);
+			if(metrics == null) {
+				metrics = created;
+				register(created, "type=Calculateur,name=" + ObjectName.quote(name));
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Retire la publication des compteurs d'un calculateur qui n'est plus enregistré.
+	 * @param name Le nom du calculateur dans le RMIRegistry.
+	 */
+	void calculatorRemoved(String name) {
+		if(calculators.remove(name) != null) {
+			unregister("type=Calculateur,name=" + ObjectName.quote(name));
+		}
+	}
+
+	/**
+	 * Publie les compteurs d'un calcul qui commence.
+	 * @param job Le calcul.
+	 */
+	void jobStarted(Job job) {
+		String key = "type=Calcul,id=" + jobsStarted.incrementAndGet() + ",name=" + ObjectName.quote(job.getName());
+		ObjectName name = register(job, key);
+		if(name != null) {
+			jobs.put(job, name);
+		}
+	}
+
+	/**
+	 * Retire la publication des compteurs d'un calcul terminé ou abandonné.
+	 * @param job Le calcul.
+	 */
+	void jobFinished(Job job) {
+		jobsFinished.incrementAndGet();
+		ObjectName name = jobs.remove(job);
+		if(name != null) {
+			try {
+				server.unregisterMBean(name);
+			}
+			catch(JMException e) {
+			}
+		}
+	}
+
+	/**
+	 * Compte un appel envoyé à un calculateur.
+	 * @param thread L'appel, qui n'est pas encore démarré.
+	 */
+	void callStarted(CalculatorThread thread) {
+		batchesInFlight.incrementAndGet();
+		RegisteredCalculator calculator = thread.getRegisteredCalculator();
+		if(calculator != null && calculator.getMetrics() != null) {
+			calculator.getMetrics().batchSent();
+		}
+		if(thread.getJob() != null) {
+			thread.getJob().callStarted();
+		}
+	}
+
+	/**
+	 * Compte la fin d'un appel à un calculateur.
+	 * @param thread L'appel terminé.
+	 */
+	void callFinished(CalculatorThread thread) {
+		batchesInFlight.decrementAndGet();
+		RegisteredCalculator calculator = thread.getRegisteredCalculator();
+		if(calculator != null && calculator.getMetrics() != null) {
+			Throwable exception = thread.getExceptionThrown();
+			calculator.getMetrics().batchFinished(thread.getOperations().length, thread.getRoundTripNanos(),
+					exception instanceof CalculatorOccupiedException, exception != null);
+		}
+		if(thread.getJob() != null) {
+			thread.getJob().callFinished();
+		}
+	}
+
+	/**
+	 * Compte un désaccord pour chacun des calculateurs qui ont calculé le même lot.
+	 * @param threads Les appels en désaccord.
+	 */
+	void mismatchDetected(CalculatorThread[] threads) {
+		for(CalculatorThread thread : threads) {
+			RegisteredCalculator calculator = thread.getRegisteredCalculator();
+			if(calculator != null && calculator.getMetrics() != null) {
+				calculator.getMetrics().mismatchDetected();
+			}
+		}
+	}
+
+	@Override
+	public int getBatchesInFlight() {
+		return batchesInFlight.get();
+	}
+
+	@Override
+	public int getActiveJobs() {
+		return jobs.size();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		int queued = 0;
+		for(Job job : jobs.keySet()) {
+			queued += job.getQueueDepth();
+		}
+		return queued;
+	}
+
+	@Override
+	public long getJobsFinished() {
+		return jobsFinished.get();
+	}
+
+	@Override
+	public int getCalculators() {
+		return calculators.size();
+	}
+
+	@Override
+	public String dump() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("Métriques : %d lots en cours, %d calculs en cours, %d opérations en file, %d calculs terminés.%n",
+				getBatchesInFlight(), getActiveJobs(), getQueueDepth(), getJobsFinished()));
+		for(Job job : new ArrayList<>(jobs.keySet())) {
+			text.append(String.format("  Calcul %s (poids %d) : %d opérations en file, %d lots en cours, %d opérations en cours, " +
+					"%d opérations envoyées en %d lots, %d ms.%n", job.getName(), job.getWeight(), job.getQueueDepth(),
+					job.getBatchesInFlight(), job.getOperationsOutstanding(), job.getOperationsDispatched(),
+					job.getBatchesDispatched(), job.getElapsedMillis()));
+		}
+		for(Map.Entry<String, CalculatorMetrics> calculator : new TreeMap<>(calculators).entrySet()) {
+			text.append("  Calculateur ").append(calculator.getValue()).append('.').append(System.lineSeparator());
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Publie un MBean sous le nom du répartiteur suivi de la clé donnée. Un échec de publication n'empêche pas les calculs et
+	 * n'est affiché qu'une fois.
+	 * @param mbean Le MBean.
+	 * @param key Les propriétés qui complètent le nom du MBean.
+	 * @return Le nom du MBean publié ou null si la publication a échoué.
+	 */
+	private ObjectName register(Object mbean, String key) {
+		try {
+			ObjectName name = new ObjectName(namePrefix + key);
+			server.registerMBean(mbean, name);
+			return name;
+		}
+		catch(JMException e) {
+			if(!publishErrorShown) {
+				publishErrorShown = true;
+				System.out.println("Impossible de publier les métriques par JMX. " + e.getMessage());
+			}
+			return null;
+		}
+	}
+
+	private void unregister(String key) {
+		try {
+			server.unregisterMBean(new ObjectName(namePrefix + key));
+		}
+		catch(JMException e) {
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package repartitor;
+
+/**
+ * Les compteurs d'ensemble du répartiteur publiés par JMX.
+ * @author dcourcel
+ *
+ */
+public interface RepartitorMetricsMBean {
+	/**
+	 * @return Le nombre d'appels aux calculateurs en cours, pour tous les calculs.
+	 */
+	int getBatchesInFlight();
+
+	/**
+	 * @return Le nombre de calculs en cours.
+	 */
+	int getActiveJobs();
+
+	/**
+	 * @return Le nombre d'opérations qui attendent d'être envoyées, pour tous les calculs en cours.
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return Le nombre de calculs terminés depuis le démarrage du répartiteur.
+	 */
+	long getJobsFinished();
+
+	/**
+	 * @return Le nombre de calculateurs enregistrés.
+	 */
+	int getCalculators();
+
+	/**
+	 * Produit le même texte que l'affichage périodique des métriques.
+	 * @return Les compteurs du répartiteur, de chaque calcul en cours et de chaque calculateur.
+	 */
+	String dump();
+}
@@ -0,0 +1,553 @@
+package repartitor;
+
+import java.io.File;
+import java.rmi.registry.Registry;
+
+import repartitor.selection.CalculatorSelectionPolicy;
+import repartitor.selection.LeastOutstandingSelection;
+import repartitor.selection.PowerOfTwoSelection;
+import repartitor.selection.RandomSelection;
+import repartitor.selection.WeightedThroughputSelection;
+
+/**
+ * Les options de lancement du répartiteur lues à partir de la ligne de commande.
+ * @author dcourcel
+ *
+ */
+public class RepartitorOptions {
+	public static final String USAGE = "Usage : repartitor [0] [-dispatch thread|pool[:N]|virtual] [-batch static|adaptive] [-cache N] [-cacheFile fichier] [-select random|least|p2c|weighted] [-hedge centile] [-verify pair|spot[:fraction]] [-mismatch retry|vote|isolate] [-inflight N] [-wire packed|objects] [-transport rmi|nio] [-deadline off|ms|auto[:marge]] [-onTimeout unbind|suspend[:ms]] [-failureWindow ms|off] [-checkpoint fichier] [-checkpointInterval ms] [-resume] [-spool dossier] [-port N] [-parent hôte[:port]] [-shard N] [-metrics ms]";
+	
+	private static final double DEFAULT_VERIFICATION_FRACTION = 0.1;
+	private static final long DEFAULT_FAILURE_WINDOW_MS = 1000;
+	
+	private boolean secure = false;
+	private String dispatchMode = DispatchEngine.THREAD_MODE;
+	private boolean adaptiveBatchSize = false;
+	private int cacheSize = 0;
+	private File cacheFile = null;
+	private String selectionPolicy = "random";
+	private int hedgePercentile = 0;
+	private double verificationFraction = 0;
+	private String mismatchResolution = null;
+	private int batchesPerCalculator = Repartitor.DEFAULT_BATCHES_PER_CALCULATOR;
+	private boolean packedWireFormat = true;
+	private boolean nioTransport = false;
+	private String deadlineMode = DeadlinePolicy.OFF_MODE;
+	private String timeoutReaction = DeadlinePolicy.SUSPEND_ON_TIMEOUT;
+	private long failureWindowMillis = DEFAULT_FAILURE_WINDOW_MS;
+	private File checkpointFile = null;
+	private long checkpointIntervalMillis = JobCheckpoint.DEFAULT_INTERVAL_MILLIS;
+	private boolean resume = false;
+	private File spoolDirectory = null;
+	private int registryPort = Registry.REGISTRY_PORT;
+	private String parentHost = null;
+	private int parentPort = Registry.REGISTRY_PORT;
+	private int shardSize = FederationLink.DEFAULT_SHARD_SIZE;
+	private long metricsIntervalMillis = 0;
+	
+	/**
+	 * Lit les arguments de la ligne de commande.
+	 * @param args Les arguments passés au répartiteur.
+	 * @return Les options lues.
+	 * @throws IllegalArgumentException Si un argument est invalide.
+	 */
+	public static RepartitorOptions parse(String[] args) {
+		RepartitorOptions options = new RepartitorOptions();
+		int i = 0;
+		while(i < args.length) {
+			if(args[i].equals("0")) {
+				options.secure = true;
+			}
+			else if(args[i].equals("-dispatch")) {
+				options.dispatchMode = readValue(args, ++i);
+			}
+			else if(args[i].equals("-batch")) {
+				String batchMode = readValue(args, ++i);
+				if(batchMode.equals("adaptive")) {
+					options.adaptiveBatchSize = true;
+				}
+				else if(batchMode.equals("static")) {
+					options.adaptiveBatchSize = false;
+				}
+				else {
+					throw new IllegalArgumentException("Mode de taille de lot invalide : " + batchMode);
+				}
+			}
+			else if(args[i].equals("-cache")) {
+				options.cacheSize = readPositiveInt(args, ++i);
+			}
+			else if(args[i].equals("-cacheFile")) {
+				options.cacheFile = new File(readValue(args, ++i));
+			}
+			else if(args[i].equals("-select")) {
+				options.selectionPolicy = readValue(args, ++i);
+				options.createSelectionPolicy();
+			}
+			else if(args[i].equals("-hedge")) {
+				options.hedgePercentile = readPositiveInt(args, ++i);
+				options.createStragglerDetector();
+			}
+			else if(args[i].equals("-verify")) {
+				options.verificationFraction = readVerificationMode(readValue(args, ++i));
+				options.createReputationTracker();
+			}
+			else if(args[i].equals("-mismatch")) {
+				String resolution = readValue(args, ++i);
+				if(!resolution.equals(UnsafeRepartitor.RETRY_MISMATCH) && !resolution.equals(UnsafeRepartitor.VOTE_MISMATCH) &&
+						!resolution.equals(UnsafeRepartitor.ISOLATE_MISMATCH)) {
+					throw new IllegalArgumentException("Résolution des désaccords invalide : " + resolution);
+				}
+				options.mismatchResolution = resolution;
+			}
+			else if(args[i].equals("-wire")) {
+				String wireFormat = readValue(args, ++i);
+				if(wireFormat.equals("packed")) {
+					options.packedWireFormat = true;
+				}
+				else if(wireFormat.equals("objects")) {
+					options.packedWireFormat = false;
+				}
+				else {
+					throw new IllegalArgumentException("Format d'envoi invalide : " + wireFormat);
+				}
+			}
+			else if(args[i].equals("-transport")) {
+				String transport = readValue(args, ++i);
+				if(transport.equals("nio")) {
+					options.nioTransport = true;
+				}
+				else if(transport.equals("rmi")) {
+					options.nioTransport = false;
+				}
+				else {
+					throw new IllegalArgumentException("Transport invalide : " + transport);
+				}
+			}
+			else if(args[i].equals("-deadline")) {
+				options.deadlineMode = readValue(args, ++i);
+				options.createDeadlinePolicy();
+			}
+			else if(args[i].equals("-onTimeout")) {
+				options.timeoutReaction = readValue(args, ++i);
+				options.createDeadlinePolicy();
+			}
+			else if(args[i].equals("-failureWindow")) {
+				options.failureWindowMillis = readValue(args, ++i).equals("off") ? 0 : readPositiveInt(args, i);
+			}
+			else if(args[i].equals("-checkpoint")) {
+				options.checkpointFile = new File(readValue(args, ++i));
+			}
+			else if(args[i].equals("-checkpointInterval")) {
+				options.checkpointIntervalMillis = readPositiveInt(args, ++i);
+			}
+			else if(args[i].equals("-resume")) {
+				options.resume = true;
+			}
+			else if(args[i].equals("-spool")) {
+				options.spoolDirectory = new File(readValue(args, ++i));
+			}
+			else if(args[i].equals("-port")) {
+				options.registryPort = readPort(args, ++i, readValue(args, i));
+			}
+			else if(args[i].equals("-parent")) {
+				String parent = readValue(args, ++i);
+				int separator = parent.lastIndexOf(':');
+				options.parentHost = separator < 0 ? parent : parent.substring(0, separator);
+				options.parentPort = separator < 0 ? Registry.REGISTRY_PORT : readPort(args, i, parent.substring(separator + 1));
+			}
+			else if(args[i].equals("-shard")) {
+				options.shardSize = readPositiveInt(args, ++i);
+			}
+			else if(args[i].equals("-metrics")) {
+				options.metricsIntervalMillis = readPositiveInt(args, ++i);
+			}
+			else if(args[i].equals("-inflight")) {
+				options.batchesPerCalculator = readPositiveInt(args, ++i);
+			}
+			else {
+				throw new IllegalArgumentException("Paramètre invalide : " + args[i]);
+			}
+			++i;
+		}
+		if(options.resume && options.checkpointFile == null) {
+			throw new IllegalArgumentException("L'option -resume demande un fichier de points de reprise (-checkpoint).");
+		}
+		if(options.spoolDirectory != null && options.checkpointFile != null) {
+			throw new IllegalArgumentException("Les points de reprise (-checkpoint) ne sont pas offerts en mode serveur (-spool).");
+		}
+		if(options.parentHost != null && (options.spoolDirectory != null || options.checkpointFile != null)) {
+			throw new IllegalArgumentException("Un répartiteur enfant (-parent) ne reçoit ses calculs que de son parent.");
+		}
+		return options;
+	}
+	
+	/**
+	 * Indique si le répartiteur peut faire confiance aux calculateurs.
+	 * @return Vrai en mode sécurisé, faux sinon.
+	 */
+	public boolean isSecure() {
+		return secure;
+	}
+	
+	public void setSecure(boolean secure) {
+		this.secure = secure;
+	}
+	
+	/**
+	 * Crée le moteur de répartition correspondant au mode choisi.
+	 * @return Le moteur de répartition.
+	 * @throws IllegalArgumentException Si le mode choisi n'est pas supporté.
+	 */
+	public DispatchEngine createDispatchEngine() {
+		return DispatchEngine.fromDescription(dispatchMode);
+	}
+	
+	public void setDispatchMode(String dispatchMode) {
+		this.dispatchMode = dispatchMode;
+	}
+	
+	/**
+	 * Indique si la taille des lots est apprise pour chaque calculateur plutôt que fixée à sa capacité plus un.
+	 * @return Vrai si la taille des lots est adaptative, faux sinon.
+	 */
+	public boolean isAdaptiveBatchSize() {
+		return adaptiveBatchSize;
+	}
+	
+	public void setAdaptiveBatchSize(boolean adaptiveBatchSize) {
+		this.adaptiveBatchSize = adaptiveBatchSize;
+	}
+	
+	/**
+	 * Crée la cache de résultats demandée.
+	 * @return La cache de résultats ou null si la cache n'est pas utilisée.
+	 */
+	public ResultCache createResultCache() {
+		return cacheSize > 0 ? new ResultCache(cacheSize) : null;
+	}
+	
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+	
+	/**
+	 * Récupère le fichier dans lequel la cache de résultats est conservée entre les exécutions.
+	 * @return Le fichier de la cache ou null si la cache n'est pas conservée.
+	 */
+	public File getCacheFile() {
+		return cacheFile;
+	}
+	
+	public void setCacheFile(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+	
+	/**
+	 * Crée la politique de sélection des calculateurs choisie : random (uniforme), least (le moins de lots en cours), p2c (le
+	 * meilleur de deux calculateurs tirés au hasard selon la latence) ou weighted (pondéré par le débit mesuré).
+	 * @return La politique de sélection.
+	 * @throws IllegalArgumentException Si le nom de la politique est invalide.
+	 */
+	public CalculatorSelectionPolicy createSelectionPolicy() {
+		return createSelectionPolicy(selectionPolicy);
+	}
+	
+	public void setSelectionPolicy(String selectionPolicy) {
+		this.selectionPolicy = selectionPolicy;
+	}
+	
+	/**
+	 * Crée une politique de sélection des calculateurs à partir de son nom.
+	 * @param name Le nom de la politique : random, least, p2c ou weighted.
+	 * @return La politique de sélection.
+	 * @throws IllegalArgumentException Si le nom de la politique est invalide.
+	 */
+	public static CalculatorSelectionPolicy createSelectionPolicy(String name) {
+		if(name.equals("random")) {
+			return new RandomSelection();
+		}
+		else if(name.equals("least")) {
+			return new LeastOutstandingSelection();
+		}
+		else if(name.equals("p2c")) {
+			return new PowerOfTwoSelection();
+		}
+		else if(name.equals("weighted")) {
+			return new WeightedThroughputSelection();
+		}
+		throw new IllegalArgumentException("Politique de sélection invalide : " + name);
+	}
+	
+	/**
+	 * Crée le détecteur de lots retardataires utilisé pour relancer ces lots sur un autre calculateur en mode sécurisé.
+	 * @return Le détecteur ou null si les lots retardataires ne sont pas relancés.
+	 * @throws IllegalArgumentException Si le centile choisi n'est pas entre 1 et 99.
+	 */
+	public StragglerDetector createStragglerDetector() {
+		return hedgePercentile > 0 ? new StragglerDetector(hedgePercentile) : null;
+	}
+	
+	public void setHedgePercentile(int hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+	
+	/**
+	 * Crée le suivi de réputation utilisé pour ne vérifier qu'une partie des lots en mode non sécurisé.
+	 * @return Le suivi de réputation ou null si chaque lot est envoyé à deux calculateurs.
+	 * @throws IllegalArgumentException Si la fraction vérifiée n'est pas plus grande que 0 et au plus 1.
+	 */
+	public ReputationTracker createReputationTracker() {
+		return verificationFraction > 0 ? new ReputationTracker(verificationFraction) : null;
+	}
+	
+	/**
+	 * Choisit le mode de vérification du mode non sécurisé.
+	 * @param verificationFraction La fraction minimale des lots vérifiés par réputation ou 0 pour envoyer chaque lot à deux
+	 * calculateurs.
+	 */
+	public void setVerificationFraction(double verificationFraction) {
+		this.verificationFraction = verificationFraction;
+	}
+	
+	/**
+	 * Indique comment le mode non sécurisé traite deux résultats différents pour un même lot : retry (le lot est remis dans la
+	 * file), vote (un troisième calculateur refait le lot) ou isolate (seules les opérations en désaccord sont refaites par un
+	 * troisième calculateur). Par défaut, les désaccords sont votés avec la vérification par réputation et remis dans la file
+	 * sinon.
+	 * @return Le mode de résolution des désaccords.
+	 */
+	public String getMismatchResolution() {
+		if(mismatchResolution != null) {
+			return mismatchResolution;
+		}
+		return verificationFraction > 0 ? UnsafeRepartitor.VOTE_MISMATCH : UnsafeRepartitor.RETRY_MISMATCH;
+	}
+	
+	public void setMismatchResolution(String mismatchResolution) {
+		this.mismatchResolution = mismatchResolution;
+	}
+	
+	/**
+	 * Récupère le nombre cible de lots en cours pour chaque calculateur.
+	 * @return Le nombre de lots que chaque calculateur devrait avoir en cours.
+	 */
+	public int getBatchesPerCalculator() {
+		return batchesPerCalculator;
+	}
+	
+	public void setBatchesPerCalculator(int batchesPerCalculator) {
+		this.batchesPerCalculator = batchesPerCalculator;
+	}
+	
+	/**
+	 * Indique si les lots sont envoyés aux calculateurs sous forme compacte plutôt que comme des tableaux d'objets sérialisés.
+	 * @return Vrai pour le format compact.
+	 */
+	public boolean isPackedWireFormat() {
+		return packedWireFormat;
+	}
+	
+	public void setPackedWireFormat(boolean packedWireFormat) {
+		this.packedWireFormat = packedWireFormat;
+	}
+	
+	/**
+	 * Indique si les calculs sont envoyés par le transport NIO aux calculateurs qui l'acceptent plutôt que par RMI.
+	 * @return Vrai pour le transport NIO.
+	 */
+	public boolean isNioTransport() {
+		return nioTransport;
+	}
+	
+	public void setNioTransport(boolean nioTransport) {
+		this.nioTransport = nioTransport;
+	}
+	
+	/**
+	 * Crée la politique d'échéance des appels aux calculateurs : off (aucune échéance), une échéance fixe en millisecondes, auto
+	 * ou auto:marge (estimée selon la charge de chaque calculateur). La réaction à une échéance dépassée est unbind (retrait du
+	 * calculateur) ou suspend[:ms] (suspension temporaire).
+	 * @return La politique d'échéance ou null si les appels n'ont pas d'échéance.
+	 * @throws IllegalArgumentException Si l'échéance ou la réaction est invalide.
+	 */
+	public DeadlinePolicy createDeadlinePolicy() {
+		DeadlinePolicy policy = DeadlinePolicy.fromDescription(deadlineMode);
+		if(policy != null) {
+			policy.setTimeoutReaction(timeoutReaction);
+		}
+		return policy;
+	}
+	
+	public void setDeadlineMode(String deadlineMode) {
+		this.deadlineMode = deadlineMode;
+	}
+	
+	public void setTimeoutReaction(String timeoutReaction) {
+		this.timeoutReaction = timeoutReaction;
+	}
+	
+	/**
+	 * Récupère le temps sans battement après lequel un calculateur qui envoie des battements est considéré comme en panne.
+	 * @return La fenêtre de détection en millisecondes ou 0 si les calculateurs silencieux ne sont pas retirés.
+	 */
+	public long getFailureWindowMillis() {
+		return failureWindowMillis;
+	}
+	
+	public void setFailureWindowMillis(long failureWindowMillis) {
+		this.failureWindowMillis = failureWindowMillis;
+	}
+	
+	/**
+	 * Crée le journal de points de reprise des calculs.
+	 * @return Le journal ou null si l'état des calculs n'est pas enregistré.
+	 */
+	public JobCheckpoint createJobCheckpoint() {
+		return checkpointFile != null ? new JobCheckpoint(checkpointFile, checkpointIntervalMillis) : null;
+	}
+	
+	/**
+	 * Récupère le fichier dans lequel l'état des calculs est enregistré.
+	 * @return Le fichier des points de reprise ou null si l'état des calculs n'est pas enregistré.
+	 */
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+	
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+	
+	public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+		this.checkpointIntervalMillis = checkpointIntervalMillis;
+	}
+	
+	/**
+	 * Indique si le calcul interrompu enregistré dans le fichier des points de reprise doit être repris au démarrage.
+	 * @return Vrai pour reprendre le calcul interrompu.
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+	
+	/**
+	 * Récupère le dossier de dépôt des calculs du mode serveur.
+	 * @return Le dossier ou null si le répartiteur demande les fichiers d'opérations à la console.
+	 */
+	public File getSpoolDirectory() {
+		return spoolDirectory;
+	}
+	
+	public void setSpoolDirectory(File spoolDirectory) {
+		this.spoolDirectory = spoolDirectory;
+	}
+	
+	/**
+	 * Récupère le port du RMIRegistry créé par le répartiteur, auquel les calculateurs s'enregistrent.
+	 * @return Le port du RMIRegistry.
+	 */
+	public int getRegistryPort() {
+		return registryPort;
+	}
+	
+	public void setRegistryPort(int registryPort) {
+		this.registryPort = registryPort;
+	}
+	
+	/**
+	 * Récupère l'hôte du répartiteur parent auquel ce répartiteur s'enregistre comme un calculateur.
+	 * @return L'hôte du parent ou null si le répartiteur n'a pas de parent.
+	 */
+	public String getParentHost() {
+		return parentHost;
+	}
+	
+	/**
+	 * Récupère le port du RMIRegistry du répartiteur parent.
+	 * @return Le port du RMIRegistry du parent.
+	 */
+	public int getParentPort() {
+		return parentPort;
+	}
+	
+	public void setParent(String parentHost, int parentPort) {
+		this.parentHost = parentHost;
+		this.parentPort = parentPort;
+	}
+	
+	/**
+	 * Récupère le nombre d'opérations des tranches qu'un répartiteur enfant demande à son parent.
+	 * @return La taille des tranches.
+	 */
+	public int getShardSize() {
+		return shardSize;
+	}
+	
+	public void setShardSize(int shardSize) {
+		this.shardSize = shardSize;
+	}
+	
+	/**
+	 * Récupère l'intervalle d'affichage des métriques du répartiteur.
+	 * @return L'intervalle en millisecondes ou 0 si les métriques ne sont publiées que par JMX.
+	 */
+	public long getMetricsIntervalMillis() {
+		return metricsIntervalMillis;
+	}
+	
+	public void setMetricsIntervalMillis(long metricsIntervalMillis) {
+		this.metricsIntervalMillis = metricsIntervalMillis;
+	}
+	
+	private static int readPort(String[] args, int index, String value) {
+		try {
+			int port = Integer.parseInt(value);
+			if(port > 0 && port <= 65535) {
+				return port;
+			}
+		}
+		catch(NumberFormatException e) {
+		}
+		throw new IllegalArgumentException("Port invalide pour " + args[index - 1] + " : " + value);
+	}
+	
+	private static double readVerificationMode(String mode) {
+		if(mode.equals("pair")) {
+			return 0;
+		}
+		else if(mode.equals("spot")) {
+			return DEFAULT_VERIFICATION_FRACTION;
+		}
+		else if(mode.startsWith("spot:")) {
+			try {
+				double fraction = Double.parseDouble(mode.substring("spot:".length()));
+				if(fraction > 0 && fraction <= 1) {
+					return fraction;
+				}
+			}
+			catch(NumberFormatException e) {
+			}
+		}
+		throw new IllegalArgumentException("Mode de vérification invalide : " + mode);
+	}
+	
+	private static int readPositiveInt(String[] args, int index) {
+		String value = readValue(args, index);
+		try {
+			int number = Integer.parseInt(value);
+			if(number > 0) {
+				return number;
+			}
+		}
+		catch(NumberFormatException e) {
+		}
+		throw new IllegalArgumentException("Entier positif attendu pour " + args[index - 1] + " : " + value);
+	}
+	
+	private static String readValue(String[] args, int index) {
+		if(index >= args.length) {
+			throw new IllegalArgumentException("Valeur manquante pour " + args[index - 1]);
+		}
+		return args[index];
+	}
+}
@@ -0,0 +1,72 @@
+package repartitor;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import shared.CalculationOperations;
+
+/**
+ * Conserve la réputation des calculateurs en mode non sécurisé. La réputation d'un calculateur est le nombre de ses lots dont le
+ * résultat a été confirmé par un autre calculateur. La probabilité de vérifier un lot diminue avec la réputation, mais ne descend
+ * jamais sous la fraction minimale choisie. Un calculateur qui donne un faux résultat sur k lots a donc au moins une probabilité
+ * de 1 - (1 - fraction minimale)^k d'être découvert.
+ * @author dcourcel
+ *
+ */
+public class ReputationTracker {
+	private final double minimumVerification;
+	private final HashMap<CalculationOperations, Integer> verifiedBatches = new HashMap<>();
+	private final Random random = new Random();
+	
+	/**
+	 * Crée un suivi de réputation.
+	 * @param minimumVerification La fraction minimale des lots de chaque calculateur qui est vérifiée, entre 0 exclusivement et 1.
+	 * @throws IllegalArgumentException Si la fraction est hors de l'intervalle permis.
+	 */
+	public ReputationTracker(double minimumVerification) {
+		if(!(minimumVerification > 0 && minimumVerification <= 1)) {
+			throw new IllegalArgumentException("La fraction vérifiée doit être plus grande que 0 et au plus 1 : " + minimumVerification);
+		}
+		this.minimumVerification = minimumVerification;
+	}
+	
+	/**
+	 * Calcule la probabilité qu'un lot envoyé au calculateur soit vérifié. Un calculateur sans réputation est toujours vérifié.
+	 * @param calculator Le calculateur.
+	 * @return La probabilité de vérification, entre la fraction minimale et 1.
+	 */
+	public synchronized double getVerificationProbability(CalculationOperations calculator) {
+		Integer verified = verifiedBatches.get(calculator);
+		return Math.max(minimumVerification, 1.0 / (1 + (verified == null ? 0 : verified)));
+	}
+	
+	/**
+	 * Tire au hasard si le prochain lot envoyé au calculateur doit être vérifié.
+	 * @param calculator Le calculateur.
+	 * @return Vrai si le lot doit être envoyé à un second calculateur.
+	 */
+	public synchronized boolean shouldVerify(CalculationOperations calculator) {
+		return random.nextDouble() < getVerificationProbability(calculator);
+	}
+	
+	/**
+	 * Augmente la réputation d'un calculateur dont le résultat a été confirmé.
+	 * @param calculator Le calculateur.
+	 */
+	public synchronized void batchVerified(CalculationOperations calculator) {
+		Integer verified = verifiedBatches.get(calculator);
+		verifiedBatches.put(calculator, verified == null ? 1 : verified + 1);
+	}
+	
+	/**
+	 * Oublie la réputation d'un calculateur, par exemple parce qu'il a menti et a été retiré.
+	 * @param calculator Le calculateur.
+	 */
+	public synchronized void forget(CalculationOperations calculator) {
+		verifiedBatches.remove(calculator);
+	}
+	
+	public double getMinimumVerification() {
+		return minimumVerification;
+	}
+}
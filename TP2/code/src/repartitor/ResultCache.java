@@ -0,0 +1,133 @@
+package repartitor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import repartitor.operations.Operation;
+import shared.IOperation;
+
+/**
+ * Une cache des résultats d'opérations (performOperation() % 4000) indexée par le type d'opération et son opérande. Lorsque la
+ * cache est pleine, l'entrée utilisée le moins récemment est retirée. La cache peut être sauvegardée et rechargée d'un fichier
+ * pour être conservée d'une exécution du répartiteur à l'autre.
+ * @author dcourcel
+ *
+ */
+public class ResultCache {
+	
+	private final LinkedHashMap<Long, Integer> results;
+	private long hits = 0;
+	private long misses = 0;
+	
+	/**
+	 * Crée une cache vide.
+	 * @param capacity Le nombre maximal de résultats conservés.
+	 */
+	public ResultCache(final int capacity) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("La taille de la cache doit être un entier positif.");
+		}
+		results = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Cherche le résultat d'une opération dans la cache.
+	 * @param operation L'opération à chercher.
+	 * @return Le résultat modulo 4000 de l'opération ou null s'il n'est pas dans la cache.
+	 */
+	public synchronized Integer lookup(IOperation operation) {
+		Integer result = null;
+		if(operation instanceof Operation) {
+			result = results.get(keyOf((Operation)operation));
+		}
+		if(result != null) {
+			++hits;
+		}
+		else {
+			++misses;
+		}
+		return result;
+	}
+	
+	/**
+	 * Conserve les résultats d'opérations calculées.
+	 * @param operations Les opérations calculées.
+	 * @param operationResults Le résultat modulo 4000 de chaque opération.
+	 */
+	public synchronized void store(IOperation[] operations, int[] operationResults) {
+		for(int i = 0; i < operations.length; ++i) {
+			if(operations[i] instanceof Operation) {
+				results.put(keyOf((Operation)operations[i]), operationResults[i]);
+			}
+		}
+	}
+	
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * Remet à zéro les compteurs de succès et d'échecs, par exemple au début d'un calcul.
+	 */
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+	}
+	
+	/**
+	 * Charge les résultats contenus dans un fichier créé par save. Ne fait rien si le fichier n'existe pas.
+	 * @param file Le fichier à lire.
+	 * @throws IOException Si la lecture du fichier échoue.
+	 */
+	public synchronized void load(File file) throws IOException {
+		if(!file.exists()) {
+			return;
+		}
+		try(DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			while(true) {
+				long key = input.readLong();
+				results.put(key, input.readInt());
+			}
+		}
+		catch(EOFException e) {
+		}
+	}
+	
+	/**
+	 * Sauvegarde les résultats de la cache dans un fichier, du moins récemment utilisé au plus récemment utilisé.
+	 * @param file Le fichier à écrire. Il est remplacé s'il existe.
+	 * @throws IOException Si l'écriture du fichier échoue.
+	 */
+	public synchronized void save(File file) throws IOException {
+		try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			for(Map.Entry<Long, Integer> entry : results.entrySet()) {
+				output.writeLong(entry.getKey());
+				output.writeInt(entry.getValue());
+			}
+		}
+	}
+	
+	private static long keyOf(Operation operation) {
+		return ((long)operation.getOpcode() << 32) | (operation.getOperand() & 0xFFFFFFFFL);
+	}
+}
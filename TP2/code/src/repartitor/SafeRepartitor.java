@@ -2,20 +2,66 @@ package repartitor;
 
 import java.rmi.AlreadyBoundException;
 import java.rmi.RemoteException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 
-import shared.CalculationOperations;
+import shared.CalculatorOccupiedException;
 import shared.IOperation;
 import threadNotifier.IThreadNotifier;
 
+/**
+ * Un répartiteur qui fait confiance aux résultats des calculateurs. Si un détecteur de lots retardataires est donné dans les
+ * options, un lot en cours depuis plus longtemps que le centile choisi des temps aller-retour est relancé sur un calculateur
+ * inactif. Le premier résultat reçu est conservé et celui de l'autre appel est ignoré, de sorte que chaque opération n'est
+ * comptée qu'une seule fois.
+ * @author dcourcel
+ *
+ */
 public class SafeRepartitor extends Repartitor {
+	private static final long HEDGE_CHECK_INTERVAL_MS = 5;
 	
-	private HashSet<CalculatorThread> threads = new HashSet<>();
+	private StragglerDetector stragglerDetector;
+	private HashMap<CalculatorThread, Batch> threads = new HashMap<>();
+	private LinkedHashSet<Batch> pendingBatches = new LinkedHashSet<>();
+	private ArrayList<Batch> runningLosers = new ArrayList<>();
 	private LinkedList<IThreadNotifier> finishedThreads = new LinkedList<>();
+	private int hedgesIssued = 0;
+	private int hedgesWon = 0;
+	private long tailNanosSaved = 0;
+	
+	/**
+	 * Un lot d'opérations envoyé à un calculateur et, s'il a été relancé, à un second calculateur.
+	 */
+	private static class Batch {
+		private final CalculatorThread original;
+		private final long launchNanos = System.nanoTime();
+		private CalculatorThread hedge = null;
+		private int attemptsRunning = 1;
+		private boolean resolved = false;
+		private long resolvedNanos = 0;
+		
+		private Batch(CalculatorThread original) {
+			this.original = original;
+		}
+	}
 	
 	public SafeRepartitor() throws AlreadyBoundException, RemoteException {
-		super();
+		this(new RepartitorOptions());
+	}
+	
+	public SafeRepartitor(RepartitorOptions options) throws AlreadyBoundException, RemoteException {
+		super(options);
+		stragglerDetector = options.createStragglerDetector();
+	}
+	
+	/**
+	 * Change le détecteur de lots retardataires. Le changement s'applique au prochain calcul.
+	 * @param stragglerDetector Le nouveau détecteur ou null pour ne plus relancer les lots retardataires.
+	 */
+	public void setStragglerDetector(StragglerDetector stragglerDetector) {
+		this.stragglerDetector = stragglerDetector;
 	}
 	
 	@Override
@@ -25,50 +71,135 @@ public class SafeRepartitor extends Repartitor {
 	
 	@Override
 	protected void launchACalculation() throws ResultError {
-		CalculationOperations currentCalculator = getACalculator();
-		int currentCalculatorSupportedOps;
-		try {
-			currentCalculatorSupportedOps = currentCalculator.getNumberOfOperationsSupported();
-		}
-		catch(RemoteException e) {
-			throw new ResultError(currentCalculator, e);
-		}
-		IOperation[] currentOps = retrieveSomeOperationsFromStack(currentCalculatorSupportedOps + 1);
+		RegisteredCalculator currentCalculator = getACalculator();
+		IOperation[] currentOps = retrieveSomeOperationsFromStack(getBatchSize(currentCalculator));
 		
-		CalculatorThread calculatorThread = new CalculatorThread(currentOps, currentCalculator);
+		CalculatorThread calculatorThread = createCalculatorThread(currentOps, currentCalculator);
 		calculatorThread.setFinishedCollection(finishedThreads);
-		threads.add(calculatorThread);
+		Batch batch = new Batch(calculatorThread);
+		threads.put(calculatorThread, batch);
+		pendingBatches.add(batch);
 		calculatorThread.start();
 	}
 	
 	@Override
 	protected boolean haveWaitingResults() {
-		return threads.size() != 0;
+		return pendingBatches.size() != 0;
 	}
 	
 	@Override
-	protected int getResult() throws ResultError, InterruptedException {
-		Integer threadResult = null;
+	protected BatchResult getResult() throws ResultError, InterruptedException {
 		synchronized(finishedThreads) {
-			if(finishedThreads.size() > 0) {
-				threadResult = treatFinishedThreads();
-			}
-			else {
-				finishedThreads.wait();
-				threadResult = treatFinishedThreads();
+			while(true) {
+				while(finishedThreads.size() > 0) {
+					BatchResult threadResult = treatFinishedThreads();
+					if(threadResult != null) {
+						return threadResult;
+					}
+				}
+				if(stragglerDetector != null) {
+					launchHedges();
+					finishedThreads.wait(HEDGE_CHECK_INTERVAL_MS);
+				}
+				else {
+					finishedThreads.wait();
+				}
 			}
 		}
-		return threadResult.intValue();
 	}
 	
-	private Integer treatFinishedThreads() throws ResultError {
+	@Override
+	protected void printJobStatistics() {
+		if(stragglerDetector == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		for(Batch batch : runningLosers) {
+			tailNanosSaved += now - batch.resolvedNanos;
+		}
+		runningLosers.clear();
+		System.out.println(String.format("Relances : %d lots relancés au-delà du centile %d, %d gagnées, au moins %.1f ms de latence de " +
+				"queue épargnée.", hedgesIssued, stragglerDetector.getPercentile(), hedgesWon, tailNanosSaved / 1e6));
+		hedgesIssued = 0;
+		hedgesWon = 0;
+		tailNanosSaved = 0;
+	}
+	
+	/**
+	 * Traite le premier appel terminé. Le résultat d'un appel dont le lot a déjà été résolu est ignoré. L'échec d'un appel dont
+	 * le lot est encore calculé par un autre calculateur n'est pas retourné : seul le calculateur fautif est retiré au besoin.
+	 * @return Le résultat du lot, attribué au calcul de son premier appel, ou null si l'appel terminé ne résout aucun lot.
+	 * @throws ResultError Si le dernier appel en cours d'un lot a échoué. Les opérations du lot sont remises dans la file.
+	 */
+	private BatchResult treatFinishedThreads() throws ResultError {
 		CalculatorThread thread = (CalculatorThread)finishedThreads.getFirst();
 		finishedThreads.removeFirst();
-		threads.remove(thread);
-		if(thread.getExceptionThrown() != null) {
+		Batch batch = threads.remove(thread);
+		reportBatchOutcome(thread);
+		--batch.attemptsRunning;
+		Throwable exception = thread.getExceptionThrown();
+		
+		if(batch.resolved) {
+			if(runningLosers.remove(batch)) {
+				tailNanosSaved += System.nanoTime() - batch.resolvedNanos;
+			}
+			removeIfFailed(thread);
+			return null;
+		}
+		if(exception != null && batch.attemptsRunning > 0) {
+			removeIfFailed(thread);
+			return null;
+		}
+		
+		batch.resolved = true;
+		batch.resolvedNanos = System.nanoTime();
+		pendingBatches.remove(batch);
+		if(exception != null) {
 			putSomeOperationsOnStack(thread.getOperations());
-			throw new ResultError(thread.getCalculatorCaller(), thread.getExceptionThrown());
+			throw new ResultError(thread.getCalculatorCaller(), exception);
+		}
+		if(stragglerDetector != null) {
+			stragglerDetector.record(thread.getRoundTripNanos());
+		}
+		if(thread == batch.hedge && batch.attemptsRunning > 0) {
+			++hedgesWon;
+			runningLosers.add(batch);
+		}
+		recordResults(thread);
+		return new BatchResult(batch.original.getJob(), thread.getResults());
+	}
+	
+	/**
+	 * Relance sur un calculateur inactif chaque lot en cours depuis plus longtemps que le seuil du détecteur. Un lot n'est relancé
+	 * qu'une seule fois.
+	 */
+	private void launchHedges() {
+		long now = System.nanoTime();
+		for(Batch batch : pendingBatches) {
+			if(batch.hedge != null || !stragglerDetector.isStraggling(now - batch.launchNanos)) {
+				continue;
+			}
+			RegisteredCalculator idleCalculator = getAnIdleCalculator(batch.original.getRegisteredCalculator());
+			if(idleCalculator == null) {
+				return;
+			}
+			batch.hedge = createCalculatorThread(batch.original.getOperations(), idleCalculator);
+			batch.hedge.setFinishedCollection(finishedThreads);
+			++batch.attemptsRunning;
+			threads.put(batch.hedge, batch);
+			++hedgesIssued;
+			batch.hedge.start();
+		}
+	}
+	
+	/**
+	 * Retire ou suspend le calculateur d'un appel qui a échoué pour une autre raison qu'un refus.
+	 * @param thread L'appel terminé.
+	 */
+	private void removeIfFailed(CalculatorThread thread) {
+		Throwable exception = thread.getExceptionThrown();
+		if(exception != null && !(exception instanceof CalculatorOccupiedException)) {
+			handleFailedCalculator(thread.getCalculatorCaller(), exception);
 		}
-		return thread.getResults();
 	}
 }
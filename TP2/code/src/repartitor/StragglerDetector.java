@@ -0,0 +1,75 @@
+package repartitor;
+
+import java.util.Arrays;
+
+/**
+ * Détecte les lots retardataires à partir des temps aller-retour des derniers lots réussis. Un lot est considéré comme
+ * retardataire lorsqu'il est en cours depuis plus longtemps que le centile choisi de ces temps.
+ * @author dcourcel
+ *
+ */
+public class StragglerDetector {
+	private static final int WINDOW_SIZE = 256;
+	private static final int MIN_SAMPLES = 16;
+	
+	private final int percentile;
+	private final long[] samples = new long[WINDOW_SIZE];
+	private int sampleCount = 0;
+	private int nextSample = 0;
+	private long thresholdNanos = -1;
+	private boolean thresholdValid = false;
+	
+	/**
+	 * Crée un détecteur de lots retardataires.
+	 * @param percentile Le centile des temps aller-retour au-delà duquel un lot est retardataire, entre 1 et 99.
+	 * @throws IllegalArgumentException Si le centile est hors de l'intervalle permis.
+	 */
+	public StragglerDetector(int percentile) {
+		if(percentile < 1 || percentile > 99) {
+			throw new IllegalArgumentException("Le centile doit être entre 1 et 99 : " + percentile);
+		}
+		this.percentile = percentile;
+	}
+	
+	/**
+	 * Ajoute le temps aller-retour d'un lot réussi. Seuls les WINDOW_SIZE derniers temps sont conservés.
+	 * @param roundTripNanos Le temps aller-retour en nanosecondes.
+	 */
+	public synchronized void record(long roundTripNanos) {
+		samples[nextSample] = roundTripNanos;
+		nextSample = (nextSample + 1) % WINDOW_SIZE;
+		sampleCount = Math.min(sampleCount + 1, WINDOW_SIZE);
+		thresholdValid = false;
+	}
+	
+	/**
+	 * Récupère la durée au-delà de laquelle un lot en cours est retardataire.
+	 * @return Le seuil en nanosecondes ou -1 s'il n'y a pas encore assez de temps mesurés.
+	 */
+	public synchronized long getThresholdNanos() {
+		if(sampleCount < MIN_SAMPLES) {
+			return -1;
+		}
+		if(!thresholdValid) {
+			long[] sorted = Arrays.copyOf(samples, sampleCount);
+			Arrays.sort(sorted);
+			thresholdNanos = sorted[Math.min(sampleCount - 1, sampleCount * percentile / 100)];
+			thresholdValid = true;
+		}
+		return thresholdNanos;
+	}
+	
+	/**
+	 * Indique si un lot est retardataire.
+	 * @param elapsedNanos Le temps écoulé depuis l'envoi du lot.
+	 * @return Vrai si le seuil est connu et dépassé, faux sinon.
+	 */
+	public boolean isStraggling(long elapsedNanos) {
+		long threshold = getThresholdNanos();
+		return threshold >= 0 && elapsedNanos > threshold;
+	}
+	
+	public int getPercentile() {
+		return percentile;
+	}
+}
@@ -2,17 +2,78 @@ package repartitor;
 
 import java.rmi.AlreadyBoundException;
 import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 import shared.CalculationOperations;
+import shared.CalculatorOccupiedException;
 import shared.IOperation;
 import threadNotifier.NotifierHandler;
 
+/**
+ * Un répartiteur qui ne fait pas confiance aux résultats des calculateurs. Par défaut, chaque lot est envoyé à deux calculateurs
+ * et leurs résultats sont comparés. Si un suivi de réputation est donné dans les options, seule une partie des lots est vérifiée
+ * par un second calculateur. Lorsque deux résultats diffèrent, un troisième calculateur départage les deux premiers : le menteur
+ * est retiré et les derniers résultats qu'il a donnés sans vérification sont recalculés. Seuls les MAX_RETRACTABLE_BATCHES
+ * derniers lots non vérifiés de chaque calculateur sont conservés, pour que la mémoire ne croisse pas avec la taille du calcul :
+ * un résultat plus ancien ne peut plus être retiré. En mode isolate, les calculateurs retournent le résultat de chaque
+ * opération : seules les opérations en désaccord sont envoyées au troisième calculateur et les résultats des autres opérations
+ * sont conservés. Un calculateur qui ne retourne que la somme de chaque lot, comme un répartiteur enfant, n'est jamais choisi
+ * comme troisième calculateur et le désaccord d'un lot qu'il a calculé est réglé comme en mode retry.
+ * @author dcourcel
+ *
+ */
 public class UnsafeRepartitor extends Repartitor {
+	public static final String RETRY_MISMATCH = "retry";
+	public static final String VOTE_MISMATCH = "vote";
+	public static final String ISOLATE_MISMATCH = "isolate";
+	public static final int MAX_RETRACTABLE_BATCHES = 64;
 
 	private final NotifierHandler<CalculatorThread> threadNotifier = new NotifierHandler<>();
+	private final ReputationTracker reputationTracker;
+	private final String mismatchResolution;
+	private final HashMap<CalculatorThread, CalculatorThread[]> pendingVotes = new HashMap<>();
+	private final HashMap<CalculatorThread, Isolation> pendingIsolations = new HashMap<>();
+	private final HashMap<CalculationOperations, ArrayDeque<CalculatorThread>> unverifiedResults = new HashMap<>();
+	private final HashSet<CalculationOperations> liars = new HashSet<>();
+	private int batchesLaunched = 0;
+	private int batchesVerified = 0;
+	private int votes = 0;
+	private int liarsRemoved = 0;
+	private int operationsRedone = 0;
+	private int callsMade = 0;
+	private int batchesIsolated = 0;
+	private int operationsInDispute = 0;
+	private int operationsRecovered = 0;
+	private int operationsSentToReferee = 0;
+	
+	/**
+	 * Un lot dont les deux résultats diffèrent et dont les opérations en désaccord ont été envoyées à un troisième calculateur.
+	 */
+	private static class Isolation {
+		private final CalculatorThread[] pair;
+		private final int[] disputedIndexes;
+		private final long agreedResult;
+		
+		private Isolation(CalculatorThread[] pair, int[] disputedIndexes, long agreedResult) {
+			this.pair = pair;
+			this.disputedIndexes = disputedIndexes;
+			this.agreedResult = agreedResult;
+		}
+	}
 	
 	public UnsafeRepartitor() throws AlreadyBoundException, RemoteException {
-		super();
+		this(new RepartitorOptions());
+	}
+	
+	public UnsafeRepartitor(RepartitorOptions options) throws AlreadyBoundException, RemoteException {
+		super(options);
+		reputationTracker = options.createReputationTracker();
+		mismatchResolution = options.getMismatchResolution();
 	}
 
 	@Override
@@ -22,33 +83,26 @@ public class UnsafeRepartitor extends Repartitor {
 
 	@Override
 	protected void launchACalculation() throws ResultError {
-		CalculationOperations currentCalculator1 = getACalculator();
-		int nbOperationsSupported1;
-		try {
-			nbOperationsSupported1 = currentCalculator1.getNumberOfOperationsSupported();
+		RegisteredCalculator currentCalculator1 = getACalculator();
+		++batchesLaunched;
+		if(reputationTracker != null && !reputationTracker.shouldVerify(currentCalculator1.getCalculator())) {
+			IOperation[] currentOps = retrieveSomeOperationsFromStack(getBatchSize(currentCalculator1));
+			startCalculations(new CalculatorThread[] { createCalculatorThread(currentOps, currentCalculator1) });
+			return;
 		}
-		catch(RemoteException e) {
-			throw new ResultError(currentCalculator1, e.getCause());
-		}
-		CalculationOperations currentCalculator2;
-		do
-		{
-			currentCalculator2 = getACalculator();
-		}
-		while(currentCalculator1 == currentCalculator2);
-		int nbOperationsSupported2;
-		try {
-			nbOperationsSupported2 = currentCalculator2.getNumberOfOperationsSupported();
-		}
-		catch(RemoteException e) {
-			throw new ResultError(currentCalculator2, e.getCause());
-		}
-		IOperation[] currentOps = retrieveSomeOperationsFromStack(Math.min(nbOperationsSupported1, nbOperationsSupported2) + 1);
+		++batchesVerified;
+		RegisteredCalculator currentCalculator2 = getACalculator(currentCalculator1);
+		IOperation[] currentOps = retrieveSomeOperationsFromStack(Math.min(getBatchSize(currentCalculator1), getBatchSize(currentCalculator2)));
 		CalculatorThread[] calculatorPair = new CalculatorThread[] {
-				new CalculatorThread(currentOps, currentCalculator1),
-				new CalculatorThread(currentOps, currentCalculator2)
+				createCalculatorThread(currentOps, currentCalculator1),
+				createCalculatorThread(currentOps, currentCalculator2)
 		};
-		threadNotifier.startNewThreads(calculatorPair);
+		if(mismatchResolution.equals(ISOLATE_MISMATCH) && !currentCalculator1.isSumOnly() && !currentCalculator2.isSumOnly()) {
+			for(CalculatorThread thread : calculatorPair) {
+				thread.setRequestEachResult(true);
+			}
+		}
+		startCalculations(calculatorPair);
 	}
 
 	@Override
@@ -57,21 +111,362 @@ public class UnsafeRepartitor extends Repartitor {
 	}
 
 	@Override
-	protected int getResult() throws ResultError, InterruptedException {
-		int result;
-		CalculatorThread[] threadsFinished = threadNotifier.getFinishedThreadsPool();
-		result = retrieveAndValidateResult(threadsFinished[0]);
+	protected BatchResult getResult() throws ResultError, InterruptedException {
+		while(true) {
+			CalculatorThread[] threadsFinished = threadNotifier.getFinishedThreadsPool();
+			for(CalculatorThread thread : threadsFinished) {
+				reportBatchOutcome(thread);
+			}
+			BatchResult result;
+			CalculatorThread[] vote = pendingVotes.remove(threadsFinished[0]);
+			Isolation isolation = pendingIsolations.remove(threadsFinished[0]);
+			if(vote != null) {
+				result = resolveVote(vote, threadsFinished[0]);
+			}
+			else if(isolation != null) {
+				result = resolveIsolation(isolation, threadsFinished[0]);
+			}
+			else if(threadsFinished.length == 1) {
+				result = acceptUnverifiedResult(threadsFinished[0]);
+			}
+			else {
+				result = compareResults(threadsFinished);
+			}
+			if(result != null) {
+				return result;
+			}
+		}
+	}
+	
+	@Override
+	protected void printJobStatistics() {
+		unverifiedResults.clear();
+		if(mismatchResolution.equals(ISOLATE_MISMATCH)) {
+			System.out.println(String.format("Isolation des désaccords : %d lots en désaccord, %d opérations récupérées sur %d, " +
+					"%d envoyées à un troisième calculateur, %d calculateurs menteurs retirés.", batchesIsolated, operationsRecovered,
+					operationsInDispute, operationsSentToReferee, liarsRemoved));
+			batchesIsolated = 0;
+			operationsInDispute = 0;
+			operationsRecovered = 0;
+			operationsSentToReferee = 0;
+		}
+		if(reputationTracker == null) {
+			liarsRemoved = 0;
+			return;
+		}
+		System.out.println(String.format("Vérification par réputation : %d lots, %d vérifiés (%.0f%%), %d votes, %d calculateurs " +
+				"menteurs retirés, %d opérations recalculées.", batchesLaunched, batchesVerified,
+				batchesLaunched == 0 ? 0 : 100.0 * batchesVerified / batchesLaunched, votes, liarsRemoved, operationsRedone));
+		System.out.println(String.format("%d appels aux calculateurs contre %d en envoyant chaque lot à deux calculateurs, débit " +
+				"multiplié par %.2f.", callsMade, 2 * batchesLaunched, callsMade == 0 ? 1 : 2.0 * batchesLaunched / callsMade));
+		batchesLaunched = 0;
+		batchesVerified = 0;
+		votes = 0;
+		liarsRemoved = 0;
+		operationsRedone = 0;
+		callsMade = 0;
+	}
+	
+	/**
+	 * Compare les résultats des appels d'un lot envoyé à deux calculateurs. Selon le mode de résolution, une différence démarre un
+	 * vote ou une isolation avec un troisième calculateur. Sinon, le lot est remis dans la file.
+	 * @param threadsFinished Les appels du lot.
+	 * @return Le résultat du lot ou null si un troisième calculateur a été sollicité.
+	 * @throws ResultError Si un appel a échoué ou si les résultats diffèrent sans qu'un vote soit possible.
+	 */
+	private BatchResult compareResults(CalculatorThread[] threadsFinished) throws ResultError {
+		int result = retrieveAndValidateResult(threadsFinished[0]);
 		int i = 1;
 		while(i < threadsFinished.length) {
 			if(retrieveAndValidateResult(threadsFinished[i]) != result) {
+				reportMismatch(threadsFinished);
+				BatchResult knownResult = resultWithoutKnownLiar(threadsFinished);
+				if(knownResult != null) {
+					return knownResult;
+				}
+				if(mismatchResolution.equals(VOTE_MISMATCH) && startVote(threadsFinished)) {
+					return null;
+				}
+				if(mismatchResolution.equals(ISOLATE_MISMATCH) && startIsolation(threadsFinished)) {
+					return null;
+				}
 				putSomeOperationsOnStack(threadsFinished[i].getOperations());
 				throw new ResultError(threadsFinished[i].getCalculatorCaller());
 			}
 			++i;
 		}
-		return result;
+		for(CalculatorThread thread : threadsFinished) {
+			markVerified(thread.getCalculatorCaller());
+		}
+		recordResults(threadsFinished[0]);
+		return new BatchResult(threadsFinished[0].getJob(), result);
+	}
+	
+	/**
+	 * Conserve le résultat d'un lot dont les deux résultats diffèrent si l'un des deux calculateurs a déjà été découvert comme
+	 * menteur. Aucun vote n'est alors nécessaire.
+	 * @param pair Les deux appels en désaccord.
+	 * @return Le résultat de l'autre calculateur ou null si aucun des deux n'est un menteur connu.
+	 */
+	private BatchResult resultWithoutKnownLiar(CalculatorThread[] pair) {
+		for(int i = 0; i < pair.length; ++i) {
+			if(liars.contains(pair[i].getCalculatorCaller())) {
+				CalculatorThread honest = pair[1 - i];
+				markVerified(honest.getCalculatorCaller());
+				recordResults(honest);
+				return new BatchResult(honest.getJob(), honest.getResults());
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Envoie à un troisième calculateur un lot dont les deux résultats diffèrent.
+	 * @param pair Les deux appels en désaccord.
+	 * @return Vrai si le vote a été démarré, faux s'il n'y a pas de troisième calculateur.
+	 */
+	private boolean startVote(CalculatorThread[] pair) {
+		RegisteredCalculator referee = getACalculatorExcluding(Arrays.asList(pair[0].getRegisteredCalculator(),
+				pair[1].getRegisteredCalculator()));
+		if(referee == null) {
+			return false;
+		}
+		CalculatorThread refereeThread = createCalculatorThread(pair[0].getOperations(), referee);
+		pendingVotes.put(refereeThread, pair);
+		++votes;
+		startCalculations(new CalculatorThread[] { refereeThread });
+		return true;
+	}
+	
+	/**
+	 * Départage deux résultats différents avec le résultat d'un troisième calculateur. Le calculateur minoritaire est retiré.
+	 * @param pair Les deux appels en désaccord.
+	 * @param referee L'appel au troisième calculateur.
+	 * @return Le résultat majoritaire du lot, attribué au calcul du lot d'origine.
+	 * @throws ResultError Si le troisième appel a échoué ou si aucun résultat n'est majoritaire. Le lot est remis dans la file.
+	 */
+	private BatchResult resolveVote(CalculatorThread[] pair, CalculatorThread referee) throws ResultError {
+		int refereeResult = retrieveAndValidateResult(referee);
+		CalculatorThread winner;
+		CalculatorThread liar;
+		if(refereeResult == Math.floorMod(pair[0].getResults(), 4000)) {
+			winner = pair[0];
+			liar = pair[1];
+		}
+		else if(refereeResult == Math.floorMod(pair[1].getResults(), 4000)) {
+			winner = pair[1];
+			liar = pair[0];
+		}
+		else {
+			putSomeOperationsOnStack(referee.getOperations());
+			throw new ResultError(referee.getCalculatorCaller());
+		}
+		markVerified(winner.getCalculatorCaller());
+		markVerified(referee.getCalculatorCaller());
+		recordResults(winner);
+		removeLiar(liar.getCalculatorCaller());
+		return new BatchResult(winner.getJob(), refereeResult);
+	}
+	
+	/**
+	 * Compare opération par opération les résultats de deux calculateurs en désaccord et envoie seulement les opérations dont les
+	 * résultats diffèrent à un troisième calculateur.
+	 * @param pair Les deux appels en désaccord.
+	 * @return Vrai si les opérations en désaccord ont été envoyées, faux si les résultats de chaque opération ne sont pas connus
+	 * ou s'il n'y a pas de troisième calculateur qui retourne le résultat de chaque opération.
+	 */
+	private boolean startIsolation(CalculatorThread[] pair) {
+		IOperation[] operations = pair[0].getOperations();
+		int[] firstResults = pair[0].getEachResult();
+		int[] secondResults = pair[1].getEachResult();
+		if(firstResults == null || secondResults == null || firstResults.length != operations.length ||
+				secondResults.length != operations.length) {
+			return false;
+		}
+		RegisteredCalculator referee = getACalculatorReturningEach(Arrays.asList(pair[0].getRegisteredCalculator(),
+				pair[1].getRegisteredCalculator()));
+		if(referee == null) {
+			return false;
+		}
+		
+		long agreedResult = 0;
+		ArrayList<Integer> disputedIndexes = new ArrayList<>();
+		for(int i = 0; i < operations.length; ++i) {
+			if(firstResults[i] == secondResults[i]) {
+				agreedResult += firstResults[i];
+			}
+			else {
+				disputedIndexes.add(i);
+			}
+		}
+		int[] indexes = new int[disputedIndexes.size()];
+		IOperation[] disputedOperations = new IOperation[indexes.length];
+		for(int i = 0; i < indexes.length; ++i) {
+			indexes[i] = disputedIndexes.get(i);
+			disputedOperations[i] = operations[indexes[i]];
+		}
+		
+		CalculatorThread refereeThread = createCalculatorThread(disputedOperations, referee);
+		refereeThread.setRequestEachResult(true);
+		pendingIsolations.put(refereeThread, new Isolation(pair, indexes, agreedResult));
+		++batchesIsolated;
+		operationsInDispute += operations.length;
+		operationsSentToReferee += indexes.length;
+		startCalculations(new CalculatorThread[] { refereeThread });
+		return true;
+	}
+	
+	/**
+	 * Départage opération par opération les résultats en désaccord avec ceux du troisième calculateur. Le résultat majoritaire de
+	 * chaque opération est conservé et chaque calculateur contredit est retiré. Les opérations sans majorité sont remises dans la
+	 * file, de même que toutes les opérations en désaccord si le troisième appel a échoué.
+	 * @param isolation Le lot en désaccord.
+	 * @param referee L'appel au troisième calculateur.
+	 * @return La somme des résultats conservés, attribuée au calcul du lot d'origine.
+	 */
+	private BatchResult resolveIsolation(Isolation isolation, CalculatorThread referee) {
+		IOperation[] operations = isolation.pair[0].getOperations();
+		int[] refereeResults = referee.getEachResult();
+		if(referee.getExceptionThrown() != null || refereeResults == null || refereeResults.length != isolation.disputedIndexes.length) {
+			putSomeOperationsOnStack(referee.getOperations());
+			operationsCompleted(operationsExcept(operations, Arrays.asList(referee.getOperations())));
+			operationsRecovered += operations.length - isolation.disputedIndexes.length;
+			if(referee.getExceptionThrown() != null && !(referee.getExceptionThrown() instanceof CalculatorOccupiedException)) {
+				handleFailedCalculator(referee.getCalculatorCaller(), referee.getExceptionThrown());
+			}
+			return new BatchResult(isolation.pair[0].getJob(), (int)Math.floorMod(isolation.agreedResult, 4000L));
+		}
+		
+		long result = isolation.agreedResult;
+		boolean[] contradicted = new boolean[isolation.pair.length];
+		ArrayList<IOperation> unresolved = new ArrayList<>();
+		for(int k = 0; k < isolation.disputedIndexes.length; ++k) {
+			int i = isolation.disputedIndexes[k];
+			if(refereeResults[k] == isolation.pair[0].getEachResult()[i]) {
+				result += refereeResults[k];
+				contradicted[1] = true;
+			}
+			else if(refereeResults[k] == isolation.pair[1].getEachResult()[i]) {
+				result += refereeResults[k];
+				contradicted[0] = true;
+			}
+			else {
+				unresolved.add(operations[i]);
+			}
+		}
+		putSomeOperationsOnStack(unresolved.toArray(new IOperation[unresolved.size()]));
+		operationsCompleted(operationsExcept(operations, unresolved));
+		operationsRecovered += operations.length - unresolved.size();
+		for(int i = 0; i < isolation.pair.length; ++i) {
+			if(contradicted[i]) {
+				removeLiar(isolation.pair[i].getCalculatorCaller());
+			}
+			else {
+				markVerified(isolation.pair[i].getCalculatorCaller());
+			}
+		}
+		return new BatchResult(isolation.pair[0].getJob(), (int)Math.floorMod(result, 4000L));
+	}
+	
+	/**
+	 * Récupère les opérations d'un lot qui ne sont pas parmi celles données.
+	 * @param operations Les opérations du lot.
+	 * @param excluded Les opérations à exclure.
+	 * @return Les autres opérations du lot.
+	 */
+	private static IOperation[] operationsExcept(IOperation[] operations, List<IOperation> excluded) {
+		ArrayList<IOperation> kept = new ArrayList<>(operations.length);
+		for(IOperation operation : operations) {
+			boolean found = false;
+			for(IOperation other : excluded) {
+				found |= other == operation;
+			}
+			if(!found) {
+				kept.add(operation);
+			}
+		}
+		return kept.toArray(new IOperation[kept.size()]);
+	}
+	
+	/**
+	 * Augmente la réputation d'un calculateur dont le résultat a été confirmé, si la vérification par réputation est utilisée.
+	 * @param calculator Le calculateur.
+	 */
+	private void markVerified(CalculationOperations calculator) {
+		if(reputationTracker != null) {
+			reputationTracker.batchVerified(calculator);
+		}
+	}
+	
+	/**
+	 * Accepte le résultat d'un lot qui n'a pas été vérifié. Le résultat est conservé pour être recalculé si le calculateur est
+	 * découvert comme menteur, tant qu'il fait partie des MAX_RETRACTABLE_BATCHES derniers lots non vérifiés du calculateur. Il
+	 * n'est pas ajouté à la cache de résultats.
+	 * @param thread L'appel du lot.
+	 * @return Le résultat du lot.
+	 * @throws ResultError Si l'appel a échoué ou si le calculateur a déjà été découvert comme menteur.
+	 */
+	private BatchResult acceptUnverifiedResult(CalculatorThread thread) throws ResultError {
+		int result = retrieveAndValidateResult(thread);
+		if(liars.contains(thread.getCalculatorCaller())) {
+			putSomeOperationsOnStack(thread.getOperations());
+			throw new ResultError(thread.getCalculatorCaller());
+		}
+		operationsCompleted(thread.getOperations());
+		ArrayDeque<CalculatorThread> accepted = unverifiedResults.get(thread.getCalculatorCaller());
+		if(accepted == null) {
+			accepted = new ArrayDeque<>();
+			unverifiedResults.put(thread.getCalculatorCaller(), accepted);
+		}
+		if(accepted.size() == MAX_RETRACTABLE_BATCHES) {
+			accepted.removeFirst();
+		}
+		accepted.addLast(thread);
+		return new BatchResult(thread.getJob(), result);
+	}
+	
+	/**
+	 * Retire un calculateur menteur, retire du résultat de leur calcul les résultats de ses derniers lots acceptés sans
+	 * vérification et remet leurs opérations dans la file. Les résultats d'un calcul déjà terminé et ceux des lots plus anciens que
+	 * les MAX_RETRACTABLE_BATCHES derniers ne peuvent plus être retirés.
+	 * @param calculator Le calculateur menteur.
+	 */
+	private void removeLiar(CalculationOperations calculator) {
+		if(!liars.add(calculator)) {
+			return;
+		}
+		System.out.println("Retrait d'un calculateur qui a retourné un résultat erroné.");
+		if(reputationTracker != null) {
+			reputationTracker.forget(calculator);
+		}
+		++liarsRemoved;
+		ArrayDeque<CalculatorThread> accepted = unverifiedResults.remove(calculator);
+		if(accepted != null) {
+			for(CalculatorThread thread : accepted) {
+				if(retractResult(thread)) {
+					operationsRedone += thread.getOperations().length;
+				}
+				else {
+					System.out.println("Le calcul " + thread.getJob() + " est déjà terminé : un résultat non vérifié du menteur y " +
+							"reste compté.");
+				}
+			}
+		}
+		unbindACalculator(calculator);
+	}
+	
+	private void startCalculations(CalculatorThread[] threads) {
+		callsMade += threads.length;
+		threadNotifier.startNewThreads(threads);
 	}
 
+	/**
+	 * Récupère le résultat d'un appel modulo 4000. Un calculateur retourne la somme de ses résultats alors qu'un répartiteur
+	 * enfant retourne la somme modulo 4000 de sa tranche : les résultats sont comparés modulo 4000, comme ils sont additionnés.
+	 * @param thread L'appel terminé.
+	 * @return La somme modulo 4000 retournée par le calculateur.
+	 * @throws ResultError Si l'appel a échoué ou n'a pas de résultat. Ses opérations sont remises dans la file.
+	 */
 	private int retrieveAndValidateResult(CalculatorThread thread) throws ResultError {
 		if(thread.getExceptionThrown() != null) {
 			putSomeOperationsOnStack(thread.getOperations());
@@ -82,7 +477,7 @@ public class UnsafeRepartitor extends Repartitor {
 			putSomeOperationsOnStack(thread.getOperations());
 			throw new ResultError(thread.getCalculatorCaller());
 		}
-		return result.intValue();
+		return Math.floorMod(result.intValue(), 4000);
 	}
 
 }
@@ -1,11 +1,86 @@
 package repartitor.operations;
 
+import shared.CalculatorOccupiedException;
 import shared.IOperation;
+import shared.OperationBatch;
 
 public abstract class Operation implements IOperation {
+	public static final int PRIME_OPCODE = 1;
+	public static final int PELL_OPCODE = 2;
+	
 	protected int operand;
 	
 	public Operation(int operand) {
 		this.operand = operand;
 	}
+	
+	public int getOperand() {
+		return operand;
+	}
+	
+	/**
+	 * Identifie le type de l'opération.
+	 * @return Le code de l'opération.
+	 */
+	public abstract int getOpcode();
+	
+	/**
+	 * Transforme des opérations en lot compact pour l'envoi à un calculateur.
+	 * @param operations Les opérations, qui doivent toutes être des Operation.
+	 * @return Le lot compact contenant le code et l'opérande de chaque opération.
+	 * @throws IllegalArgumentException Si une des opérations n'est pas une Operation.
+	 */
+	public static OperationBatch pack(IOperation[] operations) {
+		int[] opcodes = new int[operations.length];
+		int[] operands = new int[operations.length];
+		for(int i = 0; i < operations.length; ++i) {
+			if(!(operations[i] instanceof Operation)) {
+				throw new IllegalArgumentException("Opération sans code : " + operations[i]);
+			}
+			opcodes[i] = ((Operation)operations[i]).getOpcode();
+			operands[i] = ((Operation)operations[i]).getOperand();
+		}
+		return new OperationBatch(opcodes, operands);
+	}
+	
+	/**
+	 * Recrée les opérations d'un lot compact.
+	 * @param operations Le lot compact.
+	 * @return Les opérations du lot, dans le même ordre.
+	 * @throws IllegalArgumentException Si un code d'opération est inconnu.
+	 */
+	public static IOperation[] unpack(OperationBatch operations) {
+		IOperation[] unpacked = new IOperation[operations.size()];
+		for(int i = 0; i < unpacked.length; ++i) {
+			int opcode = operations.getOpcode(i);
+			if(opcode == PRIME_OPCODE) {
+				unpacked[i] = new Prime(operations.getOperand(i));
+			}
+			else if(opcode == PELL_OPCODE) {
+				unpacked[i] = new Pell(operations.getOperand(i));
+			}
+			else {
+				throw new IllegalArgumentException("Code d'opération inconnu : " + opcode);
+			}
+		}
+		return unpacked;
+	}
+	
+	/**
+	 * Effectue une opération à partir de son code et de son opérande, sans créer d'objet.
+	 * @param opcode Le code de l'opération.
+	 * @param operand L'opérande.
+	 * @return Le résultat de l'opération, identique à celui de performOperation.
+	 * @throws CalculatorOccupiedException Si le calculateur n'est pas en mesure d'effectuer le calcul.
+	 * @throws IllegalArgumentException Si le code d'opération est inconnu.
+	 */
+	public static int perform(int opcode, int operand) throws CalculatorOccupiedException {
+		if(opcode == PRIME_OPCODE) {
+			return PrimeFactorSieve.largestPrimeFactor(operand);
+		}
+		else if(opcode == PELL_OPCODE) {
+			return Pell.pell(operand);
+		}
+		throw new IllegalArgumentException("Code d'opération inconnu : " + opcode);
+	}
 }
@@ -8,15 +8,70 @@ public class Pell extends Operation {
 		super(operand);
 	}
 	
+	@Override
+	public int getOpcode() {
+		return PELL_OPCODE;
+	}
+	
 	public int performOperation() throws CalculatorOccupiedException {
 		return pell(operand);
 	}
 	
-	private int pell(int number) {
+	/**
+	 * Calcule le nombre de Pell par exponentiation rapide de la matrice [[2, 1], [1, 0]], en temps logarithmique. Comme tous les
+	 * calculs sont faits avec des int, les débordements donnent exactement la même valeur que la récurrence naïve : les deux
+	 * calculent modulo 2^32.
+	 * @param number L'indice du nombre de Pell.
+	 * @return Le nombre de Pell, tronqué à un int.
+	 */
+	public static int pell(int number) {
+		// Matrice résultat [[a, b], [b, d]] et base [[e, f], [f, h]], toutes deux symétriques.
+		int a = 1, b = 0, d = 1;
+		int e = 2, f = 1, h = 0;
+		int n = number;
+		while (n > 0) {
+			if ((n & 1) != 0) {
+				int na = a * e + b * f;
+				int nb = a * f + b * h;
+				int nd = b * f + d * h;
+				a = na;
+				b = nb;
+				d = nd;
+			}
+			int ne = e * e + f * f;
+			int nf = e * f + f * h;
+			int nh = f * f + h * h;
+			e = ne;
+			f = nf;
+			h = nh;
+			n >>= 1;
+		}
+		return b;
+	}
+	
+	/**
+	 * Calcule le nombre de Pell avec la récurrence naïve d'origine, en temps exponentiel. Conservée pour vérifier pell.
+	 * @param number L'indice du nombre de Pell.
+	 * @return Le nombre de Pell, tronqué à un int.
+	 */
+	public static int naivePell(int number) {
 		if (number == 0)
 			return 0;
 		if (number == 1)
 			return 1;
-		return 2 * pell(number - 1) + pell(number - 2);
+		return 2 * naivePell(number - 1) + naivePell(number - 2);
+	}
+	
+	/**
+	 * Vérifie que pell retourne la même valeur que naivePell pour toutes les opérandes de 0 à maxOperand.
+	 * @param maxOperand La plus grande opérande à vérifier.
+	 * @return La première opérande pour laquelle les valeurs diffèrent ou -1 si elles sont toutes identiques.
+	 */
+	public static int verifyAgainstNaive(int maxOperand) {
+		for (int i = 0; i <= maxOperand; ++i) {
+			if (pell(i) != naivePell(i))
+				return i;
+		}
+		return -1;
 	}
 }
@@ -8,11 +8,31 @@ public class Prime extends Operation {
 		super(operand);
 	}
 	
+	@Override
+	public int getOpcode() {
+		return PRIME_OPCODE;
+	}
+	
 	public int performOperation() throws CalculatorOccupiedException {
 		return prime(operand);
 	}
 	
+	/**
+	 * Calcule le plus grand facteur premier d'un nombre à l'aide du crible partagé de la machine virtuelle.
+	 * @param number Le nombre à factoriser.
+	 * @return Le plus grand facteur premier du nombre ou 0 si le nombre est plus petit que 2.
+	 */
 	public int prime(int number) throws CalculatorOccupiedException {
+		return PrimeFactorSieve.largestPrimeFactor(number);
+	}
+	
+	/**
+	 * Calcule le plus grand facteur premier avec l'algorithme d'origine, en testant chaque entier jusqu'au nombre. Conservée pour
+	 * vérifier prime.
+	 * @param number Le nombre à factoriser.
+	 * @return Le plus grand facteur premier du nombre ou 0 si le nombre est plus petit que 2.
+	 */
+	public static int naivePrime(int number) {
 		int highestPrime = 0;
 		
 		for (int i = 1; i <= number; ++i)
@@ -24,7 +44,22 @@ public class Prime extends Operation {
 		return highestPrime;
 	}
 	
-	private boolean isPrime(int x) {
+	/**
+	 * Vérifie que le crible et les divisions successives retournent la même valeur que naivePrime pour toutes les opérandes de 0
+	 * à maxOperand.
+	 * @param maxOperand La plus grande opérande à vérifier.
+	 * @return La première opérande pour laquelle les valeurs diffèrent ou -1 si elles sont toutes identiques.
+	 */
+	public static int verifyAgainstNaive(int maxOperand) {
+		for (int i = 0; i <= maxOperand; ++i) {
+			int expected = naivePrime(i);
+			if (PrimeFactorSieve.largestPrimeFactor(i) != expected || PrimeFactorSieve.largestPrimeFactorByTrialDivision(i) != expected)
+				return i;
+		}
+		return -1;
+	}
+	
+	private static boolean isPrime(int x) {
 		if (x <= 1)
 			return false;
 
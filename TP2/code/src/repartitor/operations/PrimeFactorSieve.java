@@ -0,0 +1,110 @@
+package repartitor.operations;
+
+/**
+ * Un crible qui conserve le plus petit facteur premier de chaque entier jusqu'à une certaine taille. Le crible est construit
+ * paresseusement et agrandi au besoin jusqu'à la plus grande opérande rencontrée, sans dépasser une taille maximale qui borne la
+ * mémoire utilisée (4 octets par entier). Au-delà de cette taille, la factorisation se fait par divisions successives jusqu'à
+ * la racine carrée.
+ * @author dcourcel
+ *
+ */
+public class PrimeFactorSieve {
+	public static final int DEFAULT_MAXIMUM_SIZE = 1 << 22;
+	private static final int INITIAL_SIZE = 1 << 10;
+	
+	private static volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+	private static volatile int[] smallestFactors = new int[0];
+	
+	/**
+	 * Change la taille maximale du crible. Un crible déjà construit plus grand que la nouvelle taille est conservé.
+	 * @param size Le plus grand entier que le crible peut couvrir. 0 désactive le crible.
+	 */
+	public static void setMaximumSize(int size) {
+		if(size < 0) {
+			throw new IllegalArgumentException("La taille du crible ne peut pas être négative.");
+		}
+		maximumSize = size;
+	}
+	
+	/**
+	 * Calcule le plus grand facteur premier d'un nombre.
+	 * @param number Le nombre à factoriser.
+	 * @return Le plus grand facteur premier du nombre ou 0 si le nombre est plus petit que 2.
+	 */
+	public static int largestPrimeFactor(int number) {
+		if(number < 2) {
+			return 0;
+		}
+		int[] factors = smallestFactors;
+		if(number >= factors.length) {
+			// Au-delà de la taille maximale, le crible ne sera jamais agrandi : inutile de prendre le verrou de grow.
+			if(number > maximumSize) {
+				return largestPrimeFactorByTrialDivision(number);
+			}
+			factors = grow(number);
+		}
+		if(number < factors.length) {
+			int largest = 0;
+			int remaining = number;
+			while(remaining > 1) {
+				largest = factors[remaining];
+				remaining /= largest;
+			}
+			return largest;
+		}
+		return largestPrimeFactorByTrialDivision(number);
+	}
+	
+	/**
+	 * Calcule le plus grand facteur premier d'un nombre par divisions successives jusqu'à sa racine carrée.
+	 * @param number Le nombre à factoriser.
+	 * @return Le plus grand facteur premier du nombre ou 0 si le nombre est plus petit que 2.
+	 */
+	public static int largestPrimeFactorByTrialDivision(int number) {
+		if(number < 2) {
+			return 0;
+		}
+		int largest = 0;
+		int remaining = number;
+		while((remaining & 1) == 0) {
+			largest = 2;
+			remaining >>= 1;
+		}
+		for(int divisor = 3; (long)divisor * divisor <= remaining; divisor += 2) {
+			while(remaining % divisor == 0) {
+				largest = divisor;
+				remaining /= divisor;
+			}
+		}
+		return remaining > 1 ? remaining : largest;
+	}
+	
+	/**
+	 * Agrandit le crible pour qu'il couvre number, si la taille maximale le permet. La taille est au moins doublée pour que le
+	 * coût des reconstructions reste proportionnel à la taille finale.
+	 * @param number Le nombre que le crible doit couvrir.
+	 * @return Le crible courant, qui peut ne pas couvrir number si la taille maximale est atteinte.
+	 */
+	private static synchronized int[] grow(int number) {
+		int[] factors = smallestFactors;
+		int maximum = maximumSize;
+		if(number < factors.length || number > maximum) {
+			return factors;
+		}
+		long wanted = Math.max((long)number + 1, Math.max(INITIAL_SIZE, 2L * factors.length));
+		int size = (int)Math.min(wanted, (long)maximum + 1);
+		
+		int[] newFactors = new int[size];
+		for(int i = 2; i < size; ++i) {
+			if(newFactors[i] == 0) {
+				for(int multiple = i; multiple < size; multiple += i) {
+					if(newFactors[multiple] == 0) {
+						newFactors[multiple] = i;
+					}
+				}
+			}
+		}
+		smallestFactors = newFactors;
+		return newFactors;
+	}
+}
@@ -0,0 +1,21 @@
+package repartitor.selection;
+
+import java.util.List;
+
+import repartitor.RegisteredCalculator;
+
+/**
+ * Une politique qui choisit le calculateur auquel envoyer le prochain lot.
+ * @author dcourcel
+ *
+ */
+public interface CalculatorSelectionPolicy {
+	
+	/**
+	 * Choisit un calculateur.
+	 * @param calculators Les calculateurs disponibles. La liste contient au moins un calculateur autre que excluded.
+	 * @param excluded Un calculateur qui ne doit pas être choisi ou null.
+	 * @return Le calculateur choisi.
+	 */
+	RegisteredCalculator select(List<RegisteredCalculator> calculators, RegisteredCalculator excluded);
+}
@@ -0,0 +1,40 @@
+package repartitor.selection;
+
+import java.util.List;
+import java.util.Random;
+
+import repartitor.RegisteredCalculator;
+
+/**
+ * Choisit le calculateur qui a le moins de lots en cours. Si le calculateur annonce sa charge dans ses battements, le plus grand
+ * du nombre de lots envoyés par le répartiteur et du nombre de lots annoncé est utilisé. Les égalités sont brisées au hasard pour répartir les lots entre les
+ * calculateurs inactifs.
+ * @author dcourcel
+ *
+ */
+public class LeastOutstandingSelection implements CalculatorSelectionPolicy {
+	
+	private final Random random = new Random();
+	
+	@Override
+	public RegisteredCalculator select(List<RegisteredCalculator> calculators, RegisteredCalculator excluded) {
+		RegisteredCalculator best = null;
+		int bestOutstanding = Integer.MAX_VALUE;
+		int ties = 0;
+		for(RegisteredCalculator calculator : calculators) {
+			if(calculator == excluded) {
+				continue;
+			}
+			int outstanding = Math.max(calculator.getLoad().getOutstandingBatches(), calculator.getLoad().getReportedBatches());
+			if(outstanding < bestOutstanding) {
+				best = calculator;
+				bestOutstanding = outstanding;
+				ties = 1;
+			}
+			else if(outstanding == bestOutstanding && random.nextInt(++ties) == 0) {
+				best = calculator;
+			}
+		}
+		return best;
+	}
+}
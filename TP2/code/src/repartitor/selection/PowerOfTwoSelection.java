@@ -0,0 +1,43 @@
+package repartitor.selection;
+
+import java.util.List;
+import java.util.Random;
+
+import repartitor.CalculatorLoad;
+import repartitor.RegisteredCalculator;
+
+/**
+ * Tire deux calculateurs au hasard et garde celui dont le temps d'attente estimé est le plus court : sa latence observée
+ * multipliée par le nombre de lots qu'il aura en cours ou, s'il est plus long, le temps qu'il annonce pour terminer le travail
+ * déjà accepté plus la durée d'un lot. Un calculateur sans latence observée est préféré pour être mesuré.
+ * @author dcourcel
+ *
+ */
+public class PowerOfTwoSelection implements CalculatorSelectionPolicy {
+	
+	private final Random random = new Random();
+	
+	@Override
+	public RegisteredCalculator select(List<RegisteredCalculator> calculators, RegisteredCalculator excluded) {
+		RegisteredCalculator first = pick(calculators, excluded, null);
+		if(calculators.size() - (calculators.contains(excluded) ? 1 : 0) < 2) {
+			return first;
+		}
+		RegisteredCalculator second = pick(calculators, excluded, first);
+		return expectedWait(second.getLoad()) < expectedWait(first.getLoad()) ? second : first;
+	}
+	
+	private RegisteredCalculator pick(List<RegisteredCalculator> calculators, RegisteredCalculator excluded, RegisteredCalculator other) {
+		RegisteredCalculator calculator;
+		do {
+			calculator = calculators.get(random.nextInt(calculators.size()));
+		}
+		while(calculator == excluded || calculator == other);
+		return calculator;
+	}
+	
+	private static double expectedWait(CalculatorLoad load) {
+		return Math.max(load.getLatencyNanos() * (load.getOutstandingBatches() + 1),
+				load.getReportedBacklogNanos() + load.getLatencyNanos());
+	}
+}
@@ -0,0 +1,26 @@
+package repartitor.selection;
+
+import java.util.List;
+import java.util.Random;
+
+import repartitor.RegisteredCalculator;
+
+/**
+ * Choisit un calculateur de façon uniformément aléatoire.
+ * @author dcourcel
+ *
+ */
+public class RandomSelection implements CalculatorSelectionPolicy {
+	
+	private final Random random = new Random();
+	
+	@Override
+	public RegisteredCalculator select(List<RegisteredCalculator> calculators, RegisteredCalculator excluded) {
+		RegisteredCalculator calculator;
+		do {
+			calculator = calculators.get(random.nextInt(calculators.size()));
+		}
+		while(calculator == excluded);
+		return calculator;
+	}
+}
@@ -0,0 +1,64 @@
+package repartitor.selection;
+
+import java.util.List;
+import java.util.Random;
+
+import repartitor.RegisteredCalculator;
+
+/**
+ * Choisit un calculateur au hasard avec une probabilité proportionnelle à son débit d'opérations mesuré. Un calculateur dont le
+ * débit n'est pas encore mesuré reçoit le poids moyen des calculateurs mesurés. Un calculateur au débit très faible garde un
+ * poids minimal pour que son débit continue d'être mesuré.
+ * @author dcourcel
+ *
+ */
+public class WeightedThroughputSelection implements CalculatorSelectionPolicy {
+	
+	private static final double MIN_WEIGHT_FRACTION = 0.01;
+	
+	private final Random random = new Random();
+	
+	@Override
+	public RegisteredCalculator select(List<RegisteredCalculator> calculators, RegisteredCalculator excluded) {
+		double[] weights = new double[calculators.size()];
+		double measuredTotal = 0;
+		int measured = 0;
+		for(int i = 0; i < weights.length; ++i) {
+			RegisteredCalculator calculator = calculators.get(i);
+			if(calculator != excluded && calculator.getLoad().getBatchesCompleted() > 0) {
+				weights[i] = calculator.getLoad().getOperationsPerSecond();
+				measuredTotal += weights[i];
+				++measured;
+			}
+		}
+		double defaultWeight = measured == 0 || measuredTotal == 0 ? 1 : measuredTotal / measured;
+		double total = 0;
+		for(int i = 0; i < weights.length; ++i) {
+			RegisteredCalculator calculator = calculators.get(i);
+			if(calculator == excluded) {
+				weights[i] = 0;
+			}
+			else if(calculator.getLoad().getBatchesCompleted() == 0) {
+				weights[i] = defaultWeight;
+			}
+			else {
+				weights[i] = Math.max(weights[i], defaultWeight * MIN_WEIGHT_FRACTION);
+			}
+			total += weights[i];
+		}
+		
+		double target = random.nextDouble() * total;
+		for(int i = 0; i < weights.length; ++i) {
+			target -= weights[i];
+			if(target < 0 && weights[i] > 0) {
+				return calculators.get(i);
+			}
+		}
+		for(int i = weights.length - 1; i >= 0; --i) {
+			if(weights[i] > 0) {
+				return calculators.get(i);
+			}
+		}
+		return null;
+	}
+}
@@ -16,6 +16,34 @@ public interface CalculationOperations extends Remote {
 	 */
 	public int calculate(IOperation[] operations) throws CalculatorOccupiedException, RemoteException;
 	
+	/**
+	 * Effectue les calculs d'un ensemble d'opérations et retourne le résultat de chacune. La somme des résultats est égale au
+	 * résultat de calculate pour les mêmes opérations.
+	 * @param operations Les opérations à effectuer.
+	 * @return Le résultat modulo 4000 de chaque opération, dans l'ordre des opérations reçues.
+	 * @throws CalculatorOccupiedException Si le calculateur n'est pas en mesure d'effectuer les calculs.
+	 * @throws RemoteException Si une erreur réseau survient lors de l'appel à la méthode.
+	 */
+	public int[] calculateEach(IOperation[] operations) throws CalculatorOccupiedException, RemoteException;
+	
+	/**
+	 * Effectue les calculs d'un lot d'opérations transmis sous forme compacte.
+	 * @param operations Les opérations à effectuer.
+	 * @return Le résultat des opérations, identique à celui de calculate pour les mêmes opérations.
+	 * @throws CalculatorOccupiedException Si le calculateur n'est pas en mesure d'effectuer les calculs.
+	 * @throws RemoteException Si une erreur réseau survient lors de l'appel à la méthode.
+	 */
+	public int calculate(OperationBatch operations) throws CalculatorOccupiedException, RemoteException;
+	
+	/**
+	 * Effectue les calculs d'un lot d'opérations transmis sous forme compacte et retourne le résultat de chacune.
+	 * @param operations Les opérations à effectuer.
+	 * @return Le résultat modulo 4000 de chaque opération, dans l'ordre des opérations reçues.
+	 * @throws CalculatorOccupiedException Si le calculateur n'est pas en mesure d'effectuer les calculs.
+	 * @throws RemoteException Si une erreur réseau survient lors de l'appel à la méthode.
+	 */
+	public int[] calculateEach(OperationBatch operations) throws CalculatorOccupiedException, RemoteException;
+	
 	/**
 	 * Indique le nombre d'opérations que le calculateur peut supporter avant de commencer à refuser les calculs.
 	 * @return Le nombre d'opérations que le calculateur supporte.
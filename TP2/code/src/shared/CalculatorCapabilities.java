@@ -0,0 +1,83 @@
+package shared;
+
+import java.io.Serializable;
+
+/**
+ * Les caractéristiques d'un calculateur qui ne changent pas durant sa vie. Elles sont envoyées une seule fois au répartiteur
+ * lors de l'enregistrement du calculateur pour éviter un appel distant avant chaque lot.
+ */
+public class CalculatorCapabilities implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	private final int numberOfOperationsSupported;
+	private final String nioHost;
+	private final int nioPort;
+	private final boolean sumOnly;
+	
+	/**
+	 * Crée les caractéristiques d'un calculateur.
+	 * @param numberOfOperationsSupported Le nombre d'opérations que le calculateur supporte avant de commencer à refuser les calculs.
+	 */
+	public CalculatorCapabilities(int numberOfOperationsSupported) {
+		this(numberOfOperationsSupported, null, 0, false);
+	}
+	
+	/**
+	 * Crée les caractéristiques d'un calculateur qui ne retourne peut-être que la somme de chaque lot.
+	 * @param numberOfOperationsSupported Le nombre d'opérations que le calculateur supporte avant de commencer à refuser les calculs.
+	 * @param sumOnly Vrai si le calculateur ne retourne pas le résultat de chaque opération.
+	 */
+	public CalculatorCapabilities(int numberOfOperationsSupported, boolean sumOnly) {
+		this(numberOfOperationsSupported, null, 0, sumOnly);
+	}
+	
+	/**
+	 * Crée les caractéristiques d'un calculateur qui accepte aussi les calculs par le transport NIO.
+	 * @param numberOfOperationsSupported Le nombre d'opérations que le calculateur supporte avant de commencer à refuser les calculs.
+	 * @param nioHost L'hôte auquel se connecter pour le transport NIO ou null si le calculateur ne l'accepte pas.
+	 * @param nioPort Le port sur lequel le calculateur écoute les connexions NIO.
+	 */
+	public CalculatorCapabilities(int numberOfOperationsSupported, String nioHost, int nioPort) {
+		this(numberOfOperationsSupported, nioHost, nioPort, false);
+	}
+	
+	private CalculatorCapabilities(int numberOfOperationsSupported, String nioHost, int nioPort, boolean sumOnly) {
+		this.numberOfOperationsSupported = numberOfOperationsSupported;
+		this.nioHost = nioHost;
+		this.nioPort = nioPort;
+		this.sumOnly = sumOnly;
+	}
+	
+	/**
+	 * Indique le nombre d'opérations que le calculateur peut supporter avant de commencer à refuser les calculs.
+	 * @return Le nombre d'opérations que le calculateur supporte.
+	 */
+	public int getNumberOfOperationsSupported() {
+		return numberOfOperationsSupported;
+	}
+	
+	/**
+	 * Indique si le calculateur accepte les calculs par le transport NIO en plus de RMI.
+	 * @return Vrai si un point d'accès NIO a été fourni.
+	 */
+	public boolean hasNioEndpoint() {
+		return nioHost != null;
+	}
+	
+	/**
+	 * Indique si le calculateur ne retourne que la somme de chaque lot, comme un répartiteur enfant. Le répartiteur ne doit
+	 * alors jamais lui demander le résultat de chaque opération avec calculateEach.
+	 * @return Vrai si le calculateur ne retourne pas le résultat de chaque opération.
+	 */
+	public boolean isSumOnly() {
+		return sumOnly;
+	}
+	
+	public String getNioHost() {
+		return nioHost;
+	}
+	
+	public int getNioPort() {
+		return nioPort;
+	}
+}
@@ -0,0 +1,67 @@
+package shared;
+
+import java.io.Serializable;
+
+/**
+ * La charge d'un calculateur à un moment donné : les lots qu'il a acceptés, mais pas encore terminés, le travail qu'ils
+ * représentent et son débit récent.
+ */
+public class CalculatorLoadReport implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final int runningBatches;
+	private final int queuedBatches;
+	private final long backlogOperations;
+	private final long estimatedBacklogMillis;
+	private final double operationsPerSecond;
+	private final long refusals;
+
+	/**
+	 * Crée un rapport de charge.
+	 * @param runningBatches Le nombre de lots en cours de calcul.
+	 * @param queuedBatches Le nombre de lots acceptés qui attendent un fil libre.
+	 * @param backlogOperations Le nombre d'opérations des lots acceptés et pas encore terminés.
+	 * @param estimatedBacklogMillis Le temps estimé pour terminer ces opérations.
+	 * @param operationsPerSecond Le nombre d'opérations terminées par seconde durant la dernière seconde complète.
+	 * @param refusals Le nombre de lots refusés depuis le démarrage du calculateur.
+	 */
+	public CalculatorLoadReport(int runningBatches, int queuedBatches, long backlogOperations, long estimatedBacklogMillis,
+			double operationsPerSecond, long refusals) {
+		this.runningBatches = runningBatches;
+		this.queuedBatches = queuedBatches;
+		this.backlogOperations = backlogOperations;
+		this.estimatedBacklogMillis = estimatedBacklogMillis;
+		this.operationsPerSecond = operationsPerSecond;
+		this.refusals = refusals;
+	}
+
+	public int getRunningBatches() {
+		return runningBatches;
+	}
+
+	public int getQueuedBatches() {
+		return queuedBatches;
+	}
+
+	public long getBacklogOperations() {
+		return backlogOperations;
+	}
+
+	public long getEstimatedBacklogMillis() {
+		return estimatedBacklogMillis;
+	}
+
+	public double getOperationsPerSecond() {
+		return operationsPerSecond;
+	}
+
+	public long getRefusals() {
+		return refusals;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d lots en cours, %d en attente, %d opérations (%d ms), %.0f op/s, %d refus", runningBatches,
+				queuedBatches, backlogOperations, estimatedBacklogMillis, operationsPerSecond, refusals);
+	}
+}
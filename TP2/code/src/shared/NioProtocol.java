@@ -0,0 +1,199 @@
+package shared;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Le protocole du transport NIO entre le répartiteur et les calculateurs. Chaque message est une trame : la longueur de ce qui
+ * suit, l'identifiant de la requête, le type du message puis son contenu. L'identifiant permet d'avoir plusieurs requêtes en
+ * cours sur une même connexion et d'associer chaque réponse à sa requête, peu importe l'ordre dans lequel les réponses arrivent.
+ * Les requêtes de calcul contiennent un lot compact d'opérations.
+ * @author dcourcel
+ *
+ */
+public final class NioProtocol {
+	/** Requête qui demande la somme des résultats d'un lot. */
+	public static final byte CALCULATE = 1;
+	/** Requête qui demande le résultat de chaque opération d'un lot. */
+	public static final byte CALCULATE_EACH = 2;
+	/** Requête sans contenu qui demande le nombre d'opérations supportées par le calculateur. */
+	public static final byte CAPACITY = 3;
+	/** Réponse qui contient la somme des résultats. */
+	public static final byte RESULT = 10;
+	/** Réponse qui contient le résultat de chaque opération. */
+	public static final byte RESULTS = 11;
+	/** Réponse indiquant que le calculateur a refusé le lot. */
+	public static final byte OCCUPIED = 12;
+	/** Réponse indiquant que le calcul a échoué, avec un message. */
+	public static final byte ERROR = 13;
+
+	/** La taille de l'identifiant et du type, toujours présents après la longueur. */
+	public static final int HEADER_LENGTH = 5;
+	/** La longueur maximale acceptée pour une trame, pour ne pas allouer un tampon démesuré sur une longueur invalide. */
+	public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+	private NioProtocol() {
+	}
+
+	/**
+	 * Crée la trame d'une requête de calcul.
+	 * @param requestId L'identifiant de la requête.
+	 * @param type CALCULATE ou CALCULATE_EACH.
+	 * @param batch Les opérations à calculer.
+	 * @return La trame, prête à être écrite.
+	 */
+	public static ByteBuffer requestFrame(int requestId, byte type, OperationBatch batch) {
+		ByteBuffer frame = startFrame(requestId, type, batch.getEncodedLength());
+		batch.write(frame);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Crée la trame d'une réponse qui contient la somme des résultats.
+	 * @param requestId L'identifiant de la requête à laquelle il est répondu.
+	 * @param result La somme des résultats.
+	 * @return La trame, prête à être écrite.
+	 */
+	public static ByteBuffer resultFrame(int requestId, int result) {
+		ByteBuffer frame = startFrame(requestId, RESULT, 4);
+		frame.putInt(result);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Crée la trame d'une réponse qui contient le résultat de chaque opération.
+	 * @param requestId L'identifiant de la requête à laquelle il est répondu.
+	 * @param results Le résultat de chaque opération.
+	 * @return La trame, prête à être écrite.
+	 */
+	public static ByteBuffer resultsFrame(int requestId, int[] results) {
+		ByteBuffer frame = startFrame(requestId, RESULTS, 4 + 4 * results.length);
+		frame.putInt(results.length);
+		for(int result : results) {
+			frame.putInt(result);
+		}
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Crée la trame d'une réponse sans contenu, comme OCCUPIED.
+	 * @param requestId L'identifiant de la requête à laquelle il est répondu.
+	 * @param status Le type de la réponse.
+	 * @return La trame, prête à être écrite.
+	 */
+	public static ByteBuffer statusFrame(int requestId, byte status) {
+		ByteBuffer frame = startFrame(requestId, status, 0);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Crée la trame d'une réponse d'erreur.
+	 * @param requestId L'identifiant de la requête à laquelle il est répondu.
+	 * @param message Le message de l'erreur ou null.
+	 * @return La trame, prête à être écrite.
+	 */
+	public static ByteBuffer errorFrame(int requestId, String message) {
+		byte[] encoded = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+		ByteBuffer frame = startFrame(requestId, ERROR, encoded.length);
+		frame.put(encoded);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Lit le contenu d'une réponse RESULTS.
+	 * @param frame La trame, positionnée après son type.
+	 * @return Le résultat de chaque opération.
+	 * @throws IOException Si le contenu est invalide.
+	 */
+	public static int[] readResults(ByteBuffer frame) throws IOException {
+		int count = frame.getInt();
+		if(count < 0 || count * 4L != frame.remaining()) {
+			throw new IOException("Réponse invalide.");
+		}
+		int[] results = new int[count];
+		for(int i = 0; i < count; ++i) {
+			results[i] = frame.getInt();
+		}
+		return results;
+	}
+
+	/**
+	 * Lit le message d'une réponse ERROR.
+	 * @param frame La trame, positionnée après son type.
+	 * @return Le message de l'erreur.
+	 */
+	public static String readMessage(ByteBuffer frame) {
+		byte[] encoded = new byte[frame.remaining()];
+		frame.get(encoded);
+		return new String(encoded, StandardCharsets.UTF_8);
+	}
+
+	private static ByteBuffer startFrame(int requestId, byte type, int payloadLength) {
+		ByteBuffer frame = ByteBuffer.allocate(4 + HEADER_LENGTH + payloadLength);
+		frame.putInt(HEADER_LENGTH + payloadLength);
+		frame.putInt(requestId);
+		frame.put(type);
+		return frame;
+	}
+
+	/**
+	 * Accumule les octets reçus sur une connexion non bloquante et en extrait les trames complètes. Le tampon grandit au besoin
+	 * pour contenir une trame entière.
+	 */
+	public static class FrameReader {
+		private ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+		/**
+		 * Lit les octets disponibles sur le canal sans bloquer.
+		 * @param channel Le canal à lire.
+		 * @return Le nombre d'octets lus ou -1 si la connexion a été fermée.
+		 * @throws IOException Si la lecture échoue.
+		 */
+		public int readFrom(ReadableByteChannel channel) throws IOException {
+			if(!buffer.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			}
+			return channel.read(buffer);
+		}
+
+		/**
+		 * Retire la prochaine trame complète reçue.
+		 * @return La trame, positionnée sur l'identifiant de la requête, ou null si aucune trame complète n'a été reçue.
+		 * @throws IOException Si la longueur annoncée de la trame est invalide.
+		 */
+		public ByteBuffer nextFrame() throws IOException {
+			if(buffer.position() < 4) {
+				return null;
+			}
+			int length = buffer.getInt(0);
+			if(length < HEADER_LENGTH || length > MAX_FRAME_LENGTH) {
+				throw new IOException("Longueur de trame invalide : " + length);
+			}
+			if(buffer.position() < 4 + length) {
+				if(buffer.capacity() < 4 + length) {
+					ByteBuffer larger = ByteBuffer.allocate(4 + length);
+					buffer.flip();
+					larger.put(buffer);
+					buffer = larger;
+				}
+				return null;
+			}
+			ByteBuffer frame = ByteBuffer.allocate(length);
+			buffer.flip();
+			buffer.position(4);
+			buffer.get(frame.array());
+			buffer.compact();
+			return frame;
+		}
+	}
+}
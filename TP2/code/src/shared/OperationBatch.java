@@ -0,0 +1,179 @@
+package shared;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Un lot d'opérations sous forme compacte pour l'envoi aux calculateurs. Chaque opération n'est qu'un code d'opération et une
+ * opérande. Lors de la sérialisation, chaque paire est écrite comme un entier de longueur variable qui contient l'opérande
+ * décalée de deux bits et le code : une opérande plus petite que 4096 n'occupe que deux octets. Aucun descripteur de classe ni
+ * en-tête d'objet n'est écrit pour les opérations.
+ * @author dcourcel
+ *
+ */
+public class OperationBatch implements Externalizable {
+	private static final long serialVersionUID = 1L;
+	private static final int OPCODE_BITS = 2;
+	private static final int MAX_OPCODE = (1 << OPCODE_BITS) - 1;
+	private static final String INVALID_BATCH = "Lot d'opérations invalide.";
+	private static final int MAX_ENCODED_LENGTH = NioProtocol.MAX_FRAME_LENGTH;
+	
+	private int[] opcodes;
+	private int[] operands;
+	
+	/**
+	 * Constructeur utilisé par la désérialisation.
+	 */
+	public OperationBatch() {
+		opcodes = new int[0];
+		operands = new int[0];
+	}
+	
+	/**
+	 * Crée un lot à partir des codes et des opérandes des opérations.
+	 * @param opcodes Le code de chaque opération, entre 0 et 3.
+	 * @param operands L'opérande de chaque opération, positive ou nulle.
+	 * @throws IllegalArgumentException Si les tableaux n'ont pas la même taille ou si un code ou une opérande est hors limites.
+	 */
+	public OperationBatch(int[] opcodes, int[] operands) {
+		if(opcodes.length != operands.length) {
+			throw new IllegalArgumentException("Il doit y avoir autant de codes que d'opérandes.");
+		}
+		for(int i = 0; i < opcodes.length; ++i) {
+			if(opcodes[i] < 0 || opcodes[i] > MAX_OPCODE || operands[i] < 0) {
+				throw new IllegalArgumentException("Opération invalide : " + opcodes[i] + " " + operands[i]);
+			}
+		}
+		this.opcodes = opcodes;
+		this.operands = operands;
+	}
+	
+	/**
+	 * Indique le nombre d'opérations du lot.
+	 * @return Le nombre d'opérations.
+	 */
+	public int size() {
+		return opcodes.length;
+	}
+	
+	public int getOpcode(int index) {
+		return opcodes[index];
+	}
+	
+	public int getOperand(int index) {
+		return operands[index];
+	}
+	
+	/**
+	 * Calcule le nombre d'octets qu'occupe le lot une fois encodé par write.
+	 * @return La taille encodée du lot en octets.
+	 */
+	public int getEncodedLength() {
+		return 8 + encodeOperations().length;
+	}
+	
+	/**
+	 * Encode le lot dans un tampon : le nombre d'opérations, le nombre d'octets qui suivent puis les opérations.
+	 * @param buffer Le tampon dans lequel écrire, qui doit avoir au moins getEncodedLength() octets de libres.
+	 */
+	public void write(ByteBuffer buffer) {
+		byte[] encoded = encodeOperations();
+		buffer.putInt(opcodes.length);
+		buffer.putInt(encoded.length);
+		buffer.put(encoded);
+	}
+	
+	/**
+	 * Décode un lot écrit par write.
+	 * @param buffer Le tampon à partir duquel lire.
+	 * @return Le lot décodé.
+	 * @throws IOException Si le contenu du tampon n'est pas un lot valide.
+	 */
+	public static OperationBatch read(ByteBuffer buffer) throws IOException {
+		if(buffer.remaining() < 8) {
+			throw new IOException(INVALID_BATCH);
+		}
+		int size = buffer.getInt();
+		int length = buffer.getInt();
+		checkHeader(size, length);
+		if(length > buffer.remaining()) {
+			throw new IOException(INVALID_BATCH);
+		}
+		byte[] encoded = new byte[length];
+		buffer.get(encoded);
+		OperationBatch batch = new OperationBatch();
+		batch.decodeOperations(size, encoded);
+		return batch;
+	}
+	
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		byte[] encoded = encodeOperations();
+		out.writeInt(opcodes.length);
+		out.writeInt(encoded.length);
+		out.write(encoded);
+	}
+	
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		int size = in.readInt();
+		int length = in.readInt();
+		checkHeader(size, length);
+		byte[] encoded = new byte[length];
+		in.readFully(encoded);
+		decodeOperations(size, encoded);
+	}
+	
+	/**
+	 * Vérifie l'en-tête d'un lot avant d'allouer quoi que ce soit : une opération occupe de 1 à 5 octets et le lot encodé ne
+	 * peut dépasser la taille maximale d'une trame NIO, de sorte qu'un en-tête erroné ou hostile ne provoque pas une allocation
+	 * démesurée.
+	 * @param size Le nombre d'opérations annoncé.
+	 * @param length Le nombre d'octets annoncé.
+	 * @throws IOException Si l'en-tête n'est pas celui d'un lot valide.
+	 */
+	private static void checkHeader(int size, int length) throws IOException {
+		if(size < 0 || length < size || length > MAX_ENCODED_LENGTH || length > 5L * size) {
+			throw new IOException(INVALID_BATCH);
+		}
+	}
+	
+	private byte[] encodeOperations() {
+		byte[] buffer = new byte[opcodes.length * 5];
+		int length = 0;
+		for(int i = 0; i < opcodes.length; ++i) {
+			long value = ((long)operands[i] << OPCODE_BITS) | opcodes[i];
+			while(value >= 0x80) {
+				buffer[length++] = (byte)(value | 0x80);
+				value >>>= 7;
+			}
+			buffer[length++] = (byte)value;
+		}
+		return Arrays.copyOf(buffer, length);
+	}
+	
+	private void decodeOperations(int size, byte[] encoded) throws IOException {
+		opcodes = new int[size];
+		operands = new int[size];
+		int position = 0;
+		for(int i = 0; i < size; ++i) {
+			long value = 0;
+			int shift = 0;
+			byte current;
+			do {
+				if(position >= encoded.length || shift > 35) {
+					throw new IOException(INVALID_BATCH);
+				}
+				current = encoded[position++];
+				value |= (long)(current & 0x7F) << shift;
+				shift += 7;
+			} while((current & 0x80) != 0);
+			opcodes[i] = (int)(value & MAX_OPCODE);
+			operands[i] = (int)(value >>> OPCODE_BITS);
+		}
+	}
+}
@@ -17,6 +17,17 @@ public interface RepartitorRegistering extends Remote {
 	 */
 	void bindSomething(String bindName, Remote objectToBind) throws AlreadyBoundException, RemoteException;
 	
+	/**
+	 * Ajoute un calculateur au registre du répartiteur en lui transmettant ses caractéristiques, qui seront conservées par le
+	 * répartiteur durant toute la vie du calculateur.
+	 * @param bindName Le nom du calculateur à ajouter. Le nom doit commencer par la constante CalculationOperations.CALCULATOR_PREFIX.
+	 * @param objectToBind The calculator to add.
+	 * @param capabilities Les caractéristiques du calculateur.
+	 * @throws AlreadyBoundException Si un calculateur du même nom a déjà été ajouté.
+	 * @throws RemoteException Si une erreur survient lors de l'ajout au Registry ou si une erreur survient lors de l'appel à distance.
+	 */
+	void bindSomething(String bindName, Remote objectToBind, CalculatorCapabilities capabilities) throws AlreadyBoundException, RemoteException;
+	
 	/**
 	 * Enlève un calculateur du registre du répartiteur.
 	 * @param nameToRemove Le nom du calculateur à enlever.
@@ -24,4 +35,14 @@ public interface RepartitorRegistering extends Remote {
 	 * @throws RemoteException Si une erreur survient lors du retrait au Registry ou si une erreur survient lors de l'appel à distance.
 	 */
 	void unbindSomething(String nameToRemove) throws NotBoundException, RemoteException;
+	
+	/**
+	 * Signale au répartiteur qu'un calculateur est toujours vivant et lui transmet sa charge actuelle. Un calculateur qui envoie
+	 * des battements et qui se tait plus longtemps que la fenêtre de détection du répartiteur est considéré comme en panne.
+	 * @param bindName Le nom sous lequel le calculateur s'est enregistré.
+	 * @param load La charge actuelle du calculateur.
+	 * @return Vrai si le répartiteur connaît le calculateur, faux s'il a été retiré et qu'il doit s'enregistrer de nouveau.
+	 * @throws RemoteException Si une erreur survient lors de l'appel à distance.
+	 */
+	boolean heartbeat(String bindName, CalculatorLoadReport load) throws RemoteException;
 }
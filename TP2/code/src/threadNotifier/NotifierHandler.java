@@ -3,12 +3,18 @@ package threadNotifier;
 import java.util.HashMap;
 import java.util.LinkedList;
 
+/**
+ * Démarre des groupes de fils et retourne chaque groupe dès que tous ses fils sont terminés. Chaque fil terminé s'ajoute à une file
+ * commune. Un compteur par groupe évite de parcourir l'état des fils du groupe et d'attendre leur fin avec join.
+ */
 public class NotifierHandler<T extends IThreadNotifier> {
 
 	private final HashMap<T, T[]> pairedThreads = new HashMap<>();
+	private final HashMap<T[], Integer> remainingThreads = new HashMap<>();
 	private final LinkedList<IThreadNotifier> threadsFinished = new LinkedList<>();
 	
 	public void startNewThreads(T[] threadsToStart) {
+		remainingThreads.put(threadsToStart, threadsToStart.length);
 		for(T thread : threadsToStart) {
 			pairedThreads.put(thread, threadsToStart);
 			thread.setFinishedCollection(threadsFinished);
@@ -16,46 +22,33 @@ public class NotifierHandler<T extends IThreadNotifier> {
 		}
 	}
 	
+	/**
+	 * Attend qu'un groupe de fils soit entièrement terminé.
+	 * @return Les fils du groupe terminé.
+	 * @throws InterruptedException Si l'attente est interrompue.
+	 */
 	public T[] getFinishedThreadsPool() throws InterruptedException {
-		T[] poolFinished = null;
-		while (poolFinished == null) {
+		while(true) {
+			IThreadNotifier threadFinished;
 			synchronized (threadsFinished) {
-				if(threadsFinished.size() > 0) {
-					poolFinished = threatFinishedThreads();
-				}
-				else {
+				while(threadsFinished.isEmpty()) {
 					threadsFinished.wait();
-					poolFinished = threatFinishedThreads();
 				}
+				threadFinished = threadsFinished.removeFirst();
+			}
+			T[] poolFinished = pairedThreads.remove(threadFinished);
+			if(poolFinished != null) {
+				int remaining = remainingThreads.get(poolFinished) - 1;
+				if(remaining == 0) {
+					remainingThreads.remove(poolFinished);
+					return poolFinished;
+				}
+				remainingThreads.put(poolFinished, remaining);
 			}
 		}
-		return poolFinished;
 	}
 	
 	public boolean haveUngetResults() {
 		return pairedThreads.size() > 0;
 	}
-	
-	private T[] threatFinishedThreads() throws InterruptedException {
-		T[] poolFinished = null;
-		while(poolFinished == null && threadsFinished.size() > 0) {
-			IThreadNotifier threadFinished = threadsFinished.peekFirst();
-			threadFinished.join();
-			threadsFinished.removeFirst();
-			poolFinished = pairedThreads.get(threadFinished);
-			int i = 0;
-			while(poolFinished != null && i < poolFinished.length) {
-				if(poolFinished[i].getState() != Thread.State.TERMINATED) {
-					poolFinished = null;
-				}
-				++i;
-			}
-			if(poolFinished != null) {
-				for(T thread : poolFinished) {
-					pairedThreads.remove(thread);
-				}
-			}
-		}
-		return poolFinished;
-	}
 }